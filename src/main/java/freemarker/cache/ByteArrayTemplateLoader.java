@@ -23,6 +23,8 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -35,7 +37,7 @@ import freemarker.template.utility.StringUtil;
  * 
  * @since 2.3.24
  */
-public class ByteArrayTemplateLoader implements TemplateLoader {
+public class ByteArrayTemplateLoader implements ListableTemplateLoader {
     
     private final Map<String, ByteArrayTemplateSource> templates = new HashMap<String, ByteArrayTemplateSource>();
     
@@ -76,6 +78,15 @@ public class ByteArrayTemplateLoader implements TemplateLoader {
         return templates.get(name);
     }
     
+    /**
+     * Returns the names with which the templates were added.
+     * 
+     * @since 2.3.26
+     */
+    public Collection<String> listTemplateNames() {
+        return new ArrayList<String>(templates.keySet());
+    }
+    
     public long getLastModified(Object templateSource) {
         return ((ByteArrayTemplateSource) templateSource).lastModified;
     }
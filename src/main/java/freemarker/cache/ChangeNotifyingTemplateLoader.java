@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.cache;
+
+/**
+ * Interface that can be implemented by {@link TemplateLoader}-s that can notify about the changes of the template
+ * sources, so that {@link TemplateCache} needn't check for changes periodically (see
+ * {@link TemplateCache#setDelay(long)}).
+ * 
+ * @since 2.3.26
+ */
+public interface ChangeNotifyingTemplateLoader extends TemplateLoader {
+
+    /**
+     * Registers a listener that will be notified when a template source was changed. The template loader only holds
+     * a weak reference to the listener, so it's the responsibility of the caller to keep it reachable for as long as
+     * it's needed. Adding the same listener again has no effect.
+     */
+    void addTemplateSourceChangeListener(TemplateSourceChangeListener listener);
+    
+    /**
+     * Unregisters a listener that was added with {@link #addTemplateSourceChangeListener(TemplateSourceChangeListener)};
+     * does nothing if it wasn't registered.
+     */
+    void removeTemplateSourceChangeListener(TemplateSourceChangeListener listener);
+    
+    /**
+     * Tells if currently all template source changes are reported to the listeners. If this returns {@code false},
+     * because for example watching for changes isn't supported on the platform, or it has failed, the
+     * {@link TemplateCache} falls back to checking for changes periodically, as specified with
+     * {@link TemplateCache#setDelay(long)}. Note that changes are reported with some delay even if this returns
+     * {@code true}.
+     */
+    boolean isNotifyingAboutAllChanges();
+    
+}
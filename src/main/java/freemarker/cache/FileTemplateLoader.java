@@ -25,11 +25,22 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.lang.ref.WeakReference;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
+import freemarker.core._Java7;
+import freemarker.core._Java7.DirectoryTreeWatcher;
+import freemarker.core._JavaVersions;
 import freemarker.log.Logger;
 import freemarker.template.Configuration;
 import freemarker.template.utility.SecurityUtilities;
@@ -41,8 +52,12 @@ import freemarker.template.utility.StringUtil;
  * directory. If you want symbolic links that point outside the template directory to work, you need to disable this
  * feature by using {@link #FileTemplateLoader(File, boolean)} with {@code true} second argument, but before that, check
  * the security implications there!
+ * 
+ * <p>
+ * Optionally, it can watch the template directory for changes (see {@link #setWatchForChanges(boolean)}), in which
+ * case the {@link TemplateCache} needn't check the last modification time of the templates periodically.
  */
-public class FileTemplateLoader implements TemplateLoader {
+public class FileTemplateLoader implements ChangeNotifyingTemplateLoader, ListableTemplateLoader {
     
     /**
      * By setting this Java system property to {@code true}, you can change the default of
@@ -73,6 +88,12 @@ public class FileTemplateLoader implements TemplateLoader {
     private final String canonicalBasePath;
     private boolean emulateCaseSensitiveFileSystem;
     private MruCacheStorage correctCasePaths;
+    
+    /** Stores {@link WeakReference}-s to the {@link TemplateSourceChangeListener}-s; also used as lock. */
+    private final List listenerRefs = new ArrayList();
+    private boolean watchForChanges;
+    /** Not {@code null} exactly when changes are being watched successfully. */
+    private volatile ChangeWatcherThread changeWatcherThread;
 
     /**
      * Creates a new file template cache that will use the current directory (the value of the system property
@@ -218,6 +239,52 @@ public class FileTemplateLoader implements TemplateLoader {
         }
     }
     
+    /**
+     * Lists the files under the {@link #getBaseDirectory() base directory}, recursively. If the canonical path check
+     * wasn't disabled in the constructor, files and directories that are actually outside the base directory (via
+     * symbolic links) are skipped.
+     * 
+     * @since 2.3.26
+     */
+    public Collection<String> listTemplateNames() throws IOException {
+        try {
+            return (Collection<String>) AccessController.doPrivileged(new PrivilegedExceptionAction() {
+                public Object run() throws IOException {
+                    List<String> names = new ArrayList<String>();
+                    listTemplateNames(baseDir, "", new HashSet<String>(), names);
+                    return names;
+                }
+            });
+        } catch (PrivilegedActionException e) {
+            throw (IOException) e.getException();
+        }
+    }
+    
+    private void listTemplateNames(File dir, String namePrefix, Set<String> visitedDirs, List<String> names)
+            throws IOException {
+        if (!visitedDirs.add(dir.getCanonicalPath())) {
+            // Directory symbolic link loop
+            return;
+        }
+        
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (int i = 0; i < files.length; i++) {
+            final File file = files[i];
+            if (canonicalBasePath != null && !file.getCanonicalPath().startsWith(canonicalBasePath)) {
+                continue;
+            }
+            final String name = namePrefix + file.getName();
+            if (file.isDirectory()) {
+                listTemplateNames(file, name + "/", visitedDirs, names);
+            } else if (file.isFile()) {
+                names.add(name);
+            }
+        }
+    }
+    
     /**
      * Called by {@link #findTemplateSource(String)} when {@link #getEmulateCaseSensitiveFileSystem()} is {@code true}. Should throw
      * {@link FileNotFoundException} if there's a mismatch; the error message should contain both the requested and the
@@ -331,6 +398,195 @@ public class FileTemplateLoader implements TemplateLoader {
         return EMULATE_CASE_SENSITIVE_FILE_SYSTEM_DEFAULT;
     }
 
+    /**
+     * Sets whether to watch the template directory (including its subdirectories) for changes, and notify the
+     * {@link TemplateSourceChangeListener}-s (most importantly, the {@link TemplateCache}) immediately when a
+     * template file is created, modified or deleted. When the changes are watched, the {@link TemplateCache} doesn't
+     * check the last modification time of the cached templates periodically (see
+     * {@link TemplateCache#setDelay(long)}), instead it keeps them until they are reported to be changed.
+     * 
+     * <p>
+     * This relies on the file system watch service of the platform, and so requires Java 7 or later. If watching
+     * for changes can't be started, or later it fails, a warning is logged, and the {@link TemplateCache} falls back
+     * to periodically checking for changes. See also {@link #isNotifyingAboutAllChanges()}.
+     * 
+     * <p>
+     * Watching is done in a background daemon thread, which stops automatically if this object is garbage collected,
+     * or when this setting is set back to {@code false}.
+     * 
+     * <p>
+     * The default is {@code false}.
+     * 
+     * @since 2.3.26
+     */
+    public void setWatchForChanges(boolean watchForChanges) {
+        boolean watcherStarted = false;
+        synchronized (listenerRefs) {
+            if (watchForChanges == this.watchForChanges) {
+                return;
+            }
+            this.watchForChanges = watchForChanges;
+            if (watchForChanges) {
+                watcherStarted = startChangeWatcher();
+            } else {
+                stopChangeWatcher();
+            }
+        }
+        if (watcherStarted) {
+            // Earlier changes weren't reported, yet from now on the cache entries won't be re-checked periodically,
+            // so they must be re-checked once:
+            fireTemplateSourceChanges(null);
+        }
+    }
+
+    /**
+     * Getter pair of {@link #setWatchForChanges(boolean)}. Note that this returns {@code true} even if watching for
+     * changes couldn't be started; use {@link #isNotifyingAboutAllChanges()} to check that.
+     * 
+     * @since 2.3.26
+     */
+    public boolean getWatchForChanges() {
+        synchronized (listenerRefs) {
+            return watchForChanges;
+        }
+    }
+
+    /**
+     * @since 2.3.26
+     */
+    public boolean isNotifyingAboutAllChanges() {
+        return changeWatcherThread != null;
+    }
+
+    /**
+     * @since 2.3.26
+     */
+    public void addTemplateSourceChangeListener(TemplateSourceChangeListener listener) {
+        synchronized (listenerRefs) {
+            for (Iterator it = listenerRefs.iterator(); it.hasNext(); ) {
+                final Object registeredListener = ((WeakReference) it.next()).get();
+                if (registeredListener == null) {
+                    it.remove();
+                } else if (registeredListener == listener) {
+                    return;
+                }
+            }
+            listenerRefs.add(new WeakReference(listener));
+        }
+    }
+
+    /**
+     * @since 2.3.26
+     */
+    public void removeTemplateSourceChangeListener(TemplateSourceChangeListener listener) {
+        synchronized (listenerRefs) {
+            for (Iterator it = listenerRefs.iterator(); it.hasNext(); ) {
+                final Object registeredListener = ((WeakReference) it.next()).get();
+                if (registeredListener == null || registeredListener == listener) {
+                    it.remove();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Must be called while holding the {@link #listenerRefs} lock.
+     * 
+     * @return Whether watching was successfully started.
+     */
+    private boolean startChangeWatcher() {
+        final _Java7 java7 = _JavaVersions.JAVA_7;
+        if (java7 == null) {
+            LOG.warn("Can't watch " + baseDir + " for template changes, as that requires Java 7 or later. "
+                    + "The TemplateCache will check for changes periodically instead.");
+            return false;
+        }
+        
+        final DirectoryTreeWatcher watcher;
+        try {
+            watcher = (DirectoryTreeWatcher) AccessController.doPrivileged(new PrivilegedExceptionAction() {
+                public Object run() throws IOException {
+                    return java7.newDirectoryTreeWatcher(baseDir);
+                }
+            });
+        } catch (PrivilegedActionException e) {
+            LOG.warn("Failed to start watching " + baseDir + " for template changes. "
+                    + "The TemplateCache will check for changes periodically instead.", e.getException());
+            return false;
+        }
+        
+        ChangeWatcherThread thread = new ChangeWatcherThread(this, watcher);
+        changeWatcherThread = thread;
+        thread.start();
+        return true;
+    }
+    
+    /**
+     * Must be called while holding the {@link #listenerRefs} lock.
+     */
+    private void stopChangeWatcher() {
+        ChangeWatcherThread thread = changeWatcherThread;
+        if (thread != null) {
+            changeWatcherThread = null;
+            thread.stopWatching();
+        }
+    }
+    
+    private void onChangeWatcherFailed(ChangeWatcherThread thread, Throwable e) {
+        synchronized (listenerRefs) {
+            if (changeWatcherThread != thread) {
+                return;
+            }
+            changeWatcherThread = null;
+        }
+        LOG.warn("Watching " + baseDir + " for template changes has failed. "
+                + "The TemplateCache will check for changes periodically instead.", e);
+        // Changes might were lost:
+        fireTemplateSourceChanges(null);
+    }
+
+    /**
+     * @param sourceNames
+     *            The names of the changed template sources; {@code null}, or a collection that contains
+     *            {@code null}, if any template source might have changed.
+     */
+    private void fireTemplateSourceChanges(Collection sourceNames) {
+        final List listeners = new ArrayList();
+        synchronized (listenerRefs) {
+            for (Iterator it = listenerRefs.iterator(); it.hasNext(); ) {
+                final Object listener = ((WeakReference) it.next()).get();
+                if (listener == null) {
+                    it.remove();
+                } else {
+                    listeners.add(listener);
+                }
+            }
+        }
+        
+        if (sourceNames == null || sourceNames.contains(null)) {
+            fireTemplateSourceChange(listeners, null);
+        } else {
+            for (Iterator it = new LinkedHashSet(sourceNames).iterator(); it.hasNext(); ) {
+                fireTemplateSourceChange(listeners, (String) it.next());
+            }
+        }
+    }
+
+    private void fireTemplateSourceChange(List listeners, String sourceName) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(sourceName != null
+                    ? "Template source changed: " + StringUtil.jQuoteNoXSS(sourceName)
+                    : "Any template sources might have changed in " + baseDir);
+        }
+        for (Iterator it = listeners.iterator(); it.hasNext(); ) {
+            try {
+                ((TemplateSourceChangeListener) it.next()).templateSourceChanged(sourceName);
+            } catch (Throwable e) {
+                LOG.error("TemplateSourceChangeListener has thrown exception", e);
+            }
+        }
+    }
+    
     /**
      * Show class name and some details that are useful in template-not-found errors.
      * 
@@ -344,7 +600,64 @@ public class FileTemplateLoader implements TemplateLoader {
                 + "baseDir=\"" + baseDir + "\""
                 + (canonicalBasePath != null ? ", canonicalBasePath=\"" + canonicalBasePath + "\"" : "")
                 + (emulateCaseSensitiveFileSystem ? ", emulateCaseSensitiveFileSystem=true" : "")
+                + (getWatchForChanges() ? ", watchForChanges=true" : "")
                 + ")";
     }
     
+    /**
+     * Polls the {@link DirectoryTreeWatcher} and reports the changes to the {@link FileTemplateLoader}. It only weakly
+     * references the {@link FileTemplateLoader}, so that this thread doesn't prevent it from being garbage
+     * collected; the thread stops when that happens.
+     */
+    private static final class ChangeWatcherThread extends Thread {
+        
+        private static final long POLL_TIMEOUT_MILLIS = 1000L;
+        
+        private final WeakReference templateLoaderRef;
+        private final DirectoryTreeWatcher watcher;
+        private volatile boolean stopped;
+
+        ChangeWatcherThread(FileTemplateLoader templateLoader, DirectoryTreeWatcher watcher) {
+            super("FreeMarker template directory watcher");
+            setDaemon(true);
+            this.templateLoaderRef = new WeakReference(templateLoader);
+            this.watcher = watcher;
+        }
+        
+        void stopWatching() {
+            stopped = true;
+            interrupt();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!stopped) {
+                    final List changes = watcher.pollChanges(POLL_TIMEOUT_MILLIS);
+                    final FileTemplateLoader templateLoader = (FileTemplateLoader) templateLoaderRef.get();
+                    if (templateLoader == null) {
+                        return;
+                    }
+                    if (!changes.isEmpty() && !stopped) {
+                        templateLoader.fireTemplateSourceChanges(changes);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Was stopped
+            } catch (Throwable e) {
+                final FileTemplateLoader templateLoader = (FileTemplateLoader) templateLoaderRef.get();
+                if (!stopped && templateLoader != null) {
+                    templateLoader.onChangeWatcherFailed(this, e);
+                }
+            } finally {
+                try {
+                    watcher.close();
+                } catch (Throwable e) {
+                    LOG.warn("Failed to close template directory watcher", e);
+                }
+            }
+        }
+        
+    }
+    
 }
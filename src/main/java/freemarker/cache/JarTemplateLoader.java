@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import freemarker.log.Logger;
+import freemarker.template.utility.NullArgumentException;
+import freemarker.template.utility.StringUtil;
+
+/**
+ * A {@link TemplateLoader} that loads templates from JAR files (or from directories) that it indexes when it's
+ * created. Unlike {@link ClassTemplateLoader}, which asks the class loader for each template name that's looked up
+ * (and with localized lookup and template lookup strategies, most of those lookups are for names that don't exist),
+ * this finds templates with a single lookup in an in-memory table, so {@link #findTemplateSource(String)} never does
+ * I/O. The JAR files are opened only once, and are kept open until {@link #close()} is called.
+ * 
+ * <p>
+ * As the index is built only once, templates added later to the indexed directories won't be found. The JAR files
+ * are assumed to be unchanging, so the last modification time of a template in a JAR is constant (the time stored in
+ * the JAR entry). Thus this template loader is meant to be used for templates that are deployed together with the
+ * application, not for templates that are edited while the application runs.
+ * 
+ * @since 2.3.26
+ */
+public class JarTemplateLoader implements ListableTemplateLoader, Closeable {
+    
+    private static final Logger LOG = Logger.getLogger("freemarker.cache");
+    
+    private final String description;
+    private final String basePath;
+    private final Map<String, TemplateEntry> index;
+    private final List<JarFile> jarFiles;
+
+    /**
+     * Creates a template loader that loads the templates from the given JAR file.
+     * 
+     * @param jarFile
+     *            The JAR file (or ZIP file in general) that contains the templates.
+     * @param basePath
+     *            The directory inside the JAR that contains the templates, like {@code "com/example/templates"}; the
+     *            template names are relative to this. Use {@code ""} for the root of the JAR.
+     */
+    public JarTemplateLoader(File jarFile, String basePath) throws IOException {
+        NullArgumentException.check("jarFile", jarFile);
+        this.basePath = normalizeBasePath(basePath);
+        this.description = "jarFile=\"" + jarFile + "\", basePath=" + StringUtil.jQuote(this.basePath);
+        index = new HashMap<String, TemplateEntry>();
+        jarFiles = new ArrayList<JarFile>(1);
+        boolean success = false;
+        try {
+            indexJarFile(jarFile);
+            success = true;
+        } finally {
+            if (!success) {
+                close();
+            }
+        }
+        logIndexSize();
+    }
+    
+    /**
+     * Creates a template loader that loads the templates from all the JAR files and directories where the given class
+     * loader finds the package specified with {@code basePackagePath}. If the same template name occurs in multiple
+     * of them, the first one is used in the order returned by {@link ClassLoader#getResources(String)}, which is also
+     * the one that {@link ClassTemplateLoader} would load.
+     * 
+     * @param classLoader
+     *            The class loader whose resources are indexed; can't be {@code null}.
+     * @param basePackagePath
+     *            The package that contains the templates, in path ({@code /}-separated) format, like
+     *            {@code "com/example/templates"}. It shouldn't be empty (the root package), as class loaders don't
+     *            find the root of JAR files as resource.
+     * 
+     * @throws IOException
+     *             If indexing has failed, also if a location of the package is neither a JAR file nor a directory
+     *             (like in some application servers that use virtual file systems); use {@link ClassTemplateLoader}
+     *             then.
+     */
+    public JarTemplateLoader(ClassLoader classLoader, String basePackagePath) throws IOException {
+        NullArgumentException.check("classLoader", classLoader);
+        this.basePath = normalizeBasePath(basePackagePath);
+        this.description = "classLoader=" + StringUtil.jQuote(classLoader)
+                + ", basePackagePath=" + StringUtil.jQuote(this.basePath);
+        index = new HashMap<String, TemplateEntry>();
+        jarFiles = new ArrayList<JarFile>();
+        boolean success = false;
+        try {
+            String resourceName = basePath.length() != 0 ? basePath.substring(0, basePath.length() - 1) : "";
+            for (Enumeration<URL> en = classLoader.getResources(resourceName); en.hasMoreElements(); ) {
+                URL url = en.nextElement();
+                String protocol = url.getProtocol();
+                if ("jar".equals(protocol)) {
+                    String urlStr = url.toExternalForm();
+                    int sepIdx = urlStr.indexOf("!/");
+                    if (sepIdx == -1 || urlStr.indexOf("!/", sepIdx + 2) != -1) {
+                        throw new IOException("Can't index templates at " + StringUtil.jQuote(urlStr)
+                                + ", as it's not a JAR file in the file system. Use ClassTemplateLoader instead.");
+                    }
+                    indexJarFile(urlToFile(new URL(urlStr.substring(4, sepIdx))));
+                } else if ("file".equals(protocol)) {
+                    indexDirectory(urlToFile(url), "");
+                } else {
+                    throw new IOException("Can't index templates at " + StringUtil.jQuote(url)
+                            + ", as it's neither a JAR file nor a directory. Use ClassTemplateLoader instead.");
+                }
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                close();
+            }
+        }
+        logIndexSize();
+    }
+
+    private static String normalizeBasePath(String basePath) {
+        NullArgumentException.check("basePath", basePath);
+        basePath = basePath.replace('\\', '/');
+        while (basePath.startsWith("/")) {
+            basePath = basePath.substring(1);
+        }
+        if (basePath.length() != 0 && !basePath.endsWith("/")) {
+            basePath += "/";
+        }
+        return basePath;
+    }
+    
+    private static File urlToFile(URL url) throws IOException {
+        try {
+            return new File(new URI(url.toExternalForm()));
+        } catch (URISyntaxException e) {
+            // Some class loaders return URL-s that contain spaces and such unescaped
+            return new File(url.getPath());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Can't convert URL to file: " + StringUtil.jQuote(url));
+        }
+    }
+
+    private void indexJarFile(File file) throws IOException {
+        JarFile jarFile = new JarFile(file);
+        jarFiles.add(jarFile);
+        
+        long jarLastModified = file.lastModified();
+        int basePathLength = basePath.length();
+        for (Enumeration<JarEntry> en = jarFile.entries(); en.hasMoreElements(); ) {
+            JarEntry jarEntry = en.nextElement();
+            String entryName = jarEntry.getName();
+            if (!jarEntry.isDirectory() && entryName.startsWith(basePath) && entryName.length() > basePathLength) {
+                String templateName = entryName.substring(basePathLength);
+                if (!index.containsKey(templateName)) {
+                    long lastModified = jarEntry.getTime();
+                    index.put(templateName, new TemplateEntry(
+                            jarFile, jarEntry, null, lastModified != -1 ? lastModified : jarLastModified));
+                }
+            }
+        }
+    }
+
+    private void indexDirectory(File dir, String namePrefix) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String templateName = namePrefix + file.getName();
+            if (file.isDirectory()) {
+                indexDirectory(file, templateName + "/");
+            } else if (file.isFile() && !index.containsKey(templateName)) {
+                index.put(templateName, new TemplateEntry(null, null, file, -1));
+            }
+        }
+    }
+    
+    private void logIndexSize() {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Indexed " + index.size() + " templates for " + this);
+        }
+    }
+
+    public Object findTemplateSource(String name) throws IOException {
+        return index.get(name);
+    }
+
+    public long getLastModified(Object templateSource) {
+        TemplateEntry entry = (TemplateEntry) templateSource;
+        return entry.file == null ? entry.lastModified : entry.file.lastModified();
+    }
+
+    public Reader getReader(Object templateSource, String encoding) throws IOException {
+        TemplateEntry entry = (TemplateEntry) templateSource;
+        return new InputStreamReader(
+                entry.file == null ? entry.jarFile.getInputStream(entry.jarEntry) : new FileInputStream(entry.file),
+                encoding);
+    }
+
+    public void closeTemplateSource(Object templateSource) throws IOException {
+        // Nothing to do
+    }
+
+    public Collection<String> listTemplateNames() throws IOException {
+        return new ArrayList<String>(index.keySet());
+    }
+    
+    /**
+     * Closes the JAR files; after this, templates can't be loaded with this template loader.
+     */
+    public void close() throws IOException {
+        IOException firstException = null;
+        for (JarFile jarFile : jarFiles) {
+            try {
+                jarFile.close();
+            } catch (IOException e) {
+                if (firstException == null) {
+                    firstException = e;
+                }
+            }
+        }
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
+
+    /**
+     * Show class name and some details that are useful in template-not-found errors.
+     */
+    @Override
+    public String toString() {
+        return TemplateLoaderUtils.getClassNameForToString(this) + "(" + description + ")";
+    }
+    
+    /**
+     * The template source object of this template loader. As the same instance is returned for the same template
+     * name, it needn't override {@link Object#equals(Object)}.
+     */
+    private static final class TemplateEntry {
+        
+        private final JarFile jarFile;
+        private final JarEntry jarEntry;
+        private final File file;
+        private final long lastModified;
+        
+        TemplateEntry(JarFile jarFile, JarEntry jarEntry, File file, long lastModified) {
+            this.jarFile = jarFile;
+            this.jarEntry = jarEntry;
+            this.file = file;
+            this.lastModified = lastModified;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import freemarker.template.Configuration;
+
+/**
+ * Interface that can be implemented by {@link TemplateLoader}-s that can enumerate the templates they can load. This
+ * is needed for warming up the template cache with globs, like with
+ * {@link Configuration#warmUpTemplateCache(Collection, java.util.Locale, java.util.concurrent.ExecutorService)}.
+ * 
+ * @since 2.3.26
+ */
+public interface ListableTemplateLoader extends TemplateLoader {
+
+    /**
+     * Returns the names of all templates that this template loader can load, in no particular order. The names are
+     * in the format that {@link #findTemplateSource(String)} accepts, that is, they use {@code /} as separator, and
+     * they don't start with {@code /}. As localized lookup and such are done on a higher level, the names of all
+     * localized variants (like {@code foo_de.ftl}) are returned as well.
+     * 
+     * @return Not {@code null}; a {@link Collection} of {@link String}-s that the caller may modify.
+     */
+    Collection<String> listTemplateNames() throws IOException;
+    
+}
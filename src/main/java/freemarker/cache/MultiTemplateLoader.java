@@ -21,6 +21,8 @@ package freemarker.cache;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -33,7 +35,7 @@ import java.util.concurrent.ConcurrentHashMap;
  * 
  * <p>This class is thread-safe.
  */
-public class MultiTemplateLoader implements StatefulTemplateLoader {
+public class MultiTemplateLoader implements StatefulTemplateLoader, ListableTemplateLoader {
 
     private final TemplateLoader[] loaders;
     private final Map<String, TemplateLoader> lastLoaderForName = new ConcurrentHashMap<String, TemplateLoader>();
@@ -86,6 +88,24 @@ public class MultiTemplateLoader implements StatefulTemplateLoader {
         return null;
     }
 
+    /**
+     * Returns the union of the template names listed by the enclosed template loaders. Enclosed template loaders that
+     * aren't {@link ListableTemplateLoader}-s are skipped, and so the templates that only they can load won't be
+     * listed.
+     * 
+     * @since 2.3.26
+     */
+    public Collection<String> listTemplateNames() throws IOException {
+        Collection<String> names = new LinkedHashSet<String>();
+        for (int i = 0; i < loaders.length; i++) {
+            TemplateLoader loader = loaders[i];
+            if (loader instanceof ListableTemplateLoader) {
+                names.addAll(((ListableTemplateLoader) loader).listTemplateNames());
+            }
+        }
+        return names;
+    }
+
     private Object modifyForIcI(Object source) {
         // TODO Auto-generated method stub
         return null;
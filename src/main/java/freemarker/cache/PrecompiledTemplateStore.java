@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import freemarker.core.OutputFormat;
+import freemarker.core.ParserConfiguration;
+import freemarker.log.Logger;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template._TemplateAPI;
+import freemarker.template.utility.NullArgumentException;
+import freemarker.template.utility.StringUtil;
+
+/**
+ * Stores the parse results of templates in a directory, so that after a restart the {@link TemplateCache} can load
+ * them from there instead of parsing the template sources again. Set it with
+ * {@link Configuration#setPrecompiledTemplateStore(PrecompiledTemplateStore)}. The directory can be populated when the
+ * templates are first loaded, or in advance, with the {@code freemarker.ext.ant.FreemarkerPrecompileTask} Ant task.
+ * 
+ * <p>
+ * A stored parse result is only used if the name, last modification time and content of the template source, the
+ * parser related settings, and the FreeMarker version are all the same as when it was stored; otherwise the template
+ * is parsed as usual, and the stored parse result is overwritten. Reading or writing errors are logged, and also cause
+ * falling back to parsing. To spare reading the template source, if both its last modification time and its length
+ * are known (as with {@link FileTemplateLoader}), the content is assumed to be unchanged if those two are unchanged.
+ * Otherwise the template source is read, and its content is compared with a hash stored along the parse result.
+ * 
+ * <p>
+ * The files in the directory are in an internal format that's specific to the exact FreeMarker version. As with
+ * template sources, only trusted users should be able to write into the directory.
+ * 
+ * @since 2.3.26
+ */
+public class PrecompiledTemplateStore {
+    
+    private static final Logger LOG = Logger.getLogger("freemarker.cache");
+    
+    private static final String FILE_EXTENSION = ".ftlc";
+    private static final int FORMAT_MAGIC = 0x464D5052; // "FMPR"
+    private static final int FORMAT_VERSION = 5;
+    private static final String FREEMARKER_VERSION = Configuration.getVersion().toString()
+            + " " + Configuration.getVersion().getBuildDate();
+    
+    private final File directory;
+    private final ConcurrentMap<String, Boolean> unstorableTemplateSourceNames
+            = new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * @param directory
+     *            The directory where the parse results will be stored. It will be created when the first template is
+     *            stored, if it doesn't yet exist. It shouldn't be used for anything else.
+     */
+    public PrecompiledTemplateStore(File directory) {
+        NullArgumentException.check("directory", directory);
+        this.directory = directory;
+    }
+    
+    public File getDirectory() {
+        return directory;
+    }
+    
+    /**
+     * Deletes all stored parse results.
+     */
+    public void clear() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                final File file = files[i];
+                if (file.getName().endsWith(FILE_EXTENSION) && !file.delete()) {
+                    LOG.warn("Failed to delete stored template parse result: " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the template loaded from the stored parse result, or {@code null} if there's no up-to-date stored parse
+     * result for it.
+     * 
+     * @param initialEncoding
+     *            The encoding with which the template source was read; note that if the {@code #ftl} header specifies
+     *            a different encoding, the returned template will have that encoding.
+     * @param lastModified
+     *            The last modification time of the template source, or -1 if it's unknown.
+     * @param sourceLength
+     *            The length of the template source in bytes, or -1 if it's unknown.
+     * @param sourceContent
+     *            The content of the template source, read with the {@code initialEncoding}; {@code null} exactly if
+     *            both {@code lastModified} and {@code sourceLength} are known, in which case they are used alone to
+     *            decide if the stored parse result is up-to-date.
+     * @param customParserConfiguration
+     *            As the similarly named parameter of the {@link Template} constructor.
+     */
+    Template load(
+            String name, String sourceName, String initialEncoding,
+            long lastModified, long sourceLength, String sourceContent,
+            Configuration cfg, ParserConfiguration customParserConfiguration) {
+        final String parserSettingsFingerprint = getParserSettingsFingerprint(
+                cfg, customParserConfiguration != null ? customParserConfiguration : cfg);
+        final File file = getFile(sourceName, initialEncoding, parserSettingsFingerprint);
+        final DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            if (in.readInt() != FORMAT_MAGIC || in.readInt() != FORMAT_VERSION
+                    || !in.readUTF().equals(FREEMARKER_VERSION)
+                    || !in.readUTF().equals(sourceName)
+                    || !in.readUTF().equals(String.valueOf(initialEncoding))
+                    || !in.readUTF().equals(parserSettingsFingerprint)
+                    || in.readLong() != lastModified
+                    || in.readLong() != sourceLength
+                    // The hash is only calculated if nothing else has indicated a change:
+                    || !in.readUTF().equals(getContentHash(sourceContent))) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Stored parse result is outdated for template " + StringUtil.jQuoteNoXSS(sourceName));
+                }
+                return null;
+            }
+            final String encoding = in.readBoolean() ? in.readUTF() : null;
+            
+            final Template template = _TemplateAPI.newTemplateFromParseResult(
+                    name, sourceName, cfg, customParserConfiguration, encoding, in);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Loaded stored parse result for template " + StringUtil.jQuoteNoXSS(sourceName));
+            }
+            return template;
+        } catch (Exception e) {
+            LOG.warn("Failed to load stored parse result for template " + StringUtil.jQuoteNoXSS(sourceName)
+                    + " from " + file + "; will parse the template instead.", e);
+            return null;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Stores the parse result of the template, which must be freshly created (its settings weren't yet changed).
+     * See the parameters of {@link #load} for more.
+     */
+    void store(
+            Template template, String sourceName, String initialEncoding,
+            long lastModified, long sourceLength, String sourceContent) {
+        final String parserSettingsFingerprint = getParserSettingsFingerprint(
+                template.getConfiguration(), template.getParserConfiguration());
+        final File file = getFile(sourceName, initialEncoding, parserSettingsFingerprint);
+        File tempFile = null;
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+                throw new IOException("Failed to create directory " + directory);
+            }
+            
+            // To avoid other threads or processes reading a partially written file, we write into a temporary file
+            // and then rename that.
+            tempFile = File.createTempFile(file.getName(), ".tmp", directory);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                out.writeInt(FORMAT_MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(FREEMARKER_VERSION);
+                out.writeUTF(sourceName);
+                out.writeUTF(String.valueOf(initialEncoding));
+                out.writeUTF(parserSettingsFingerprint);
+                out.writeLong(lastModified);
+                out.writeLong(sourceLength);
+                out.writeUTF(getContentHash(sourceContent));
+                final String encoding = template.getEncoding();
+                out.writeBoolean(encoding != null);
+                if (encoding != null) {
+                    out.writeUTF(encoding);
+                }
+                _TemplateAPI.writeParseResult(template, out);
+            } finally {
+                out.close();
+            }
+            
+            if (!tempFile.renameTo(file)) {
+                // On some platforms rename fails if the target exists
+                file.delete();
+                if (!tempFile.renameTo(file)) {
+                    throw new IOException("Failed to rename " + tempFile + " to " + file);
+                }
+            }
+            tempFile = null;
+            unstorableTemplateSourceNames.remove(sourceName);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Stored parse result for template " + StringUtil.jQuoteNoXSS(sourceName));
+            }
+        } catch (ObjectStreamException e) {
+            // Typically, something in the template isn't serializable (like a custom attribute value). As this will
+            // happen again whenever the template is loaded, it's only logged for the first time.
+            if (unstorableTemplateSourceNames.putIfAbsent(sourceName, Boolean.TRUE) == null) {
+                LOG.warn("Couldn't store the parse result of template " + StringUtil.jQuoteNoXSS(sourceName)
+                        + "; it will be always parsed.", e);
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to store the parse result of template " + StringUtil.jQuoteNoXSS(sourceName)
+                    + " into " + directory, e);
+        } finally {
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+    
+    private File getFile(String sourceName, String initialEncoding, String parserSettingsFingerprint) {
+        return new File(directory,
+                getHash(sourceName + "\n" + initialEncoding + "\n" + parserSettingsFingerprint) + FILE_EXTENSION);
+    }
+
+    /**
+     * Describes the settings that influence the result of the parsing.
+     */
+    private static String getParserSettingsFingerprint(Configuration cfg, ParserConfiguration pCfg) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(pCfg.getIncompatibleImprovements());
+        sb.append(',').append(pCfg.getTagSyntax());
+        sb.append(',').append(pCfg.getNamingConvention());
+        sb.append(',').append(pCfg.getWhitespaceStripping());
+        sb.append(',').append(pCfg.getStrictSyntaxMode());
+        sb.append(',').append(pCfg.getAutoEscapingPolicy());
+        sb.append(',').append(pCfg.getRecognizeStandardFileExtensions());
+        sb.append(',').append(pCfg.getTabSize());
+        sb.append(',').append(pCfg.getArithmeticEngine().getClass().getName());
+        sb.append(',').append(getOutputFormatFingerprint(pCfg.getOutputFormat()));
+        for (Iterator it = cfg.getRegisteredCustomOutputFormats().iterator(); it.hasNext(); ) {
+            sb.append(',').append(getOutputFormatFingerprint((OutputFormat) it.next()));
+        }
+        return sb.toString();
+    }
+
+    private static String getOutputFormatFingerprint(OutputFormat outputFormat) {
+        return outputFormat.getName() + ":" + outputFormat.getClass().getName();
+    }
+    
+    /**
+     * @return The empty string if {@code content} is {@code null}.
+     */
+    private static String getContentHash(String content) {
+        return content != null ? getHash(content) : "";
+    }
+
+    private static String getHash(String s) {
+        final byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(s.getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-1 isn't supported by the platform", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException("UTF-8 isn't supported by the platform", e);
+        }
+        final StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (int i = 0; i < digest.length; i++) {
+            final int b = digest[i] & 0xFF;
+            sb.append(Character.forDigit(b >> 4, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+    
+    @Override
+    public String toString() {
+        return getClass().getName() + "(directory=\"" + directory + "\")";
+    }
+
+}
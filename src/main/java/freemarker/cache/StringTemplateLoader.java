@@ -21,6 +21,8 @@ package freemarker.cache;
 
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -60,7 +62,7 @@ import freemarker.template.utility.StringUtil;
  * want to combine a <tt>StringTemplateLoader</tt> with another loader. You can
  * do so using a {@link freemarker.cache.MultiTemplateLoader}.
  */
-public class StringTemplateLoader implements TemplateLoader {
+public class StringTemplateLoader implements ListableTemplateLoader {
     
     private final Map<String, StringTemplateSource> templates = new HashMap<String, StringTemplateSource>();
     
@@ -114,6 +116,15 @@ public class StringTemplateLoader implements TemplateLoader {
         return templates.get(name);
     }
     
+    /**
+     * Returns the names with which the templates were added.
+     * 
+     * @since 2.3.26
+     */
+    public Collection<String> listTemplateNames() {
+        return new ArrayList<String>(templates.keySet());
+    }
+    
     public long getLastModified(Object templateSource) {
         return ((StringTemplateSource) templateSource).lastModified;
     }
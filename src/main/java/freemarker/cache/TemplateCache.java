@@ -19,20 +19,32 @@
 
 package freemarker.cache;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Serializable;
+import java.io.StringReader;
 import java.io.StringWriter;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.StringTokenizer;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
 
 import freemarker.cache.MultiTemplateLoader.MultiSource;
 import freemarker.core.BugException;
 import freemarker.core.Environment;
+import freemarker.core.ProcessingInstrumentation;
 import freemarker.core.TemplateConfiguration;
 import freemarker.log.Logger;
 import freemarker.template.Configuration;
@@ -64,6 +76,8 @@ public class TemplateCache {
      */
     public static final long DEFAULT_TEMPLATE_UPDATE_DELAY_MILLIS = 5000L;
     
+    private static final long MIN_BACKGROUND_UPDATE_PERIOD_MILLIS = 100L;
+    
     private static final String ASTERISKSTR = "*";
     private static final char ASTERISK = '*';
     private static final char SLASH = '/';
@@ -84,6 +98,39 @@ public class TemplateCache {
     private long updateDelay = DEFAULT_TEMPLATE_UPDATE_DELAY_MILLIS;
     /** {@link Configuration#setLocalizedLookup(boolean)} */
     private boolean localizedLookup = true;
+    /** {@link Configuration#setTemplateUpdateServesStale(boolean)} */
+    private boolean serveStaleWhileUpdating;
+    
+    private volatile PrecompiledTemplateStore precompiledTemplateStore;
+    
+    /** The templates that are being loaded or re-checked right now; {@link TemplateKey} to {@link PendingLoad}. */
+    private final ConcurrentMap pendingLoads = new ConcurrentHashMap();
+    
+    /** {@link Configuration#setTemplateUpdateInBackground(boolean)} */
+    private boolean updateInBackground;
+    /**
+     * When {@link #updateInBackground} is {@code true}, the keys of the cache entries that the background updater has
+     * to check; {@link TemplateKey} to {@link Boolean#TRUE}.
+     */
+    private final ConcurrentMap backgroundUpdatedKeys = new ConcurrentHashMap();
+    private Timer backgroundUpdaterTimer;
+    
+    /**
+     * Non-{@code null} if the {@link TemplateLoader} is a {@link ChangeNotifyingTemplateLoader}; we must keep a
+     * reference to it as the template loader only references it weakly.
+     */
+    private final TemplateSourceChangeListener templateSourceChangeListener;
+    /**
+     * Incremented on each template source change notification; cache entries that were checked before the last
+     * notification are considered to be stale.
+     */
+    private final AtomicLong templateSourceChangeCount = new AtomicLong();
+    /**
+     * Incremented after each change that can make {@link #getTemplate(String, Locale, Object, String, boolean)} return
+     * something else than earlier for the same arguments (a reload, a removal, a change notification, etc.); see
+     * {@link #getGeneration()}.
+     */
+    private final AtomicLong generation = new AtomicLong();
 
     private Configuration config;
 
@@ -176,6 +223,21 @@ public class TemplateCache {
             TemplateConfigurationFactory templateConfigurations,
             Configuration config) {
         this.templateLoader = templateLoader;
+        if (templateLoader instanceof ChangeNotifyingTemplateLoader) {
+            templateSourceChangeListener = new TemplateSourceChangeListener() {
+                public void templateSourceChanged(String sourceName) {
+                    // As several template names can map to the same source (due to localized lookup and
+                    // acquisition), and new sources can change the result of earlier lookups, we can't tell which
+                    // cache entries are affected, so they will be all re-checked when they are next used.
+                    templateSourceChangeCount.incrementAndGet();
+                    generation.incrementAndGet();
+                }
+            };
+            ((ChangeNotifyingTemplateLoader) templateLoader).addTemplateSourceChangeListener(
+                    templateSourceChangeListener);
+        } else {
+            templateSourceChangeListener = null;
+        }
         
         NullArgumentException.check("cacheStorage", cacheStorage);
         this.storage = cacheStorage;
@@ -328,45 +390,148 @@ public class TemplateCache {
                 : null;
         final TemplateKey tk = new TemplateKey(name, locale, customLookupCondition, encoding, parseAsFTL);
         
-        CachedTemplate cachedTemplate;
+        CachedTemplate cachedTemplate = getCachedTemplate(tk);
+        long now = System.currentTimeMillis();
+        
+        // If we're within the refresh delay (or no change was reported), return the cached copy
+        if (cachedTemplate != null && isUpToDate(cachedTemplate, now)) {
+            if (debug) {
+                LOG.debug(debugName + " cached copy not yet stale; using cached.");
+            }
+            return getTemplateOrRethrow(cachedTemplate);
+        }
+        
+        // Stale templates will be re-checked by the background updater, so we don't do I/O here
+        if (cachedTemplate != null && updateInBackground) {
+            if (debug) {
+                LOG.debug(debugName + " cached copy is stale, but it's updated in the background; using cached.");
+            }
+            return getTemplateOrRethrow(cachedTemplate);
+        }
+        
+        // Ensure that only one thread loads or re-checks the same template at a time; the others will wait for its
+        // result (or will use the stale cached copy, if that's allowed).
+        final PendingLoad pendingLoad = new PendingLoad();
+        final PendingLoad otherPendingLoad = (PendingLoad) pendingLoads.putIfAbsent(tk, pendingLoad);
+        if (otherPendingLoad != null) {
+            if (otherPendingLoad.thread != Thread.currentThread()) {
+                if (serveStaleWhileUpdating && cachedTemplate != null
+                        && cachedTemplate.templateOrException instanceof Template) {
+                    if (debug) {
+                        LOG.debug(debugName + " is being updated by another thread; using stale cached copy.");
+                    }
+                    return (Template) cachedTemplate.templateOrException;
+                }
+                if (debug) {
+                    LOG.debug(debugName + " is being loaded by another thread; waiting for its result.");
+                }
+                return otherPendingLoad.getResult();
+            } else {
+                // The TemplateLoader has called back into the cache for the same template; don't dead-lock.
+                return loadOrUpdateTemplate(tk, cachedTemplate, now, debug, debugName);
+            }
+        }
+        
+        try {
+            // Another thread might have finished updating the entry since we have read it:
+            final CachedTemplate latestCachedTemplate = getCachedTemplate(tk);
+            if (latestCachedTemplate != cachedTemplate) {
+                cachedTemplate = latestCachedTemplate;
+                now = System.currentTimeMillis();
+                if (cachedTemplate != null && isUpToDate(cachedTemplate, now)) {
+                    if (debug) {
+                        LOG.debug(debugName + " was just updated by another thread; using cached.");
+                    }
+                    pendingLoad.setResult(cachedTemplate.templateOrException);
+                    return getTemplateOrRethrow(cachedTemplate);
+                }
+            }
+            
+            Template template = loadOrUpdateTemplate(tk, cachedTemplate, now, debug, debugName);
+            pendingLoad.setResult(template);
+            return template;
+        } catch (IOException e) {
+            pendingLoad.setResult(e);
+            throw e;
+        } catch (RuntimeException e) {
+            pendingLoad.setResult(e);
+            throw e;
+        } catch (Error e) {
+            pendingLoad.setResult(e);
+            throw e;
+        } finally {
+            pendingLoads.remove(tk, pendingLoad);
+        }
+    }
+    
+    /**
+     * Tells if the cache entry needn't be re-checked yet.
+     */
+    private boolean isUpToDate(CachedTemplate cachedTemplate, long now) {
+        if (templateSourceChangeListener != null) {
+            if (cachedTemplate.templateSourceChangeCount != templateSourceChangeCount.get()) {
+                return false;
+            }
+            if (((ChangeNotifyingTemplateLoader) templateLoader).isNotifyingAboutAllChanges()) {
+                return true;
+            }
+        }
+        return now - cachedTemplate.lastChecked < updateDelay;
+    }
+    
+    private CachedTemplate getCachedTemplate(TemplateKey tk) {
         if (isStorageConcurrent) {
-            cachedTemplate = (CachedTemplate) storage.get(tk);
+            return (CachedTemplate) storage.get(tk);
         } else {
             synchronized (storage) {
-                cachedTemplate = (CachedTemplate) storage.get(tk);
+                return (CachedTemplate) storage.get(tk);
             }
         }
-        
-        final long now = System.currentTimeMillis();
+    }
+    
+    /**
+     * Returns the template from a cached entry that wasn't stale, or re-throws the exception that was cached there.
+     */
+    private Template getTemplateOrRethrow(CachedTemplate cachedTemplate) throws IOException {
+        // Can be null, indicating a cached negative lookup
+        Object t = cachedTemplate.templateOrException;
+        if (t instanceof Template || t == null) {
+            return (Template) t;
+        } else if (t instanceof RuntimeException) {
+            throwLoadFailedException((RuntimeException) t);
+        } else if (t instanceof IOException) {
+            throwLoadFailedException((IOException) t);
+        }
+        throw new BugException("t is " + t.getClass().getName());
+    }
+    
+    /**
+     * Loads the template for the first time, or checks if it was changed since it was loaded, and reloads it if so.
+     * 
+     * @param cachedTemplate
+     *            The stale cache entry, or {@code null} if the template isn't in the cache yet.
+     */
+    private Template loadOrUpdateTemplate(
+            final TemplateKey tk, CachedTemplate cachedTemplate, final long now,
+            final boolean debug, final String debugName)
+    throws IOException {
+        final String name = tk.name;
+        final Locale locale = tk.locale;
+        final Object customLookupCondition = tk.customLookupCondition;
+        final boolean reload = cachedTemplate != null;
+        // Read before the I/O, so that if a change is reported meanwhile, the entry will be re-checked again:
+        final long templateSourceChangeCount = this.templateSourceChangeCount.get();
         
         long lastModified = -1L;
-        boolean rethrown = false;
         TemplateLookupResult newLookupResult = null;
         try {
             if (cachedTemplate != null) {
-                // If we're within the refresh delay, return the cached copy
-                if (now - cachedTemplate.lastChecked < updateDelay) {
-                    if (debug) {
-                        LOG.debug(debugName + " cached copy not yet stale; using cached.");
-                    }
-                    // Can be null, indicating a cached negative lookup
-                    Object t = cachedTemplate.templateOrException;
-                    if (t instanceof Template || t == null) {
-                        return (Template) t;
-                    } else if (t instanceof RuntimeException) {
-                        throwLoadFailedException((RuntimeException) t);
-                    } else if (t instanceof IOException) {
-                        rethrown = true;
-                        throwLoadFailedException((IOException) t);
-                    }
-                    throw new BugException("t is " + t.getClass().getName());
-                }
-                
                 // Clone as the instance bound to the map should be treated as
                 // immutable to ensure proper concurrent semantics
                 cachedTemplate = cachedTemplate.cloneCachedTemplate();
                 // Update the last-checked flag
                 cachedTemplate.lastChecked = now;
+                cachedTemplate.templateSourceChangeCount = templateSourceChangeCount;
 
                 // Find the template source
                 newLookupResult = lookupTemplate(name, locale, customLookupCondition);
@@ -415,6 +580,7 @@ public class TemplateCache {
                 // a flag that signs it has to be explicitly queried later on.
                 cachedTemplate = new CachedTemplate();
                 cachedTemplate.lastChecked = now;
+                cachedTemplate.templateSourceChangeCount = templateSourceChangeCount;
                 
                 newLookupResult = lookupTemplate(name, locale, customLookupCondition);
                 
@@ -435,13 +601,26 @@ public class TemplateCache {
             }
             
             lastModified = lastModified == Long.MIN_VALUE ? templateLoader.getLastModified(source) : lastModified;            
-            Template template = loadTemplate(
-                    templateLoader, source,
-                    name, newLookupResult.getTemplateSourceName(), locale, customLookupCondition,
-                    encoding, parseAsFTL);
+            final ProcessingInstrumentation instrumentation
+                    = config != null ? config.getProcessingInstrumentation() : null;
+            final long loadingStartTime = instrumentation != null ? System.nanoTime() : 0;
+            final Template template;
+            try {
+                template = loadTemplate(
+                        templateLoader, source, lastModified,
+                        name, newLookupResult.getTemplateSourceName(), locale, customLookupCondition,
+                        tk.encoding, tk.parse);
+            } finally {
+                if (instrumentation != null) {
+                    instrumentation.templateLoaded(name, locale, System.nanoTime() - loadingStartTime);
+                }
+            }
             cachedTemplate.templateOrException = template;
             cachedTemplate.lastModified = lastModified;
             storeCached(tk, cachedTemplate);
+            if (reload) {
+                generation.incrementAndGet();
+            }
             return template;
         } catch (RuntimeException e) {
             if (cachedTemplate != null) {
@@ -449,9 +628,7 @@ public class TemplateCache {
             }
             throw e;
         } catch (IOException e) {
-            if (!rethrown) {
-                storeNegativeLookup(tk, cachedTemplate, e);
-            }
+            storeNegativeLookup(tk, cachedTemplate, e);
             throw e;
         } finally {
             if (newLookupResult != null && newLookupResult.isPositive()) {
@@ -474,7 +651,7 @@ public class TemplateCache {
      * Creates an {@link IOException} that has a cause exception.
      */
     // [Java 6] Remove
-    private IOException newIOException(String message, Throwable cause) {
+    private static IOException newIOException(String message, Throwable cause) {
         if (cause == null) {
             return new IOException(message);
         }
@@ -503,13 +680,22 @@ public class TemplateCache {
 
     private void storeNegativeLookup(TemplateKey tk, 
             CachedTemplate cachedTemplate, Exception e) {
+        // Until this point the (cloned) entry still holds the earlier lookup result:
+        final boolean replacesTemplate = cachedTemplate.templateOrException instanceof Template;
         cachedTemplate.templateOrException = e;
         cachedTemplate.source = null;
         cachedTemplate.lastModified = 0L;
         storeCached(tk, cachedTemplate);
+        // Repeated negative lookups don't change the lookup result, so they needn't invalidate the callers' caches.
+        if (replacesTemplate) {
+            generation.incrementAndGet();
+        }
     }
 
     private void storeCached(TemplateKey tk, CachedTemplate cachedTemplate) {
+        if (updateInBackground) {
+            backgroundUpdatedKeys.put(tk, Boolean.TRUE);
+        }
         if (isStorageConcurrent) {
             storage.put(tk, cachedTemplate);
         } else {
@@ -520,7 +706,7 @@ public class TemplateCache {
     }
 
     private Template loadTemplate(
-            final TemplateLoader templateLoader, final Object source,
+            final TemplateLoader templateLoader, final Object source, final long lastModified,
             final String name, final String sourceName, Locale locale, final Object customLookupCondition,
             String initialEncoding, final boolean parseAsFTL) throws IOException {
         final TemplateConfiguration tc;
@@ -542,45 +728,29 @@ public class TemplateCache {
         Template template;
         {
             if (parseAsFTL) {
-                try {
-                    final Reader reader = templateLoader.getReader(source, initialEncoding);
-                    try {
-                        template = new Template(name, sourceName, reader, config, tc, initialEncoding);
-                    } finally {
-                        reader.close();
-                    }
-                } catch (Template.WrongEncodingException wee) {
-                    String actualEncoding = wee.getTemplateSpecifiedEncoding();
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Initial encoding \"" + initialEncoding + "\" was incorrect, re-reading with \""
-                                + actualEncoding + "\". Template: " + sourceName);
-                    }
-                    
-                    final Reader reader = templateLoader.getReader(source, actualEncoding);
-                    try {
-                        template = new Template(name, sourceName, reader, config, tc, actualEncoding);
-                    } finally {
-                        reader.close();
+                final PrecompiledTemplateStore precompiledTemplateStore = config != null
+                        ? this.precompiledTemplateStore : null;
+                if (precompiledTemplateStore == null) {
+                    template = parseTemplate(templateLoader, source, name, sourceName, initialEncoding, tc, null);
+                } else {
+                    final long sourceLength = getSourceLength(source);
+                    // Only when the last modification time and the length can't tell if the source has changed, we
+                    // have to read the content, so that the template store can compare its hash:
+                    final String sourceContent = lastModified == -1 || sourceLength == -1
+                            ? readSourceContent(templateLoader, source, initialEncoding) : null;
+                    template = precompiledTemplateStore.load(
+                            name, sourceName, initialEncoding, lastModified, sourceLength, sourceContent, config, tc);
+                    if (template == null) {
+                        template = parseTemplate(
+                                templateLoader, source, name, sourceName, initialEncoding, tc, sourceContent);
+                        precompiledTemplateStore.store(
+                                template, sourceName, initialEncoding, lastModified, sourceLength, sourceContent);
                     }
                 }
             } else {
-                // Read the contents into a StringWriter, then construct a single-text-block template from it.
-                final StringWriter sw = new StringWriter();
-                final char[] buf = new char[4096];
-                final Reader reader = templateLoader.getReader(source, initialEncoding);
-                try {
-                    fetchChars: while (true) {
-                        int charsRead = reader.read(buf);
-                        if (charsRead > 0) {
-                            sw.write(buf, 0, charsRead);
-                        } else if (charsRead < 0) {
-                            break fetchChars;
-                        }
-                    }
-                } finally {
-                    reader.close();
-                }
-                template = Template.getPlainTextTemplate(name, sourceName, sw.toString(), config);
+                // Read the contents into a String, then construct a single-text-block template from it.
+                template = Template.getPlainTextTemplate(
+                        name, sourceName, readSourceContent(templateLoader, source, initialEncoding), config);
                 template.setEncoding(initialEncoding);
             }
         }
@@ -594,6 +764,80 @@ public class TemplateCache {
         return template;
     }
 
+    /**
+     * @param sourceContent
+     *            The content of the template source read with the {@code initialEncoding}, or {@code null} if it
+     *            wasn't read yet.
+     */
+    private Template parseTemplate(
+            final TemplateLoader templateLoader, final Object source,
+            final String name, final String sourceName,
+            final String initialEncoding, final TemplateConfiguration tc, final String sourceContent)
+            throws IOException {
+        try {
+            final Reader reader = sourceContent != null
+                    ? new StringReader(sourceContent) : templateLoader.getReader(source, initialEncoding);
+            try {
+                return new Template(name, sourceName, reader, config, tc, initialEncoding);
+            } finally {
+                reader.close();
+            }
+        } catch (Template.WrongEncodingException wee) {
+            String actualEncoding = wee.getTemplateSpecifiedEncoding();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Initial encoding \"" + initialEncoding + "\" was incorrect, re-reading with \""
+                        + actualEncoding + "\". Template: " + sourceName);
+            }
+            
+            final Reader reader = templateLoader.getReader(source, actualEncoding);
+            try {
+                return new Template(name, sourceName, reader, config, tc, actualEncoding);
+            } finally {
+                reader.close();
+            }
+        }
+    }
+    
+    /**
+     * Returns the length of the template source in bytes, or -1 if it can't be told without reading the source.
+     */
+    private static long getSourceLength(Object source) {
+        if (source instanceof MultiTemplateLoader.MultiSource) {
+            source = ((MultiTemplateLoader.MultiSource) source).getWrappedSource();
+        }
+        if (source instanceof File) {
+            final long length;
+            try {
+                length = ((File) source).length();
+            } catch (SecurityException e) {
+                return -1;
+            }
+            // 0 is also returned on I/O errors
+            return length != 0 ? length : -1;
+        }
+        return -1;
+    }
+    
+    private String readSourceContent(final TemplateLoader templateLoader, final Object source, final String encoding)
+            throws IOException {
+        final StringWriter sw = new StringWriter();
+        final char[] buf = new char[4096];
+        final Reader reader = templateLoader.getReader(source, encoding);
+        try {
+            fetchChars: while (true) {
+                int charsRead = reader.read(buf);
+                if (charsRead > 0) {
+                    sw.write(buf, 0, charsRead);
+                } else if (charsRead < 0) {
+                    break fetchChars;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return sw.toString();
+    }
+
     /**
      * Gets the delay in milliseconds between checking for newer versions of a
      * template source.
@@ -608,13 +852,173 @@ public class TemplateCache {
 
     /**
      * Sets the delay in milliseconds between checking for newer versions of a
-     * template sources.
+     * template sources. If the {@link TemplateLoader} is a {@link ChangeNotifyingTemplateLoader} that currently
+     * reports all changes, this is ignored, and a template is only re-checked after a change was reported.
      * @param delay the new value of the delay
      */
     public void setDelay(long delay) {
         // synchronized was moved here so that we don't advertise that it's thread-safe, as it's not.
         synchronized (this) {
             this.updateDelay = delay;
+            if (backgroundUpdaterTimer != null) {
+                stopBackgroundUpdater();
+                startBackgroundUpdater();
+            }
+            generation.incrementAndGet();
+        }
+    }
+
+    /**
+     * Sets whether the stale templates in the cache are re-checked (and possibly reloaded) by a background thread,
+     * instead of by the thread that requests the template. When this is {@code true}, {@link #getTemplate(String,
+     * Locale, Object, String, boolean)} never does I/O for a template that's already in the cache (only for templates
+     * that aren't cached yet), and returns the cached template even if it's stale; the background thread wakes up
+     * in every {@link #getDelay()} milliseconds, and re-checks the templates whose delay has elapsed, all in one
+     * batch. Defaults to {@code false}.
+     * 
+     * <p>
+     * The background thread is a daemon thread, which is stopped when this is set back to {@code false}, or when this
+     * {@link TemplateCache} becomes unreachable. Enabling this setting empties the cache.
+     * 
+     * @since 2.3.26
+     */
+    public void setUpdateInBackground(boolean updateInBackground) {
+        // synchronized was moved here so that we don't advertise that it's thread-safe, as it's not.
+        synchronized (this) {
+            if (this.updateInBackground == updateInBackground) {
+                return;
+            }
+            this.updateInBackground = updateInBackground;
+            if (updateInBackground) {
+                // The entries that are already in the cache aren't known by the background updater.
+                clear();
+                startBackgroundUpdater();
+            } else {
+                stopBackgroundUpdater();
+                backgroundUpdatedKeys.clear();
+                generation.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Getter pair of {@link #setUpdateInBackground(boolean)}.
+     * 
+     * @since 2.3.26
+     */
+    public boolean getUpdateInBackground() {
+        // synchronized was moved here so that we don't advertise that it's thread-safe, as it's not.
+        synchronized (this) {
+            return updateInBackground;
+        }
+    }
+    
+    private void startBackgroundUpdater() {
+        final long period = Math.max(updateDelay, MIN_BACKGROUND_UPDATE_PERIOD_MILLIS);
+        backgroundUpdaterTimer = new Timer("FreeMarker background template updater", true);
+        backgroundUpdaterTimer.schedule(new BackgroundUpdaterTask(this, backgroundUpdaterTimer), period, period);
+    }
+
+    private void stopBackgroundUpdater() {
+        if (backgroundUpdaterTimer != null) {
+            backgroundUpdaterTimer.cancel();
+            backgroundUpdaterTimer = null;
+        }
+    }
+    
+    /**
+     * Re-checks the cached templates that has become stale; called periodically by the background thread if
+     * {@link #setUpdateInBackground(boolean)} was set to {@code true}.
+     */
+    private void updateStaleTemplates() {
+        final boolean debug = LOG.isDebugEnabled();
+        for (Iterator it = backgroundUpdatedKeys.keySet().iterator(); it.hasNext(); ) {
+            final TemplateKey tk = (TemplateKey) it.next();
+            
+            CachedTemplate cachedTemplate = getCachedTemplate(tk);
+            if (cachedTemplate == null) {
+                // Was evicted or removed. Re-check after removing the key, in case it was re-added concurrently.
+                it.remove();
+                cachedTemplate = getCachedTemplate(tk);
+                if (cachedTemplate == null) {
+                    continue;
+                }
+                backgroundUpdatedKeys.put(tk, Boolean.TRUE);
+            }
+            
+            final long now = System.currentTimeMillis();
+            if (isUpToDate(cachedTemplate, now)) {
+                continue;
+            }
+            
+            final PendingLoad pendingLoad = new PendingLoad();
+            if (pendingLoads.putIfAbsent(tk, pendingLoad) != null) {
+                // Already being loaded by a request thread
+                continue;
+            }
+            try {
+                final String debugName = debug
+                        ? buildDebugName(tk.name, tk.locale, tk.customLookupCondition, tk.encoding, tk.parse)
+                        : null;
+                pendingLoad.setResult(loadOrUpdateTemplate(tk, cachedTemplate, now, debug, debugName));
+            } catch (Throwable e) {
+                // The exception was already stored into the cache by loadOrUpdateTemplate (unless it's an Error)
+                pendingLoad.setResult(e);
+                if (debug) {
+                    LOG.debug("Background update of template " + StringUtil.jQuoteNoXSS(tk.name) + " has failed",
+                            e);
+                }
+            } finally {
+                pendingLoads.remove(tk, pendingLoad);
+            }
+        }
+    }
+
+    /**
+     * Sets whether, while a stale template is being re-checked (and possibly reloaded) by a thread, the other threads
+     * that request the same template should get the stale cached copy immediately, instead of waiting for the result
+     * of the re-check. Defaults to {@code false}. Regardless of this setting, only one thread loads or re-checks the
+     * same template at a time.
+     * 
+     * @since 2.3.26
+     */
+    public void setServeStaleWhileUpdating(boolean serveStaleWhileUpdating) {
+        // synchronized was moved here so that we don't advertise that it's thread-safe, as it's not.
+        synchronized (this) {
+            this.serveStaleWhileUpdating = serveStaleWhileUpdating;
+        }
+    }
+
+    /**
+     * Sets the {@link PrecompiledTemplateStore} from which the parse results of the templates are loaded, if they are
+     * up-to-date, instead of parsing the template sources, and into which the parse results are saved otherwise.
+     * {@code null} (the default) means that templates are always parsed. This is only used if the
+     * {@link Configuration} was set (see {@link #TemplateCache(TemplateLoader, CacheStorage, Configuration)}).
+     * 
+     * @since 2.3.26
+     */
+    public void setPrecompiledTemplateStore(PrecompiledTemplateStore precompiledTemplateStore) {
+        this.precompiledTemplateStore = precompiledTemplateStore;
+    }
+
+    /**
+     * Getter pair of {@link #setPrecompiledTemplateStore(PrecompiledTemplateStore)}.
+     * 
+     * @since 2.3.26
+     */
+    public PrecompiledTemplateStore getPrecompiledTemplateStore() {
+        return precompiledTemplateStore;
+    }
+
+    /**
+     * Getter pair of {@link #setServeStaleWhileUpdating(boolean)}.
+     * 
+     * @since 2.3.26
+     */
+    public boolean getServeStaleWhileUpdating() {
+        // synchronized was moved here so that we don't advertise that it's thread-safe, as it's not.
+        synchronized (this) {
+            return serveStaleWhileUpdating;
         }
     }
 
@@ -641,6 +1045,37 @@ public class TemplateCache {
         }
     }
 
+    /**
+     * Lists the names of the templates that the template loader can load and that match the given matcher, sorted
+     * alphabetically. The {@code templateSource} passed to the matcher is always {@code null}. This is mostly useful
+     * for warming up the cache; see
+     * {@link Configuration#warmUpTemplateCache(java.util.Collection, Locale, java.util.concurrent.ExecutorService)}.
+     * 
+     * @param matcher
+     *            If {@code null}, all templates are listed.
+     * 
+     * @throws UnsupportedOperationException
+     *             If the template loader isn't a {@link ListableTemplateLoader}.
+     * 
+     * @since 2.3.26
+     */
+    public List<String> listTemplateNames(TemplateSourceMatcher matcher) throws IOException {
+        if (!(templateLoader instanceof ListableTemplateLoader)) {
+            throw new UnsupportedOperationException(
+                    "The template loader must implement " + ListableTemplateLoader.class.getName()
+                    + " to list the templates, but it doesn't: " + StringUtil.tryToString(templateLoader));
+        }
+        
+        List<String> names = new ArrayList<String>();
+        for (String name : ((ListableTemplateLoader) templateLoader).listTemplateNames()) {
+            if (matcher == null || matcher.matches(name, null)) {
+                names.add(name);
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
     /**
      * Removes all entries from the cache, forcing reloading of templates
      * on subsequent {@link #getTemplate(String, Locale, String, boolean)}
@@ -651,10 +1086,12 @@ public class TemplateCache {
     public void clear() {
         synchronized (storage) {
             storage.clear();
+            backgroundUpdatedKeys.clear();
             if (templateLoader instanceof StatefulTemplateLoader) {
                 ((StatefulTemplateLoader) templateLoader).resetState();
             }
         }
+        generation.incrementAndGet();
     }
 
     /**
@@ -701,10 +1138,69 @@ public class TemplateCache {
                     storage.remove(tk);
                 }
             }
+            generation.incrementAndGet();
             LOG.debug(debugName + " was removed from the cache, if it was there");
         }
     }
 
+    /**
+     * Returns a number that changes (increases) whenever {@link #getTemplate(String, Locale, Object, String, boolean)}
+     * might start to return something else than earlier for the same arguments, not counting the changes that can
+     * only be discovered by re-checking a template after the {@link #getDelay() update delay}; see
+     * {@link #getLookupResultExpirationTime(String, Locale, Object, String, boolean)} for that. This allows the
+     * callers to cache the result of the lookup, like {@code #include} and {@code #import} do with literal template
+     * names. The generation is incremented after the change was already stored, so a lookup that was started after
+     * reading a given generation will see all changes that belong to that generation.
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Returns the time (as {@link System#currentTimeMillis()}) until which the result of a
+     * {@link #getTemplate(String, Locale, Object, String, boolean)} call that has just returned a template can be
+     * reused without calling it again with the same arguments, as far as {@link #getGeneration()} doesn't change
+     * meanwhile. That's when the cache entry becomes stale, that is, when the template source was last checked plus
+     * the {@link #getDelay() update delay}. (Counting from the lookup instead would let the caller use a template
+     * that was about to be re-checked for almost another update delay.) This is {@link Long#MAX_VALUE} if the
+     * templates are re-checked by the background thread, as then a lookup never triggers re-checking. It's 0 if
+     * there's no cache entry with a template for the arguments, like because it was already evicted.
+     */
+    long getLookupResultExpirationTime(
+            String name, Locale locale, Object customLookupCondition, String encoding, boolean parseAsFTL) {
+        if (updateInBackground) {
+            return Long.MAX_VALUE;
+        }
+        try {
+            name = templateNameFormat.normalizeAbsoluteName(name);
+        } catch (MalformedTemplateNameException e) {
+            return 0;
+        }
+        final CachedTemplate cachedTemplate = getCachedTemplate(
+                new TemplateKey(name, locale, customLookupCondition, encoding, parseAsFTL));
+        if (cachedTemplate == null || !(cachedTemplate.templateOrException instanceof Template)) {
+            return 0;
+        }
+        final long lastChecked = cachedTemplate.lastChecked;
+        final long updateDelay = this.updateDelay;
+        return updateDelay < Long.MAX_VALUE - lastChecked ? lastChecked + updateDelay : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the weight of a value that this class has stored into the {@link CacheStorage}; used by
+     * {@link TinyLfuCacheStorage}. For a cached {@link Template} it's the length of its source code, for anything else
+     * (like a cached negative lookup) it's 1.
+     */
+    static int getCachedTemplateWeight(Object value) {
+        if (value instanceof CachedTemplate) {
+            Object t = ((CachedTemplate) value).templateOrException;
+            if (t instanceof Template) {
+                return Math.max(1, _TemplateAPI.getSourceLength((Template) t));
+            }
+        }
+        return 1;
+    }
+
     private String buildDebugName(String name, Locale locale, Object customLookupCondition, String encoding,
             boolean parse) {
         return StringUtil.jQuoteNoXSS(name) + "("
@@ -888,6 +1384,7 @@ public class TemplateCache {
         Object source;
         long lastChecked;
         long lastModified;
+        long templateSourceChangeCount;
         
         public CachedTemplate cloneCachedTemplate() {
             try {
@@ -898,6 +1395,84 @@ public class TemplateCache {
         }
     }
     
+    /**
+     * Periodically calls {@link TemplateCache#updateStaleTemplates()}. It only weakly references the
+     * {@link TemplateCache}, so that the background thread doesn't prevent it from being garbage collected; the
+     * timer is cancelled when that happens.
+     */
+    private static final class BackgroundUpdaterTask extends TimerTask {
+        
+        private final WeakReference templateCacheRef;
+        private final Timer timer;
+        
+        BackgroundUpdaterTask(TemplateCache templateCache, Timer timer) {
+            templateCacheRef = new WeakReference(templateCache);
+            this.timer = timer;
+        }
+
+        @Override
+        public void run() {
+            TemplateCache templateCache = (TemplateCache) templateCacheRef.get();
+            if (templateCache == null) {
+                timer.cancel();
+                return;
+            }
+            try {
+                templateCache.updateStaleTemplates();
+            } catch (Throwable e) {
+                // An exception would kill the Timer thread
+                LOG.error("Unexpected error during background template update", e);
+            }
+        }
+        
+    }
+    
+    /**
+     * The result of a template loading or re-checking that's in progress, which other threads that need the same
+     * template can wait for.
+     */
+    private static final class PendingLoad {
+        
+        private final Thread thread = Thread.currentThread();
+        private final CountDownLatch done = new CountDownLatch(1);
+        /** {@link Template}, {@code null}, or a {@link Throwable}; like {@link CachedTemplate#templateOrException}. */
+        private Object templateOrException;
+
+        void setResult(Object templateOrException) {
+            if (done.getCount() == 0) {
+                return;
+            }
+            this.templateOrException = templateOrException;
+            done.countDown();
+        }
+
+        Template getResult() throws IOException {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        done.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            
+            Object t = templateOrException;
+            if (t instanceof Template || t == null) {
+                return (Template) t;
+            }
+            throw newIOException("There was an error loading the template in another thread; see cause exception.",
+                    (Throwable) t);
+        }
+        
+    }
+    
     private class TemplateCacheTemplateLookupContext extends TemplateLookupContext {
 
         TemplateCacheTemplateLookupContext(String templateName, Locale templateLocale, Object customLookupCondition) {
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.cache;
+
+/**
+ * Receives notifications from a {@link ChangeNotifyingTemplateLoader} when a template source has changed.
+ * 
+ * @since 2.3.26
+ */
+public interface TemplateSourceChangeListener {
+    
+    /**
+     * Called when a template source was created, modified or deleted. This is typically called from a background
+     * thread, so it should return quickly.
+     * 
+     * @param sourceName
+     *            The name of the changed template source, relatively to the root of the template loader, like
+     *            {@code "foo/bar_en.ftl"}; this is what {@link TemplateLoader#findTemplateSource(String)} would be
+     *            called with (note that because of localized lookup and acquisition, several template names can map
+     *            to the same source name). It can be {@code null}, which means that any template sources might have
+     *            changed (like when change events were lost).
+     */
+    void templateSourceChanged(String sourceName);
+    
+}
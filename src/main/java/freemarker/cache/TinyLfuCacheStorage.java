@@ -0,0 +1,563 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded, thread-safe cache storage that uses the W-TinyLFU admission and eviction policy. Unlike
+ * {@link MruCacheStorage}, this can be used by {@link TemplateCache} without any synchronization, and reading it
+ * never blocks: a {@link #get(Object)} is a {@link ConcurrentHashMap} lookup plus recording the access into a lossy,
+ * striped buffer. The recorded accesses are replayed into the eviction policy in batches, by whichever thread manages
+ * to acquire the eviction lock without waiting. Only {@link #put(Object, Object)}, {@link #remove(Object)} and
+ * {@link #clear()} may wait for that lock.
+ *
+ * <p>
+ * New entries first go into a small LRU "window" (about 1% of the maximum size). Entries that leave the window have to
+ * compete for a place in the main area (a segmented LRU with a probation and a protected part) against the entry that
+ * would be evicted from there; the one that was accessed more frequently recently, according to a compact
+ * count-min sketch, wins. Thus a burst of templates used only once (like when a crawler walks through rarely visited
+ * pages) can't flush out the templates that are used all the time, as it can happen with pure LRU caches.
+ *
+ * <p>
+ * The cache can be bounded by the number of entries, and optionally also by the total estimated weight of the
+ * entries. For the entries that {@link TemplateCache} stores, the weight is the length of the template source in
+ * characters, which is a cheap approximation of the memory used by the parsed template; see
+ * {@link #weigh(Object, Object)}. For other values the weight of each entry is 1.
+ *
+ * <p>
+ * This storage can also be chosen with the {@code cache_storage} setting; see
+ * {@link freemarker.core.Configurable#setSetting(String, String)}.
+ *
+ * @see freemarker.template.Configuration#setCacheStorage(CacheStorage)
+ *
+ * @since 2.3.26
+ */
+public class TinyLfuCacheStorage implements ConcurrentCacheStorage, CacheStorageWithGetSize {
+
+    /** The number of access records that triggers an attempt to drain the read buffers. */
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = 32;
+    private static final int READ_BUFFER_SIZE = 128;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    private static final int READ_BUFFER_STRIPES = ceilingPowerOfTwo(
+            Math.min(Runtime.getRuntime().availableProcessors(), 16));
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final int maxSize;
+    private final long maxWeight;
+    private final int windowMaxSize;
+    private final int protectedMaxSize;
+
+    private final ConcurrentHashMap<Object, Node> map;
+    private final ReadBuffer[] readBuffers;
+    private final AtomicLong missCount = new AtomicLong();
+
+    // The fields below are guarded by evictionLock:
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final Node[] queueHeads = new Node[] { new Node(), new Node(), new Node() };
+    private final int[] queueSizes = new int[3];
+    private volatile long weight;
+    private volatile long evictionCount;
+
+    /**
+     * Same as {@link #TinyLfuCacheStorage(int, long)} with {@link Long#MAX_VALUE} as {@code maxWeight}, that is, only
+     * the number of entries is bounded.
+     */
+    public TinyLfuCacheStorage(int maxSize) {
+        this(maxSize, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxSize
+     *            The maximum number of entries; at least 1.
+     * @param maxWeight
+     *            The maximum of the sum of the weights of the entries; at least 1. Use {@link Long#MAX_VALUE} if you
+     *            only want to limit the number of entries. See {@link #weigh(Object, Object)} for what the weight is.
+     */
+    public TinyLfuCacheStorage(int maxSize, long maxWeight) {
+        if (maxSize < 1) throw new IllegalArgumentException("maxSize < 1");
+        if (maxWeight < 1) throw new IllegalArgumentException("maxWeight < 1");
+        this.maxSize = maxSize;
+        this.maxWeight = maxWeight;
+        windowMaxSize = Math.max(1, maxSize / 100);
+        protectedMaxSize = (int) ((maxSize - windowMaxSize) * 8L / 10L);
+
+        map = new ConcurrentHashMap<Object, Node>(Math.min(maxSize, 1024));
+        sketch = new FrequencySketch(maxSize);
+        for (int i = 0; i < queueHeads.length; i++) {
+            queueHeads[i].makeHead();
+        }
+        readBuffers = new ReadBuffer[READ_BUFFER_STRIPES];
+        for (int i = 0; i < readBuffers.length; i++) {
+            readBuffers[i] = new ReadBuffer();
+        }
+    }
+
+    /**
+     * Always returns {@code true}.
+     */
+    public boolean isConcurrent() {
+        return true;
+    }
+
+    public Object get(Object key) {
+        Node node = map.get(key);
+        if (node == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        Object value = node.value;
+        recordRead(node);
+        return value;
+    }
+
+    public void put(Object key, Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value can't be null");
+        }
+        int nodeWeight = weigh(key, value);
+        if (nodeWeight < 0) {
+            throw new IllegalStateException("weigh(key, value) has returned negative number: " + nodeWeight);
+        }
+
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            Node node = map.get(key);
+            if (node != null && node.queue != -1) {
+                weight += nodeWeight - node.weight;
+                node.weight = nodeWeight;
+                node.value = value;
+                onAccess(node);
+            } else {
+                node = new Node(key, value, nodeWeight);
+                map.put(key, node);
+                weight += nodeWeight;
+                sketch.increment(key);
+                link(node, WINDOW);
+            }
+            if (nodeWeight > maxWeight) {
+                // Would flush out everything else, and still wouldn't fit.
+                evict(node);
+            }
+            evictEntries();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void remove(Object key) {
+        evictionLock.lock();
+        try {
+            Node node = map.remove(key);
+            if (node != null) {
+                unlinkRemoved(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void clear() {
+        evictionLock.lock();
+        try {
+            map.clear();
+            for (int i = 0; i < queueHeads.length; i++) {
+                for (Node node = queueHeads[i].next; node != queueHeads[i]; ) {
+                    Node next = node.next;
+                    node.queue = -1;
+                    node.prev = node.next = null;
+                    node = next;
+                }
+                queueHeads[i].makeHead();
+                queueSizes[i] = 0;
+            }
+            weight = 0;
+            for (int i = 0; i < readBuffers.length; i++) {
+                readBuffers[i].clear();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a close approximation of the number of cache entries.
+     */
+    public int getSize() {
+        return map.size();
+    }
+
+    /**
+     * Returns the maximum number of entries, as it was specified in the constructor.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the maximum total weight of the entries, as it was specified in the constructor
+     * ({@link Long#MAX_VALUE} if the weight isn't limited).
+     */
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Returns the current total weight of the entries; see {@link #weigh(Object, Object)}.
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Returns the number of {@link #get(Object)} calls that have found the entry since this object was created.
+     */
+    public long getHitCount() {
+        long sum = 0;
+        for (int i = 0; i < readBuffers.length; i++) {
+            sum += readBuffers[i].hitCount.get();
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the number of {@link #get(Object)} calls that haven't found the entry since this object was created.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of entries that were removed because the cache was full (as opposed to by
+     * {@link #remove(Object)} or {@link #clear()}) since this object was created.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the weight of the entry; used when the storage is bounded by weight too. It's called once when the
+     * entry is put into the cache. The default implementation returns the length of the template source for
+     * the {@link Template} entries that {@link TemplateCache} stores, and 1 for anything else. Can be overridden
+     * to provide a better estimate.
+     *
+     * @return A non-negative number.
+     */
+    protected int weigh(Object key, Object value) {
+        return TemplateCache.getCachedTemplateWeight(value);
+    }
+
+    @Override
+    public String toString() {
+        return "TinyLfuCacheStorage(size=" + getSize() + "/" + maxSize
+                + (maxWeight != Long.MAX_VALUE ? ", weight=" + weight + "/" + maxWeight : "")
+                + ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + evictionCount
+                + ")";
+    }
+
+    private void recordRead(Node node) {
+        ReadBuffer buffer = readBuffers[(int) Thread.currentThread().getId() & (readBuffers.length - 1)];
+        buffer.hitCount.incrementAndGet();
+        long pending = buffer.offer(node);
+        if (pending >= READ_BUFFER_DRAIN_THRESHOLD && evictionLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /** Must be called while holding {@link #evictionLock}. */
+    private void drainReadBuffers() {
+        for (int i = 0; i < readBuffers.length; i++) {
+            ReadBuffer buffer = readBuffers[i];
+            long writeCount = buffer.writeCount.get();
+            long readCount = buffer.readCount;
+            while (readCount < writeCount) {
+                Node node = buffer.nodes.getAndSet((int) readCount & READ_BUFFER_MASK, null);
+                if (node != null && node.queue != -1) {
+                    sketch.increment(node.key);
+                    onAccess(node);
+                }
+                readCount++;
+            }
+            buffer.readCount = readCount;
+        }
+    }
+
+    /** Must be called while holding {@link #evictionLock}. */
+    private void onAccess(Node node) {
+        if (node.queue == PROBATION) {
+            unlink(node);
+            link(node, PROTECTED);
+            // Demote the least recently used protected entries if the protected part got full:
+            while (queueSizes[PROTECTED] > protectedMaxSize) {
+                Node demoted = queueHeads[PROTECTED].next;
+                unlink(demoted);
+                link(demoted, PROBATION);
+            }
+        } else {
+            unlink(node);
+            link(node, node.queue);
+        }
+    }
+
+    /** Must be called while holding {@link #evictionLock}. */
+    private void evictEntries() {
+        // Entries that leave the window become the "candidates" at the end (MRU side) of the probation queue:
+        int candidates = 0;
+        while (queueSizes[WINDOW] > windowMaxSize) {
+            Node node = queueHeads[WINDOW].next;
+            unlink(node);
+            link(node, PROBATION);
+            candidates++;
+        }
+
+        while (map.size() > maxSize || weight > maxWeight) {
+            Node victim = firstNode(PROBATION);
+            if (victim == null) {
+                victim = firstNode(PROTECTED);
+                if (victim == null) {
+                    victim = firstNode(WINDOW);
+                    if (victim == null) {
+                        // Can only happen if the map was modified outside the lock, which we don't do.
+                        break;
+                    }
+                }
+            }
+            Node candidate = candidates > 0 ? queueHeads[PROBATION].prev : null;
+
+            Node evicted;
+            if (candidate == null || candidate == victim || candidate.queue != PROBATION) {
+                evicted = victim;
+            } else if (candidate.weight > maxWeight) {
+                evicted = candidate;
+            } else {
+                evicted = sketch.frequency(candidate.key) > sketch.frequency(victim.key) ? victim : candidate;
+            }
+            if (evicted == candidate) {
+                candidates--;
+            }
+
+            evict(evicted);
+        }
+    }
+
+    private Node firstNode(int queue) {
+        Node head = queueHeads[queue];
+        Node first = head.next;
+        return first != head ? first : null;
+    }
+
+    private void evict(Node node) {
+        if (map.remove(node.key, node)) {
+            evictionCount++;
+        }
+        unlinkRemoved(node);
+    }
+
+    private void unlinkRemoved(Node node) {
+        if (node.queue != -1) {
+            unlink(node);
+            node.queue = -1;
+            weight -= node.weight;
+        }
+    }
+
+    private void link(Node node, int queue) {
+        node.linkBefore(queueHeads[queue]);
+        node.queue = queue;
+        queueSizes[queue]++;
+    }
+
+    private void unlink(Node node) {
+        node.unlink();
+        queueSizes[node.queue]--;
+    }
+
+    private static int ceilingPowerOfTwo(int n) {
+        int result = 1;
+        while (result < n) {
+            result <<= 1;
+        }
+        return result;
+    }
+
+    private static final class Node {
+        final Object key;
+        volatile Object value;
+        // The fields below are guarded by the evictionLock:
+        int weight;
+        /** The queue the node is linked into, or -1 if it was removed from the cache. */
+        int queue;
+        Node prev;
+        Node next;
+
+        /** Used solely to construct the head elements */
+        Node() {
+            key = null;
+        }
+
+        Node(Object key, Object value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.queue = -1;
+        }
+
+        void makeHead() {
+            prev = next = this;
+        }
+
+        /** Links the node at the end of the list (the most recently used position). */
+        void linkBefore(Node head) {
+            prev = head.prev;
+            next = head;
+            prev.next = this;
+            head.prev = this;
+        }
+
+        void unlink() {
+            next.prev = prev;
+            prev.next = next;
+            prev = null;
+            next = null;
+        }
+    }
+
+    /**
+     * A lossy ring buffer of read accesses. Writers never wait; if the buffer is full, the access is simply not
+     * recorded, which only makes the eviction policy a bit less accurate.
+     */
+    private static final class ReadBuffer {
+        final AtomicReferenceArray<Node> nodes = new AtomicReferenceArray<Node>(READ_BUFFER_SIZE);
+        final AtomicLong writeCount = new AtomicLong();
+        final AtomicLong hitCount = new AtomicLong();
+        /** Guarded by the evictionLock */
+        volatile long readCount;
+
+        /**
+         * @return The number of records waiting to be drained.
+         */
+        long offer(Node node) {
+            long readCount = this.readCount;
+            long writeCount = this.writeCount.get();
+            if (writeCount - readCount >= READ_BUFFER_SIZE) {
+                return writeCount - readCount;
+            }
+            if (this.writeCount.compareAndSet(writeCount, writeCount + 1)) {
+                nodes.set((int) writeCount & READ_BUFFER_MASK, node);
+            }
+            return writeCount + 1 - readCount;
+        }
+
+        void clear() {
+            for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+                nodes.set(i, null);
+            }
+            readCount = writeCount.get();
+        }
+    }
+
+    /**
+     * Count-min sketch with 4 bit counters, used for estimating how often a key was accessed recently. The counters
+     * are halved periodically, so that old popularity fades away. Not thread-safe; guarded by the evictionLock.
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = new long[] {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int tableMask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maxSize) {
+            // Each long holds 16 counters; we want about 4 counters per entry.
+            int tableSize = ceilingPowerOfTwo(Math.max(Math.min(maxSize, 1 << 24) / 4, 8));
+            table = new long[tableSize];
+            tableMask = tableSize - 1;
+            sampleSize = Math.max(maxSize, 16) * 10;
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = indexOf(hash, i);
+                int offset = offsetOf(hash, i);
+                frequency = Math.min(frequency, (int) ((table[index] >>> offset) & 0xFL));
+            }
+            return frequency;
+        }
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = indexOf(hash, i);
+                int offset = offsetOf(hash, i);
+                long mask = 0xFL << offset;
+                if ((table[index] & mask) != mask) {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions /= 2;
+        }
+
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & tableMask;
+        }
+
+        /** The bit offset of the counter inside the long; there are 16 counters per long. */
+        private int offsetOf(int hash, int i) {
+            return (((hash >>> (i << 3)) & 3) + (i << 2)) << 2;
+        }
+
+        private static int spread(int h) {
+            h = ((h >>> 16) ^ h) * 0x45d9f3b;
+            h = ((h >>> 16) ^ h) * 0x45d9f3b;
+            return (h >>> 16) ^ h;
+        }
+    }
+
+}
@@ -19,6 +19,8 @@
 
 package freemarker.cache;
 
+import java.util.Locale;
+
 import freemarker.template.MalformedTemplateNameException;
 
 /**
@@ -41,5 +43,14 @@ public final class _CacheAPI {
             throws MalformedTemplateNameException {
         return templateNameFormat.normalizeAbsoluteName(name);
     }
+
+    public static long getGeneration(TemplateCache templateCache) {
+        return templateCache.getGeneration();
+    }
+
+    public static long getLookupResultExpirationTime(TemplateCache templateCache,
+            String name, Locale locale, Object customLookupCondition, String encoding, boolean parseAsFTL) {
+        return templateCache.getLookupResultExpirationTime(name, locale, customLookupCondition, encoding, parseAsFTL);
+    }
     
 }
@@ -46,6 +46,14 @@ public abstract class ArithmeticEngine {
      * converting everything to BigDecimal up front.
      */
     public static final ConservativeEngine CONSERVATIVE_ENGINE = new ConservativeEngine();
+    /**
+     * Arithmetic engine that gives the same results as {@link #BIGDECIMAL_ENGINE} for integer numbers, but calculates
+     * with {@code int} and {@code long} instead of {@link BigDecimal} where possible, and that uses {@code double}
+     * arithmetic when {@link Double}-s are involved. See {@link PrimitiveFastPathEngine} for details.
+     * 
+     * @since 2.3.26
+     */
+    public static final PrimitiveFastPathEngine PRIMITIVE_FAST_PATH_ENGINE = new PrimitiveFastPathEngine();
 
     public abstract int compareNumbers(Number first, Number second) throws TemplateException;
     public abstract Number add(Number first, Number second) throws TemplateException;
@@ -183,6 +191,250 @@ public abstract class ArithmeticEngine {
         }
     }
 
+    /**
+     * An arithmetic engine that avoids the conversion to {@link BigDecimal} (as {@link BigDecimalEngine} does) when
+     * both operands are of a type that can be handled with primitive arithmetic. The rules are:
+     * <ul>
+     * <li>If both operands are {@link Byte}, {@link Short}, {@link Integer} or {@link Long}, the operation is done
+     * with {@code int} or {@code long} arithmetic. If the result would overflow, it's widened from {@link Integer} to
+     * {@link Long}, or from {@link Long} to {@link BigInteger}. Hence the result is numerically the same as with
+     * {@link BigDecimalEngine}. If a division has a non-zero remainder, it's done by {@link BigDecimalEngine}.</li>
+     * <li>If an operand is a finite {@link Double}, and the other is a finite {@link Double}, or a {@link Byte},
+     * {@link Short} or {@link Integer}, the operation is done with {@code double} arithmetic, unless the result
+     * wouldn't be finite. Note that unlike with {@link BigDecimalEngine}, this can introduce the usual binary
+     * floating point rounding errors (like {@code 0.1 + 0.2} being {@code 0.30000000000000004}).</li>
+     * <li>In all other cases (like when {@link BigDecimal}, {@link BigInteger} or {@link Float} is involved) the
+     * operation is done by {@link BigDecimalEngine}.</li>
+     * </ul>
+     * 
+     * <p>{@link #toNumber(String)} (used for number literals too) returns {@link Integer} or {@link Long} for whole
+     * numbers when possible, while numbers with fraction digits are kept as {@link BigDecimal}, so with literals like
+     * {@code 0.1} the calculation remains exact.
+     * 
+     * @since 2.3.26
+     */
+    public static class PrimitiveFastPathEngine extends BigDecimalEngine {
+        private static final int OTHER = 0;
+        private static final int INTEGER = 1;
+        private static final int LONG = 2;
+        private static final int DOUBLE = 3;
+        
+        @Override
+        public int compareNumbers(Number first, Number second) {
+            switch (getCommonType(first, second)) {
+                case INTEGER: {
+                    int n1 = first.intValue();
+                    int n2 = second.intValue();
+                    return n1 < n2 ? -1 : (n1 == n2 ? 0 : 1);
+                }
+                case LONG: {
+                    long n1 = first.longValue();
+                    long n2 = second.longValue();
+                    return n1 < n2 ? -1 : (n1 == n2 ? 0 : 1);
+                }
+                case DOUBLE: {
+                    double n1 = first.doubleValue();
+                    double n2 = second.doubleValue();
+                    // Finite values only, so -0.0 == 0.0 is what we want here:
+                    return n1 < n2 ? -1 : (n1 == n2 ? 0 : 1);
+                }
+                default:
+                    return super.compareNumbers(first, second);
+            }
+        }
+        
+        @Override
+        public Number add(Number first, Number second) {
+            switch (getCommonType(first, second)) {
+                case INTEGER: {
+                    int n1 = first.intValue();
+                    int n2 = second.intValue();
+                    int n = n1 + n2;
+                    return
+                        ((n ^ n1) < 0 && (n ^ n2) < 0) // overflow check
+                        ? (Number) Long.valueOf(((long) n1) + n2)
+                        : (Number) Integer.valueOf(n);
+                }
+                case LONG: {
+                    long n1 = first.longValue();
+                    long n2 = second.longValue();
+                    long n = n1 + n2;
+                    return
+                        ((n ^ n1) < 0 && (n ^ n2) < 0) // overflow check
+                        ? (Number) BigInteger.valueOf(n1).add(BigInteger.valueOf(n2))
+                        : (Number) Long.valueOf(n);
+                }
+                case DOUBLE: {
+                    double n = first.doubleValue() + second.doubleValue();
+                    if (isFinite(n)) {
+                        return Double.valueOf(n);
+                    }
+                    break;
+                }
+            }
+            return super.add(first, second);
+        }
+        
+        @Override
+        public Number subtract(Number first, Number second) {
+            switch (getCommonType(first, second)) {
+                case INTEGER: {
+                    int n1 = first.intValue();
+                    int n2 = second.intValue();
+                    int n = n1 - n2;
+                    return
+                        ((n ^ n1) < 0 && (n ^ ~n2) < 0) // overflow check
+                        ? (Number) Long.valueOf(((long) n1) - n2)
+                        : (Number) Integer.valueOf(n);
+                }
+                case LONG: {
+                    long n1 = first.longValue();
+                    long n2 = second.longValue();
+                    long n = n1 - n2;
+                    return
+                        ((n ^ n1) < 0 && (n ^ ~n2) < 0) // overflow check
+                        ? (Number) BigInteger.valueOf(n1).subtract(BigInteger.valueOf(n2))
+                        : (Number) Long.valueOf(n);
+                }
+                case DOUBLE: {
+                    double n = first.doubleValue() - second.doubleValue();
+                    if (isFinite(n)) {
+                        return Double.valueOf(n);
+                    }
+                    break;
+                }
+            }
+            return super.subtract(first, second);
+        }
+        
+        @Override
+        public Number multiply(Number first, Number second) {
+            switch (getCommonType(first, second)) {
+                case INTEGER: {
+                    long n = ((long) first.intValue()) * second.intValue();
+                    return n == (int) n ? (Number) Integer.valueOf((int) n) : (Number) Long.valueOf(n);
+                }
+                case LONG: {
+                    long n1 = first.longValue();
+                    long n2 = second.longValue();
+                    long n = n1 * n2;
+                    return
+                        n1 == 0L || (n / n1 == n2 && !(n1 == -1L && n2 == Long.MIN_VALUE)) // overflow check
+                        ? (Number) Long.valueOf(n)
+                        : (Number) BigInteger.valueOf(n1).multiply(BigInteger.valueOf(n2));
+                }
+                case DOUBLE: {
+                    double n = first.doubleValue() * second.doubleValue();
+                    if (isFinite(n)) {
+                        return Double.valueOf(n);
+                    }
+                    break;
+                }
+            }
+            return super.multiply(first, second);
+        }
+        
+        @Override
+        public Number divide(Number first, Number second) {
+            switch (getCommonType(first, second)) {
+                case INTEGER: {
+                    int n1 = first.intValue();
+                    int n2 = second.intValue();
+                    if (n2 != 0 && n1 % n2 == 0) {
+                        long n = ((long) n1) / n2; // long, because of MIN_VALUE / -1
+                        return n == (int) n ? (Number) Integer.valueOf((int) n) : (Number) Long.valueOf(n);
+                    }
+                    break;
+                }
+                case LONG: {
+                    long n1 = first.longValue();
+                    long n2 = second.longValue();
+                    if (n2 != 0L && n1 % n2 == 0L && !(n1 == Long.MIN_VALUE && n2 == -1L)) {
+                        return Long.valueOf(n1 / n2);
+                    }
+                    break;
+                }
+                case DOUBLE: {
+                    double n2 = second.doubleValue();
+                    if (n2 != 0.0) {
+                        double n = first.doubleValue() / n2;
+                        if (isFinite(n)) {
+                            return Double.valueOf(n);
+                        }
+                    }
+                    break;
+                }
+            }
+            return super.divide(first, second);
+        }
+        
+        @Override
+        public Number modulus(Number first, Number second) {
+            // BigDecimalEngine calculates the modulus on longs anyway; we just keep int results as Integer-s.
+            if (getCommonType(first, second) == INTEGER) {
+                int n2 = second.intValue();
+                if (n2 != 0) {
+                    return Integer.valueOf(first.intValue() % n2);
+                }
+            }
+            return super.modulus(first, second);
+        }
+        
+        @Override
+        public Number toNumber(String s) {
+            Number n = super.toNumber(s);
+            if (n instanceof BigDecimal) {
+                BigDecimal bd = (BigDecimal) n;
+                if (bd.scale() <= 0) {
+                    BigInteger bi = bd.toBigInteger();
+                    int bitLength = bi.bitLength();
+                    if (bitLength < 32) {
+                        return Integer.valueOf(bi.intValue());
+                    } else if (bitLength < 64) {
+                        return Long.valueOf(bi.longValue());
+                    }
+                }
+            }
+            return n;
+        }
+        
+        private static int getCommonType(Number first, Number second) {
+            int t1 = getType(first);
+            if (t1 == OTHER) {
+                return OTHER;
+            }
+            int t2 = getType(second);
+            if (t2 == OTHER) {
+                return OTHER;
+            }
+            if (t1 == DOUBLE || t2 == DOUBLE) {
+                // long to double conversion can lose precision
+                return t1 == LONG || t2 == LONG ? OTHER : DOUBLE;
+            }
+            return t1 > t2 ? t1 : t2;
+        }
+        
+        private static int getType(Number num) {
+            // Only exact class matches, as subclasses of Number can have any semantics
+            Class<?> cl = num.getClass();
+            if (cl == Integer.class || cl == Short.class || cl == Byte.class) {
+                return INTEGER;
+            } else if (cl == Long.class) {
+                return LONG;
+            } else if (cl == Double.class) {
+                // Non-finite values are left to BigDecimalEngine, so that they are treated the same way.
+                return isFinite(num.doubleValue()) ? DOUBLE : OTHER;
+            } else {
+                return OTHER;
+            }
+        }
+        
+        private static boolean isFinite(double n) {
+            return !Double.isNaN(n) && !Double.isInfinite(n);
+        }
+        
+    }
+
     /**
      * An arithmetic engine that conservatively widens the operation arguments
      * to extent that they can hold the result of the operation. Widening 
@@ -42,6 +42,9 @@ final class Assignment extends TemplateElement {
     private final int operatorType;
     private final Expression valueExp;
     private Expression namespaceExp;
+    /** See {@link #setLocalVarSlot(Macro, int)}. */
+    private Macro localVarMacro;
+    private int localVarSlot = -1;
 
     static final int NAMESPACE = 1;
     static final int LOCAL = 2;
@@ -95,6 +98,23 @@ final class Assignment extends TemplateElement {
         this.valueExp = valueExp;
     }
     
+    int getScope() {
+        return scope;
+    }
+    
+    String getVariableName() {
+        return variableName;
+    }
+    
+    /**
+     * Used by {@link LocalVariableSlotResolver} for {@code #local}-s, so that when we are in a call of the given
+     * macro, the variable can be set without looking it up by name.
+     */
+    void setLocalVarSlot(Macro macro, int slot) {
+        this.localVarMacro = macro;
+        this.localVarSlot = slot;
+    }
+    
     void setNamespaceExp(Expression namespaceExp) {
         if (scope != NAMESPACE && namespaceExp != null) throw new BugException();
         this.namespaceExp =  namespaceExp;
@@ -189,7 +209,13 @@ final class Assignment extends TemplateElement {
         }
         
         if (namespace == null) {
-            env.setLocalVariable(variableName, value);
+            Macro.Context macroCtx;
+            if (localVarSlot != -1 && (macroCtx = env.getCurrentMacroContext()) != null
+                    && macroCtx.getMacro() == localVarMacro) {
+                macroCtx.setLocalVar(localVarSlot, value);
+            } else {
+                env.setLocalVariable(variableName, value);
+            }
         } else {
             namespace.put(variableName, value);
         }
@@ -146,6 +146,14 @@ final class BlockAssignment extends TemplateElement {
         return sb.toString();
     }
     
+    int getScope() {
+        return scope;
+    }
+    
+    String getVariableName() {
+        return varName;
+    }
+
     @Override
     String getNodeTypeSymbol() {
         return Assignment.getDirectiveName(scope);
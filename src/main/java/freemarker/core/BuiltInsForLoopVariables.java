@@ -57,14 +57,16 @@ class BuiltInsForLoopVariables {
             return calculateBooleanResult(iterCtx, env) ? TemplateBooleanModel.TRUE : TemplateBooleanModel.FALSE;
         }
 
-        protected abstract boolean calculateBooleanResult(IterationContext iterCtx, Environment env);
+        protected abstract boolean calculateBooleanResult(IterationContext iterCtx, Environment env)
+                throws TemplateException;
         
     }
     
     static class has_nextBI extends BooleanBuiltInForLoopVariable {
 
         @Override
-        protected boolean calculateBooleanResult(IterationContext iterCtx, Environment env) {
+        protected boolean calculateBooleanResult(IterationContext iterCtx, Environment env)
+                throws TemplateException {
             return iterCtx.hasNext();
         }
 
@@ -73,7 +75,8 @@ class BuiltInsForLoopVariables {
     static class is_lastBI extends BooleanBuiltInForLoopVariable {
 
         @Override
-        protected boolean calculateBooleanResult(IterationContext iterCtx, Environment env) {
+        protected boolean calculateBooleanResult(IterationContext iterCtx, Environment env)
+                throws TemplateException {
             return !iterCtx.hasNext();
         }
         
@@ -21,11 +21,13 @@ package freemarker.core;
 
 import java.io.StringReader;
 
+import freemarker.cache.TinyLfuCacheStorage;
 import freemarker.template.SimpleNumber;
 import freemarker.template.Template;
 import freemarker.template.TemplateBooleanModel;
 import freemarker.template.TemplateException;
 import freemarker.template.TemplateModel;
+import freemarker.template._TemplateAPI;
 
 class BuiltInsForStringsMisc {
 
@@ -59,7 +61,29 @@ class BuiltInsForStringsMisc {
         TemplateModel calculateResult(String s, Environment env) throws TemplateException {
             Template parentTemplate = getTemplate();
             
-            Expression exp = null;
+            TinyLfuCacheStorage cache = _TemplateAPI.getRuntimeParseCache(parentTemplate.getConfiguration());
+            RuntimeParseCacheKey cacheKey = cache != null ? new RuntimeParseCacheKey(this, null, null, null, s) : null;
+            Expression exp = cache != null ? (Expression) cache.get(cacheKey) : null;
+            if (exp == null) {
+                exp = parse(s, parentTemplate, env);
+                if (cache != null) {
+                    cache.put(cacheKey, exp);
+                }
+            }
+            
+            try {
+                return exp.eval(env);
+            } catch (TemplateException e) {
+                throw new _MiscTemplateException(this, env,
+                        "Failed to \"?", key, "\" string with this error:\n\n",
+                        MessageUtil.EMBEDDED_MESSAGE_BEGIN,
+                        new _DelayedGetMessageWithoutStackTop(e),
+                        MessageUtil.EMBEDDED_MESSAGE_END,
+                        "\n\nThe failing expression:");
+            }
+        }
+
+        private Expression parse(String s, Template parentTemplate, Environment env) throws TemplateException {
             try {
                 try {
                     ParserConfiguration pCfg = parentTemplate.getParserConfiguration();
@@ -82,7 +106,7 @@ class BuiltInsForStringsMisc {
                     FMParser parser = new FMParser(
                             parentTemplate, false, tkMan, pCfg);
                     
-                    exp = parser.Expression();
+                    return parser.Expression();
                 } catch (TokenMgrError e) {
                     throw e.toParseException(parentTemplate);
                 }
@@ -94,16 +118,6 @@ class BuiltInsForStringsMisc {
                         MessageUtil.EMBEDDED_MESSAGE_END,
                         "\n\nThe failing expression:");
             }
-            try {
-                return exp.eval(env);
-            } catch (TemplateException e) {
-                throw new _MiscTemplateException(this, env,
-                        "Failed to \"?", key, "\" string with this error:\n\n",
-                        MessageUtil.EMBEDDED_MESSAGE_BEGIN,
-                        new _DelayedGetMessageWithoutStackTop(e),
-                        MessageUtil.EMBEDDED_MESSAGE_END,
-                        "\n\nThe failing expression:");
-            }
         }
         
     }
@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import freemarker.cache.TemplateCache;
+import freemarker.cache._CacheAPI;
+import freemarker.template.Configuration;
+import freemarker.template.MalformedTemplateNameException;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateScalarModel;
+import freemarker.template._TemplateAPI;
+
+/**
+ * Caches the {@link Template} that an {@code #include} or {@code #import} call with a literal template name has
+ * resolved to, so when the same call is executed again (like inside {@code #list}), it needn't go through
+ * {@link Configuration#getTemplate(String, Locale, Object, String, boolean, boolean)}, which normalizes the name,
+ * creates a lookup key, and queries the possibly synchronized cache storage. A cached {@link Template} is reused if
+ * the lookup parameters that depend on the {@link Environment} (like the locale) are the same, the
+ * {@link TemplateCache} of the {@link Configuration} is still the same object, its
+ * {@linkplain _CacheAPI#getGeneration(TemplateCache) generation} hasn't changed since the lookup, and the
+ * {@link TemplateCache} wouldn't re-check the template yet (see
+ * {@link _CacheAPI#getLookupResultExpirationTime(TemplateCache, String, Locale, Object, String, boolean)}).
+ * 
+ * <p>
+ * Only a few entries are kept, as the same call is rarely executed with many different lookup parameters (typically
+ * only the locale can vary). Missing templates aren't cached.
+ * 
+ * <p>
+ * As this is a runtime cache, not part of the parse result, the AST nodes must store it in a {@code transient}
+ * field, and create it on their first execution.
+ */
+final class CallSiteTemplateCache {
+    
+    private static final int MAX_ENTRIES = 4;
+    
+    /**
+     * Returned by {@link #create(Expression)} if the template name isn't a literal, so the AST node can remember that.
+     */
+    static final CallSiteTemplateCache NOT_APPLICABLE = new CallSiteTemplateCache(null);
+    
+    /** The template name as it was written in the template; not yet resolved relatively to the caller template. */
+    private final String templateName;
+    
+    /** Treated as immutable; it's replaced when it has to be changed. */
+    private volatile Entry[] entries = new Entry[0];
+
+    private CallSiteTemplateCache(String templateName) {
+        this.templateName = templateName;
+    }
+    
+    /**
+     * Returns a new instance if the template name expression is a string literal, otherwise {@link #NOT_APPLICABLE}.
+     */
+    static CallSiteTemplateCache create(Expression templateNameExp) {
+        if (!templateNameExp.isLiteral()) {
+            return NOT_APPLICABLE;
+        }
+        final TemplateModel tm;
+        try {
+            tm = templateNameExp.eval(null);
+        } catch (TemplateException e) {
+            // evaluation of literals must not throw a TemplateException
+            throw new BugException(e);
+        }
+        if (!(tm instanceof TemplateScalarModel)) {
+            return NOT_APPLICABLE;
+        }
+        try {
+            return new CallSiteTemplateCache(((TemplateScalarModel) tm).getAsString());
+        } catch (TemplateModelException e) {
+            throw new BugException(e);
+        }
+    }
+
+    /**
+     * Returns the same as {@link Environment#getTemplateForInclusion(String, String, boolean, boolean)}, except that
+     * it resolves the template name relatively to the caller template, and that it might return a cached result.
+     * 
+     * @param callerTemplate
+     *            The template that contains the {@code #include} or {@code #import} call.
+     * @param encoding
+     *            {@code null} if the caller hasn't specified it.
+     */
+    Template getTemplate(
+            Environment env, Template callerTemplate, String encoding, boolean parseAsFTL, boolean ignoreMissing)
+            throws MalformedTemplateNameException, IOException {
+        final TemplateCache templateCache = _TemplateAPI.getTemplateCache(env.getConfiguration());
+        final long generation = _CacheAPI.getGeneration(templateCache);
+        final Locale locale = env.getLocale();
+        final Object customLookupCondition = env.getIncludedTemplateCustomLookupCondition();
+        final String effectiveEncoding = encoding != null ? encoding : env.getIncludedTemplateEncoding();
+        final boolean classicCompatible = env.isClassicCompatible();
+        
+        long now = 0; // 0 means that it wasn't queried yet
+        for (Entry entry : entries) {
+            if (entry.templateCache == templateCache && entry.generation == generation
+                    && entry.matches(locale, customLookupCondition, effectiveEncoding, parseAsFTL, classicCompatible)) {
+                if (entry.expiresAt == Long.MAX_VALUE) {
+                    return entry.template;
+                }
+                if (now == 0) {
+                    now = System.currentTimeMillis();
+                }
+                if (now < entry.expiresAt) {
+                    return entry.template;
+                }
+            }
+        }
+        
+        final String fullTemplateName = env.toFullTemplateName(callerTemplate.getName(), templateName);
+        final Template template = env.getTemplateForInclusion(
+                fullTemplateName, effectiveEncoding, parseAsFTL, ignoreMissing);
+        if (template != null) {
+            // If the cache entry was replaced since our lookup, the generation has changed, so our entry will be
+            // ignored. If it was only re-checked, the later expiration time still applies to our template.
+            final long expiresAt = _CacheAPI.getLookupResultExpirationTime(
+                    templateCache, fullTemplateName, locale, customLookupCondition, effectiveEncoding, parseAsFTL);
+            if (expiresAt == Long.MAX_VALUE || expiresAt > System.currentTimeMillis()) {
+                addEntry(new Entry(
+                        templateCache, generation, expiresAt,
+                        locale, customLookupCondition, effectiveEncoding, parseAsFTL, classicCompatible,
+                        template));
+            }
+        }
+        return template;
+    }
+
+    /**
+     * Adds the entry, while also dropping the entries that can't be used anymore, or that have the same key. If
+     * there are too many entries, the oldest is dropped. Concurrent calls can lose each other's entries, but that only
+     * means that the template will be looked up again next time.
+     */
+    private void addEntry(Entry newEntry) {
+        List<Entry> newEntries = new ArrayList<Entry>(MAX_ENTRIES);
+        for (Entry entry : entries) {
+            if (entry.templateCache == newEntry.templateCache && entry.generation == newEntry.generation
+                    && !entry.matches(newEntry.locale, newEntry.customLookupCondition, newEntry.encoding,
+                            newEntry.parseAsFTL, newEntry.classicCompatible)) {
+                newEntries.add(entry);
+            }
+        }
+        if (newEntries.size() >= MAX_ENTRIES) {
+            newEntries.remove(0);
+        }
+        newEntries.add(newEntry);
+        entries = newEntries.toArray(new Entry[newEntries.size()]);
+    }
+    
+    private static final class Entry {
+        private final TemplateCache templateCache;
+        private final long generation;
+        private final long expiresAt;
+        
+        private final Locale locale;
+        private final Object customLookupCondition;
+        private final String encoding;
+        private final boolean parseAsFTL;
+        private final boolean classicCompatible;
+        
+        private final Template template;
+
+        Entry(TemplateCache templateCache, long generation, long expiresAt,
+                Locale locale, Object customLookupCondition, String encoding, boolean parseAsFTL,
+                boolean classicCompatible,
+                Template template) {
+            this.templateCache = templateCache;
+            this.generation = generation;
+            this.expiresAt = expiresAt;
+            this.locale = locale;
+            this.customLookupCondition = customLookupCondition;
+            this.encoding = encoding;
+            this.parseAsFTL = parseAsFTL;
+            this.classicCompatible = classicCompatible;
+            this.template = template;
+        }
+        
+        boolean matches(Locale locale, Object customLookupCondition, String encoding, boolean parseAsFTL,
+                boolean classicCompatible) {
+            return parseAsFTL == this.parseAsFTL && classicCompatible == this.classicCompatible
+                    && locale.equals(this.locale)
+                    && (encoding == null ? this.encoding == null : encoding.equals(this.encoding))
+                    && (customLookupCondition == null
+                            ? this.customLookupCondition == null
+                            : customLookupCondition.equals(this.customLookupCondition));
+        }
+    }
+    
+}
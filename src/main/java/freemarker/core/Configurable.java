@@ -2027,7 +2027,8 @@ public class Configurable {
      *       expression</a>.
      *       If the value does not contain dot,
      *       then it must be one of these special values (case insensitive):
-     *       {@code "bigdecimal"}, {@code "conservative"}.
+     *       {@code "bigdecimal"}, {@code "conservative"}, {@code "primitive_fast_path"} (since 2.3.26, means
+     *       {@link ArithmeticEngine#PRIMITIVE_FAST_PATH_ENGINE}).
      *       
      *   <li><p>{@code "object_wrapper"}:
      *       See {@link #setObjectWrapper(ObjectWrapper)}.
@@ -2195,12 +2196,22 @@ public class Configurable {
      *       <a href="#fm_obe">object builder expression</a> that gives an {@link OutputFormat}, for example
      *       {@code HTMLOutputFormat} or {@code XMLOutputFormat}.
      *       
+     *   <li><p>{@code "processing_instrumentation"}:
+     *       See {@link Configuration#setProcessingInstrumentation(ProcessingInstrumentation)}.
+     *       <br>String value: an <a href="#fm_obe">object builder expression</a> that gives a
+     *       {@link ProcessingInstrumentation}, or {@code null}.
+     *       Example: {@code ProcessingStatistics()}
+     *       
      *   <li><p>{@code "registered_custom_output_formats"}:
      *       See {@link Configuration#setRegisteredCustomOutputFormats(Collection)}.
      *       <br>String value: an <a href="#fm_obe">object builder expression</a> that gives a {@link List} of
      *       {@link OutputFormat}-s.
      *       Example: {@code [com.example.MyOutputFormat(), com.example.MyOtherOutputFormat()]}
      *       
+     *   <li><p>{@code "runtime_parse_cache_size"}:
+     *       See {@link Configuration#setRuntimeParseCacheSize(int)}.
+     *       <br>String value: A non-negative integer.
+     *       
      *   <li><p>{@code "strict_syntax"}:
      *       See {@link Configuration#setStrictSyntaxMode}. Deprecated.
      *       <br>String value: {@code "true"}, {@code "false"}, {@code yes}, etc.
@@ -2231,6 +2242,16 @@ public class Configurable {
      *       <p>The value is not case sensitive. The order of <tt>soft</tt> and <tt>strong</tt>
      *       entries is not significant.
      *       
+     *       <p>If the value contains a {@code concurrent} entry, then a {@link freemarker.cache.TinyLfuCacheStorage}
+     *       will be used instead, with the maximum number of entries specified by that, and optionally with the
+     *       maximum total weight (estimated size) of the entries specified with a {@code weight} entry. This can't be
+     *       combined with {@code soft} and {@code strong}. Examples: {@code "concurrent:1000"},
+     *       {@code "concurrent:1000, weight:20000000"}. (Since 2.3.26)
+     *       
+     *   <li><p>{@code "template_source_retention"}:
+     *       See {@link Configuration#setTemplateSourceRetention(int)}.
+     *       <br>String value: {@code "full"}, {@code "compressed"}, {@code "none"}.
+     *       
      *   <li><p>{@code "template_update_delay"}:
      *       Template update delay in <b>seconds</b> (not in milliseconds) if no unit is specified; see
      *       {@link Configuration#setTemplateUpdateDelayMilliseconds(long)} for more.
@@ -2239,6 +2260,14 @@ public class Configurable {
      *       Supported units are: "s" (seconds), "ms" (milliseconds), "m" (minutes), "h" (hours). The whitespace between
      *       the unit and the number is optional. Units are only supported since 2.3.23.
      *       
+     *   <li><p>{@code "template_update_in_background"}:
+     *       See {@link Configuration#setTemplateUpdateInBackground(boolean)}.
+     *       <br>String value: {@code "true"}, {@code "false"}, {@code yes}, etc.
+     *       
+     *   <li><p>{@code "template_update_serves_stale"}:
+     *       See {@link Configuration#setTemplateUpdateServesStale(boolean)}.
+     *       <br>String value: {@code "true"}, {@code "false"}, {@code yes}, etc.
+     *       
      *   <li><p>{@code "tag_syntax"}:
      *       See {@link Configuration#setTagSyntax(int)}.
      *       <br>String value: Must be one of
@@ -2456,6 +2485,8 @@ public class Configurable {
                         setArithmeticEngine(ArithmeticEngine.BIGDECIMAL_ENGINE);
                     } else if ("conservative".equalsIgnoreCase(value)) {
                         setArithmeticEngine(ArithmeticEngine.CONSERVATIVE_ENGINE);
+                    } else if ("primitive_fast_path".equalsIgnoreCase(value) || "primitiveFastPath".equals(value)) {
+                        setArithmeticEngine(ArithmeticEngine.PRIMITIVE_FAST_PATH_ENGINE);
                     } else {
                         throw invalidSettingValueException(name, value);
                     }
@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import freemarker.template.Template;
+import freemarker.template.utility.NullArgumentException;
+
+/**
+ * A {@link Writer} that encodes the characters written into it with a fixed {@link Charset}, and writes the
+ * resulting bytes into an {@link OutputStream}. It's similar to {@link java.io.OutputStreamWriter} (with its own
+ * buffering), but when the template output is written into this, the static text parts of the templates are written
+ * as bytes that were encoded only once, and then cached in the template. The dynamic parts are encoded with a
+ * {@link CharsetEncoder} that's reused during the whole output.
+ * 
+ * <p>The static text will be cached in encoded form only for charsets where that's known to be safe: UTF-8,
+ * US-ASCII, ISO-8859-* and windows-125*. With other charsets this class works like an ordinary buffered
+ * {@link java.io.OutputStreamWriter}.
+ * 
+ * <p>Unmappable characters are replaced with the replacement bytes of the charset (usually {@code "?"}), just like
+ * {@link java.io.OutputStreamWriter} does.
+ * 
+ * <p>This class is not thread-safe.
+ * 
+ * @see Template#process(Object, OutputStream, Charset)
+ * 
+ * @since 2.3.26
+ */
+public final class EncodingWriter extends Writer {
+    
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    
+    private final OutputStream out;
+    private final Charset charset;
+    private final CharsetEncoder encoder;
+    private final boolean preEncodingAllowed;
+    private final CharBuffer charBuffer;
+    private final ByteBuffer byteBuffer;
+
+    /**
+     * @param out The {@link OutputStream} to write the encoded output into. Can't be {@code null}.
+     * @param charset The charset of the output. Can't be {@code null}.
+     */
+    public EncodingWriter(OutputStream out, Charset charset) {
+        this(out, charset, DEFAULT_BUFFER_SIZE);
+    }
+    
+    /**
+     * @param bufferSize The size of the character buffer, and of the byte buffer, in number of elements.
+     */
+    public EncodingWriter(OutputStream out, Charset charset, int bufferSize) {
+        NullArgumentException.check("out", out);
+        NullArgumentException.check("charset", charset);
+        if (bufferSize < 16) {
+            throw new IllegalArgumentException("bufferSize must be at least 16, but was " + bufferSize);
+        }
+        this.out = out;
+        this.charset = charset;
+        encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        preEncodingAllowed = isStatelessCharset(charset);
+        charBuffer = CharBuffer.allocate(bufferSize);
+        byteBuffer = ByteBuffer.allocate(Math.max(bufferSize, (int) Math.ceil(encoder.maxBytesPerChar()) * 4));
+    }
+    
+    /**
+     * Tells if the encoding of a text gives the same bytes regardless of what was encoded before it.
+     */
+    private static boolean isStatelessCharset(Charset charset) {
+        String name = charset.name();
+        return name.equals("UTF-8") || name.equals("US-ASCII")
+                || name.startsWith("ISO-8859-") || name.startsWith("windows-125");
+    }
+
+    /**
+     * The charset used for encoding the output.
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+    
+    /**
+     * Tells if text that was encoded independently of the rest of the output can be written with
+     * {@link #writeEncoded(byte[])}.
+     */
+    boolean isPreEncodingAllowed() {
+        return preEncodingAllowed;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (!charBuffer.hasRemaining()) {
+            encodeCharBuffer(false);
+        }
+        charBuffer.put((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!charBuffer.hasRemaining()) {
+                encodeCharBuffer(false);
+            }
+            int chunkLen = Math.min(len, charBuffer.remaining());
+            charBuffer.put(cbuf, off, chunkLen);
+            off += chunkLen;
+            len -= chunkLen;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        char[] charArray = charBuffer.array();
+        while (len > 0) {
+            if (!charBuffer.hasRemaining()) {
+                encodeCharBuffer(false);
+            }
+            int chunkLen = Math.min(len, charBuffer.remaining());
+            int pos = charBuffer.position();
+            str.getChars(off, off + chunkLen, charArray, charBuffer.arrayOffset() + pos);
+            charBuffer.position(pos + chunkLen);
+            off += chunkLen;
+            len -= chunkLen;
+        }
+    }
+    
+    @Override
+    public void write(String str) throws IOException {
+        write(str, 0, str.length());
+    }
+    
+    /**
+     * Writes bytes that were encoded with {@link #getCharset()}, independently of the rest of the output. This is only
+     * correct if {@link #isPreEncodingAllowed()} returns {@code true}.
+     */
+    void writeEncoded(byte[] bytes) throws IOException {
+        if (charBuffer.position() != 0) {
+            encodeCharBuffer(true);
+        }
+        if (bytes.length > byteBuffer.remaining()) {
+            writeByteBuffer();
+            if (bytes.length > byteBuffer.remaining()) {
+                out.write(bytes);
+                return;
+            }
+        }
+        byteBuffer.put(bytes);
+    }
+
+    /**
+     * Writes the buffered output into the {@link OutputStream}, but unlike {@link #flush()}, doesn't flush the
+     * {@link OutputStream} itself.
+     */
+    public void flushBuffer() throws IOException {
+        encodeCharBuffer(false);
+        writeByteBuffer();
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * Writes the buffered output, then closes the {@link OutputStream}.
+     */
+    @Override
+    public void close() throws IOException {
+        encodeCharBuffer(true);
+        writeByteBuffer();
+        out.close();
+    }
+
+    /**
+     * Encodes the content of {@link #charBuffer} into {@link #byteBuffer}, writing out the {@link #byteBuffer}
+     * whenever it gets full. If {@code endOfInput} is {@code false}, a trailing high surrogate is left in the
+     * {@link #charBuffer}, as its pair will be written later.
+     */
+    private void encodeCharBuffer(boolean endOfInput) throws IOException {
+        charBuffer.flip();
+        while (true) {
+            CoderResult result = encoder.encode(charBuffer, byteBuffer, endOfInput);
+            if (result.isOverflow()) {
+                writeByteBuffer();
+            } else if (result.isUnderflow()) {
+                break;
+            } else {
+                // Can't happen, as we use CodingErrorAction.REPLACE
+                result.throwException();
+            }
+        }
+        if (endOfInput) {
+            while (encoder.flush(byteBuffer).isOverflow()) {
+                writeByteBuffer();
+            }
+            encoder.reset();
+        }
+        charBuffer.compact();
+    }
+    
+    private void writeByteBuffer() throws IOException {
+        if (byteBuffer.position() != 0) {
+            out.write(byteBuffer.array(), byteBuffer.arrayOffset(), byteBuffer.position());
+            byteBuffer.clear();
+        }
+    }
+    
+}
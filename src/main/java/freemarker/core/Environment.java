@@ -60,6 +60,7 @@ import freemarker.template.TemplateException;
 import freemarker.template.TemplateExceptionHandler;
 import freemarker.template.TemplateHashModel;
 import freemarker.template.TemplateHashModelEx;
+import freemarker.template.TemplateHashModelEx2.KeyValuePair;
 import freemarker.template.TemplateHashModelEx2.KeyValuePairIterator;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
@@ -111,6 +112,7 @@ public final class Environment extends Configurable {
     }
 
     private final Configuration configuration;
+    private final ProcessingInstrumentation instrumentation;
     private final TemplateHashModel rootDataModel;
     private TemplateElement[] instructionStack = new TemplateElement[16];
     private int instructionStackSize = 0;
@@ -200,6 +202,7 @@ public final class Environment extends Configurable {
     public Environment(Template template, final TemplateHashModel rootDataModel, Writer out) {
         super(template);
         configuration = template.getConfiguration();
+        instrumentation = configuration.getProcessingInstrumentation();
         this.globalNamespace = new Namespace(null);
         this.currentNamespace = mainNamespace = new Namespace(template);
         this.out = out;
@@ -298,6 +301,13 @@ public final class Environment extends Configurable {
     public void process() throws TemplateException, IOException {
         Object savedEnv = threadEnv.get();
         threadEnv.set(this);
+        final long startTime;
+        if (instrumentation != null) {
+            instrumentation.processingStarted(this);
+            startTime = System.nanoTime();
+        } else {
+            startTime = 0;
+        }
         try {
             // Cached values from a previous execution are possibly outdated.
             clearCachedValues();
@@ -314,6 +324,9 @@ public final class Environment extends Configurable {
             }
         } finally {
             threadEnv.set(savedEnv);
+            if (instrumentation != null) {
+                instrumentation.processingEnded(this, System.nanoTime() - startTime);
+            }
         }
     }
 
@@ -322,6 +335,10 @@ public final class Environment extends Configurable {
      */
     void visit(TemplateElement element) throws IOException, TemplateException {
         // ATTENTION: This method body is manually "inlined" into visit(TemplateElement[]); keep them in sync!
+        if (instrumentation != null) {
+            visitInstrumented(element);
+            return;
+        }
         pushElement(element);
         try {
             TemplateElement[] templateElementsToVisit = element.accept(this);
@@ -340,6 +357,35 @@ public final class Environment extends Configurable {
         }
         // ATTENTION: This method body above is manually "inlined" into visit(TemplateElement[]); keep them in sync!
     }
+
+    /**
+     * Same as {@link #visit(TemplateElement)}, but also calls the {@link ProcessingInstrumentation}; it's separate so
+     * that the usual case, when there's no instrumentation, remains as cheap as possible.
+     */
+    private void visitInstrumented(TemplateElement element) throws IOException, TemplateException {
+        instrumentation.elementStarted(this, element);
+        final long startTime = System.nanoTime();
+        try {
+            pushElement(element);
+            try {
+                TemplateElement[] templateElementsToVisit = element.accept(this);
+                if (templateElementsToVisit != null) {
+                    for (TemplateElement el : templateElementsToVisit) {
+                        if (el == null) {
+                            break;  // Skip unused trailing buffer capacity 
+                        }
+                        visit(el);
+                    }
+                }
+            } catch (TemplateException te) {
+                handleTemplateException(te);
+            } finally {
+                popElement();
+            }
+        } finally {
+            instrumentation.elementEnded(this, element, System.nanoTime() - startTime);
+        }
+    }
     
     /**
      * @param elementBuffer
@@ -358,6 +404,10 @@ public final class Environment extends Configurable {
             
             // ATTENTION: This part is the manually "inlining" of visit(TemplateElement[]); keep them in sync!
             // We don't just let Hotspot to do it, as we want a hard guarantee regarding maximum stack usage. 
+            if (instrumentation != null) {
+                visitInstrumented(element);
+                continue;
+            }
             pushElement(element);
             try {
                 TemplateElement[] templateElementsToVisit = element.accept(this);
@@ -696,6 +746,13 @@ public final class Environment extends Configurable {
             return;
         }
 
+        final long startTime;
+        if (instrumentation != null) {
+            instrumentation.macroStarted(this, macro);
+            startTime = System.nanoTime();
+        } else {
+            startTime = 0;
+        }
         pushElement(macro);
         try {
             final Macro.Context macroCtx = macro.new Context(this, childBuffer, bodyParameterNames);
@@ -724,6 +781,9 @@ public final class Environment extends Configurable {
             }
         } finally {
             popElement();
+            if (instrumentation != null) {
+                instrumentation.macroEnded(this, macro, System.nanoTime() - startTime);
+            }
         }
     }
 
@@ -819,10 +879,22 @@ public final class Environment extends Configurable {
         }
         TemplateSequenceModel children = node.getChildNodes();
         if (children == null) return;
-        for (int i = 0; i < children.size(); i++) {
-            TemplateNodeModel child = (TemplateNodeModel) children.get(i);
-            if (child != null) {
-                invokeNodeHandlerFor(child, namespaces);
+        if (children instanceof TemplateCollectionModel) {
+            // Lets node implementations that read their children lazily (like a streamed XML) go through them only
+            // once, in document order:
+            TemplateModelIterator it = ((TemplateCollectionModel) children).iterator();
+            while (it.hasNext()) {
+                TemplateNodeModel child = (TemplateNodeModel) it.next();
+                if (child != null) {
+                    invokeNodeHandlerFor(child, namespaces);
+                }
+            }
+        } else {
+            for (int i = 0; i < children.size(); i++) {
+                TemplateNodeModel child = (TemplateNodeModel) children.get(i);
+                if (child != null) {
+                    invokeNodeHandlerFor(child, namespaces);
+                }
             }
         }
     }
@@ -2471,11 +2543,11 @@ public final class Environment extends Configurable {
                 ignoreMissing);
     }
 
-    private Object getIncludedTemplateCustomLookupCondition() {
+    Object getIncludedTemplateCustomLookupCondition() {
         return getTemplate().getCustomLookupCondition();
     }
 
-    private String getIncludedTemplateEncoding() {
+    String getIncludedTemplateEncoding() {
         String encoding;
         // This branch shouldn't exist, as it doesn't make much sense to inherit encoding. But we have to keep BC.
         encoding = getTemplate().getEncoding();
@@ -2504,6 +2576,13 @@ public final class Environment extends Configurable {
             legacyParent = includedTemplate;
         }
 
+        final long startTime;
+        if (instrumentation != null) {
+            instrumentation.includeStarted(this, includedTemplate);
+            startTime = System.nanoTime();
+        } else {
+            startTime = 0;
+        }
         importMacros(includedTemplate);
         try {
             visit(includedTemplate.getRootTreeNode());
@@ -2513,6 +2592,9 @@ public final class Environment extends Configurable {
             } else {
                 legacyParent = prevTemplate;
             }
+            if (instrumentation != null) {
+                instrumentation.includeEnded(this, includedTemplate, System.nanoTime() - startTime);
+            }
         }
     }
 
@@ -2629,8 +2711,15 @@ public final class Environment extends Configurable {
                 ((LazilyInitializedNamespace) existingNamespace).ensureInitializedTME();
             }
         } else {
-            final Namespace newNamespace
-                    = lazyImport ? new LazilyInitializedNamespace(templateName) : new Namespace(loadedTemplate);
+            final Namespace newNamespace;
+            if (lazyImport) {
+                newNamespace = new LazilyInitializedNamespace(templateName);
+            } else {
+                Object snapshot = _TemplateAPI.getLibraryNamespaceSnapshot(loadedTemplate);
+                newNamespace = snapshot instanceof LibraryNamespaceSnapshot
+                        ? new SharedLibraryNamespace(loadedTemplate, (LibraryNamespaceSnapshot) snapshot)
+                        : new Namespace(loadedTemplate);
+            }
             loadedLibs.put(templateName, newNamespace);
             
             if (targetNsVarName != null) {
@@ -2649,6 +2738,28 @@ public final class Environment extends Configurable {
 
     private void initializeImportLibNamespace(final Namespace newNamespace, Template loadedTemplate)
             throws TemplateException, IOException {
+        if (newNamespace instanceof SharedLibraryNamespace) {
+            importNestedLibraries(((SharedLibraryNamespace) newNamespace).snapshot);
+            registerLibraryMacros(newNamespace, ((SharedLibraryNamespace) newNamespace).snapshot);
+            return;
+        }
+        
+        Object snapshot = _TemplateAPI.getLibraryNamespaceSnapshot(loadedTemplate);
+        if (snapshot == null && !isPureLibrary(loadedTemplate)) {
+            snapshot = NOT_SHAREABLE_LIBRARY;
+            _TemplateAPI.setLibraryNamespaceSnapshot(loadedTemplate, snapshot);
+        }
+        if (snapshot instanceof LibraryNamespaceSnapshot) {
+            // Happens with lazy imports, where the namespace object is created before the template is known.
+            LibraryNamespaceSnapshot libSnapshot = (LibraryNamespaceSnapshot) snapshot;
+            importNestedLibraries(libSnapshot);
+            for (Map.Entry<String, Object> ent : libSnapshot.variables.entrySet()) {
+                newNamespace.put(ent.getKey(), resolveLibrarySnapshotValue(ent.getValue()));
+            }
+            registerLibraryMacros(newNamespace, libSnapshot);
+            return;
+        }
+        
         Namespace prevNamespace = this.currentNamespace;
         this.currentNamespace = newNamespace;
         Writer prevOut = out;
@@ -2659,6 +2770,79 @@ public final class Environment extends Configurable {
             this.out = prevOut;
             this.currentNamespace = prevNamespace;
         }
+        
+        if (snapshot == null) {
+            _TemplateAPI.setLibraryNamespaceSnapshot(loadedTemplate, createLibraryNamespaceSnapshot(newNamespace));
+        }
+    }
+
+    private static boolean isPureLibrary(Template template) {
+        Object value = template.getCustomAttribute(Template.PURE_LIBRARY_CUSTOM_ATTRIBUTE);
+        return Boolean.TRUE.equals(value) || "true".equals(value);
+    }
+
+    /**
+     * Creates the snapshot of a just initialized pure library namespace, or returns {@link #NOT_SHAREABLE_LIBRARY} if
+     * the namespace contains something that's bound to this {@link Environment}.
+     */
+    private Object createLibraryNamespaceSnapshot(Namespace namespace) throws TemplateModelException {
+        Map<String, Object> variables = new HashMap<String, Object>();
+        List<NestedLibraryImport> nestedImports = new ArrayList<NestedLibraryImport>();
+        for (KeyValuePairIterator it = namespace.keyValuePairIterator(); it.hasNext(); ) {
+            KeyValuePair kvp = it.next();
+            String name = ((TemplateScalarModel) kvp.getKey()).getAsString();
+            TemplateModel value = kvp.getValue();
+            if (value instanceof Namespace) {
+                NestedLibraryImport nestedImport = null;
+                for (Map.Entry<String, Namespace> loadedLib : loadedLibs.entrySet()) {
+                    if (loadedLib.getValue() == value) {
+                        nestedImport = new NestedLibraryImport(
+                                loadedLib.getKey(),
+                                value instanceof LazilyInitializedNamespace ? null : ((Namespace) value).getTemplate());
+                        break;
+                    }
+                }
+                if (nestedImport == null) {
+                    // Like .main, or something else that's not an imported library.
+                    return NOT_SHAREABLE_LIBRARY;
+                }
+                nestedImports.add(nestedImport);
+                variables.put(name, nestedImport);
+            } else {
+                variables.put(name, value);
+            }
+        }
+        
+        List<Macro> macros = new ArrayList<Macro>();
+        for (Iterator it = macroToNamespaceLookup.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry ent = (Map.Entry) it.next();
+            if (ent.getValue() == namespace) {
+                macros.add((Macro) ent.getKey());
+            }
+        }
+        
+        return new LibraryNamespaceSnapshot(
+                variables,
+                macros.toArray(new Macro[macros.size()]),
+                nestedImports.toArray(new NestedLibraryImport[nestedImports.size()]));
+    }
+
+    private void importNestedLibraries(LibraryNamespaceSnapshot snapshot) throws IOException, TemplateException {
+        for (NestedLibraryImport nestedImport : snapshot.nestedImports) {
+            importLib(nestedImport.templateName, nestedImport.template, null);
+        }
+    }
+
+    private void registerLibraryMacros(Namespace namespace, LibraryNamespaceSnapshot snapshot) {
+        for (Macro macro : snapshot.macros) {
+            macroToNamespaceLookup.put(macro, namespace);
+        }
+    }
+
+    private TemplateModel resolveLibrarySnapshotValue(Object value) {
+        return value instanceof NestedLibraryImport
+                ? loadedLibs.get(((NestedLibraryImport) value).templateName)
+                : (TemplateModel) value;
     }
 
     /**
@@ -2840,6 +3024,136 @@ public final class Environment extends Configurable {
         UNINITIALIZED, INITIALIZING, INITIALIZED, FAILED
     }
     
+    /**
+     * Stored as {@link _TemplateAPI#getLibraryNamespaceSnapshot(Template)} if the template isn't a pure library, or if
+     * its namespace can't be shared for some other reason.
+     */
+    private static final Object NOT_SHAREABLE_LIBRARY = Boolean.FALSE;
+
+    /**
+     * The content of the namespace of a pure library (see {@link Template#PURE_LIBRARY_CUSTOM_ATTRIBUTE}) right after
+     * it was initialized; it's not modified after creation, and so it's shared by all {@link Environment}-s.
+     */
+    private static final class LibraryNamespaceSnapshot {
+        
+        /** The values are {@link TemplateModel}-s, or {@link NestedLibraryImport}-s. */
+        private final Map<String, Object> variables;
+        /** The macros that has to be associated with the namespace, like the macros defined by the library. */
+        private final Macro[] macros;
+        private final NestedLibraryImport[] nestedImports;
+        
+        LibraryNamespaceSnapshot(Map<String, Object> variables, Macro[] macros, NestedLibraryImport[] nestedImports) {
+            this.variables = variables;
+            this.macros = macros;
+            this.nestedImports = nestedImports;
+        }
+        
+    }
+
+    /**
+     * Stands for the namespace of a library that the pure library has imported; the namespace itself can't be part of
+     * the {@link LibraryNamespaceSnapshot}, as it belongs to an {@link Environment}.
+     */
+    private static final class NestedLibraryImport {
+        
+        private final String templateName;
+        /** {@code null} if it was a lazy import */
+        private final Template template;
+        
+        NestedLibraryImport(String templateName, Template template) {
+            this.templateName = templateName;
+            this.template = template;
+        }
+        
+    }
+
+    /**
+     * The namespace of a pure library that reads the shared {@link LibraryNamespaceSnapshot} until it's modified, at
+     * which point it copies the content of the snapshot.
+     */
+    private class SharedLibraryNamespace extends Namespace {
+        
+        private final LibraryNamespaceSnapshot snapshot;
+        private boolean copied;
+        
+        SharedLibraryNamespace(Template template, LibraryNamespaceSnapshot snapshot) {
+            super(template);
+            this.snapshot = snapshot;
+        }
+        
+        private void ensureCopied() {
+            if (!copied) {
+                copied = true;
+                for (Map.Entry<String, Object> ent : snapshot.variables.entrySet()) {
+                    super.put(ent.getKey(), resolveLibrarySnapshotValue(ent.getValue()));
+                }
+            }
+        }
+        
+        @Override
+        public TemplateModel get(String key) throws TemplateModelException {
+            return copied ? super.get(key) : resolveLibrarySnapshotValue(snapshot.variables.get(key));
+        }
+        
+        @Override
+        public boolean containsKey(String key) {
+            return copied ? super.containsKey(key) : snapshot.variables.containsKey(key);
+        }
+        
+        @Override
+        public int size() {
+            return copied ? super.size() : snapshot.variables.size();
+        }
+        
+        @Override
+        public boolean isEmpty() {
+            return copied ? super.isEmpty() : snapshot.variables.isEmpty();
+        }
+        
+        @Override
+        public void put(String key, Object value) {
+            ensureCopied();
+            super.put(key, value);
+        }
+        
+        @Override
+        public void remove(String key) {
+            ensureCopied();
+            super.remove(key);
+        }
+        
+        @Override
+        public TemplateCollectionModel keys() {
+            ensureCopied();
+            return super.keys();
+        }
+        
+        @Override
+        public TemplateCollectionModel values() {
+            ensureCopied();
+            return super.values();
+        }
+        
+        @Override
+        public KeyValuePairIterator keyValuePairIterator() {
+            ensureCopied();
+            return super.keyValuePairIterator();
+        }
+        
+        @Override
+        public Map toMap() throws TemplateModelException {
+            ensureCopied();
+            return super.toMap();
+        }
+        
+        @Override
+        public String toString() {
+            ensureCopied();
+            return super.toString();
+        }
+        
+    }
+
     class LazilyInitializedNamespace extends Namespace {
         
         private final String templateName;
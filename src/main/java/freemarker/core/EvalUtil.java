@@ -23,6 +23,7 @@ import java.util.Date;
 
 import freemarker.ext.beans.BeanModel;
 import freemarker.ext.beans._BeansAPI;
+import freemarker.template.SimpleNumber;
 import freemarker.template.TemplateBooleanModel;
 import freemarker.template.TemplateCollectionModel;
 import freemarker.template.TemplateDateModel;
@@ -581,4 +582,32 @@ class EvalUtil {
                 : tObj.getTemplate().getParserConfiguration().getArithmeticEngine();
     }
     
+    private static final int CACHED_INTEGER_MODELS_MIN = -128;
+    private static final int CACHED_INTEGER_MODELS_MAX = 1023;
+    private static final SimpleNumber[] CACHED_INTEGER_MODELS = createCachedIntegerModels();
+    
+    /**
+     * Wraps the result of an arithmetical operation into a {@link TemplateNumberModel}. {@link Integer}-s in a small
+     * range are mapped to shared {@link SimpleNumber} instances, so typical loop counter and index calculations don't
+     * allocate a new model (especially with {@link ArithmeticEngine#PRIMITIVE_FAST_PATH_ENGINE}, which returns
+     * {@link Integer}-s where it can).
+     */
+    static TemplateNumberModel numberToModel(Number num) {
+        if (num instanceof Integer) {
+            int n = num.intValue();
+            if (n >= CACHED_INTEGER_MODELS_MIN && n <= CACHED_INTEGER_MODELS_MAX) {
+                return CACHED_INTEGER_MODELS[n - CACHED_INTEGER_MODELS_MIN];
+            }
+        }
+        return new SimpleNumber(num);
+    }
+    
+    private static SimpleNumber[] createCachedIntegerModels() {
+        SimpleNumber[] models = new SimpleNumber[CACHED_INTEGER_MODELS_MAX - CACHED_INTEGER_MODELS_MIN + 1];
+        for (int i = 0; i < models.length; i++) {
+            models[i] = new SimpleNumber(Integer.valueOf(CACHED_INTEGER_MODELS_MIN + i));
+        }
+        return models;
+    }
+    
 }
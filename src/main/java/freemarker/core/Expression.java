@@ -19,6 +19,10 @@
 
 package freemarker.core;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectInputValidation;
+
 import freemarker.ext.beans.BeanModel;
 import freemarker.template.Configuration;
 import freemarker.template.Template;
@@ -53,7 +57,7 @@ abstract public class Expression extends TemplateObject {
     // Used to store a constant return value for this expression. Only if it
     // is possible, of course.
     
-    TemplateModel constantValue;
+    transient TemplateModel constantValue;
 
     // Hook in here to set the constant value if possible.
     
@@ -69,6 +73,23 @@ abstract public class Expression extends TemplateObject {
         }
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // The constant value isn't always serializable, so we re-calculate it. But the fields of the subclass aren't
+        // yet read at this point, so we can only do that after the whole AST was read.
+        in.registerValidation(new ObjectInputValidation() {
+            public void validateObject() {
+                if (isLiteral()) {
+                    try {
+                        constantValue = _eval(null);
+                    } catch (Exception e) {
+                    // deliberately ignore.
+                    }
+                }
+            }
+        }, 0);
+    }
+
     /**
      * @deprecated At the moment FreeMarker has no API for this with backward-compatibility promises.
      */
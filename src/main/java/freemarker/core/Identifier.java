@@ -28,14 +28,36 @@ import freemarker.template.TemplateModel;
 final class Identifier extends Expression {
 
     private final String name;
+    /** See {@link #setLocalVarSlot(Macro, int)}. */
+    private Macro localVarMacro;
+    private int localVarSlot = -1;
 
     Identifier(String name) {
         this.name = name;
     }
+    
+    /**
+     * Used by {@link LocalVariableSlotResolver}, if this identifier refers to a local variable of the given macro, so
+     * that when we are in a call of that macro, the variable can be read without looking it up by name.
+     */
+    void setLocalVarSlot(Macro macro, int slot) {
+        this.localVarMacro = macro;
+        this.localVarSlot = slot;
+    }
 
     @Override
     TemplateModel _eval(Environment env) throws TemplateException {
         try {
+            if (localVarSlot != -1) {
+                Macro.Context macroCtx = env.getCurrentMacroContext();
+                if (macroCtx != null && macroCtx.getMacro() == localVarMacro) {
+                    TemplateModel result = macroCtx.getLocalVariable(localVarSlot);
+                    if (result != null) {
+                        return result;
+                    }
+                    // Falls back to the usual lookup, as the variable can come from outside the macro as well.
+                }
+            }
             return env.getVariable(name);
         } catch (NullPointerException e) {
             if (env == null) {
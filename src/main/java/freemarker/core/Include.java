@@ -39,6 +39,10 @@ final class Include extends TemplateElement {
     private final String encoding;
     private final Boolean parse;
     private final Boolean ignoreMissingExpPrecalcedValue;
+    /**
+     * Created on the first execution, as it isn't part of the parse result; see {@link #getCallSiteTemplateCache()}.
+     */
+    private transient volatile CallSiteTemplateCache callSiteTemplateCache;
 
     /**
      * @param template the template that this <tt>#include</tt> is a part of.
@@ -120,14 +124,6 @@ final class Include extends TemplateElement {
     @Override
     TemplateElement[] accept(Environment env) throws TemplateException, IOException {
         final String includedTemplateName = includedTemplateNameExp.evalAndCoerceToPlainText(env);
-        final String fullIncludedTemplateName;
-        try {
-            fullIncludedTemplateName = env.toFullTemplateName(getTemplate().getName(), includedTemplateName);
-        } catch (MalformedTemplateNameException e) {
-            throw new _MiscTemplateException(e, env,
-                    "Malformed template name ", new _DelayedJQuote(e.getTemplateName()), ":\n",
-                    e.getMalformednessDescription());
-        }
         
         final String encoding = this.encoding != null
                 ? this.encoding
@@ -159,7 +155,16 @@ final class Include extends TemplateElement {
         
         final Template includedTemplate;
         try {
-            includedTemplate = env.getTemplateForInclusion(fullIncludedTemplateName, encoding, parse, ignoreMissing);
+            final CallSiteTemplateCache callSiteTemplateCache = getCallSiteTemplateCache();
+            includedTemplate = callSiteTemplateCache != null
+                    ? callSiteTemplateCache.getTemplate(env, getTemplate(), encoding, parse, ignoreMissing)
+                    : env.getTemplateForInclusion(
+                            env.toFullTemplateName(getTemplate().getName(), includedTemplateName),
+                            encoding, parse, ignoreMissing);
+        } catch (MalformedTemplateNameException e) {
+            throw new _MiscTemplateException(e, env,
+                    "Malformed template name ", new _DelayedJQuote(e.getTemplateName()), ":\n",
+                    e.getMalformednessDescription());
         } catch (IOException e) {
             throw new _MiscTemplateException(e, env,
                     "Template inclusion failed (for parameter value ",
@@ -230,6 +235,19 @@ final class Include extends TemplateElement {
         return false;
     }
 
+    /**
+     * Returns {@code null} if the template name isn't a literal, so there's nothing to cache.
+     */
+    private CallSiteTemplateCache getCallSiteTemplateCache() {
+        CallSiteTemplateCache callSiteTemplateCache = this.callSiteTemplateCache;
+        if (callSiteTemplateCache == null) {
+            // Concurrent executions might create multiple instances, but then only one of them will be kept.
+            callSiteTemplateCache = CallSiteTemplateCache.create(includedTemplateNameExp);
+            this.callSiteTemplateCache = callSiteTemplateCache;
+        }
+        return callSiteTemplateCache != CallSiteTemplateCache.NOT_APPLICABLE ? callSiteTemplateCache : null;
+    }
+
     private boolean getYesNo(Expression exp, String s) throws TemplateException {
         try {
            return StringUtil.getYesNo(s);
@@ -24,6 +24,7 @@ import java.io.StringReader;
 import java.io.Writer;
 import java.util.Map;
 
+import freemarker.cache.TinyLfuCacheStorage;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
 import freemarker.template.TemplateModel;
@@ -31,6 +32,7 @@ import freemarker.template.TemplateModelException;
 import freemarker.template.TemplateScalarModel;
 import freemarker.template.TemplateSequenceModel;
 import freemarker.template.TemplateTransformModel;
+import freemarker.template._TemplateAPI;
 
 
 /**
@@ -81,6 +83,17 @@ class Interpret extends OutputFormatBoundBuiltIn {
         String templateSource = sourceExpr.evalAndCoerceToPlainText(env);
         Template parentTemplate = env.getTemplate();
         
+        // The created Template is never modified after this method, so it can be reused, as far as everything that
+        // influences its content is part of the cache key.
+        TinyLfuCacheStorage cache = _TemplateAPI.getRuntimeParseCache(parentTemplate.getConfiguration());
+        RuntimeParseCacheKey cacheKey = cache != null
+                ? new RuntimeParseCacheKey(this, parentTemplate, env.getLocale(), id, templateSource)
+                : null;
+        Template cachedTemplate = cache != null ? (Template) cache.get(cacheKey) : null;
+        if (cachedTemplate != null) {
+            return new TemplateProcessorModel(cachedTemplate);
+        }
+        
         final Template interpretedTemplate;
         try {
             ParserConfiguration pCfg = parentTemplate.getParserConfiguration();
@@ -105,6 +118,9 @@ class Interpret extends OutputFormatBoundBuiltIn {
         }
         
         interpretedTemplate.setLocale(env.getLocale());
+        if (cache != null) {
+            cache.put(cacheKey, interpretedTemplate);
+        }
         return new TemplateProcessorModel(interpretedTemplate);
     }
 
@@ -213,6 +213,10 @@ final class IteratorBlock extends TemplateElement {
     /**
      * Holds the context of a #list (or #forEach) directive.
      */
+    /**
+     * Holds the loop variables of a listing. These are looked up by name, unlike macro local variables; see
+     * {@link LocalVariableSlotResolver} for why.
+     */
     class IterationContext implements LocalContext {
         
         private static final String LOOP_STATE_HAS_NEXT = "_has_next"; // lenght: 9
@@ -220,6 +224,8 @@ final class IteratorBlock extends TemplateElement {
         
         private Object openedIterator;
         private boolean hasNext;
+        /** If not {@code null}, {@link #hasNext} is not yet known, and must be asked from this iterator. */
+        private TemplateModelIterator hasNextSource;
         private TemplateModel loopVar;
         private TemplateModel loopVar2;
         private int index;
@@ -288,10 +294,13 @@ final class IteratorBlock extends TemplateElement {
                         try {
                             do {
                                 loopVar = iterModel.next();
-                                hasNext = iterModel.hasNext();
+                                // Only asked when needed, or after the nested content, as iterators that read their
+                                // source lazily (like a streamed XML) can't tell if there's a next item without
+                                // reading past the current one.
+                                hasNextSource = iterModel;
                                 env.visit(childBuffer);
                                 index++;
-                            } while (hasNext);
+                            } while (hasNext());
                         } catch (BreakInstruction.Break br) {
                             // Silently exit loop
                         }
@@ -436,7 +445,7 @@ final class IteratorBlock extends TemplateElement {
             return this.loopVar2Name;
         }
         
-        public TemplateModel getLocalVariable(String name) {
+        public TemplateModel getLocalVariable(String name) throws TemplateModelException {
             String loopVariableName = this.loopVarName;
             if (loopVariableName != null && name.startsWith(loopVariableName)) {
                 switch(name.length() - loopVariableName.length()) {
@@ -449,7 +458,7 @@ final class IteratorBlock extends TemplateElement {
                         break;
                     case 9: 
                         if (name.endsWith(LOOP_STATE_HAS_NEXT)) {
-                            return hasNext ? TemplateBooleanModel.TRUE : TemplateBooleanModel.FALSE;
+                            return hasNext() ? TemplateBooleanModel.TRUE : TemplateBooleanModel.FALSE;
                         }
                         break;
                 }
@@ -477,7 +486,11 @@ final class IteratorBlock extends TemplateElement {
             }
         }
 
-        boolean hasNext() {
+        boolean hasNext() throws TemplateModelException {
+            if (hasNextSource != null) {
+                hasNext = hasNextSource.hasNext();
+                hasNextSource = null;
+            }
             return hasNext;
         }
         
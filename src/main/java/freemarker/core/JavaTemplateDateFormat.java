@@ -32,21 +32,37 @@ import freemarker.template.TemplateModelException;
  */
 class JavaTemplateDateFormat extends TemplateDateFormat {
     
+    /** The globally cached {@link DateFormat}; never used directly, only copied. */
+    private final DateFormat prototype;
+    private final Thread ownerThread;
+    /** The copy of {@link #prototype} that belongs to {@link #ownerThread}; see {@link PerThreadFormatPool}. */
     private final DateFormat javaDateFormat;
 
-    public JavaTemplateDateFormat(DateFormat javaDateFormat) {
-        this.javaDateFormat = javaDateFormat;
+    /**
+     * @param prototype
+     *            The {@link DateFormat} from the global cache; it won't be used directly, only its copies (which are
+     *            confined to a thread) are.
+     */
+    public JavaTemplateDateFormat(DateFormat prototype) {
+        this.prototype = prototype;
+        this.ownerThread = Thread.currentThread();
+        this.javaDateFormat = (DateFormat) PerThreadFormatPool.getCopy(prototype);
+    }
+    
+    private DateFormat getJavaDateFormat() {
+        return Thread.currentThread() == ownerThread
+                ? javaDateFormat : (DateFormat) PerThreadFormatPool.getCopy(prototype);
     }
     
     @Override
     public String formatToPlainText(TemplateDateModel dateModel) throws TemplateModelException {
-        return javaDateFormat.format(TemplateFormatUtil.getNonNullDate(dateModel));
+        return getJavaDateFormat().format(TemplateFormatUtil.getNonNullDate(dateModel));
     }
 
     @Override
     public Date parse(String s, int dateType) throws UnparsableValueException {
         try {
-            return javaDateFormat.parse(s);
+            return getJavaDateFormat().parse(s);
         } catch (ParseException e) {
             throw new UnparsableValueException(e.getMessage(), e);
         }
@@ -54,9 +70,9 @@ class JavaTemplateDateFormat extends TemplateDateFormat {
 
     @Override
     public String getDescription() {
-        return javaDateFormat instanceof SimpleDateFormat
-                ? ((SimpleDateFormat) javaDateFormat).toPattern()
-                : javaDateFormat.toString();
+        return prototype instanceof SimpleDateFormat
+                ? ((SimpleDateFormat) prototype).toPattern()
+                : prototype.toString();
     }
 
     @Override
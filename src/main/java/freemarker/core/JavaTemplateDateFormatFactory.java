@@ -54,7 +54,8 @@ class JavaTemplateDateFormatFactory extends TemplateDateFormatFactory {
     }
 
     /**
-     * Returns a "private" copy (not in the global cache) for the given format.  
+     * Returns the globally cached instance for the given format; as it's not thread-safe, it must not be used
+     * directly, only its copies, as {@link JavaTemplateDateFormat} does.
      */
     private DateFormat getJavaDateFormat(int dateType, String nameOrPattern, Locale locale, TimeZone timeZone)
             throws UnknownDateTypeFormattingUnsupportedException, InvalidFormatParametersException {
@@ -122,7 +123,7 @@ class JavaTemplateDateFormatFactory extends TemplateDateFormatFactory {
             }
         }  // if cache miss
         
-        return (DateFormat) jFormat.clone();  // For thread safety
+        return jFormat;
     }
 
     private static final class CacheKey {
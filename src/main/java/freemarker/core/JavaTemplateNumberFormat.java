@@ -26,11 +26,22 @@ import freemarker.template.TemplateNumberModel;
 final class JavaTemplateNumberFormat extends BackwardCompatibleTemplateNumberFormat {
     
     private final String formatString;
+    /** The globally cached {@link NumberFormat}; never used directly, only copied. */
+    private final NumberFormat prototype;
+    private final Thread ownerThread;
+    /** The copy of {@link #prototype} that belongs to {@link #ownerThread}; see {@link PerThreadFormatPool}. */
     private final NumberFormat javaNumberFormat;
 
-    public JavaTemplateNumberFormat(NumberFormat javaNumberFormat, String formatString) {
+    /**
+     * @param prototype
+     *            The {@link NumberFormat} from the global cache; it won't be used directly, only its copies (which
+     *            are confined to a thread) are.
+     */
+    public JavaTemplateNumberFormat(NumberFormat prototype, String formatString) {
         this.formatString = formatString;
-        this.javaNumberFormat = javaNumberFormat;
+        this.prototype = prototype;
+        this.ownerThread = Thread.currentThread();
+        this.javaNumberFormat = (NumberFormat) PerThreadFormatPool.getCopy(prototype);
     }
 
     @Override
@@ -47,15 +58,19 @@ final class JavaTemplateNumberFormat extends BackwardCompatibleTemplateNumberFor
     @Override
     String format(Number number) throws UnformattableValueException {
         try {
-            return javaNumberFormat.format(number);
+            return getJavaNumberFormat().format(number);
         } catch (ArithmeticException e) {
             throw new UnformattableValueException(
                     "This format can't format the " + number + " number. Reason: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Returns the {@link NumberFormat} that can be used on the current thread.
+     */
     public NumberFormat getJavaNumberFormat() {
-        return javaNumberFormat;
+        return Thread.currentThread() == ownerThread
+                ? javaNumberFormat : (NumberFormat) PerThreadFormatPool.getCopy(prototype);
     }
 
     @Override
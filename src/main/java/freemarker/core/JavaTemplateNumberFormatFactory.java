@@ -87,9 +87,7 @@ class JavaTemplateNumberFormatFactory extends TemplateNumberFormatFactory {
             }
         }  // if cache miss
         
-        // JFormat-s aren't thread-safe; must clone it
-        jFormat = (NumberFormat) jFormat.clone();
-        
+        // JFormat-s aren't thread-safe, so this won't use jFormat directly, only its per-thread copies
         return new JavaTemplateNumberFormat(jFormat, params); 
     }
 
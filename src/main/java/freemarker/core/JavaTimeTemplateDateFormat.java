@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.util.Date;
+import java.util.TimeZone;
+
+import freemarker.template.SimpleTemporal;
+import freemarker.template.TemplateDateModel;
+import freemarker.template.TemplateModelException;
+
+/**
+ * Java 8 {@link DateTimeFormatter}-based format; see {@link JavaTimeTemplateDateFormatFactory}.
+ */
+class JavaTimeTemplateDateFormat extends TemplateDateFormat {
+    
+    private static final LocalDate EPOCH_DATE = LocalDate.of(1970, 1, 1);
+    
+    /** Immutable, so it's shared by all threads; it has the time zone and locale set. */
+    private final DateTimeFormatter formatter;
+    /** The same time zone that {@link #formatter} has. */
+    private final TimeZone timeZone;
+    private final String description;
+
+    JavaTimeTemplateDateFormat(DateTimeFormatter formatter, TimeZone timeZone, String description) {
+        this.formatter = formatter;
+        this.timeZone = timeZone;
+        this.description = description;
+    }
+    
+    @Override
+    public String formatToPlainText(TemplateDateModel dateModel) throws TemplateModelException {
+        if (dateModel instanceof SimpleTemporal) {
+            SimpleTemporal simpleTemporal = (SimpleTemporal) dateModel;
+            try {
+                return formatter.format(simpleTemporal.getTemporal());
+            } catch (DateTimeException e) {
+                // The format needs fields that the value doesn't have (like the hour of a LocalDate). The result will
+                // be the same as with the Date that the default date format implementation would get.
+                return formatter.format(simpleTemporal.getAsDate(timeZone).toInstant());
+            }
+        }
+        return formatter.format(TemplateFormatUtil.getNonNullDate(dateModel).toInstant());
+    }
+
+    @Override
+    public Date parse(String s, int dateType) throws UnparsableValueException {
+        final TemporalAccessor parsed;
+        try {
+            parsed = formatter.parse(s);
+        } catch (DateTimeParseException e) {
+            throw new UnparsableValueException(e.getMessage(), e);
+        }
+        
+        if (parsed.isSupported(ChronoField.INSTANT_SECONDS)) {
+            return Date.from(Instant.from(parsed));
+        }
+        
+        LocalDate date = parsed.query(TemporalQueries.localDate());
+        LocalTime time = parsed.query(TemporalQueries.localTime());
+        if (date == null && time == null) {
+            throw new UnparsableValueException("The parsed text doesn't specify a date or a time: " + s);
+        }
+        return Date.from(
+                (date != null ? date : EPOCH_DATE)
+                .atTime(time != null ? time : LocalTime.MIDNIGHT)
+                .atZone(formatter.getZone())
+                .toInstant());
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public boolean isLocaleBound() {
+        return true;
+    }
+
+    @Override
+    public boolean isTimeZoneBound() {
+        return true;
+    }
+    
+}
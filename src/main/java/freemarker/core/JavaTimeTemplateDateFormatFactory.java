@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.Locale;
+import java.util.StringTokenizer;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+import freemarker.log.Logger;
+import freemarker.template.SimpleTemporal;
+import freemarker.template.TemplateDateModel;
+
+/**
+ * A {@link TemplateDateFormatFactory} that's based on Java 8 {@link DateTimeFormatter}-s. Unlike the default date
+ * format implementation, which is based on {@link java.text.SimpleDateFormat}, it needn't copy the
+ * (non-thread-safe) Java format objects, as {@link DateTimeFormatter}-s are immutable, and so are shared by all
+ * threads. Also, it formats the {@code java.time} objects wrapped into {@link SimpleTemporal} (see
+ * {@link freemarker.template.DefaultObjectWrapper#setJavaTimeSupport(boolean)}) directly, without converting them to
+ * {@link java.util.Date} first.
+ * 
+ * <p>
+ * The format parameter string is either a {@link DateTimeFormatter#ofPattern(String) DateTimeFormatter pattern}
+ * (mostly, but not fully compatible with {@link java.text.SimpleDateFormat} patterns), or {@code "short"},
+ * {@code "medium"}, {@code "long"}, {@code "full"}, or for date-time values, two of these separated with {@code _}
+ * (like {@code "short_medium"}), just as with the default date format implementation. Values that represent an instant
+ * (including {@link java.time.ZonedDateTime} and {@link java.time.OffsetDateTime}) are shown in the time zone of the
+ * {@link Configurable#setTimeZone(TimeZone) time_zone} setting (or {@code sql_date_and_time_time_zone}, when
+ * applicable), like {@link java.util.Date}-s are.
+ * 
+ * <p>
+ * This class isn't used unless you register it as a {@link Configurable#setCustomDateFormats(java.util.Map) custom
+ * date format}, like {@code custom_date_formats={ "jt": JavaTimeTemplateDateFormatFactory() }}, and then use it like
+ * {@code date_format="@jt yyyy-MM-dd"}, or {@code ${d?string.@jt_full}}. It's only available on Java 8 or later.
+ * 
+ * @since 2.3.26
+ */
+public final class JavaTimeTemplateDateFormatFactory extends TemplateDateFormatFactory {
+    
+    public static final JavaTimeTemplateDateFormatFactory INSTANCE = new JavaTimeTemplateDateFormatFactory(); 
+    
+    private static final Logger LOG = Logger.getLogger("freemarker.runtime");
+
+    private static final ConcurrentHashMap<CacheKey, DateTimeFormatter> GLOBAL_FORMAT_CACHE
+            = new ConcurrentHashMap<CacheKey, DateTimeFormatter>();
+    private static final int LEAK_ALERT_DATE_FORMAT_CACHE_SIZE = 1024;
+    
+    private JavaTimeTemplateDateFormatFactory() {
+        // Use INSTANCE
+    }
+    
+    /**
+     * @param zonelessInput
+     *            Has no effect in this implementation.
+     */
+    @Override
+    public TemplateDateFormat get(String params, int dateType, Locale locale, TimeZone timeZone, boolean zonelessInput,
+            Environment env) throws UnknownDateTypeFormattingUnsupportedException, InvalidFormatParametersException {
+        return new JavaTimeTemplateDateFormat(
+                getDateTimeFormatter(dateType, params, locale, timeZone), timeZone, params);
+    }
+
+    private DateTimeFormatter getDateTimeFormatter(int dateType, String nameOrPattern, Locale locale,
+            TimeZone timeZone) throws UnknownDateTypeFormattingUnsupportedException, InvalidFormatParametersException {
+        CacheKey cacheKey = new CacheKey(dateType, nameOrPattern, locale, timeZone);
+        DateTimeFormatter formatter = GLOBAL_FORMAT_CACHE.get(cacheKey);
+        if (formatter == null) {
+            StringTokenizer tok = new StringTokenizer(nameOrPattern, "_");
+            FormatStyle tok1Style = tok.hasMoreTokens() ? parseFormatStyleToken(tok.nextToken()) : FormatStyle.MEDIUM;
+            if (tok1Style != null) {
+                switch (dateType) {
+                    case TemplateDateModel.UNKNOWN: {
+                        throw new UnknownDateTypeFormattingUnsupportedException();
+                    }
+                    case TemplateDateModel.TIME: {
+                        formatter = DateTimeFormatter.ofLocalizedTime(tok1Style);
+                        break;
+                    }
+                    case TemplateDateModel.DATE: {
+                        formatter = DateTimeFormatter.ofLocalizedDate(tok1Style);
+                        break;
+                    }
+                    case TemplateDateModel.DATETIME: {
+                        FormatStyle tok2Style = tok.hasMoreTokens()
+                                ? parseFormatStyleToken(tok.nextToken()) : tok1Style;
+                        if (tok2Style != null) {
+                            formatter = DateTimeFormatter.ofLocalizedDateTime(tok1Style, tok2Style);
+                        }
+                        break;
+                    }
+                }
+            }
+            if (formatter == null) {
+                try {
+                    formatter = DateTimeFormatter.ofPattern(nameOrPattern);
+                } catch (IllegalArgumentException e) {
+                    final String msg = e.getMessage();
+                    throw new InvalidFormatParametersException(
+                            msg != null ? msg : "Invalid DateTimeFormatter pattern", e);
+                }
+            }
+            formatter = formatter.withLocale(locale).withZone(timeZone.toZoneId());
+            
+            if (GLOBAL_FORMAT_CACHE.size() >= LEAK_ALERT_DATE_FORMAT_CACHE_SIZE) {
+                boolean triggered = false;
+                synchronized (JavaTimeTemplateDateFormatFactory.class) {
+                    if (GLOBAL_FORMAT_CACHE.size() >= LEAK_ALERT_DATE_FORMAT_CACHE_SIZE) {
+                        triggered = true;
+                        GLOBAL_FORMAT_CACHE.clear();
+                    }
+                }
+                if (triggered) {
+                    LOG.warn("Global Java DateTimeFormatter cache has exceeded " + LEAK_ALERT_DATE_FORMAT_CACHE_SIZE
+                            + " entries => cache flushed. "
+                            + "Typical cause: Some template generates high variety of format pattern strings.");
+                }
+            }
+            
+            DateTimeFormatter prevFormatter = GLOBAL_FORMAT_CACHE.putIfAbsent(cacheKey, formatter);
+            if (prevFormatter != null) {
+                formatter = prevFormatter;
+            }
+        }  // if cache miss
+        
+        return formatter;
+    }
+
+    private static final class CacheKey {
+        private final int dateType;
+        private final String pattern;
+        private final Locale locale;
+        private final TimeZone timeZone;
+
+        CacheKey(int dateType, String pattern, Locale locale, TimeZone timeZone) {
+            this.dateType = dateType;
+            this.pattern = pattern;
+            this.locale = locale;
+            this.timeZone = timeZone;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof CacheKey) {
+                CacheKey fk = (CacheKey) o;
+                return dateType == fk.dateType && fk.pattern.equals(pattern) && fk.locale.equals(locale)
+                        && fk.timeZone.equals(timeZone);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return dateType ^ pattern.hashCode() ^ locale.hashCode() ^ timeZone.hashCode();
+        }
+    }
+
+    private FormatStyle parseFormatStyleToken(String token) {
+        if ("short".equals(token)) {
+            return FormatStyle.SHORT;
+        }
+        if ("medium".equals(token)) {
+            return FormatStyle.MEDIUM;
+        }
+        if ("long".equals(token)) {
+            return FormatStyle.LONG;
+        }
+        if ("full".equals(token)) {
+            return FormatStyle.FULL;
+        }
+        return null;
+    }
+    
+}
@@ -36,6 +36,10 @@ public final class LibraryLoad extends TemplateElement {
 
     private Expression importedTemplateNameExp;
     private String targetNsVarName;
+    /**
+     * Created on the first execution, as it isn't part of the parse result; see {@link #getCallSiteTemplateCache()}.
+     */
+    private transient volatile CallSiteTemplateCache callSiteTemplateCache;
 
     /**
      * @param template the template that this <tt>Include</tt> is a part of.
@@ -52,17 +56,21 @@ public final class LibraryLoad extends TemplateElement {
     @Override
     TemplateElement[] accept(Environment env) throws TemplateException, IOException {
         final String importedTemplateName = importedTemplateNameExp.evalAndCoerceToPlainText(env);
-        final String fullImportedTemplateName;
         try {
-            fullImportedTemplateName = env.toFullTemplateName(getTemplate().getName(), importedTemplateName);
+            final CallSiteTemplateCache callSiteTemplateCache = getCallSiteTemplateCache();
+            if (callSiteTemplateCache != null && !env.getLazyImports()) {
+                env.importLib(
+                        callSiteTemplateCache.getTemplate(env, getTemplate(), null, true, false),
+                        targetNsVarName);
+            } else {
+                env.importLib(
+                        env.toFullTemplateName(getTemplate().getName(), importedTemplateName),
+                        targetNsVarName);
+            }
         } catch (MalformedTemplateNameException e) {
             throw new _MiscTemplateException(e, env,
                     "Malformed template name ", new _DelayedJQuote(e.getTemplateName()), ":\n",
                     e.getMalformednessDescription());
-        }
-        
-        try {
-            env.importLib(fullImportedTemplateName, targetNsVarName);
         } catch (IOException e) {
             throw new _MiscTemplateException(e, env,
                     "Template importing failed (for parameter value ",
@@ -72,6 +80,19 @@ public final class LibraryLoad extends TemplateElement {
         return null;
     }
 
+    /**
+     * Returns {@code null} if the template name isn't a literal, so there's nothing to cache.
+     */
+    private CallSiteTemplateCache getCallSiteTemplateCache() {
+        CallSiteTemplateCache callSiteTemplateCache = this.callSiteTemplateCache;
+        if (callSiteTemplateCache == null) {
+            // Concurrent executions might create multiple instances, but then only one of them will be kept.
+            callSiteTemplateCache = CallSiteTemplateCache.create(importedTemplateNameExp);
+            this.callSiteTemplateCache = callSiteTemplateCache;
+        }
+        return callSiteTemplateCache != CallSiteTemplateCache.NOT_APPLICABLE ? callSiteTemplateCache : null;
+    }
+
     @Override
     protected String dump(boolean canonical) {
         StringBuilder buf = new StringBuilder();
@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Resolves the references to the local variables of a macro (or function) to slot indexes of {@link Macro.Context},
+ * so that reading and writing them doesn't involve looking up the variable by name. This is done at parse time, when
+ * the {@link Macro} is created. The local variables that get a slot are the macro parameters, and the variables
+ * assigned with {@code #local} directly inside the macro definition.
+ * 
+ * <p>An {@link Identifier} is only resolved if it's lexically inside the macro definition, and it's not inside a
+ * directive that defines a loop variable (like {@code #list}, or a user-defined directive call with {@code ;}
+ * parameters) whose name could shadow the local variable. References that aren't resolved this way, like those in
+ * templates created with {@code ?interpret}, still work, as they fall back to looking up the variable by name.
+ * 
+ * <p>Loop variables themselves don't get a slot. They are stored in the {@link LocalContext}-s on the
+ * {@link Environment}'s local context stack, not in the {@link Macro.Context}, and the depth where a given loop
+ * variable is found on that stack can't be told at parse time: {@code #nested} replaces the stack with that of the
+ * caller, the {@code ;} parameters of user-defined directive calls are pushed by the directive implementation (if at
+ * all), and the loop variable of a {@code #list} only exists inside its {@code #items}. Also, as the innermost loop is
+ * on the top of the stack, reading a loop variable by name usually ends at the first stack entry, with a string
+ * comparison, which is cheap compared to the hash lookup of macro local variables that the slots replace.
+ */
+final class LocalVariableSlotResolver {
+    
+    private final Macro macro;
+
+    private LocalVariableSlotResolver(Macro macro) {
+        this.macro = macro;
+    }
+
+    /**
+     * Returns the names of the local variables that will have a slot: the parameters in declaration order, then the
+     * catch-all parameter, then the targets of the {@code #local} assignments in the order of appearance.
+     */
+    static String[] getLocalVariableNames(Macro macro) {
+        Set<String> names = new LinkedHashSet<String>();
+        String[] paramNames = macro.getArgumentNamesInternal();
+        for (int i = 0; i < paramNames.length; i++) {
+            names.add(paramNames[i]);
+        }
+        String catchAllParamName = macro.getCatchAll();
+        if (catchAllParamName != null) {
+            names.add(catchAllParamName);
+        }
+        for (int i = 0; i < macro.getChildCount(); i++) {
+            collectLocalAssignmentTargets(macro.getChild(i), names);
+        }
+        return names.toArray(new String[names.size()]);
+    }
+    
+    private static void collectLocalAssignmentTargets(TemplateElement element, Set<String> names) {
+        if (element instanceof Assignment) {
+            Assignment assignment = (Assignment) element;
+            if (assignment.getScope() == Assignment.LOCAL) {
+                names.add(assignment.getVariableName());
+            }
+        } else if (element instanceof BlockAssignment) {
+            BlockAssignment assignment = (BlockAssignment) element;
+            if (assignment.getScope() == Assignment.LOCAL) {
+                names.add(assignment.getVariableName());
+            }
+        }
+        for (int i = 0; i < element.getChildCount(); i++) {
+            collectLocalAssignmentTargets(element.getChild(i), names);
+        }
+    }
+
+    /**
+     * Resolves the references in the parameter default value expressions and in the body of the macro. The slots of
+     * the {@link Macro} must be already initialized.
+     */
+    static void resolveReferences(Macro macro) {
+        LocalVariableSlotResolver resolver = new LocalVariableSlotResolver(macro);
+        String[] paramNames = macro.getArgumentNamesInternal();
+        for (int i = 0; i < paramNames.length; i++) {
+            Expression defaultExp = macro.getParameterDefault(paramNames[i]);
+            if (defaultExp != null) {
+                resolver.resolveInTemplateObject(defaultExp, null);
+            }
+        }
+        for (int i = 0; i < macro.getChildCount(); i++) {
+            resolver.resolveInElement(macro.getChild(i), null);
+        }
+    }
+    
+    /**
+     * @param loopVarNames
+     *            The names of the loop variables visible at this point, or {@code null} if there's none.
+     */
+    private void resolveInElement(TemplateElement element, List<String> loopVarNames) {
+        if (element instanceof Assignment) {
+            // Writing a local variable isn't affected by loop variables, so this is resolved even inside loops.
+            Assignment assignment = (Assignment) element;
+            if (assignment.getScope() == Assignment.LOCAL) {
+                int slot = macro.getLocalVarSlot(assignment.getVariableName());
+                if (slot != -1) {
+                    assignment.setLocalVarSlot(macro, slot);
+                }
+            }
+        }
+        
+        List<String> nestedLoopVarNames = loopVarNames;
+        int paramCnt = element.getParameterCount();
+        for (int i = 0; i < paramCnt; i++) {
+            Object paramValue = element.getParameterValue(i);
+            if (element.getParameterRole(i) == ParameterRole.TARGET_LOOP_VARIABLE) {
+                if (paramValue instanceof String) {
+                    if (nestedLoopVarNames == loopVarNames) {
+                        nestedLoopVarNames = loopVarNames == null
+                                ? new ArrayList<String>(2) : new ArrayList<String>(loopVarNames);
+                    }
+                    nestedLoopVarNames.add((String) paramValue);
+                }
+            } else if (paramValue instanceof TemplateObject) {
+                // Parameters are evaluated outside the scope of the loop variables defined by the same element
+                resolveInTemplateObject((TemplateObject) paramValue, loopVarNames);
+            }
+        }
+        
+        for (int i = 0; i < element.getChildCount(); i++) {
+            resolveInElement(element.getChild(i), nestedLoopVarNames);
+        }
+    }
+    
+    private void resolveInTemplateObject(TemplateObject tObj, List<String> loopVarNames) {
+        if (tObj instanceof TemplateElement) {
+            resolveInElement((TemplateElement) tObj, loopVarNames);
+            return;
+        }
+        
+        if (tObj instanceof Identifier) {
+            Identifier identifier = (Identifier) tObj;
+            String name = identifier.getName();
+            if (!isPossiblyShadowed(name, loopVarNames)) {
+                int slot = macro.getLocalVarSlot(name);
+                if (slot != -1) {
+                    identifier.setLocalVarSlot(macro, slot);
+                }
+            }
+        }
+        
+        int paramCnt = tObj.getParameterCount();
+        for (int i = 0; i < paramCnt; i++) {
+            Object paramValue = tObj.getParameterValue(i);
+            if (paramValue instanceof TemplateObject) {
+                resolveInTemplateObject((TemplateObject) paramValue, loopVarNames);
+            }
+        }
+    }
+
+    /**
+     * Tells if the name can refer to a loop variable, considering also the legacy {@code loopVar_index} and
+     * {@code loopVar_has_next} names.
+     */
+    private static boolean isPossiblyShadowed(String name, List<String> loopVarNames) {
+        if (loopVarNames == null) {
+            return false;
+        }
+        for (String loopVarName : loopVarNames) {
+            if (name.startsWith(loopVarName)
+                    && (name.length() == loopVarName.length() || name.charAt(loopVarName.length()) == '_')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -21,6 +21,7 @@ package freemarker.core;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -52,6 +53,13 @@ public final class Macro extends TemplateElement implements TemplateModel {
     private final Map paramDefaults;
     private final String catchAllParamName;
     private final boolean function;
+    /**
+     * The names of the local variables that are stored in the slots of {@link Context}, indexed by slot; see
+     * {@link LocalVariableSlotResolver#getLocalVariableNames(Macro)}. The parameters come first, in declaration order.
+     */
+    private final String[] localVarNames;
+    /** Maps the elements of {@link #localVarNames} to their index. */
+    private final Map<String, Integer> localVarSlots;
 
     Macro(String name, List argumentNames, Map args, 
             String catchAllParamName, boolean function,
@@ -65,6 +73,25 @@ public final class Macro extends TemplateElement implements TemplateModel {
         this.catchAllParamName = catchAllParamName; 
         
         this.setChildren(children);
+        
+        localVarNames = LocalVariableSlotResolver.getLocalVariableNames(this);
+        localVarSlots = new HashMap<String, Integer>(localVarNames.length * 4 / 3 + 1, 1f);
+        for (int i = 0; i < localVarNames.length; i++) {
+            localVarSlots.put(localVarNames[i], Integer.valueOf(i));
+        }
+        LocalVariableSlotResolver.resolveReferences(this);
+    }
+    
+    /**
+     * Returns the slot index of the local variable in {@link Context}, or -1 if the variable has no slot.
+     */
+    int getLocalVarSlot(String name) {
+        Integer slot = localVarSlots.get(name);
+        return slot != null ? slot.intValue() : -1;
+    }
+    
+    Expression getParameterDefault(String paramName) {
+        return (Expression) paramDefaults.get(paramName);
     }
 
     public String getCatchAll() {
@@ -152,7 +179,24 @@ public final class Macro extends TemplateElement implements TemplateModel {
     }
 
     class Context implements LocalContext {
-        final Environment.Namespace localVars; 
+        /**
+         * The values of the local variables that have a slot (see {@link Macro#getLocalVarSlot(String)}); not used
+         * anymore if {@link #slotsAbandoned}.
+         */
+        private final TemplateModel[] localVarSlotValues;
+        /** If not {@code null}, tells which slots were explicitly set to {@code null}. */
+        private boolean[] localVarSlotsSetToNull;
+        /**
+         * The local variables that have no slot, or all local variables if {@link #slotsAbandoned}; {@code null} until
+         * it's first needed.
+         */
+        private Environment.Namespace localVars;
+        /**
+         * Set when the local variables were exposed as a {@link Environment.Namespace}, which then becomes the only
+         * storage of local variables, as it can be modified directly.
+         */
+        private boolean slotsAbandoned;
+        private final Environment env;
         final TemplateElement[] nestedContentBuffer;
         final Environment.Namespace nestedContentNamespace;
         final List nestedContentParameterNames;
@@ -162,7 +206,8 @@ public final class Macro extends TemplateElement implements TemplateModel {
         Context(Environment env, 
                 TemplateElement[] nestedContentBuffer,
                 List nestedContentParameterNames) {
-            this.localVars = env.new Namespace(); 
+            this.env = env;
+            this.localVarSlotValues = localVarNames.length != 0 ? new TemplateModel[localVarNames.length] : null;
             this.nestedContentBuffer = nestedContentBuffer;
             this.nestedContentNamespace = env.getCurrentNamespace();
             this.nestedContentParameterNames = nestedContentParameterNames;
@@ -186,7 +231,7 @@ public final class Macro extends TemplateElement implements TemplateModel {
                 resolvedAnArg = hasUnresolvedArg = false;
                 for (int i = 0; i < paramNames.length; ++i) {
                     String argName = paramNames[i];
-                    if (localVars.get(argName) == null) {
+                    if (getLocalVariable(i) == null) {
                         Expression valueExp = (Expression) paramDefaults.get(argName);
                         if (valueExp != null) {
                             try {
@@ -197,7 +242,7 @@ public final class Macro extends TemplateElement implements TemplateModel {
                                         hasUnresolvedArg = true;
                                     }
                                 } else {
-                                    localVars.put(argName, tm);
+                                    setLocalVar(i, tm);
                                     resolvedAnArg = true;
                                 }
                             } catch (InvalidReferenceException e) {
@@ -207,7 +252,7 @@ public final class Macro extends TemplateElement implements TemplateModel {
                                 }
                             }
                         } else if (!env.isClassicCompatible()) {
-                            boolean argWasSpecified = localVars.containsKey(argName);
+                            boolean argWasSpecified = isLocalVarSet(i);
                             throw new _MiscTemplateException(env,
                                     new _ErrorDescriptionBuilder(
                                             "When calling macro ", new _DelayedJQuote(name), 
@@ -245,10 +290,51 @@ public final class Macro extends TemplateElement implements TemplateModel {
          * or null if it doesn't exist.
          */ 
         public TemplateModel getLocalVariable(String name) throws TemplateModelException {
-             return localVars.get(name);
+            if (!slotsAbandoned) {
+                int slot = getLocalVarSlot(name);
+                if (slot != -1) {
+                    return localVarSlotValues[slot];
+                }
+            }
+            return localVars != null ? localVars.get(name) : null;
+        }
+        
+        /**
+         * Returns the local variable stored in the given slot; see {@link Macro#getLocalVarSlot(String)}.
+         */
+        TemplateModel getLocalVariable(int slot) throws TemplateModelException {
+            return !slotsAbandoned ? localVarSlotValues[slot] : localVars.get(localVarNames[slot]);
+        }
+        
+        private boolean isLocalVarSet(int slot) {
+            if (slotsAbandoned) {
+                return localVars.containsKey(localVarNames[slot]);
+            }
+            return localVarSlotValues[slot] != null
+                    || (localVarSlotsSetToNull != null && localVarSlotsSetToNull[slot]);
         }
 
+        /**
+         * Returns the local variables as a {@link Environment.Namespace}. As the returned object is modifiable, after
+         * this the local variables will be stored only in that, instead of in the slots.
+         */
         Environment.Namespace getLocals() {
+            if (!slotsAbandoned) {
+                Environment.Namespace allLocalVars = getOrCreateLocalVars();
+                for (int slot = 0; slot < localVarNames.length; slot++) {
+                    if (isLocalVarSet(slot)) {
+                        allLocalVars.put(localVarNames[slot], localVarSlotValues[slot]);
+                    }
+                }
+                slotsAbandoned = true;
+            }
+            return localVars;
+        }
+        
+        private Environment.Namespace getOrCreateLocalVars() {
+            if (localVars == null) {
+                localVars = env.new Namespace();
+            }
             return localVars;
         }
         
@@ -256,13 +342,44 @@ public final class Macro extends TemplateElement implements TemplateModel {
          * Set a local variable in this macro 
          */
         void setLocalVar(String name, TemplateModel var) {
-            localVars.put(name, var);
+            int slot;
+            if (!slotsAbandoned && (slot = getLocalVarSlot(name)) != -1) {
+                setLocalVar(slot, var);
+            } else {
+                getOrCreateLocalVars().put(name, var);
+            }
+        }
+        
+        /**
+         * Sets the local variable stored in the given slot; see {@link Macro#getLocalVarSlot(String)}.
+         */
+        void setLocalVar(int slot, TemplateModel var) {
+            if (slotsAbandoned) {
+                localVars.put(localVarNames[slot], var);
+                return;
+            }
+            localVarSlotValues[slot] = var;
+            if (var == null) {
+                if (localVarSlotsSetToNull == null) {
+                    localVarSlotsSetToNull = new boolean[localVarNames.length];
+                }
+                localVarSlotsSetToNull[slot] = true;
+            }
         }
 
         public Collection getLocalVariableNames() throws TemplateModelException {
             HashSet result = new HashSet();
-            for (TemplateModelIterator it = localVars.keys().iterator(); it.hasNext(); ) {
-                result.add(it.next().toString());
+            if (!slotsAbandoned) {
+                for (int slot = 0; slot < localVarNames.length; slot++) {
+                    if (isLocalVarSet(slot)) {
+                        result.add(localVarNames[slot]);
+                    }
+                }
+            }
+            if (localVars != null) {
+                for (TemplateModelIterator it = localVars.keys().iterator(); it.hasNext(); ) {
+                    result.add(it.next().toString());
+                }
             }
             return result;
         }
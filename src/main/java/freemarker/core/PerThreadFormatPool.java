@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import java.text.Format;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-thread copies of the Java {@link Format}-s that are stored in the global format caches of
+ * {@link JavaTemplateNumberFormatFactory} and {@link JavaTemplateDateFormatFactory}. As {@link Format}-s aren't
+ * thread-safe, the globally cached instances are only used as prototypes, and earlier they were cloned for each
+ * {@link Environment} that has used them. Now each thread clones a prototype only once, and then reuses that copy in
+ * all the {@link Environment}-s that it processes. The {@link TemplateNumberFormat}-s and
+ * {@link TemplateDateFormat}-s that wrap the copies must check if they are used on the thread that has created them,
+ * as {@link Environment}-s aren't necessarily confined to a single thread.
+ * 
+ * <p>
+ * The number of copies per thread is limited to {@value #MAX_COPIES_PER_THREAD}; if that's reached, all the copies
+ * of the thread are discarded (similarly to how the global format caches are flushed if they become too big). The
+ * thread-local storage only contains objects of Java SE classes, so it doesn't prevent unloading FreeMarker when it
+ * was loaded by a web application class loader, and the threads are owned by the container.
+ */
+final class PerThreadFormatPool {
+
+    static final int MAX_COPIES_PER_THREAD = 128;
+
+    /** Maps the prototypes to the copy owned by the current thread. */
+    private static final ThreadLocal<IdentityHashMap<Format, Format>> COPIES_BY_PROTOTYPE
+            = new ThreadLocal<IdentityHashMap<Format, Format>>();
+
+    private static final AtomicLong HIT_COUNT = new AtomicLong();
+    private static final AtomicLong MISS_COUNT = new AtomicLong();
+
+    private PerThreadFormatPool() {
+        // Not meant to be instantiated
+    }
+
+    /**
+     * Returns the copy of the prototype that belongs to the current thread; creates it if it doesn't exist yet.
+     * 
+     * @param prototype
+     *            A {@link Format} that's never used for formatting or parsing, and is never modified, like an
+     *            element of a global format cache.
+     */
+    static Format getCopy(Format prototype) {
+        IdentityHashMap<Format, Format> copiesByPrototype = COPIES_BY_PROTOTYPE.get();
+        if (copiesByPrototype == null) {
+            copiesByPrototype = new IdentityHashMap<Format, Format>();
+            COPIES_BY_PROTOTYPE.set(copiesByPrototype);
+        }
+        
+        Format copy = copiesByPrototype.get(prototype);
+        if (copy != null) {
+            HIT_COUNT.incrementAndGet();
+            return copy;
+        }
+        
+        MISS_COUNT.incrementAndGet();
+        if (copiesByPrototype.size() >= MAX_COPIES_PER_THREAD) {
+            copiesByPrototype.clear();
+        }
+        copy = (Format) prototype.clone();
+        copiesByPrototype.put(prototype, copy);
+        return copy;
+    }
+
+    /**
+     * The number of {@link #getCopy(Format)} calls (in the whole JVM) that have reused an existing copy.
+     */
+    static long getHitCount() {
+        return HIT_COUNT.get();
+    }
+
+    /**
+     * The number of {@link #getCopy(Format)} calls (in the whole JVM) that had to clone the prototype.
+     */
+    static long getMissCount() {
+        return MISS_COUNT.get();
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import java.util.Locale;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+/**
+ * Receives callbacks about the processing of templates, so that it can be measured where the time is spent; set it
+ * with {@link Configuration#setProcessingInstrumentation(ProcessingInstrumentation)}. All methods do nothing by
+ * default, so subclasses only have to override what they are interested in. For a ready to use implementation that
+ * aggregates counts and latency histograms, and exposes them via JMX, see {@link ProcessingStatistics}.
+ * 
+ * <p>
+ * The methods are called from the threads that process the templates, so the implementation must be thread-safe, and
+ * it must be fast, as some callbacks are called for each template element that's executed. The durations are measured
+ * with {@link System#nanoTime()}, and include the time spent in nested elements, macro calls and includes. The
+ * {@code ...Ended} methods are called even if the measured operation has thrown an exception. When no instrumentation
+ * was set (that's the default), the only cost of this mechanism is a {@code null} check at the instrumentation points.
+ * 
+ * @since 2.3.26
+ */
+public abstract class ProcessingInstrumentation {
+
+    /**
+     * Called when {@link Environment#process()} starts, before the auto-imports and auto-includes are executed.
+     */
+    public void processingStarted(Environment env) {
+        // Does nothing by default
+    }
+
+    /**
+     * Called when {@link Environment#process()} has finished, normally or with exception.
+     * 
+     * @param durationNanos
+     *            The time spent in {@link Environment#process()}, in nanoseconds.
+     */
+    public void processingEnded(Environment env, long durationNanos) {
+        // Does nothing by default
+    }
+
+    /**
+     * Called before executing a template element (like a directive call, an interpolation, or a static text). As
+     * elements are nested into each other, this can be called again before {@link #elementEnded} was called for the
+     * previous element.
+     */
+    public void elementStarted(Environment env, TemplateElement element) {
+        // Does nothing by default
+    }
+
+    /**
+     * Called after a template element was executed, normally or with exception.
+     * 
+     * @param durationNanos
+     *            The time spent executing the element, including its nested content, in nanoseconds.
+     */
+    public void elementEnded(Environment env, TemplateElement element, long durationNanos) {
+        // Does nothing by default
+    }
+
+    /**
+     * Called before a macro or function (defined in a template) is executed.
+     */
+    public void macroStarted(Environment env, Macro macro) {
+        // Does nothing by default
+    }
+
+    /**
+     * Called after a macro or function (defined in a template) was executed, normally or with exception.
+     * 
+     * @param durationNanos
+     *            The time spent executing the macro or function, in nanoseconds.
+     */
+    public void macroEnded(Environment env, Macro macro, long durationNanos) {
+        // Does nothing by default
+    }
+
+    /**
+     * Called before a template is executed because of {@code #include}, or because of {@code #import} (which executes
+     * the imported template once per {@link Environment}).
+     */
+    public void includeStarted(Environment env, Template includedTemplate) {
+        // Does nothing by default
+    }
+
+    /**
+     * Called after a template was executed because of {@code #include} or {@code #import}, normally or with exception.
+     * 
+     * @param durationNanos
+     *            The time spent executing the included template, in nanoseconds.
+     */
+    public void includeEnded(Environment env, Template includedTemplate, long durationNanos) {
+        // Does nothing by default
+    }
+
+    /**
+     * Called after the template cache has loaded (and parsed) a template, or has tried to do so but failed. This is
+     * not called when the template was found in the cache. Unlike the other callbacks, this is called outside template
+     * processing too, like when the application calls {@link Configuration#getTemplate(String)}.
+     * 
+     * @param templateName
+     *            The normalized name of the template, as it was requested.
+     * @param locale
+     *            The requested locale of the template.
+     * @param durationNanos
+     *            The time spent loading the template, in nanoseconds.
+     */
+    public void templateLoaded(String templateName, Locale locale, long durationNanos) {
+        // Does nothing by default
+    }
+
+}
@@ -0,0 +1,450 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+/**
+ * A {@link ProcessingInstrumentation} that aggregates the number of executions and the latency distribution of
+ * templates, macros (and functions), directive calls, and template loadings; to use it, set it with
+ * {@link Configuration#setProcessingInstrumentation(ProcessingInstrumentation)} (or with the
+ * {@code processing_instrumentation} setting, like {@code processing_instrumentation=ProcessingStatistics()}), then
+ * query it with the {@code get...Timings()} methods, or via JMX, as it's a standard MBean (see
+ * {@link ProcessingStatisticsMBean}).
+ * 
+ * <p>
+ * The measurements are recorded into lock-free counters and fixed size histograms, so the overhead is a few calls to
+ * {@link System#nanoTime()} and some atomic increments per measured item, and the memory usage doesn't grow with the
+ * number of measurements. The histograms have 4 sub-buckets per power of 2, so the reported percentiles are upper
+ * bounds with at most 25% relative error. The durations are inclusive, that is, the time spent in the nested content,
+ * called macros and included templates is counted for the caller as well.
+ * 
+ * <p>
+ * The statistics of macros and directive calls are collected per {@link Macro} and {@link TemplateElement} object, and
+ * are only merged by name when they are queried. Thus, they keep the templates they belong to reachable (even if those
+ * were already removed from the template cache), until {@link #reset()} is called.
+ * 
+ * @since 2.3.26
+ */
+public class ProcessingStatistics extends ProcessingInstrumentation implements ProcessingStatisticsMBean {
+
+    /** Values below this are stored exactly; above this, each power of 2 range has this many sub-buckets. */
+    private static final int SUB_BUCKET_COUNT = 4;
+    private static final int SUB_BUCKET_BITS = 2;
+    /** Values from 2**{@value} (about 18 minutes in nanoseconds) fall into the last bucket. */
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private static final String[] ITEM_NAMES = new String[] {
+            "name", "count", "totalMillis", "meanMillis", "maxMillis", "p50Millis", "p90Millis", "p99Millis" };
+    private static final CompositeType TIMING_TYPE;
+    private static final TabularType TIMINGS_TYPE;
+    static {
+        try {
+            TIMING_TYPE = new CompositeType(
+                    "freemarker.core.ProcessingStatistics.Timing",
+                    "Execution count and latency statistics",
+                    ITEM_NAMES,
+                    new String[] {
+                            "The name of the measured item",
+                            "The number of measurements",
+                            "The sum of the durations, in milliseconds",
+                            "The mean duration, in milliseconds",
+                            "The maximal duration, in milliseconds",
+                            "The median duration (approximate upper bound), in milliseconds",
+                            "The 90th percentile duration (approximate upper bound), in milliseconds",
+                            "The 99th percentile duration (approximate upper bound), in milliseconds" },
+                    new OpenType[] {
+                            SimpleType.STRING, SimpleType.LONG, SimpleType.DOUBLE, SimpleType.DOUBLE,
+                            SimpleType.DOUBLE, SimpleType.DOUBLE, SimpleType.DOUBLE, SimpleType.DOUBLE });
+            TIMINGS_TYPE = new TabularType(
+                    "freemarker.core.ProcessingStatistics.Timings",
+                    "Execution count and latency statistics by name",
+                    TIMING_TYPE,
+                    new String[] { "name" });
+        } catch (OpenDataException e) {
+            throw new BugException(e);
+        }
+    }
+
+    private final ConcurrentMap<String, Timing> templateTimings = new ConcurrentHashMap<String, Timing>();
+    private final ConcurrentMap<Macro, Timing> macroTimings = new ConcurrentHashMap<Macro, Timing>();
+    private final ConcurrentMap<TemplateElement, Timing> directiveTimings
+            = new ConcurrentHashMap<TemplateElement, Timing>();
+    private final ConcurrentMap<String, Timing> templateLoadingTimings = new ConcurrentHashMap<String, Timing>();
+
+    @Override
+    public void processingEnded(Environment env, long durationNanos) {
+        getTiming(templateTimings, getTemplateName(env.getMainTemplate())).record(durationNanos);
+    }
+
+    @Override
+    public void includeEnded(Environment env, Template includedTemplate, long durationNanos) {
+        getTiming(templateTimings, getTemplateName(includedTemplate)).record(durationNanos);
+    }
+
+    @Override
+    public void macroEnded(Environment env, Macro macro, long durationNanos) {
+        getTiming(macroTimings, macro).record(durationNanos);
+    }
+
+    @Override
+    public void elementEnded(Environment env, TemplateElement element, long durationNanos) {
+        if (isDirectiveCall(element)) {
+            getTiming(directiveTimings, element).record(durationNanos);
+        }
+    }
+
+    @Override
+    public void templateLoaded(String templateName, Locale locale, long durationNanos) {
+        getTiming(templateLoadingTimings, templateName).record(durationNanos);
+    }
+
+    /**
+     * Tells if the element is measured as a directive call; the static text, interpolations, and macro definitions
+     * aren't, as they are too numerous and uninteresting.
+     */
+    private static boolean isDirectiveCall(TemplateElement element) {
+        if (element instanceof Macro) {
+            return false;
+        }
+        String symbol = element.getNodeTypeSymbol();
+        char c = symbol.charAt(0);
+        return c == '@'
+                || c == '#' && symbol.length() > 1 && Character.isLetter(symbol.charAt(1))
+                        && !symbol.equals("#text") && !symbol.equals("#mixed_content");
+    }
+
+    private static <K> Timing getTiming(ConcurrentMap<K, Timing> timings, K key) {
+        Timing timing = timings.get(key);
+        if (timing == null) {
+            timing = new Timing();
+            Timing prevTiming = timings.putIfAbsent(key, timing);
+            if (prevTiming != null) {
+                timing = prevTiming;
+            }
+        }
+        return timing;
+    }
+
+    private static String getTemplateName(Template template) {
+        String name = template.getSourceName();
+        return name != null ? name : "(unnamed)";
+    }
+
+    /**
+     * Returns the statistics of executing templates, by template source name. This includes the processing of the
+     * main template (see {@link Environment#process()}), and the executions caused by {@code #include} and
+     * {@code #import}.
+     * 
+     * @return A snapshot of the current statistics, sorted by name; not {@code null}.
+     */
+    public SortedMap<String, Timing> getTemplateTimings() {
+        return snapshot(templateTimings);
+    }
+
+    /**
+     * Returns the statistics of macro and function calls, by names like {@code "lib/commons.ftl:myMacro"} (the
+     * template source name, and the macro name).
+     * 
+     * @return A snapshot of the current statistics, sorted by name; not {@code null}.
+     */
+    public SortedMap<String, Timing> getMacroTimings() {
+        return snapshot(macroTimings);
+    }
+
+    /**
+     * Returns the statistics of the directive calls (both of the predefined directives, like {@code #list}, and of
+     * the user-defined ones, like {@code <@myMacro />}), by names like {@code "foo.ftl:12:5 #list users as user"} (the
+     * template source name, the line and column number of the call, and the description of the call).
+     * 
+     * @return A snapshot of the current statistics, sorted by name; not {@code null}.
+     */
+    public SortedMap<String, Timing> getDirectiveTimings() {
+        return snapshot(directiveTimings);
+    }
+
+    /**
+     * Returns the statistics of loading (and parsing) templates in the template cache, by normalized template name.
+     * 
+     * @return A snapshot of the current statistics, sorted by name; not {@code null}.
+     */
+    public SortedMap<String, Timing> getTemplateLoadingTimings() {
+        return snapshot(templateLoadingTimings);
+    }
+
+    /**
+     * The number of times a {@link java.text.NumberFormat} or {@link java.text.DateFormat} (used for a
+     * {@code number_format}, {@code date_format}, etc. setting value that's a Java pattern) was reused from the
+     * per-thread pool instead of cloning the globally cached instance. Unlike the other statistics, this is JVM-wide
+     * (not specific to this object or to a {@link freemarker.template.Configuration}), and isn't affected by
+     * {@link #reset()}.
+     */
+    public long getFormatPoolHitCount() {
+        return PerThreadFormatPool.getHitCount();
+    }
+
+    /**
+     * The number of times a {@link java.text.NumberFormat} or {@link java.text.DateFormat} had to be cloned, because
+     * the per-thread pool had no copy of it yet. See {@link #getFormatPoolHitCount()} for more.
+     */
+    public long getFormatPoolMissCount() {
+        return PerThreadFormatPool.getMissCount();
+    }
+
+    /**
+     * Discards all statistics collected so far.
+     */
+    public void reset() {
+        templateTimings.clear();
+        macroTimings.clear();
+        directiveTimings.clear();
+        templateLoadingTimings.clear();
+    }
+
+    public TabularData getTemplates() {
+        return toTabularData(getTemplateTimings());
+    }
+
+    public TabularData getMacros() {
+        return toTabularData(getMacroTimings());
+    }
+
+    public TabularData getDirectives() {
+        return toTabularData(getDirectiveTimings());
+    }
+
+    public TabularData getTemplateLoadings() {
+        return toTabularData(getTemplateLoadingTimings());
+    }
+
+    private static SortedMap<String, Timing> snapshot(ConcurrentMap<?, Timing> timings) {
+        SortedMap<String, Timing> result = new TreeMap<String, Timing>();
+        for (Map.Entry<?, Timing> ent : timings.entrySet()) {
+            String name = getName(ent.getKey());
+            Timing mergedTiming = result.get(name);
+            if (mergedTiming == null) {
+                mergedTiming = new Timing();
+                result.put(name, mergedTiming);
+            }
+            mergedTiming.add(ent.getValue());
+        }
+        return Collections.unmodifiableSortedMap(result);
+    }
+
+    private static String getName(Object key) {
+        if (key instanceof String) {
+            return (String) key;
+        } else if (key instanceof Macro) {
+            Macro macro = (Macro) key;
+            return getTemplateName(macro.getTemplate()) + ":" + macro.getName();
+        } else {
+            TemplateElement element = (TemplateElement) key;
+            return getTemplateName(element.getTemplate()) + ":" + element.getBeginLine() + ":"
+                    + element.getBeginColumn() + " " + element.getDescription();
+        }
+    }
+
+    private static TabularData toTabularData(SortedMap<String, Timing> timings) {
+        TabularDataSupport result = new TabularDataSupport(TIMINGS_TYPE);
+        try {
+            for (Map.Entry<String, Timing> ent : timings.entrySet()) {
+                Timing timing = ent.getValue();
+                result.put(new CompositeDataSupport(TIMING_TYPE, ITEM_NAMES, new Object[] {
+                        ent.getKey(),
+                        Long.valueOf(timing.getCount()),
+                        toMillis(timing.getTotalNanos()),
+                        toMillis(timing.getMeanNanos()),
+                        toMillis(timing.getMaxNanos()),
+                        toMillis(timing.getPercentileNanos(50)),
+                        toMillis(timing.getPercentileNanos(90)),
+                        toMillis(timing.getPercentileNanos(99)) }));
+            }
+        } catch (OpenDataException e) {
+            throw new BugException(e);
+        }
+        return result;
+    }
+
+    private static Double toMillis(long nanos) {
+        return Double.valueOf(nanos / 1000000.0);
+    }
+
+    /**
+     * Index of the histogram bucket that contains the given duration.
+     */
+    static int getBucketIndex(long nanos) {
+        if (nanos < SUB_BUCKET_COUNT) {
+            return nanos > 0 ? (int) nanos : 0;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * The highest duration that falls into the given histogram bucket.
+     */
+    static long getBucketUpperBound(int bucketIndex) {
+        if (bucketIndex < SUB_BUCKET_COUNT) {
+            return bucketIndex;
+        }
+        if (bucketIndex == BUCKET_COUNT - 1) {
+            return Long.MAX_VALUE;
+        }
+        int exponent = bucketIndex / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        int subBucket = bucketIndex % SUB_BUCKET_COUNT;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * The execution count and latency statistics of an item.
+     * 
+     * @since 2.3.26
+     */
+    public static final class Timing {
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_COUNT);
+
+        Timing() {
+            // Not public
+        }
+
+        void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;  // System.nanoTime() isn't guaranteed to be monotonic on all platforms
+            }
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long prevMaxNanos;
+            while (nanos > (prevMaxNanos = maxNanos.get())) {
+                if (maxNanos.compareAndSet(prevMaxNanos, nanos)) {
+                    break;
+                }
+            }
+            histogram.incrementAndGet(getBucketIndex(nanos));
+        }
+
+        private void add(Timing other) {
+            count.addAndGet(other.count.get());
+            totalNanos.addAndGet(other.totalNanos.get());
+            maxNanos.set(Math.max(maxNanos.get(), other.maxNanos.get()));
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                long bucketCount = other.histogram.get(i);
+                if (bucketCount != 0) {
+                    histogram.addAndGet(i, bucketCount);
+                }
+            }
+        }
+
+        /**
+         * The number of measurements.
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * The sum of the measured durations, in nanoseconds.
+         */
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        /**
+         * The mean of the measured durations, in nanoseconds, or 0 if there were no measurements.
+         */
+        public long getMeanNanos() {
+            long count = getCount();
+            return count != 0 ? getTotalNanos() / count : 0;
+        }
+
+        /**
+         * The longest measured duration, in nanoseconds, or 0 if there were no measurements.
+         */
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        /**
+         * Returns an upper bound of the given percentile of the measured durations, in nanoseconds, or 0 if there were
+         * no measurements. As the durations are stored in a histogram, the returned value can be higher than the real
+         * percentile by at most 25%, but it's never higher than {@link #getMaxNanos()}.
+         * 
+         * @param percentile
+         *            Between 0 and 100, like 99 for the 99th percentile.
+         */
+        public long getPercentileNanos(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile must be between 0 and 100, but was " + percentile);
+            }
+            long totalCount = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                totalCount += histogram.get(i);
+            }
+            if (totalCount == 0) {
+                return 0;
+            }
+            long targetCount = Math.max(1, (long) Math.ceil(totalCount * percentile / 100));
+            long cumulativeCount = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                cumulativeCount += histogram.get(i);
+                if (cumulativeCount >= targetCount) {
+                    return Math.min(getBucketUpperBound(i), getMaxNanos());
+                }
+            }
+            return getMaxNanos();
+        }
+
+        @Override
+        public String toString() {
+            return "Timing(count=" + getCount() + ", totalNanos=" + getTotalNanos() + ", maxNanos=" + getMaxNanos()
+                    + ")";
+        }
+
+    }
+
+}
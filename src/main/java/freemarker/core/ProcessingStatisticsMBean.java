@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import javax.management.openmbean.TabularData;
+
+/**
+ * The JMX management interface of {@link ProcessingStatistics}; as it follows the standard MBean naming convention, a
+ * {@link ProcessingStatistics} can be registered as is, like
+ * {@code ManagementFactory.getPlatformMBeanServer().registerMBean(statistics, new ObjectName(...))}. The tabular
+ * attributes have a row for each measured item (indexed by the {@code name} column), with the number of measurements,
+ * and with the total, mean, maximal, and some approximate percentile durations in milliseconds.
+ * 
+ * @since 2.3.26
+ */
+public interface ProcessingStatisticsMBean {
+
+    /** See {@link ProcessingStatistics#getTemplateTimings()}. */
+    TabularData getTemplates();
+
+    /** See {@link ProcessingStatistics#getMacroTimings()}. */
+    TabularData getMacros();
+
+    /** See {@link ProcessingStatistics#getDirectiveTimings()}. */
+    TabularData getDirectives();
+
+    /** See {@link ProcessingStatistics#getTemplateLoadingTimings()}. */
+    TabularData getTemplateLoadings();
+
+    /** See {@link ProcessingStatistics#getFormatPoolHitCount()}. */
+    long getFormatPoolHitCount();
+
+    /** See {@link ProcessingStatistics#getFormatPoolMissCount()}. */
+    long getFormatPoolMissCount();
+
+    /** See {@link ProcessingStatistics#reset()}. */
+    void reset();
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import java.util.Locale;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+/**
+ * Key in the cache of the parse results of {@code ?eval} and {@code ?interpret}; see
+ * {@link Configuration#setRuntimeParseCacheSize(int)}. Besides the parsed source code, it contains everything that
+ * influences the parse result: the built-in call (which determines the template that contains it, and thus the
+ * {@link ParserConfiguration}, and also the output format and auto-escaping policy inherited from the lexical context),
+ * and for {@code ?interpret}, the template and locale of the {@link Environment} at the time of the call, and the
+ * name suffix of the created template. The built-in and the templates are compared by identity.
+ */
+final class RuntimeParseCacheKey {
+
+    private final BuiltIn builtIn;
+    private final Template envTemplate;
+    private final Locale locale;
+    private final String id;
+    private final String source;
+
+    RuntimeParseCacheKey(BuiltIn builtIn, Template envTemplate, Locale locale, String id, String source) {
+        this.builtIn = builtIn;
+        this.envTemplate = envTemplate;
+        this.locale = locale;
+        this.id = id;
+        this.source = source;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = System.identityHashCode(builtIn);
+        result = 31 * result + System.identityHashCode(envTemplate);
+        result = 31 * result + (locale != null ? locale.hashCode() : 0);
+        result = 31 * result + (id != null ? id.hashCode() : 0);
+        result = 31 * result + source.hashCode();
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof RuntimeParseCacheKey)) return false;
+        RuntimeParseCacheKey other = (RuntimeParseCacheKey) obj;
+        return builtIn == other.builtIn
+                && envTemplate == other.envTemplate
+                && (locale == null ? other.locale == null : locale.equals(other.locale))
+                && (id == null ? other.id == null : id.equals(other.id))
+                && source.equals(other.source);
+    }
+
+}
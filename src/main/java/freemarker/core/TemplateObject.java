@@ -19,12 +19,21 @@
 
 package freemarker.core;
 
+import java.io.Serializable;
+
 import freemarker.template.Template;
 
 /**
  * <b>Internal API - subject to change:</b> Represent a node in the parsed template (either a {@link Expression} or a
  * {@link TemplateElement}).
  * 
+ * <p>
+ * The AST is {@link Serializable} only so that the parse result can be saved (see {@code Template.writeParseResult});
+ * when it's deserialized, the {@link Template} and the {@code OutputFormat}-s must be substituted by the stream. The
+ * AST classes deliberately don't declare a {@code serialVersionUID}, as the saved parse results are only valid for the
+ * exact FreeMarker build that has written them (the reader checks that before deserializing anything). Fields that
+ * only hold runtime caches must be {@code transient}.
+ * 
  * @see TemplateElement
  * @see Expression
  * 
@@ -32,7 +41,7 @@ import freemarker.template.Template;
  *             it.
  */
 @Deprecated
-public abstract class TemplateObject {
+public abstract class TemplateObject implements Serializable {
     
     private Template template;
     int beginColumn, beginLine, endColumn, endLine;
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+/**
+ * Gives a rough estimate of the heap used by a parsed template; see {@link _CoreAPI#estimateTemplateTreeSize}. It
+ * assumes a 64 bit JVM with compressed references, and it counts the objects reachable from the tree as if they
+ * weren't shared with anything else (like interned {@link String}-s or cached models are).
+ */
+final class TemplateTreeSizeEstimator {
+    
+    private static final int ELEMENT_SIZE = 64;
+    private static final int EXPRESSION_SIZE = 48;
+    private static final int ARRAY_HEADER_SIZE = 16;
+    private static final int REFERENCE_SIZE = 4;
+    private static final int STRING_SIZE = 24 + ARRAY_HEADER_SIZE;
+    
+    private TemplateTreeSizeEstimator() {
+        // Not meant to be instantiated
+    }
+    
+    static long estimate(TemplateObject tObj) {
+        long size;
+        if (tObj instanceof TemplateElement) {
+            TemplateElement element = (TemplateElement) tObj;
+            size = ELEMENT_SIZE;
+            int childCount = element.getChildCount();
+            if (childCount != 0) {
+                size += ARRAY_HEADER_SIZE + (long) element.getChildBuffer().length * REFERENCE_SIZE;
+                for (int i = 0; i < childCount; i++) {
+                    size += estimate(element.getChild(i));
+                }
+            }
+        } else {
+            size = EXPRESSION_SIZE;
+        }
+        
+        int paramCnt = tObj.getParameterCount();
+        for (int i = 0; i < paramCnt; i++) {
+            Object paramValue = tObj.getParameterValue(i);
+            if (paramValue instanceof TemplateObject) {
+                size += estimate((TemplateObject) paramValue);
+            } else if (paramValue instanceof String) {
+                size += STRING_SIZE + 2L * ((String) paramValue).length();
+            }
+        }
+        return size;
+    }
+
+}
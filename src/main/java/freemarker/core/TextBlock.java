@@ -20,6 +20,10 @@
 package freemarker.core;
 
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
 
 import freemarker.template.utility.CollectionUtils;
 import freemarker.template.utility.StringUtil;
@@ -38,6 +42,8 @@ public final class TextBlock extends TemplateElement {
     // write. 
     private char[] text;
     private final boolean unparsed;
+    /** The {@link #text} encoded for an {@link EncodingWriter}; {@code null} until it's first needed. */
+    private transient volatile EncodedText encodedText;
 
     public TextBlock(String text) {
         this(text, false);
@@ -54,6 +60,7 @@ public final class TextBlock extends TemplateElement {
     
     void replaceText(String text) {
         this.text = text.toCharArray();
+        this.encodedText = null;
     }
 
     /**
@@ -64,9 +71,42 @@ public final class TextBlock extends TemplateElement {
     @Override
     public TemplateElement[] accept(Environment env)
     throws IOException {
-        env.getOut().write(text);
+        Writer out = env.getOut();
+        if (out instanceof EncodingWriter) {
+            EncodingWriter encOut = (EncodingWriter) out;
+            if (encOut.isPreEncodingAllowed()) {
+                encOut.writeEncoded(getEncodedText(encOut.getCharset()));
+                return null;
+            }
+        }
+        out.write(text);
         return null;
     }
+    
+    /**
+     * Returns the text encoded with the given charset; the result is cached for the last used charset. 
+     */
+    private byte[] getEncodedText(Charset charset) {
+        EncodedText encodedText = this.encodedText;
+        if (encodedText == null || !encodedText.charset.equals(charset)) {
+            ByteBuffer bb = charset.encode(CharBuffer.wrap(text));
+            byte[] bytes = new byte[bb.remaining()];
+            bb.get(bytes);
+            encodedText = new EncodedText(charset, bytes);
+            this.encodedText = encodedText;
+        }
+        return encodedText.bytes;
+    }
+    
+    private static class EncodedText {
+        private final Charset charset;
+        private final byte[] bytes;
+        
+        EncodedText(Charset charset, byte[] bytes) {
+            this.charset = charset;
+            this.bytes = bytes;
+        }
+    }
 
     @Override
     protected String dump(boolean canonical) {
@@ -157,6 +157,13 @@ public class _CoreAPI {
         Environment.outputInstructionStack(instructionStackSnapshot, terseMode, pw);
     }
 
+    /**
+     * Returns a rough estimate of the heap used by the tree of the parsed template, in bytes.
+     */
+    public static long estimateTemplateTreeSize(TemplateElement rootElement) {
+        return rootElement != null ? TemplateTreeSizeEstimator.estimate(rootElement) : 0;
+    }
+
     /**
      * ATTENTION: This is used by https://github.com/kenshoo/freemarker-online. Don't break backward
      * compatibility without updating that project too! 
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * Used internally only, might changes without notice!
+ * Used for accessing functionality that's only present in Java 7 or later.
+ */
+public interface _Java7 {
+
+    /**
+     * Starts watching the given directory and all its subdirectories (including those created later) for file
+     * changes.
+     */
+    DirectoryTreeWatcher newDirectoryTreeWatcher(File dir) throws IOException;
+    
+    /**
+     * Creates an object that invokes the given method faster than {@link Method#invoke(Object, Object...)} does, or
+     * returns {@code null} if that's not possible for the method (like because of access restrictions).
+     */
+    MethodInvoker newMethodInvoker(Method method);
+    
+    /**
+     * Used internally only, might changes without notice!
+     */
+    interface DirectoryTreeWatcher {
+        
+        /**
+         * Waits for file changes at most for the given amount of time, and returns the paths of the changed files
+         * (created, modified or deleted) relatively to the watched directory, using {@code /} as separator. If
+         * events might have been lost, the returned list contains {@code null} too. Returns an empty list on timeout.
+         */
+        List pollChanges(long timeoutMillis) throws IOException, InterruptedException;
+        
+        /**
+         * Stops watching; after this {@link #pollChanges(long)} will throw exception.
+         */
+        void close() throws IOException;
+        
+    }
+    
+    /**
+     * Used internally only, might changes without notice!
+     */
+    interface MethodInvoker {
+        
+        /**
+         * Invokes the method like {@link Method#invoke(Object, Object...)} does, except that the caller must ensure
+         * that the arguments are valid: the target must be an instance of the declaring class (unless the method is
+         * static), and the arguments must be accepted by {@link Method#invoke(Object, Object...)} for the parameter
+         * types, and their number must be the same as the number of parameters (no {@code null} array).
+         * 
+         * @throws InvocationTargetException
+         *             Wraps anything that the invoked method has thrown.
+         */
+        Object invoke(Object target, Object[] args) throws InvocationTargetException;
+        
+    }
+    
+}
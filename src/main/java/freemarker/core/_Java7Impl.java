@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import static java.nio.file.LinkOption.*;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Used internally only, might changes without notice!
+ * Used for accessing functionality that's only present in Java 7 or later.
+ */
+public final class _Java7Impl implements _Java7 {
+    
+    public static final _Java7 INSTANCE = new _Java7Impl();
+
+    private _Java7Impl() {
+        // Not meant to be instantiated
+    }
+
+    public DirectoryTreeWatcher newDirectoryTreeWatcher(File dir) throws IOException {
+        return new WatchServiceDirectoryTreeWatcher(dir);
+    }
+    
+    public MethodInvoker newMethodInvoker(Method method) {
+        MethodHandle mh;
+        try {
+            mh = MethodHandles.publicLookup().unreflect(method).asFixedArity();
+        } catch (Exception e) {
+            // Like IllegalAccessException, or SecurityException
+            return null;
+        }
+        if (Modifier.isStatic(method.getModifiers())) {
+            mh = MethodHandles.dropArguments(mh, 0, Object.class);
+        }
+        final int paramCount = method.getParameterTypes().length;
+        // Method.invoke compatible argument conversions; see MethodHandle.asType:
+        mh = mh.asType(MethodType.genericMethodType(paramCount + 1));
+        mh = mh.asSpreader(Object[].class, paramCount);
+        return new MethodHandleMethodInvoker(mh);
+    }
+    
+    private static final class MethodHandleMethodInvoker implements MethodInvoker {
+        
+        /** Has the exact type {@code (Object, Object[])Object}. */
+        private final MethodHandle mh;
+
+        MethodHandleMethodInvoker(MethodHandle mh) {
+            this.mh = mh;
+        }
+
+        public Object invoke(Object target, Object[] args) throws InvocationTargetException {
+            try {
+                return mh.invokeExact(target, args);
+            } catch (Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+        
+    }
+    
+    private static final class WatchServiceDirectoryTreeWatcher implements DirectoryTreeWatcher {
+        
+        private final Path baseDir;
+        private final WatchService watchService;
+        /** Only accessed by the thread that polls the changes (and before that, by the constructor). */
+        private final Map<WatchKey, Path> watchedDirs = new HashMap<WatchKey, Path>();
+        
+        WatchServiceDirectoryTreeWatcher(File dir) throws IOException {
+            baseDir = dir.toPath();
+            watchService = baseDir.getFileSystem().newWatchService();
+            try {
+                registerDirectoryTree(baseDir, null);
+            } catch (IOException e) {
+                watchService.close();
+                throw e;
+            }
+        }
+
+        public List pollChanges(long timeoutMillis) throws IOException, InterruptedException {
+            List<String> changes = new ArrayList<String>();
+            WatchKey key = watchService.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            while (key != null) {
+                final Path dir = watchedDirs.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW || dir == null) {
+                        changes.add(null);
+                        continue;
+                    }
+                    
+                    final Path changed = dir.resolve((Path) event.context());
+                    changes.add(toRelativePath(changed));
+                    if (event.kind() == ENTRY_CREATE && Files.isDirectory(changed, NOFOLLOW_LINKS)) {
+                        try {
+                            // Files might were created in it before we have started watching it, so those are
+                            // reported as changes too.
+                            registerDirectoryTree(changed, changes);
+                        } catch (IOException e) {
+                            changes.add(null);
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    // The directory was deleted
+                    watchedDirs.remove(key);
+                }
+                key = watchService.poll();
+            }
+            return changes;
+        }
+
+        public void close() throws IOException {
+            watchService.close();
+        }
+
+        private void registerDirectoryTree(Path dir, final List<String> foundFiles) throws IOException {
+            Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path subDir, BasicFileAttributes attrs)
+                        throws IOException {
+                    watchedDirs.put(subDir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), subDir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (foundFiles != null) {
+                        foundFiles.add(toRelativePath(file));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                    // Most probably it was deleted meanwhile
+                    return FileVisitResult.CONTINUE;
+                }
+                
+            });
+        }
+        
+        private String toRelativePath(Path path) {
+            final String relPath = baseDir.relativize(path).toString();
+            return File.separatorChar == '/' ? relPath : relPath.replace(File.separatorChar, '/');
+        }
+        
+    }
+    
+}
@@ -31,27 +31,30 @@ public final class _JavaVersions {
         // Not meant to be instantiated
     }
 
-    private static final boolean IS_AT_LEAST_6;
-    static {
+    private static final boolean IS_AT_LEAST_6 = isAtLeast(6, "java.util.ServiceLoader");
+    private static final boolean IS_AT_LEAST_7 = isAtLeast(7, "java.nio.file.Path");
+    private static final boolean IS_AT_LEAST_8 = isAtLeast(8, "java.time.Instant");
+    
+    private static boolean isAtLeast(int minorVersion, String characteristicClassName) {
         boolean result = false;
         String vStr = SecurityUtilities.getSystemProperty("java.version", null);
         if (vStr != null) {
             try {
                 Version v = new Version(vStr);
-                result = v.getMajor() == 1 && v.getMinor() >= 6 || v.getMajor() > 1;
+                result = v.getMajor() == 1 && v.getMinor() >= minorVersion || v.getMajor() > 1;
             } catch (Exception e) {
                 // Ignore
             }
         }
         if (vStr == null) {
             try {
-                Class.forName("java.util.ServiceLoader");
+                Class.forName(characteristicClassName);
                 result = true;
             } catch (Exception e) {
                 // Ignore
             }
         }
-        IS_AT_LEAST_6 = result;
+        return result;
     }
     
     static public final _Java6 JAVA_6;
@@ -74,4 +77,44 @@ public final class _JavaVersions {
         JAVA_6 = java6;
     }
     
+    static public final _Java7 JAVA_7;
+    static {
+        _Java7 java7;
+        if (IS_AT_LEAST_7) {
+            try {
+                java7 = (_Java7) Class.forName("freemarker.core._Java7Impl").getField("INSTANCE").get(null);
+            } catch (Exception e) {
+                try {
+                    Logger.getLogger("freemarker.runtime").error("Failed to access Java 7 functionality", e);
+                } catch (Exception e2) {
+                    // Suppressed
+                }
+                java7 = null;
+            }
+        } else {
+            java7 = null;
+        }
+        JAVA_7 = java7;
+    }
+    
+    static public final _Java8 JAVA_8;
+    static {
+        _Java8 java8;
+        if (IS_AT_LEAST_8) {
+            try {
+                java8 = (_Java8) Class.forName("freemarker.core._Java8Impl").getField("INSTANCE").get(null);
+            } catch (Exception e) {
+                try {
+                    Logger.getLogger("freemarker.runtime").error("Failed to access Java 8 functionality", e);
+                } catch (Exception e2) {
+                    // Suppressed
+                }
+                java8 = null;
+            }
+        } else {
+            java8 = null;
+        }
+        JAVA_8 = java8;
+    }
+    
 }
@@ -688,6 +688,10 @@ public class _ObjectBuilderSettingEvaluator {
             addWithSimpleName(SHORTHANDS, PlainTextOutputFormat.class);
             addWithSimpleName(SHORTHANDS, UndefinedOutputFormat.class);
             
+            addWithSimpleName(SHORTHANDS, ProcessingStatistics.class);
+            // Not referred as class literal, as it's only present when compiled on Java 8:
+            SHORTHANDS.put("JavaTimeTemplateDateFormatFactory", "freemarker.core.JavaTimeTemplateDateFormatFactory");
+            
             addWithSimpleName(SHORTHANDS, Locale.class);
             SHORTHANDS.put("TimeZone", "freemarker.core._TimeZone");
 
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.ant;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.taskdefs.MatchingTask;
+
+import freemarker.cache.PrecompiledTemplateStore;
+import freemarker.template.Configuration;
+
+/**
+ * <p>This is an <a href="http://jakarta.apache.org/ant/" target="_top">Ant</a> task that parses the templates in a
+ * directory, and stores their parse results into a {@link PrecompiledTemplateStore} directory, so that the
+ * application needn't parse them when it starts. The parser related settings and the template encoding must be the
+ * same as the application uses, or else the stored parse results will be ignored by the application; these are
+ * best specified with the <tt>settings</tt> attribute, pointing to the same properties file that the application
+ * uses to configure FreeMarker. Templates whose stored parse result is already up-to-date aren't parsed again.</p>
+ * <p>It supports the following attributes:</p>
+ * <table style="width: auto; border-collapse: collapse" border="1" summary="FreeMarker precompile ant task attributes">
+ *   <tr>
+ *     <th valign="top" align="left">Attribute</th>
+ *     <th valign="top" align="left">Description</th>
+ *     <th valign="top">Required</th>
+ *   </tr>
+ *   <tr>
+ *     <td valign="top">basedir</td>
+ *     <td valign="top">the template directory, which the application uses as the root directory of the
+ *       {@link freemarker.cache.FileTemplateLoader}. Defaults to the project's basedir.</td>
+ *     <td align="center" valign="top">No</td>
+ *   </tr>
+ *   <tr>
+ *     <td valign="top">destdir</td>
+ *     <td valign="top">the {@link PrecompiledTemplateStore} directory.</td>
+ *     <td align="center" valign="top">Yes</td>
+ *   </tr>
+ *   <tr>
+ *     <td valign="top">includes, includesfile, excludes, excludesfile, defaultexcludes</td>
+ *     <td valign="top">the usual file selection attributes; all files are included when omitted.</td>
+ *     <td valign="top" align="center">No</td>
+ *   </tr>
+ *   <tr>
+ *     <td valign="top">settings</td>
+ *     <td valign="top">a properties file with FreeMarker {@link Configuration} settings (as in
+ *       {@link Configuration#setSettings(java.util.Properties)}), like <tt>incompatible_improvements</tt>,
+ *       <tt>default_encoding</tt>, <tt>tag_syntax</tt>, <tt>template_configurations</tt>, etc.</td>
+ *     <td valign="top" align="center">No</td>
+ *   </tr>
+ *   <tr>
+ *     <td valign="top">templateEncoding</td>
+ *     <td valign="top">the encoding of the template files; overrides the <tt>default_encoding</tt> setting.</td>
+ *     <td valign="top" align="center">No</td>
+ *   </tr>
+ *   <tr>
+ *     <td valign="top">failonerror</td>
+ *     <td valign="top">whether to stop the build if a template can't be parsed. Defaults to true.</td>
+ *     <td valign="top" align="center">No</td>
+ *   </tr>
+ * </table>
+ * 
+ * @since 2.3.26
+ */
+public class FreemarkerPrecompileTask extends MatchingTask {
+    
+    private File baseDir;
+    private File destDir;
+    private File settingsFile;
+    private String templateEncoding;
+    private boolean failOnError = true;
+
+    /**
+     * Sets the template directory. Defaults to the project's basedir.
+     */
+    public void setBasedir(File dir) {
+        baseDir = dir;
+    }
+
+    /**
+     * Sets the {@link PrecompiledTemplateStore} directory.
+     */
+    public void setDestdir(File dir) {
+        destDir = dir;
+    }
+
+    /**
+     * Sets the properties file that contains the FreeMarker settings.
+     */
+    public void setSettings(File settingsFile) {
+        this.settingsFile = settingsFile;
+    }
+
+    public void setTemplateEncoding(String templateEncoding) {
+        this.templateEncoding = templateEncoding;
+    }
+    
+    public void setFailonerror(boolean failOnError) {
+        this.failOnError = failOnError;
+    }
+
+    @Override
+    public void execute() throws BuildException {
+        if (baseDir == null) {
+            baseDir = getProject().getBaseDir();
+        }
+        if (destDir == null) {
+            throw new BuildException("destdir attribute must be set!", getLocation());
+        }
+        
+        final Configuration cfg = createConfiguration();
+        
+        final DirectoryScanner scanner = getDirectoryScanner(baseDir);
+        final String[] templateFiles = scanner.getIncludedFiles();
+        log("Precompiling " + templateFiles.length + " template(s) into: " + destDir.getAbsolutePath(),
+                Project.MSG_INFO);
+        int failures = 0;
+        for (int i = 0; i < templateFiles.length; i++) {
+            final String templateName = templateFiles[i].replace(File.separatorChar, '/');
+            try {
+                cfg.getTemplate(templateName);
+                log("Precompiled " + templateName, Project.MSG_VERBOSE);
+            } catch (IOException e) {
+                if (failOnError) {
+                    throw new BuildException("Failed to precompile template " + templateName, e, getLocation());
+                }
+                log("Failed to precompile template " + templateName + ": " + e, Project.MSG_WARN);
+                failures++;
+            }
+        }
+        if (failures != 0) {
+            log(failures + " template(s) couldn't be precompiled", Project.MSG_WARN);
+        }
+    }
+
+    private Configuration createConfiguration() throws BuildException {
+        final Configuration cfg = new Configuration(Configuration.VERSION_2_3_0);
+        try {
+            if (settingsFile != null) {
+                final InputStream in = new FileInputStream(settingsFile);
+                try {
+                    cfg.setSettings(in);
+                } finally {
+                    in.close();
+                }
+            }
+            if (templateEncoding != null) {
+                cfg.setDefaultEncoding(templateEncoding);
+            }
+            cfg.setDirectoryForTemplateLoading(baseDir);
+        } catch (Exception e) {
+            throw new BuildException("Failed to configure FreeMarker", e, getLocation());
+        }
+        // Template names are file paths here, so they must be used as is as the template source name:
+        cfg.setLocalizedLookup(false);
+        cfg.setPrecompiledTemplateStore(new PrecompiledTemplateStore(destDir));
+        return cfg;
+    }
+
+}
@@ -26,11 +26,12 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import freemarker.core.CollectionAndSequence;
 import freemarker.core._DelayedFTLTypeDescription;
@@ -80,9 +81,14 @@ implements
             }
         };
 
-    // I've tried to use a volatile ConcurrentHashMap field instead of HashMap + synchronized(this), but oddly it was
-    // a bit slower, at least on Java 8 u66. 
-    private HashMap<Object, TemplateModel> memberCache;
+    /**
+     * Caches the models created for methods and indexed properties; see {@link #invokeThroughDescriptor(Object, Map)}.
+     * This is accessed without locking, as the same instance is often used by many threads concurrently (like
+     * a singleton application object in the data-model).
+     */
+    private volatile MemberCache memberCache;
+    private static final AtomicReferenceFieldUpdater<BeanModel, MemberCache> MEMBER_CACHE_UPDATER
+            = AtomicReferenceFieldUpdater.newUpdater(BeanModel.class, MemberCache.class, "memberCache");
 
     /**
      * Creates a new model that wraps the specified object. Note that there are
@@ -208,14 +214,23 @@ implements
     private TemplateModel invokeThroughDescriptor(Object desc, Map<Object, Object> classInfo)
             throws IllegalAccessException, InvocationTargetException, TemplateModelException {
         // See if this particular instance has a cached implementation for the requested feature descriptor
-        TemplateModel cachedModel;
-        synchronized (this) {
-            cachedModel = memberCache != null ? memberCache.get(desc) : null;
+        final int memberSlot;
+        final MemberCache memberCache;
+        {
+            final Map<Object, Integer> memberSlots = ClassIntrospector.getMemberSlots(classInfo);
+            memberSlot = ClassIntrospector.getMemberSlot(memberSlots, desc);
+            if (memberSlot != -1) {
+                memberCache = getMemberCache(memberSlots);
+                TemplateModel cachedModel = memberCache.models.get(memberSlot);
+                if (cachedModel != null) {
+                    return cachedModel;
+                }
+            } else {
+                memberCache = null;
+            }
         }
 
-        if (cachedModel != null) {
-            return cachedModel;
-        }
+        TemplateModel cachedModel = null;
 
         TemplateModel resultModel = UNKNOWN;
         if (desc instanceof IndexedPropertyDescriptor) {
@@ -239,22 +254,51 @@ implements
                     object, (OverloadedMethods) desc, wrapper);
         }
         
-        // If new cachedModel was created, cache it
-        if (cachedModel != null) {
-            synchronized (this) {
-                if (memberCache == null) {
-                    memberCache = new HashMap<Object, TemplateModel>();
-                }
-                memberCache.put(desc, cachedModel);
+        // If new cachedModel was created, cache it, unless another thread was faster
+        if (cachedModel != null && memberCache != null) {
+            if (!memberCache.models.compareAndSet(memberSlot, null, cachedModel)) {
+                resultModel = memberCache.models.get(memberSlot);
             }
         }
         return resultModel;
     }
+
+    /**
+     * Returns the {@link MemberCache} that belongs to the given member slots, replacing the current one if it
+     * belongs to outdated class introspection data.
+     */
+    private MemberCache getMemberCache(Map<Object, Integer> memberSlots) {
+        while (true) {
+            final MemberCache memberCache = this.memberCache;
+            if (memberCache != null && memberCache.memberSlots == memberSlots) {
+                return memberCache;
+            }
+            
+            final MemberCache newMemberCache = new MemberCache(memberSlots);
+            if (MEMBER_CACHE_UPDATER.compareAndSet(this, memberCache, newMemberCache)) {
+                return newMemberCache;
+            }
+        }
+    }
     
     void clearMemberCache() {
-        synchronized (this) {
-            memberCache = null;
+        memberCache = null;
+    }
+    
+    /**
+     * The cached models of the members, indexed by the slots that {@link ClassIntrospector} has assigned to them.
+     */
+    private static final class MemberCache {
+        
+        /** The result of {@link ClassIntrospector#getMemberSlots(Map)} that the slot indexes refer to. */
+        private final Map<Object, Integer> memberSlots;
+        private final AtomicReferenceArray<TemplateModel> models;
+        
+        MemberCache(Map<Object, Integer> memberSlots) {
+            this.memberSlots = memberSlots;
+            this.models = new AtomicReferenceArray<TemplateModel>(memberSlots.size());
         }
+        
     }
 
     protected TemplateModel invokeGenericGet(Map/*<Object, Object>*/ classInfo, Class<?> clazz, String key)
@@ -27,6 +27,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -37,12 +38,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import freemarker.core.BugException;
 import freemarker.core._DelayedFTLTypeDescription;
 import freemarker.core._DelayedShortClassName;
 import freemarker.core._TemplateModelException;
 import freemarker.ext.util.ModelCache;
+import freemarker.ext.util.ModelCacheStatistics;
 import freemarker.ext.util.ModelFactory;
 import freemarker.ext.util.WrapperTemplateModel;
 import freemarker.log.Logger;
@@ -66,6 +71,7 @@ import freemarker.template.TemplateSequenceModel;
 import freemarker.template.Version;
 import freemarker.template._TemplateAPI;
 import freemarker.template.utility.ClassUtil;
+import freemarker.template.utility.NullArgumentException;
 import freemarker.template.utility.RichObjectWrapper;
 import freemarker.template.utility.UndeclaredThrowableException;
 import freemarker.template.utility.WriteProtectable;
@@ -365,6 +371,7 @@ public class BeansWrapper implements RichObjectWrapper, WriteProtectable {
         staticModels = new StaticModels(BeansWrapper.this);
         enumModels = createEnumModels(BeansWrapper.this);
         modelCache = new BeansModelCache(BeansWrapper.this);
+        modelCache.setMaxCacheSize(bwConf.getModelCacheMaxSize());
         setUseCache(bwConf.getUseModelCache());
 
         finalizeConstruction(writeProtected);
@@ -596,6 +603,37 @@ public class BeansWrapper implements RichObjectWrapper, WriteProtectable {
         return classIntrospector.getExposeFields();
     }
     
+    /**
+     * Sets whether Java methods (including the read methods of JavaBean properties) are called through
+     * {@code java.lang.invoke.MethodHandle}-s instead of through {@link Method#invoke(Object, Object...)}, which can
+     * be considerably faster for templates that call a lot of methods. This only has effect on Java 7 or later. The
+     * handle for a method is created when the method is first called, and then it's stored together with the class
+     * introspection data. If no handle can be created for a method (like because of a security manager), or the
+     * arguments aren't of the types the handle would accept, reflection is used for that call, so the behavior is the
+     * same as without this setting, except that the stack trace of exceptions thrown by the called method will differ.
+     * Defaults to {@code false}.
+     * 
+     * @since 2.3.26
+     */
+    public void setUseMethodHandles(boolean useMethodHandles) {
+        checkModifiable();
+        
+        if (classIntrospector.getUseMethodHandles() != useMethodHandles) {
+            ClassIntrospectorBuilder pa = classIntrospector.getPropertyAssignments();
+            pa.setUseMethodHandles(useMethodHandles);
+            replaceClassIntrospector(pa);
+        }
+    }
+
+    /**
+     * See {@link #setUseMethodHandles(boolean)}.
+     * 
+     * @since 2.3.26
+     */
+    public boolean getUseMethodHandles() {
+        return classIntrospector.getUseMethodHandles();
+    }
+    
     public MethodAppearanceFineTuner getMethodAppearanceFineTuner() {
         return classIntrospector.getMethodAppearanceFineTuner();
     }
@@ -768,6 +806,35 @@ public class BeansWrapper implements RichObjectWrapper, WriteProtectable {
         return modelCache.getUseCache();
     }
     
+    /**
+     * Sets the maximum number of entries in the model cache (see {@link #setUseCache(boolean)}). When the limit is
+     * reached, some of the cached models will be dropped. The limit is approximate. Defaults to
+     * {@link ModelCache#UNLIMITED_CACHE_SIZE}. Changing this setting clears the model cache.
+     * 
+     * @since 2.3.26
+     */
+    public void setModelCacheMaxSize(int modelCacheMaxSize) {
+        checkModifiable();
+        modelCache.setMaxCacheSize(modelCacheMaxSize);
+    }
+
+    /**
+     * @since 2.3.26
+     */
+    public int getModelCacheMaxSize() {
+        return modelCache.getMaxCacheSize();
+    }
+    
+    /**
+     * Returns the statistics of the model cache (see {@link #setUseCache(boolean)}), or {@code null} if the model
+     * cache isn't used.
+     * 
+     * @since 2.3.26
+     */
+    public ModelCacheStatistics getModelCacheStatistics() {
+        return modelCache.getCacheStatistics();
+    }
+    
     /**
      * Sets the null model. This model is returned from the {@link #wrap(Object)} method whenever the wrapped object is
      * {@code null}. It defaults to {@code null}, which is dealt with quite strictly on engine level, however you can
@@ -1457,7 +1524,7 @@ public class BeansWrapper implements RichObjectWrapper, WriteProtectable {
         TemplateModelException {
         // [2.4]: Java's Method.invoke truncates numbers if the target type has not enough bits to hold the value.
         // There should at least be an option to check this.
-        Object retval = method.invoke(object, args);
+        Object retval = classIntrospector.invokeMethod(object, method, args);
         return 
             method.getReturnType() == void.class 
             ? TemplateModel.NOTHING
@@ -1559,6 +1626,70 @@ public class BeansWrapper implements RichObjectWrapper, WriteProtectable {
         }
     }
 
+    /**
+     * Creates the class introspection data of the given classes in advance, so that the first template processings
+     * that use them needn't wait for that. As different classes can be introspected concurrently, this is typically
+     * called during application startup with a multi-threaded executor. The classes that are already in the cache are
+     * skipped.
+     * 
+     * @param classes
+     *            The classes to introspect; not {@code null}.
+     * @param executor
+     *            The classes are introspected concurrently with this. This method waits until all classes were
+     *            introspected, but it doesn't shut down the executor. If {@code null}, the classes are introspected
+     *            on the current thread, one after the other.
+     * 
+     * @throws InterruptedException
+     *             If the current thread was interrupted while waiting for the introspections to finish. The
+     *             introspections that haven't yet started will be cancelled.
+     * 
+     * @since 2.3.26
+     */
+    public void introspectClasses(Collection<Class<?>> classes, ExecutorService executor)
+            throws InterruptedException {
+        NullArgumentException.check("classes", classes);
+        final ClassIntrospector classIntrospector = this.classIntrospector;
+        if (executor == null) {
+            for (Class<?> clazz : classes) {
+                classIntrospector.get(clazz);
+            }
+            return;
+        }
+        
+        List<Future<?>> futures = new ArrayList<Future<?>>(classes.size());
+        boolean done = false;
+        try {
+            for (final Class<?> clazz : classes) {
+                futures.add(executor.submit(new Runnable() {
+                    public void run() {
+                        classIntrospector.get(clazz);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new BugException(e);
+                }
+            }
+            done = true;
+        } finally {
+            if (!done) {
+                for (Future<?> future : futures) {
+                    future.cancel(false);
+                }
+            }
+        }
+    }
+
     /**
      * Removes the introspection data for a class from the cache.
      * Use this if you know that a class is not used anymore in templates.
@@ -19,6 +19,7 @@
 
 package freemarker.ext.beans;
 
+import freemarker.ext.util.ModelCache;
 import freemarker.template.DefaultObjectWrapperBuilder;
 import freemarker.template.ObjectWrapper;
 import freemarker.template.TemplateDateModel;
@@ -50,6 +51,7 @@ public abstract class BeansWrapperConfiguration implements Cloneable {
     private ObjectWrapper outerIdentity = null;
     private boolean strict = false;
     private boolean useModelCache = false;
+    private int modelCacheMaxSize = ModelCache.UNLIMITED_CACHE_SIZE;
     // Attention!
     // - As this object is a cache key, non-normalized field values should be avoided.
     // - Fields with default values must be set until the end of the constructor to ensure that when the lookup happens,
@@ -101,6 +103,7 @@ public abstract class BeansWrapperConfiguration implements Cloneable {
         result = prime * result + (outerIdentity != null ? outerIdentity.hashCode() : 0);
         result = prime * result + (strict ? 1231 : 1237);
         result = prime * result + (useModelCache ? 1231 : 1237);
+        result = prime * result + modelCacheMaxSize;
         result = prime * result + classIntrospectorFactory.hashCode();
         return result;
     }
@@ -122,6 +125,7 @@ public abstract class BeansWrapperConfiguration implements Cloneable {
         if (outerIdentity != other.outerIdentity) return false;
         if (strict != other.strict) return false;
         if (useModelCache != other.useModelCache) return false;
+        if (modelCacheMaxSize != other.modelCacheMaxSize) return false;
         if (!classIntrospectorFactory.equals(other.classIntrospectorFactory)) return false;
         
         return true;
@@ -188,6 +192,25 @@ public abstract class BeansWrapperConfiguration implements Cloneable {
         this.useModelCache = useModelCache;
     }
 
+    /**
+     * @since 2.3.26
+     */
+    public int getModelCacheMaxSize() {
+        return modelCacheMaxSize;
+    }
+
+    /**
+     * See {@link BeansWrapper#setModelCacheMaxSize(int)} (it means the same).
+     * 
+     * @since 2.3.26
+     */
+    public void setModelCacheMaxSize(int modelCacheMaxSize) {
+        if (modelCacheMaxSize < 1) {
+            throw new IllegalArgumentException("modelCacheMaxSize must be at least 1, but was " + modelCacheMaxSize);
+        }
+        this.modelCacheMaxSize = modelCacheMaxSize;
+    }
+
     public Version getIncompatibleImprovements() {
         return incompatibleImprovements;
     }
@@ -210,6 +233,22 @@ public abstract class BeansWrapperConfiguration implements Cloneable {
         classIntrospectorFactory.setExposeFields(exposeFields);
     }
 
+    /**
+     * @since 2.3.26
+     */
+    public boolean getUseMethodHandles() {
+        return classIntrospectorFactory.getUseMethodHandles();
+    }
+
+    /**
+     * See {@link BeansWrapper#setUseMethodHandles(boolean)}.
+     * 
+     * @since 2.3.26
+     */
+    public void setUseMethodHandles(boolean useMethodHandles) {
+        classIntrospectorFactory.setUseMethodHandles(useMethodHandles);
+    }
+
     public MethodAppearanceFineTuner getMethodAppearanceFineTuner() {
         return classIntrospectorFactory.getMethodAppearanceFineTuner();
     }
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.beans;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import freemarker.core._Java7;
+
+/**
+ * Invokes a method through a {@link _Java7.MethodInvoker}, but only if the arguments are such that
+ * {@link Method#invoke(Object, Object...)} would accept them; otherwise it falls back to
+ * {@link Method#invoke(Object, Object...)}, so that the same exception is thrown as without the
+ * {@link _Java7.MethodInvoker}.
+ */
+final class CheckedMethodInvoker {
+    
+    private static final Object[] NO_ARGS = new Object[0];
+    
+    private final Method method;
+    private final Class<?> declaringClass;
+    private final Class<?>[] paramTypes;
+    private final boolean isStatic;
+    private final _Java7.MethodInvoker invoker;
+
+    CheckedMethodInvoker(Method method, _Java7.MethodInvoker invoker) {
+        this.method = method;
+        this.declaringClass = method.getDeclaringClass();
+        this.paramTypes = method.getParameterTypes();
+        this.isStatic = Modifier.isStatic(method.getModifiers());
+        this.invoker = invoker;
+    }
+    
+    Object invoke(Object target, Object[] args) throws InvocationTargetException, IllegalAccessException {
+        if (args == null) {
+            args = NO_ARGS;
+        }
+        if (!isValidTarget(target) || !areValidArguments(args)) {
+            return method.invoke(target, args);
+        }
+        return invoker.invoke(target, args);
+    }
+
+    private boolean isValidTarget(Object target) {
+        return isStatic || declaringClass.isInstance(target);
+    }
+    
+    private boolean areValidArguments(Object[] args) {
+        if (args.length != paramTypes.length) {
+            return false;
+        }
+        for (int i = 0; i < args.length; i++) {
+            final Class<?> paramType = paramTypes[i];
+            final Object arg = args[i];
+            if (paramType.isPrimitive()) {
+                if (arg == null || !isWideningConvertible(arg.getClass(), paramType)) {
+                    return false;
+                }
+            } else if (arg != null && !paramType.isInstance(arg)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Tells if {@link Method#invoke(Object, Object...)} accepts the given boxed argument type for the given
+     * primitive parameter type, that is, if the unboxed type is the same or can be converted to the parameter type
+     * with a widening primitive conversion.
+     */
+    private static boolean isWideningConvertible(Class<?> argType, Class<?> primitiveParamType) {
+        if (primitiveParamType == int.class) {
+            return argType == Integer.class || argType == Short.class || argType == Byte.class
+                    || argType == Character.class;
+        } else if (primitiveParamType == long.class) {
+            return argType == Long.class || isWideningConvertible(argType, int.class);
+        } else if (primitiveParamType == double.class) {
+            return argType == Double.class || isWideningConvertible(argType, float.class);
+        } else if (primitiveParamType == boolean.class) {
+            return argType == Boolean.class;
+        } else if (primitiveParamType == float.class) {
+            return argType == Float.class || isWideningConvertible(argType, long.class);
+        } else if (primitiveParamType == char.class) {
+            return argType == Character.class;
+        } else if (primitiveParamType == short.class) {
+            return argType == Short.class || argType == Byte.class;
+        } else if (primitiveParamType == byte.class) {
+            return argType == Byte.class;
+        } else {
+            return false;
+        }
+    }
+    
+}
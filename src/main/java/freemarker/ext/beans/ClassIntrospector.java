@@ -30,12 +30,14 @@ import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -43,8 +45,12 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 
 import freemarker.core.BugException;
+import freemarker.core._Java7;
+import freemarker.core._JavaVersions;
 import freemarker.ext.beans.BeansWrapper.MethodAppearanceDecision;
 import freemarker.ext.beans.BeansWrapper.MethodAppearanceDecisionInput;
 import freemarker.ext.util.ModelCache;
@@ -126,6 +132,8 @@ class ClassIntrospector {
     static final Object CONSTRUCTORS_KEY = new Object();
     /** Key in the class info Map to the get(String|Object) Method */
     static final Object GENERIC_GET_KEY = new Object();
+    /** Key in the class info Map to the Map that maps the members cached by {@link BeanModel} to slot indexes */
+    private static final Object MEMBER_SLOTS_KEY = new Object();
 
     // -----------------------------------------------------------------------------------------------------------------
     // Introspection configuration properties:
@@ -134,6 +142,7 @@ class ClassIntrospector {
 
     final int exposureLevel;
     final boolean exposeFields;
+    final boolean useMethodHandles;
     final MethodAppearanceFineTuner methodAppearanceFineTuner;
     final MethodSorter methodSorter;
     final boolean bugfixed;
@@ -151,7 +160,8 @@ class ClassIntrospector {
     private final Map<Class<?>, Map<Object, Object>> cache
             = new ConcurrentHashMap<Class<?>, Map<Object, Object>>(0, 0.75f, 16);
     private final Set<String> cacheClassNames = new HashSet<String>(0);
-    private final Set<Class<?>> classIntrospectionsInProgress = new HashSet<Class<?>>(0);
+    private final ConcurrentMap<Class<?>, ClassIntrospectionInProgress> classIntrospectionsInProgress
+            = new ConcurrentHashMap<Class<?>, ClassIntrospectionInProgress>(0, 0.75f, 16);
 
     private final List<WeakReference<Object/*ClassBasedModelFactory|ModelCache>*/>> modelFactories
             = new LinkedList<WeakReference<Object>>();
@@ -159,6 +169,14 @@ class ClassIntrospector {
 
     private int clearingCounter;
 
+    /**
+     * Maps {@link Method}-s to {@link CheckedMethodInvoker}-s, or to {@link #NO_METHOD_INVOKER} if no invoker could be
+     * created for the method. {@code null} if {@link #useMethodHandles} is {@code false}, or it's not supported on
+     * this platform.
+     */
+    private final ConcurrentMap<Method, Object> methodInvokers;
+    private static final Object NO_METHOD_INVOKER = new Object();
+
     // -----------------------------------------------------------------------------------------------------------------
     // Instantiation:
 
@@ -183,12 +201,16 @@ class ClassIntrospector {
 
         this.exposureLevel = builder.getExposureLevel();
         this.exposeFields = builder.getExposeFields();
+        this.useMethodHandles = builder.getUseMethodHandles();
         this.methodAppearanceFineTuner = builder.getMethodAppearanceFineTuner();
         this.methodSorter = builder.getMethodSorter();
         this.bugfixed = builder.isBugfixed();
 
         this.sharedLock = sharedLock;
 
+        this.methodInvokers = useMethodHandles && _JavaVersions.JAVA_7 != null
+                ? new ConcurrentHashMap<Method, Object>() : null;
+
         this.hasSharedInstanceRestrictons = hasSharedInstanceRestrictons;
         this.shared = shared;
 
@@ -216,50 +238,79 @@ class ClassIntrospector {
      *         {@link OverloadedMethods} or {@link Field} (but better check the source code...).
      */
     Map<Object, Object> get(Class<?> clazz) {
-        {
-            Map<Object, Object> introspData = cache.get(clazz);
-            if (introspData != null) return introspData;
-        }
-
-        String className;
-        synchronized (sharedLock) {
+        while (true) {
             Map<Object, Object> introspData = cache.get(clazz);
             if (introspData != null) return introspData;
-
-            className = clazz.getName();
-            if (cacheClassNames.contains(className)) {
-                onSameNameClassesDetected(className);
+            
+            final ClassIntrospectionInProgress newInProgress = new ClassIntrospectionInProgress();
+            final ClassIntrospectionInProgress inProgress
+                    = classIntrospectionsInProgress.putIfAbsent(clazz, newInProgress);
+            if (inProgress != null) {
+                // Another thread is already introspecting this class; waiting for its result. Only the threads that
+                // need this same class are blocked.
+                introspData = inProgress.awaitResult();
+                if (introspData != null) return introspData;
+                // The other thread has failed, so we retry, and then possibly this thread will introspect the class.
+                continue;
             }
-
-            while (introspData == null && classIntrospectionsInProgress.contains(clazz)) {
-                // Another thread is already introspecting this class;
-                // waiting for its result.
-                try {
-                    sharedLock.wait();
-                    introspData = cache.get(clazz);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(
-                            "Class inrospection data lookup aborded: " + e);
+            
+            // This will be the thread that introspects this class.
+            try {
+                // The introspection might have finished after our first cache lookup:
+                introspData = cache.get(clazz);
+                if (introspData == null) {
+                    final String className = clazz.getName();
+                    synchronized (sharedLock) {
+                        if (cacheClassNames.contains(className)) {
+                            onSameNameClassesDetected(className);
+                        }
+                    }
+                    
+                    introspData = createClassIntrospectionData(clazz);
+                    
+                    synchronized (sharedLock) {
+                        cache.put(clazz, introspData);
+                        cacheClassNames.add(className);
+                    }
                 }
+                return introspData;
+            } finally {
+                classIntrospectionsInProgress.remove(clazz);
+                newInProgress.setResult(introspData);
             }
-            if (introspData != null) return introspData;
-
-            // This will be the thread that introspects this class.
-            classIntrospectionsInProgress.add(clazz);
         }
-        try {
-            Map<Object, Object> introspData = createClassIntrospectionData(clazz);
-            synchronized (sharedLock) {
-                cache.put(clazz, introspData);
-                cacheClassNames.add(className);
-            }
-            return introspData;
-        } finally {
-            synchronized (sharedLock) {
-                classIntrospectionsInProgress.remove(clazz);
-                sharedLock.notifyAll();
+    }
+    
+    /**
+     * Used for waiting for the introspection of a class that another thread does.
+     */
+    private static final class ClassIntrospectionInProgress {
+        
+        private final CountDownLatch doneLatch = new CountDownLatch(1);
+        /** Written before {@link #doneLatch} is released, read after that. */
+        private Map<Object, Object> result;
+        
+        /**
+         * @param result {@code null} if the introspection has failed.
+         */
+        void setResult(Map<Object, Object> result) {
+            this.result = result;
+            doneLatch.countDown();
+        }
+        
+        /**
+         * @return {@code null} if the introspection has failed.
+         */
+        Map<Object, Object> awaitResult() {
+            try {
+                doneLatch.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(
+                        "Class inrospection data lookup aborded: " + e);
             }
+            return result;
         }
+        
     }
 
     /**
@@ -287,6 +338,8 @@ class ClassIntrospector {
 
         addConstructorsToClassIntrospectionData(introspData, clazz);
 
+        addMemberSlotsToClassIntrospectionData(introspData);
+
         if (introspData.size() > 1) {
             return introspData;
         } else if (introspData.size() == 0) {
@@ -297,6 +350,31 @@ class ClassIntrospector {
         }
     }
 
+    /**
+     * Assigns a slot index to each member for which {@link BeanModel} caches the {@link freemarker.template.TemplateModel}
+     * it creates, so that it can store them in an array instead of in a {@link Map}; see
+     * {@link #getMemberSlot(Map, Object)}.
+     */
+    private void addMemberSlotsToClassIntrospectionData(Map<Object, Object> introspData) {
+        Map<Object, Integer> memberSlots = null;
+        for (Object desc : introspData.values()) {
+            if (desc instanceof Method || desc instanceof OverloadedMethods
+                    || desc instanceof IndexedPropertyDescriptor) {
+                if (memberSlots == null) {
+                    memberSlots = new IdentityHashMap<Object, Integer>();
+                }
+                // The same object can be stored under multiple keys (like the generic get method under both
+                // GENERIC_GET_KEY and "get"); it still must get a single slot.
+                if (!memberSlots.containsKey(desc)) {
+                    memberSlots.put(desc, Integer.valueOf(memberSlots.size()));
+                }
+            }
+        }
+        if (memberSlots != null) {
+            introspData.put(MEMBER_SLOTS_KEY, memberSlots);
+        }
+    }
+
     private void addFieldsToClassIntrospectionData(Map<Object, Object> introspData, Class<?> clazz)
             throws SecurityException {
         Field[] fields = clazz.getFields();
@@ -611,6 +689,9 @@ class ClassIntrospector {
         synchronized (sharedLock) {
             cache.clear();
             cacheClassNames.clear();
+            if (methodInvokers != null) {
+                methodInvokers.clear();
+            }
             clearingCounter++;
 
             for (WeakReference<Object> regedMfREf : modelFactories) {
@@ -639,6 +720,13 @@ class ClassIntrospector {
         synchronized (sharedLock) {
             cache.remove(clazz);
             cacheClassNames.remove(clazz.getName());
+            if (methodInvokers != null) {
+                for (Iterator<Method> it = methodInvokers.keySet().iterator(); it.hasNext(); ) {
+                    if (it.next().getDeclaringClass() == clazz) {
+                        it.remove();
+                    }
+                }
+            }
             clearingCounter++;
 
             for (WeakReference<Object> regedMfREf : modelFactories) {
@@ -734,6 +822,31 @@ class ClassIntrospector {
         }
     }
 
+    // -----------------------------------------------------------------------------------------------------------------
+    // Method invocation:
+
+    /**
+     * Invokes the method like {@link Method#invoke(Object, Object...)} does, but if {@link #useMethodHandles} is
+     * {@code true}, it does that through a {@link CheckedMethodInvoker} when possible.
+     */
+    Object invokeMethod(Object object, Method method, Object[] args)
+            throws InvocationTargetException, IllegalAccessException {
+        if (methodInvokers == null) {
+            return method.invoke(object, args);
+        }
+        
+        Object invoker = methodInvokers.get(method);
+        if (invoker == null) {
+            _Java7.MethodInvoker java7Invoker = _JavaVersions.JAVA_7.newMethodInvoker(method);
+            invoker = java7Invoker != null ? new CheckedMethodInvoker(method, java7Invoker) : NO_METHOD_INVOKER;
+            // In case of concurrent creation it doesn't matter which one wins:
+            methodInvokers.put(method, invoker);
+        }
+        return invoker != NO_METHOD_INVOKER
+                ? ((CheckedMethodInvoker) invoker).invoke(object, args)
+                : method.invoke(object, args);
+    }
+
     // -----------------------------------------------------------------------------------------------------------------
     // Extracting from introspection info:
 
@@ -743,6 +856,34 @@ class ClassIntrospector {
         return argTypesByMethod.get(method);
     }
 
+    /**
+     * Returns the members slots (see {@link #getMemberSlot(Map, Object)}) of the class; the identity of the returned
+     * object changes whenever the class introspection data was recreated.
+     * 
+     * @return {@code null} if the class has no members that {@link BeanModel} caches.
+     */
+    static Map<Object, Integer> getMemberSlots(Map<Object, Object> classInfo) {
+        @SuppressWarnings("unchecked")
+        Map<Object, Integer> memberSlots = (Map<Object, Integer>) classInfo.get(MEMBER_SLOTS_KEY);
+        return memberSlots;
+    }
+    
+    /**
+     * Returns the index of the slot in which {@link BeanModel} caches the model created for the given member
+     * descriptor (a value in the class introspection data), or -1 if that member shouldn't be cached. The slot
+     * indexes of a class are 0 based and have no gaps, so they can be used as array indexes.
+     * 
+     * @param memberSlots
+     *            The return value of {@link #getMemberSlots(Map)}; can be {@code null}.
+     */
+    static int getMemberSlot(Map<Object, Integer> memberSlots, Object desc) {
+        if (memberSlots == null) {
+            return -1;
+        }
+        Integer slot = memberSlots.get(desc);
+        return slot != null ? slot.intValue() : -1;
+    }
+
     /**
      * Returns the number of introspected methods/properties that should be available via the TemplateHashModel
      * interface.
@@ -753,6 +894,7 @@ class ClassIntrospector {
         if (map.containsKey(CONSTRUCTORS_KEY)) count--;
         if (map.containsKey(GENERIC_GET_KEY)) count--;
         if (map.containsKey(ARG_TYPES_BY_METHOD_KEY)) count--;
+        if (map.containsKey(MEMBER_SLOTS_KEY)) count--;
         return count;
     }
 
@@ -765,6 +907,7 @@ class ClassIntrospector {
         set.remove(CONSTRUCTORS_KEY);
         set.remove(GENERIC_GET_KEY);
         set.remove(ARG_TYPES_BY_METHOD_KEY);
+        set.remove(MEMBER_SLOTS_KEY);
         return set;
     }
 
@@ -779,6 +922,10 @@ class ClassIntrospector {
         return exposeFields;
     }
 
+    boolean getUseMethodHandles() {
+        return useMethodHandles;
+    }
+
     MethodAppearanceFineTuner getMethodAppearanceFineTuner() {
         return methodAppearanceFineTuner;
     }
@@ -822,4 +969,9 @@ class ClassIntrospector {
         }
     }
 
+    /** For unit testing only */
+    boolean isCached(Class<?> clazz) {
+        return cache.containsKey(clazz);
+    }
+
 }
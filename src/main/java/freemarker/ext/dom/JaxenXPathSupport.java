@@ -24,9 +24,7 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -65,29 +63,25 @@ import freemarker.template.utility.UndeclaredThrowableException;
  */
 class JaxenXPathSupport implements XPathSupport {
     
-    private static final CustomAttribute cache = 
-        new CustomAttribute(CustomAttribute.SCOPE_TEMPLATE) {
-            @Override
-            protected Object create() {
-                return new HashMap();
-            }
-        };
+    /**
+     * Jaxen resolves the namespace prefixes during evaluation (see {@link #customNamespaceContext}), so unlike with
+     * Xalan, the key is just the expression.
+     */
+    private static final XPathCache xpathCache = new XPathCache();
 
     private final static ArrayList EMPTY_ARRAYLIST = new ArrayList();
 
     public TemplateModel executeQuery(Object context, String xpathQuery) throws TemplateModelException {
         try {
-            BaseXPath xpath;
-            Map xpathCache = (Map) cache.get();
-            synchronized (xpathCache) {
-                xpath = (BaseXPath) xpathCache.get(xpathQuery);
-                if (xpath == null) {
-                    xpath = new BaseXPath(xpathQuery, fmDomNavigator);
-                    xpath.setNamespaceContext(customNamespaceContext);
-                    xpath.setFunctionContext(fmFunctionContext);
-                    xpath.setVariableContext(fmVariableContext);
-                    xpathCache.put(xpathQuery, xpath);
-                }
+            Environment env = Environment.getCurrentEnvironment();
+            BaseXPath xpath = (BaseXPath) xpathCache.get(xpathQuery, env);
+            if (xpath == null) {
+                xpath = new BaseXPath(xpathQuery, fmDomNavigator);
+                xpath.setNamespaceContext(customNamespaceContext);
+                xpath.setFunctionContext(fmFunctionContext);
+                xpath.setVariableContext(fmVariableContext);
+                // Only published after it was fully configured, as the BaseXPath will be used by multiple threads:
+                xpathCache.put(xpathQuery, xpath, env);
             }
             List result = xpath.selectNodes(context != null ? context : EMPTY_ARRAYLIST);
             if (result.size() == 1) {
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.dom;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateNodeModel;
+import freemarker.template.utility.NullArgumentException;
+import freemarker.template.utility.StringUtil;
+
+/**
+ * An XML document for the templates that, unlike {@link NodeModel#parse(org.xml.sax.InputSource)}, doesn't build the
+ * whole DOM tree in advance, but reads the document with a StAX {@link XMLStreamReader} as the template goes through
+ * it. So if the template lists the children of the nodes (like {@code <#list doc.feed.item as item>}) or uses
+ * {@code #recurse}/{@code #visit}, only the nodes that are currently visited are kept in memory, regardless of the
+ * size of the document.
+ * 
+ * <p>
+ * The element models support the same hash keys as with {@link NodeModel}. As far as an element is only used for its
+ * attributes or to list its children, it's streamed. When something needs random access to an element (like getting
+ * its text, {@code @@markup}, an XPath query, or {@code ?size} on a child list), the subtree of that element is
+ * materialized as DOM, so only that subtree has to fit into the memory. A child query result (like
+ * {@code item.title}) that's not listed acts as its first node, without checking if there are more matches; finding
+ * that node keeps the siblings before it as DOM, so for example {@code item.title} and {@code item.link} can be used
+ * in any order. But as the document is read only once, the children that were passed by listing are forgotten, so
+ * after a listing the template can only go forward in document order; materializing an element whose children were
+ * already partially listed is an error.
+ * 
+ * <p>
+ * Like with {@link NodeModel#parse(org.xml.sax.InputSource)}, comments and processing instructions are dropped, and
+ * CDATA sections are merged with the adjacent text.
+ * 
+ * <p>
+ * An instance can be used for processing a single template only, and it's not thread-safe. It should be
+ * {@linkplain #close() closed} after the template processing.
+ * 
+ * @since 2.3.26
+ */
+public final class StreamingDocumentModel extends StreamingNodeModel implements Closeable {
+
+    /**
+     * Creates a document that's read with the given StAX reader, which must be namespace aware, and must be
+     * positioned at the start of the document (that is, no events were read from it yet).
+     */
+    public StreamingDocumentModel(XMLStreamReader reader) {
+        super(new StreamingXmlCursor(checkReader(reader)), 0);
+        cursor.open(this);
+    }
+
+    private static XMLStreamReader checkReader(XMLStreamReader reader) {
+        NullArgumentException.check("reader", reader);
+        if (reader.getEventType() != XMLStreamConstants.START_DOCUMENT) {
+            throw new IllegalArgumentException("The XMLStreamReader must be at the start of the document");
+        }
+        return reader;
+    }
+
+    /**
+     * Creates a document that's read from the given stream, with a reader created by the default
+     * {@link XMLInputFactory}. The stream isn't closed by {@link #close()}.
+     */
+    public static StreamingDocumentModel parse(InputStream in) throws XMLStreamException {
+        return new StreamingDocumentModel(newXMLInputFactory().createXMLStreamReader(in));
+    }
+
+    /**
+     * Same as {@link #parse(InputStream)}, but with a character stream.
+     */
+    public static StreamingDocumentModel parse(Reader in) throws XMLStreamException {
+        return new StreamingDocumentModel(newXMLInputFactory().createXMLStreamReader(in));
+    }
+
+    private static XMLInputFactory newXMLInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        return factory;
+    }
+
+    /**
+     * Supports the same keys as the DOM based document model. The name of the root element and {@code "*"} give a
+     * streamed node list; other keys (like {@code "**"}, or XPath expressions) materialize the whole document, so
+     * only use them if the document is small.
+     */
+    public TemplateModel get(String key) throws TemplateModelException {
+        if (isMaterialized()) {
+            return getMaterialized().get(key);
+        }
+        if (key.equals("*") || StringUtil.isXMLID(key)) {
+            return new StreamingNodeListModel(this, key);
+        }
+        return getMaterialized().get(key);
+    }
+
+    @Override
+    Node createDomNode(Document doc) {
+        return doc;
+    }
+
+    public TemplateNodeModel getParentNode() {
+        return null;
+    }
+
+    public String getNodeName() {
+        return "@document";
+    }
+
+    public String getNodeType() {
+        return "document";
+    }
+
+    public String getNodeNamespace() {
+        return null;
+    }
+
+    @Override
+    String getDescription() {
+        return "XML document";
+    }
+
+    /**
+     * Closes the underlying {@link XMLStreamReader}.
+     */
+    public void close() throws IOException {
+        try {
+            cursor.close();
+        } catch (TemplateModelException e) {
+            IOException ioe = new IOException(e.getMessage());
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.dom;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import freemarker.core.Environment;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateNodeModel;
+import freemarker.template.TemplateScalarModel;
+import freemarker.template.utility.StringUtil;
+
+/**
+ * An element of a {@link StreamingDocumentModel}. Its name and attributes are always available; its content is either
+ * streamed through (by listing its children), or else read into DOM when it's first needed.
+ */
+final class StreamingElementModel extends StreamingNodeModel implements TemplateScalarModel {
+
+    private final StreamingNodeModel parent;
+    private final StreamingXmlCursor.StartTag startTag;
+    /** Used for the keys that only need the start-tag; an element that has the attributes, but no content. */
+    private NodeModel startTagModel;
+
+    StreamingElementModel(
+            StreamingNodeModel parent, StreamingXmlCursor cursor, int depth, StreamingXmlCursor.StartTag startTag) {
+        super(cursor, depth);
+        this.parent = parent;
+        this.startTag = startTag;
+    }
+
+    /**
+     * Supports the same keys as the DOM based element model. Child element names and {@code "*"} give lists that
+     * are streamed if they are listed; the keys that only need the start-tag (attributes, {@code "@@start_tag"},
+     * {@code "@@qname"}, etc.) don't read anything; other keys (like {@code "@@text"}, or XPath expressions)
+     * materialize the element.
+     */
+    public TemplateModel get(String key) throws TemplateModelException {
+        if (isMaterialized()) {
+            return getMaterialized().get(key);
+        }
+        if (key.equals("*") || StringUtil.isXMLID(key)) {
+            return new StreamingNodeListModel(this, key);
+        }
+        if (isStartTagKey(key)) {
+            return getStartTagModel().get(key);
+        }
+        return getMaterialized().get(key);
+    }
+
+    private static boolean isStartTagKey(String key) {
+        if (!key.startsWith("@")) {
+            return false;
+        }
+        if (key.startsWith("@@")) {
+            return key.equals("@@") || key.equals("@@start_tag") || key.equals("@@end_tag")
+                    || key.equals("@@attributes_markup") || key.equals("@@qname") || key.equals("@@namespace")
+                    || key.equals("@@local_name");
+        }
+        return key.equals("@*") || StringUtil.isXMLID(key.substring(1));
+    }
+
+    private NodeModel getStartTagModel() throws TemplateModelException {
+        if (startTagModel == null) {
+            Document doc = cursor.getScratchDocument();
+            startTagModel = NodeModel.wrap(startTag.toDomElement(doc));
+        }
+        return startTagModel;
+    }
+
+    @Override
+    Node createDomNode(Document doc) {
+        Element element = startTag.toDomElement(doc);
+        doc.appendChild(element);
+        return element;
+    }
+
+    public String getAsString() throws TemplateModelException {
+        return ((TemplateScalarModel) getMaterialized()).getAsString();
+    }
+
+    public TemplateNodeModel getParentNode() {
+        return parent;
+    }
+
+    public String getNodeName() {
+        return startTag.localName;
+    }
+
+    public String getNodeType() {
+        return "element";
+    }
+
+    public String getNodeNamespace() {
+        return startTag.nsURI != null ? startTag.nsURI : "";
+    }
+
+    boolean matches(String filter, Environment env) {
+        return filter.equals("*") || StringUtil.matchesName(filter, getNodeName(), getNodeNamespace(), env);
+    }
+
+    @Override
+    String getDescription() {
+        return "XML element \"" + getNodeName() + "\"";
+    }
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.dom;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import freemarker.template.TemplateCollectionModel;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateModelIterator;
+import freemarker.template.TemplateNodeModel;
+import freemarker.template.TemplateScalarModel;
+import freemarker.template.TemplateSequenceModel;
+import freemarker.template.utility.StringUtil;
+
+/**
+ * The result of a child query (like {@code doc.feed.item}) on a {@link StreamingDocumentModel}. Nothing is read until
+ * it's used. When it's listed (as a {@link TemplateCollectionModel}), the matching nodes are streamed through in
+ * document order, which can be done only once. If it's used as a sequence (like with {@code ?size}), the parent node
+ * is materialized, or if its children were already partially listed, then the remaining matching nodes are. Otherwise (like when it's used as a string, or with a key that's not a child element name)
+ * it acts as its first node, which is searched without forgetting the nodes passed (see
+ * {@link StreamingNodeModel#findFirstChild(String)}); unlike the DOM based model, it doesn't check if there are further
+ * nodes, as that would need reading ahead.
+ */
+final class StreamingNodeListModel implements TemplateCollectionModel, TemplateSequenceModel, TemplateHashModel,
+        TemplateScalarModel, TemplateNodeModel {
+
+    /** Exactly one of this and {@link #parentList} is non-{@code null}. */
+    private final StreamingNodeModel parentNode;
+    private final StreamingNodeListModel parentList;
+    /** See {@link StreamingNodeModel#childIterator(String)}. */
+    private final String filter;
+
+    private boolean listed;
+    private boolean firstKnown;
+    private TemplateModel first;
+    private NodeListModel materialized;
+
+    StreamingNodeListModel(StreamingNodeModel parentNode, String filter) {
+        this.parentNode = parentNode;
+        this.parentList = null;
+        this.filter = filter;
+    }
+
+    private StreamingNodeListModel(StreamingNodeListModel parentList, String filter) {
+        this.parentNode = null;
+        this.parentList = parentList;
+        this.filter = filter;
+    }
+
+    public TemplateModelIterator iterator() throws TemplateModelException {
+        if (listed) {
+            throw new TemplateModelException(
+                    "This XML query result, which comes from a streamed XML document, was already listed (or used as "
+                    + "a sequence); it can only be listed once.");
+        }
+        listed = true;
+        return newIterator();
+    }
+
+    /**
+     * Unlike {@link #iterator()}, this can be called repeatedly; each iterator continues from where the document was
+     * already read.
+     */
+    private TemplateModelIterator newIterator() throws TemplateModelException {
+        if (parentNode != null) {
+            return parentNode.childIterator(filter);
+        }
+        return new ChainedIterator(parentList.newIterator(), filter);
+    }
+
+    private TemplateModel getFirst() throws TemplateModelException {
+        if (!firstKnown) {
+            first = findFirstChild(parentNode != null ? parentNode : parentList.getFirst(), filter);
+            firstKnown = true;
+        }
+        return first;
+    }
+
+    private static TemplateModel findFirstChild(TemplateModel parent, String filter) throws TemplateModelException {
+        if (parent == null) {
+            return null;
+        }
+        if (parent instanceof StreamingNodeModel) {
+            return ((StreamingNodeModel) parent).findFirstChild(filter);
+        }
+        TemplateSequenceModel children = StreamingNodeModel.getDomChildren((NodeModel) parent, filter);
+        return children.size() != 0 ? children.get(0) : null;
+    }
+
+    private TemplateModel getRequiredFirst() throws TemplateModelException {
+        TemplateModel first = getFirst();
+        if (first == null) {
+            throw new TemplateModelException(
+                    "This XML query result can't be used as a single node, because it contains no nodes. (As it "
+                    + "comes from a streamed XML document, this can also happen if the nodes were already streamed "
+                    + "past by listing.)");
+        }
+        return first;
+    }
+
+    private NodeListModel getMaterialized() throws TemplateModelException {
+        if (materialized == null) {
+            List<NodeModel> nodes = new ArrayList<NodeModel>();
+            if (parentNode != null && parentNode.canBeMaterialized()) {
+                addDomChildren(parentNode.getMaterialized(), nodes);
+            } else if (parentList != null && (parentList.materialized != null || !parentList.listed)) {
+                NodeListModel parents = parentList.getMaterialized();
+                for (int i = 0; i < parents.size(); i++) {
+                    addDomChildren((NodeModel) parents.get(i), nodes);
+                }
+            } else {
+                // The parent was already partially listed, so we can only continue listing it:
+                for (TemplateModelIterator it = iterator(); it.hasNext(); ) {
+                    TemplateModel node = it.next();
+                    // Must be done before we read further:
+                    nodes.add(node instanceof StreamingNodeModel
+                            ? ((StreamingNodeModel) node).getMaterialized() : (NodeModel) node);
+                }
+            }
+            materialized = new NodeListModel(nodes, null);
+        }
+        return materialized;
+    }
+
+    private void addDomChildren(NodeModel parent, List<NodeModel> nodes) throws TemplateModelException {
+        TemplateSequenceModel children = StreamingNodeModel.getDomChildren(parent, filter);
+        for (int i = 0; i < children.size(); i++) {
+            nodes.add((NodeModel) children.get(i));
+        }
+    }
+
+    public int size() throws TemplateModelException {
+        return getMaterialized().size();
+    }
+
+    public TemplateModel get(int index) throws TemplateModelException {
+        return getMaterialized().get(index);
+    }
+
+    public TemplateModel get(String key) throws TemplateModelException {
+        if (materialized != null) {
+            return materialized.get(key);
+        }
+        if (key.equals("*") || StringUtil.isXMLID(key)) {
+            return new StreamingNodeListModel(this, key);
+        }
+        TemplateModel first = getFirst();
+        if (first == null) {
+            return new NodeListModel((NodeModel) null).get(key);
+        }
+        return ((TemplateHashModel) first).get(key);
+    }
+
+    public boolean isEmpty() throws TemplateModelException {
+        return materialized != null ? materialized.isEmpty() : getFirst() == null;
+    }
+
+    public String getAsString() throws TemplateModelException {
+        TemplateModel first = getRequiredFirst();
+        if (!(first instanceof TemplateScalarModel)) {
+            throw new TemplateModelException(
+                    "This XML query result can't be used as a string, because its first node is a "
+                    + ((TemplateNodeModel) first).getNodeType() + ".");
+        }
+        return ((TemplateScalarModel) first).getAsString();
+    }
+
+    public TemplateNodeModel getParentNode() throws TemplateModelException {
+        return ((TemplateNodeModel) getRequiredFirst()).getParentNode();
+    }
+
+    public TemplateSequenceModel getChildNodes() throws TemplateModelException {
+        return ((TemplateNodeModel) getRequiredFirst()).getChildNodes();
+    }
+
+    public String getNodeName() throws TemplateModelException {
+        return ((TemplateNodeModel) getRequiredFirst()).getNodeName();
+    }
+
+    public String getNodeType() throws TemplateModelException {
+        return ((TemplateNodeModel) getRequiredFirst()).getNodeType();
+    }
+
+    public String getNodeNamespace() throws TemplateModelException {
+        return ((TemplateNodeModel) getRequiredFirst()).getNodeNamespace();
+    }
+
+    /**
+     * Iterates through the matching children of each node returned by another iterator.
+     */
+    private static class ChainedIterator implements TemplateModelIterator {
+
+        private final TemplateModelIterator parents;
+        private final String filter;
+        private TemplateModelIterator children;
+
+        ChainedIterator(TemplateModelIterator parents, String filter) {
+            this.parents = parents;
+            this.filter = filter;
+        }
+
+        public boolean hasNext() throws TemplateModelException {
+            while (children == null || !children.hasNext()) {
+                if (!parents.hasNext()) {
+                    return false;
+                }
+                TemplateModel parent = parents.next();
+                if (parent instanceof StreamingNodeModel) {
+                    children = ((StreamingNodeModel) parent).childIterator(filter);
+                } else {
+                    children = new StreamingNodeModel.SequenceIterator(
+                            StreamingNodeModel.getDomChildren((NodeModel) parent, filter));
+                }
+            }
+            return true;
+        }
+
+        public TemplateModel next() throws TemplateModelException {
+            if (!hasNext()) {
+                throw new TemplateModelException("The collection has no more items.");
+            }
+            return children.next();
+        }
+
+    }
+
+}
@@ -0,0 +1,427 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.dom;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamConstants;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import freemarker.core.Environment;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateModelIterator;
+import freemarker.template.TemplateNodeModel;
+import freemarker.template.TemplateSequenceModel;
+
+/**
+ * Base of the node models of a {@link StreamingDocumentModel} that can have children (the document and the elements).
+ * 
+ * <p>
+ * The children are read in two ways. When they are listed ({@link #childIterator(String)}), the children that were
+ * passed are forgotten, so the memory usage doesn't depend on the number of children. When a child is only searched
+ * ({@link #findFirstChild(String)}, like for {@code ${item.title}}), the children passed until the match are kept as
+ * DOM, so later searches can find them too (like {@code ${item.link}}, when the link is before the title). When
+ * something needs random access (like {@code @@text}, or an XPath query), the node is materialized as DOM, which is
+ * only possible if none of its children was forgotten.
+ */
+abstract class StreamingNodeModel implements TemplateNodeModel, TemplateHashModel, TemplateSequenceModel {
+
+    final StreamingXmlCursor cursor;
+    /** The {@link StreamingXmlCursor#getDepth()} inside this node. */
+    final int depth;
+    /** Set by the {@link StreamingXmlCursor} when the end of this node was read. */
+    boolean passed;
+
+    /** The end of this node was read by this node, so we have all its children that weren't forgotten. */
+    private boolean complete;
+    /** Some children were read by listing, and so were forgotten. */
+    private boolean streamed;
+    /**
+     * The children that were read by searching, in document order; {@link NodeModel}-s, and for the children
+     * that were returned by the search, {@link StreamingElementModel}-s.
+     */
+    private List<TemplateModel> searchedChildren;
+    /** The child element whose start-tag was read last, or {@code null}. */
+    private StreamingElementModel lastChild;
+    private Document bufferDocument;
+    private NodeModel materialized;
+
+    StreamingNodeModel(StreamingXmlCursor cursor, int depth) {
+        this.cursor = cursor;
+        this.depth = depth;
+    }
+
+    public final int size() {
+        return 1;
+    }
+
+    public final TemplateModel get(int i) {
+        return i == 0 ? this : null;
+    }
+
+    public boolean isEmpty() {
+        return false;
+    }
+
+    public TemplateSequenceModel getChildNodes() throws TemplateModelException {
+        return isMaterialized() ? materialized.getChildNodes() : new StreamingNodeListModel(this, null);
+    }
+
+    final boolean isMaterialized() {
+        return materialized != null;
+    }
+
+    /**
+     * Returns the DOM equivalent of this node, materializing it if it wasn't yet. That's only possible if none of its
+     * children was forgotten.
+     */
+    final NodeModel getMaterialized() throws TemplateModelException {
+        if (materialized == null) {
+            if (!canBeMaterialized()) {
+                throw new TemplateModelException(
+                        "The " + getDescription() + " was already "
+                        + (streamed ? "partially read by listing its children" : "streamed past")
+                        + ", so it can't be accessed randomly anymore. With a streamed XML document, you must access "
+                        + "the nodes in document order, and for each node, either list (or #recurse) its children, "
+                        + "or access it by other means (like getting its text, or with XPath queries).");
+            }
+            Document doc = getBufferDocument();
+            Node domNode = createDomNode(doc);
+            if (searchedChildren != null) {
+                for (TemplateModel child : searchedChildren) {
+                    Node domChild = child instanceof StreamingNodeModel
+                            ? ((StreamingNodeModel) child).getMaterialized().node : ((NodeModel) child).node;
+                    if (domChild.getOwnerDocument() != doc) {
+                        domChild = doc.adoptNode(domChild);
+                    }
+                    domNode.appendChild(domChild);
+                }
+                searchedChildren = null;
+            }
+            if (!passed) {
+                cursor.readContent(domNode);
+            }
+            complete = true;
+            materialized = NodeModel.wrap(domNode);
+        }
+        return materialized;
+    }
+
+    /**
+     * Tells if {@link #getMaterialized()} will succeed.
+     */
+    final boolean canBeMaterialized() {
+        return materialized != null || !streamed && (!passed || complete);
+    }
+
+    /**
+     * Creates the DOM node that will hold the children when this node is materialized.
+     */
+    abstract Node createDomNode(Document doc) throws TemplateModelException;
+
+    abstract String getDescription();
+
+    private Document getBufferDocument() throws TemplateModelException {
+        if (bufferDocument == null) {
+            bufferDocument = cursor.newDocument();
+        }
+        return bufferDocument;
+    }
+
+    /**
+     * Returns the first child node that matches the filter, without forgetting any children.
+     * 
+     * @param filter
+     *            See {@link #childIterator(String)}.
+     * 
+     * @return {@code null} if there's no matching child (among the children that weren't forgotten).
+     */
+    final TemplateModel findFirstChild(String filter) throws TemplateModelException {
+        if (isMaterialized()) {
+            TemplateSequenceModel children = getDomChildren(materialized, filter);
+            return children.size() != 0 ? children.get(0) : null;
+        }
+        Environment env = Environment.getCurrentEnvironment();
+        if (searchedChildren != null) {
+            for (TemplateModel child : searchedChildren) {
+                if (matches(child, filter, env)) {
+                    return child;
+                }
+            }
+        }
+        if (passed) {
+            return null;
+        }
+        if (lastChild != null && !lastChild.passed) {
+            if (searchedChildren == null || !searchedChildren.contains(lastChild)) {
+                // A child returned by a listing, and so some of it is possibly already read:
+                if (matches(lastChild, filter, env)) {
+                    return lastChild;
+                }
+                cursor.skipPast(lastChild);
+                streamed = true;
+            } else {
+                lastChild.tryToMaterialize();
+            }
+        }
+        Document doc = getBufferDocument();
+        while (true) {
+            switch (cursor.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                if (cursor.currentElementMatches(filter)) {
+                    StreamingElementModel child = newChild();
+                    addSearchedChild(child);
+                    return child;
+                }
+                Element element = new StreamingXmlCursor.StartTag(cursor.getReader()).toDomElement(doc);
+                cursor.readContent(element);
+                addSearchedChild(NodeModel.wrap(element));
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                if (depth != 0) {
+                    String text = cursor.getReader().getText();
+                    TemplateModel prevChild = searchedChildren != null && !searchedChildren.isEmpty()
+                            ? searchedChildren.get(searchedChildren.size() - 1) : null;
+                    if (prevChild instanceof NodeModel
+                            && ((NodeModel) prevChild).node.getNodeType() == Node.TEXT_NODE) {
+                        ((org.w3c.dom.Text) ((NodeModel) prevChild).node).appendData(text);
+                    } else {
+                        TemplateModel textNode = NodeModel.wrap(doc.createTextNode(text));
+                        addSearchedChild(textNode);
+                        if (filter == null) {
+                            return textNode;
+                        }
+                    }
+                }
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+            case XMLStreamConstants.END_DOCUMENT:
+                if (passed) {
+                    complete = true;
+                    return null;
+                }
+                break;
+            default:
+                // Comments and processing instructions are dropped, like by NodeModel.parse.
+            }
+        }
+    }
+
+    private void addSearchedChild(TemplateModel child) {
+        if (searchedChildren == null) {
+            searchedChildren = new ArrayList<TemplateModel>();
+        }
+        searchedChildren.add(child);
+    }
+
+    /**
+     * Materializes this node if that's possible, so that we don't lose its content when the cursor moves on.
+     */
+    final void tryToMaterialize() throws TemplateModelException {
+        if (!passed && canBeMaterialized()) {
+            getMaterialized();
+        }
+    }
+
+    /**
+     * Returns an iterator over the child nodes that match the filter; the children that the iterator passes are
+     * forgotten (unless they were already found by {@link #findFirstChild(String)}).
+     * 
+     * @param filter
+     *            {@code null} for all child nodes, {@code "*"} for all child elements, or otherwise the name of the
+     *            child elements (maybe with namespace prefix).
+     */
+    final TemplateModelIterator childIterator(String filter) throws TemplateModelException {
+        if (isMaterialized()) {
+            return new SequenceIterator(getDomChildren(materialized, filter));
+        }
+        if (passed && !complete) {
+            throw new TemplateModelException(
+                    "The children of the " + getDescription() + " can't be listed, as it was already streamed past.");
+        }
+        return new ChildIterator(filter);
+    }
+
+    private StreamingElementModel newChild() {
+        StreamingElementModel child = new StreamingElementModel(
+                this, cursor, cursor.getDepth(), new StreamingXmlCursor.StartTag(cursor.getReader()));
+        cursor.open(child);
+        lastChild = child;
+        return child;
+    }
+
+    private static boolean matches(TemplateModel node, String filter, Environment env)
+            throws TemplateModelException {
+        if (filter == null) {
+            return true;
+        }
+        if (node instanceof StreamingElementModel) {
+            return ((StreamingElementModel) node).matches(filter, env);
+        }
+        if (node instanceof ElementModel) {
+            return filter.equals("*") || ((ElementModel) node).matchesName(filter, env);
+        }
+        return false;
+    }
+
+    /**
+     * The DOM equivalent of {@link #childIterator(String)}.
+     */
+    static TemplateSequenceModel getDomChildren(NodeModel node, String filter) throws TemplateModelException {
+        if (filter == null) {
+            return node.getChildNodes();
+        }
+        if (node instanceof ElementModel || node instanceof DocumentModel) {
+            TemplateModel children = node.get(filter);
+            if (children instanceof TemplateSequenceModel) {
+                return (TemplateSequenceModel) children;
+            }
+        }
+        return new NodeListModel(node);
+    }
+
+    private class ChildIterator implements TemplateModelIterator {
+
+        private final String filter;
+        private final Environment env = Environment.getCurrentEnvironment();
+        private boolean started;
+        /** The index of the next item in {@link #searchedChildren} to check. */
+        private int searchedChildIndex;
+        private TemplateModel next;
+        private boolean nextKnown;
+
+        ChildIterator(String filter) {
+            this.filter = filter;
+        }
+
+        public boolean hasNext() throws TemplateModelException {
+            if (!nextKnown) {
+                next = readNext();
+                nextKnown = true;
+            }
+            return next != null;
+        }
+
+        public TemplateModel next() throws TemplateModelException {
+            if (!hasNext()) {
+                throw new TemplateModelException("The collection has no more items.");
+            }
+            nextKnown = false;
+            return next;
+        }
+
+        private TemplateModel readNext() throws TemplateModelException {
+            // Searches (even those done during this listing) may have added further children to searchedChildren:
+            while (searchedChildren != null && searchedChildIndex < searchedChildren.size()) {
+                TemplateModel child = searchedChildren.get(searchedChildIndex++);
+                if (matches(child, filter, env)) {
+                    return child;
+                }
+            }
+            if (passed) {
+                return null;
+            }
+            if (!started) {
+                started = true;
+                // An earlier listing might has stopped inside a child; continue from there:
+                if (lastChild != null && !lastChild.passed
+                        && (searchedChildren == null || !searchedChildren.contains(lastChild))
+                        && matches(lastChild, filter, env)) {
+                    return lastChild;
+                }
+            }
+            // The rest of the child that was read last (by this or by another listing) is skipped:
+            if (lastChild != null && !lastChild.passed) {
+                cursor.skipPast(lastChild);
+                streamed = true;
+            }
+            StringBuilder text = null;
+            while (!passed) {
+                switch (cursor.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    if (text != null) {
+                        cursor.pushBack();
+                        return toTextNode(text);
+                    }
+                    streamed = true;
+                    if (!cursor.currentElementMatches(filter)) {
+                        cursor.skipCurrentElement();
+                        break;
+                    }
+                    return newChild();
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (depth != 0) {
+                        streamed = true;
+                        if (filter == null) {
+                            if (text == null) {
+                                text = new StringBuilder();
+                            }
+                            text.append(cursor.getReader().getText());
+                        }
+                    }
+                    break;
+                default:
+                    // Comments and processing instructions are dropped, like by NodeModel.parse. The end of this
+                    // node sets "passed".
+                }
+            }
+            if (!streamed) {
+                // All the children were already found by searches:
+                complete = true;
+            }
+            return text != null ? toTextNode(text) : null;
+        }
+
+        private TemplateModel toTextNode(StringBuilder text) throws TemplateModelException {
+            return NodeModel.wrap(cursor.getScratchDocument().createTextNode(text.toString()));
+        }
+
+    }
+
+    static class SequenceIterator implements TemplateModelIterator {
+
+        private final TemplateSequenceModel sequence;
+        private int index;
+
+        SequenceIterator(TemplateSequenceModel sequence) {
+            this.sequence = sequence;
+        }
+
+        public boolean hasNext() throws TemplateModelException {
+            return index < sequence.size();
+        }
+
+        public TemplateModel next() throws TemplateModelException {
+            return sequence.get(index++);
+        }
+
+    }
+
+}
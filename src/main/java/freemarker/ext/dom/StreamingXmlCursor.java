@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.dom;
+
+import java.util.ArrayList;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import freemarker.core.Environment;
+import freemarker.template.TemplateModelException;
+import freemarker.template.utility.StringUtil;
+
+/**
+ * Wraps the {@link XMLStreamReader} of a {@link StreamingDocumentModel}; this is the single forward-only position that
+ * all the node models of the document share. Tracks the depth of the current event, and marks the node models whose
+ * end was read as passed.
+ */
+final class StreamingXmlCursor {
+
+    private final XMLStreamReader reader;
+    
+    /** The number of elements that contain the current event (or, for a start-tag, the started element too). */
+    private int depth;
+    /** The current event was read, but it's not yet handled; see {@link #pushBack()}. */
+    private boolean pending;
+    /** The node models of the elements that are currently open, outermost first. */
+    private final ArrayList<StreamingNodeModel> openModels = new ArrayList<StreamingNodeModel>();
+    private Document scratchDocument;
+
+    StreamingXmlCursor(XMLStreamReader reader) {
+        this.reader = reader;
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    XMLStreamReader getReader() {
+        return reader;
+    }
+
+    /**
+     * Reads the next event, unless the current one was {@linkplain #pushBack() pushed back}.
+     * 
+     * @return One of the {@link XMLStreamConstants} event types; {@link XMLStreamConstants#END_DOCUMENT} after the end
+     *         of the document.
+     */
+    int next() throws TemplateModelException {
+        if (pending) {
+            pending = false;
+            return reader.getEventType();
+        }
+        try {
+            if (!reader.hasNext()) {
+                closeModels(-1);
+                return XMLStreamConstants.END_DOCUMENT;
+            }
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                closeModels(depth);
+            } else if (event == XMLStreamConstants.END_DOCUMENT) {
+                closeModels(-1);
+            }
+            return event;
+        } catch (XMLStreamException e) {
+            throw new TemplateModelException("Failed to read the streamed XML document.", e);
+        }
+    }
+
+    /**
+     * Makes the next {@link #next()} call return the current event again. Only allowed for start-tags, as the end of
+     * the elements was already taken into account.
+     */
+    void pushBack() {
+        if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+            throw new IllegalStateException("Only a start-tag can be pushed back");
+        }
+        pending = true;
+    }
+
+    /**
+     * Registers the node model of the element whose start-tag is the current event.
+     */
+    void open(StreamingNodeModel model) {
+        openModels.add(model);
+    }
+
+    private void closeModels(int newDepth) {
+        for (int i = openModels.size() - 1; i >= 0; i--) {
+            StreamingNodeModel model = openModels.get(i);
+            if (model.depth <= newDepth) {
+                break;
+            }
+            model.passed = true;
+            openModels.remove(i);
+        }
+    }
+
+    /**
+     * Reads until the end of the given node (that must be open or already passed).
+     */
+    void skipPast(StreamingNodeModel model) throws TemplateModelException {
+        while (!model.passed) {
+            next();
+        }
+    }
+
+    /**
+     * Reads until the end of the element whose start-tag is the current event.
+     */
+    void skipCurrentElement() throws TemplateModelException {
+        int targetDepth = depth - 1;
+        while (depth > targetDepth) {
+            if (next() == XMLStreamConstants.END_DOCUMENT) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Tells if the element whose start-tag is the current event matches the filter of
+     * {@link StreamingNodeModel#childIterator(String)}.
+     */
+    boolean currentElementMatches(String filter) {
+        if (filter == null || filter.equals("*")) {
+            return true;
+        }
+        String nsURI = reader.getNamespaceURI();
+        return StringUtil.matchesName(filter, reader.getLocalName(), nsURI != null ? nsURI : "",
+                Environment.getCurrentEnvironment());
+    }
+
+    /**
+     * Reads the content of the node whose start-tag (or the start of the document) was the last event read, up to
+     * and including its end, into the given DOM node. Like {@link NodeModel#parse(org.xml.sax.InputSource)}, it drops
+     * comments and processing instructions, and merges adjacent text and CDATA sections.
+     */
+    void readContent(Node into) throws TemplateModelException {
+        Document doc = into instanceof Document ? (Document) into : into.getOwnerDocument();
+        Node current = into;
+        while (true) {
+            switch (next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                Element element = new StartTag(reader).toDomElement(doc);
+                current.appendChild(element);
+                current = element;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                if (current == into) {
+                    return;
+                }
+                current = current.getParentNode();
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                if (current != doc) {
+                    Node lastChild = current.getLastChild();
+                    if (lastChild != null && lastChild.getNodeType() == Node.TEXT_NODE) {
+                        ((org.w3c.dom.Text) lastChild).appendData(reader.getText());
+                    } else {
+                        current.appendChild(doc.createTextNode(reader.getText()));
+                    }
+                }
+                break;
+            case XMLStreamConstants.END_DOCUMENT:
+                return;
+            default:
+                // Ignore comments, processing instructions, DTD, etc.
+            }
+        }
+    }
+
+    /**
+     * Creates an empty DOM {@link Document} for materializing a node.
+     */
+    Document newDocument() throws TemplateModelException {
+        try {
+            return NodeModel.getDocumentBuilderFactory().newDocumentBuilder().newDocument();
+        } catch (ParserConfigurationException e) {
+            throw new TemplateModelException("Failed to create DOM document.", e);
+        }
+    }
+
+    /**
+     * A document for creating the DOM nodes that aren't part of a materialized subtree, like text nodes and
+     * attribute-only elements.
+     */
+    Document getScratchDocument() throws TemplateModelException {
+        if (scratchDocument == null) {
+            scratchDocument = newDocument();
+        }
+        return scratchDocument;
+    }
+
+    void close() throws TemplateModelException {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new TemplateModelException("Failed to close the XML stream reader.", e);
+        }
+    }
+
+    /**
+     * The information in a start-tag; captured when it was read, as after that the reader moves on.
+     */
+    static final class StartTag {
+
+        final String nsURI;
+        final String prefix;
+        final String localName;
+        /** Namespace URI, prefix, local name and value of each attribute. */
+        private final String[] attributes;
+        /** Prefix and namespace URI of each namespace declaration. */
+        private final String[] namespaceDeclarations;
+
+        StartTag(XMLStreamReader reader) {
+            nsURI = emptyToNull(reader.getNamespaceURI());
+            prefix = emptyToNull(reader.getPrefix());
+            localName = reader.getLocalName();
+
+            int attCount = reader.getAttributeCount();
+            attributes = new String[attCount * 4];
+            for (int i = 0; i < attCount; i++) {
+                attributes[i * 4] = emptyToNull(reader.getAttributeNamespace(i));
+                attributes[i * 4 + 1] = emptyToNull(reader.getAttributePrefix(i));
+                attributes[i * 4 + 2] = reader.getAttributeLocalName(i);
+                attributes[i * 4 + 3] = reader.getAttributeValue(i);
+            }
+
+            int nsCount = reader.getNamespaceCount();
+            namespaceDeclarations = new String[nsCount * 2];
+            for (int i = 0; i < nsCount; i++) {
+                namespaceDeclarations[i * 2] = emptyToNull(reader.getNamespacePrefix(i));
+                namespaceDeclarations[i * 2 + 1] = reader.getNamespaceURI(i);
+            }
+        }
+
+        Element toDomElement(Document doc) {
+            Element element = doc.createElementNS(nsURI, toQName(prefix, localName));
+            // Like with DOM parsing, the namespace declarations are also attributes:
+            for (int i = 0; i < namespaceDeclarations.length; i += 2) {
+                String nsPrefix = namespaceDeclarations[i];
+                element.setAttributeNS(
+                        XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+                        nsPrefix == null ? XMLConstants.XMLNS_ATTRIBUTE : XMLConstants.XMLNS_ATTRIBUTE + ":" + nsPrefix,
+                        namespaceDeclarations[i + 1]);
+            }
+            for (int i = 0; i < attributes.length; i += 4) {
+                element.setAttributeNS(attributes[i], toQName(attributes[i + 1], attributes[i + 2]),
+                        attributes[i + 3]);
+            }
+            return element;
+        }
+
+        private static String toQName(String prefix, String localName) {
+            return prefix == null ? localName : prefix + ":" + localName;
+        }
+
+        private static String emptyToNull(String s) {
+            return s == null || s.length() == 0 ? null : s;
+        }
+
+    }
+
+}
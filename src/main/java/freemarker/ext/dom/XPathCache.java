@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.dom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import freemarker.cache.TinyLfuCacheStorage;
+import freemarker.core.CustomAttribute;
+import freemarker.core.Environment;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+/**
+ * A bounded cache of compiled XPath expressions that's shared by all templates of the same {@link Configuration}.
+ * Each {@link XPathSupport} implementation has its own instance of this, as the compiled expressions are specific to
+ * the XPath engine. Looking up an expression doesn't lock anything that's shared by the concurrent template
+ * processings: the storage is a {@link TinyLfuCacheStorage}, and it's looked up from the {@link Configuration} only once
+ * per {@link Environment}.
+ * 
+ * <p>
+ * The compiled expressions are shared by multiple threads, so they must be thread-safe to evaluate (as Xalan
+ * {@code XPath}-s and Jaxen {@code BaseXPath}-s are, as far as they aren't modified after publishing them).
+ */
+final class XPathCache {
+
+    /** The maximum number of compiled expressions cached per {@link Configuration}. */
+    static final int MAX_SIZE = 1000;
+
+    private final CustomAttribute configurationStorage = new CustomAttribute(CustomAttribute.SCOPE_CONFIGURATION) {
+        @Override
+        protected Object create() {
+            return new TinyLfuCacheStorage(MAX_SIZE);
+        }
+    };
+
+    private final CustomAttribute environmentStorage = new CustomAttribute(CustomAttribute.SCOPE_ENVIRONMENT);
+
+    /**
+     * @param env
+     *            The current {@link Environment}; if {@code null}, nothing is cached, and this returns {@code null}.
+     * 
+     * @return The cached compiled expression, or {@code null} if it's not in the cache.
+     */
+    Object get(Object key, Environment env) {
+        return env != null ? getStorage(env).get(key) : null;
+    }
+
+    /**
+     * @param env
+     *            The current {@link Environment}; if {@code null}, nothing is cached.
+     */
+    void put(Object key, Object compiledXPath, Environment env) {
+        if (env != null) {
+            getStorage(env).put(key, compiledXPath);
+        }
+    }
+
+    private TinyLfuCacheStorage getStorage(Environment env) {
+        // The attribute of the Environment is only accessed by the thread that processes the template, so unlike the
+        // Configuration-level attribute, it's never contended.
+        TinyLfuCacheStorage storage = (TinyLfuCacheStorage) environmentStorage.get(env);
+        if (storage == null) {
+            storage = (TinyLfuCacheStorage) configurationStorage.get(env);
+            environmentStorage.set(storage, env);
+        }
+        return storage;
+    }
+
+    /**
+     * Creates the cache key for XPath engines that resolve the namespace prefixes when the expression is compiled
+     * (like Xalan does). For such engines the same expression can compile differently depending on the
+     * {@code ns_prefixes} of the current namespace, so the namespace URI-s that the prefixes resolve to are part of
+     * the key. If the expression contains no prefixes, the key is the expression itself.
+     * 
+     * @param env
+     *            The current {@link Environment}; if {@code null}, the prefixes aren't resolved (nothing will be cached
+     *            then anyway).
+     */
+    static Object createPrefixResolvingKey(String xpathQuery, Environment env) {
+        List<String> prefixes = env != null ? getNamespacePrefixes(xpathQuery) : null;
+        if (prefixes == null) {
+            return xpathQuery;
+        }
+        String[] nsURIs = new String[prefixes.size()];
+        for (int i = 0; i < nsURIs.length; i++) {
+            String prefix = prefixes.get(i);
+            nsURIs[i] = prefix.equals(Template.DEFAULT_NAMESPACE_PREFIX)
+                    ? env.getDefaultNS() : env.getNamespaceForPrefix(prefix);
+        }
+        return new PrefixedQueryKey(xpathQuery, nsURIs);
+    }
+
+    /**
+     * Returns the namespace prefixes used in the expression, in the order of their occurrence, or {@code null} if
+     * there's none. This is a conservative scan: it ignores string literals and axis separators ({@code ::}), but may
+     * find things that aren't prefixes, which only makes the key more specific than necessary.
+     */
+    static List<String> getNamespacePrefixes(String xpathQuery) {
+        List<String> prefixes = null;
+        int ln = xpathQuery.length();
+        for (int i = 0; i < ln; i++) {
+            char c = xpathQuery.charAt(i);
+            if (c == '\'' || c == '"') {
+                int end = xpathQuery.indexOf(c, i + 1);
+                if (end == -1) {
+                    break;
+                }
+                i = end;
+            } else if (c == ':') {
+                if (i + 1 < ln && xpathQuery.charAt(i + 1) == ':') {
+                    i++;
+                } else {
+                    int start = i;
+                    while (start > 0 && isNameChar(xpathQuery.charAt(start - 1))) {
+                        start--;
+                    }
+                    if (start < i) {
+                        if (prefixes == null) {
+                            prefixes = new ArrayList<String>(4);
+                        }
+                        prefixes.add(xpathQuery.substring(start, i));
+                    }
+                }
+            }
+        }
+        return prefixes;
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+    }
+
+    private static final class PrefixedQueryKey {
+
+        private final String xpathQuery;
+        private final String[] nsURIs;
+        private final int hashCode;
+
+        PrefixedQueryKey(String xpathQuery, String[] nsURIs) {
+            this.xpathQuery = xpathQuery;
+            this.nsURIs = nsURIs;
+            int hashCode = xpathQuery.hashCode();
+            for (String nsURI : nsURIs) {
+                hashCode = hashCode * 31 + (nsURI != null ? nsURI.hashCode() : 0);
+            }
+            this.hashCode = hashCode;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof PrefixedQueryKey)) {
+                return false;
+            }
+            PrefixedQueryKey other = (PrefixedQueryKey) obj;
+            return xpathQuery.equals(other.xpathQuery) && Arrays.equals(nsURIs, other.nsURIs);
+        }
+
+    }
+
+}
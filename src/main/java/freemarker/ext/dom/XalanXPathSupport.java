@@ -20,6 +20,8 @@
 package freemarker.ext.dom;
 
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.xml.transform.TransformerException;
 
@@ -50,7 +52,14 @@ import freemarker.template.TemplateModelException;
 
 class XalanXPathSupport implements XPathSupport {
     
-    private XPathContext xpathContext = new XPathContext();
+    private static final XPathCache xpathCache = new XPathCache();
+
+    /**
+     * {@link XPathContext}-s aren't thread-safe, so each concurrent query borrows one from here (or creates a new one
+     * if there's none idle). As an {@link XPathContext} builds a DTM for each document it has queried, the instances
+     * of this class are document-specific, so these won't accumulate the DTM-s of all the documents.
+     */
+    private final Queue<XPathContext> idleXPathContexts = new ConcurrentLinkedQueue<XPathContext>();
         
     /* I don't recommend Jaxen...
     private static final String ERRMSG_RECOMMEND_JAXEN
@@ -60,7 +69,7 @@ class XalanXPathSupport implements XPathSupport {
     private static final String ERRMSG_EMPTY_NODE_SET
             = "Cannot perform an XPath query against an empty node set."; /* " + ERRMSG_RECOMMEND_JAXEN;*/
     
-    synchronized public TemplateModel executeQuery(Object context, String xpathQuery) throws TemplateModelException {
+    public TemplateModel executeQuery(Object context, String xpathQuery) throws TemplateModelException {
         if (!(context instanceof Node)) {
             if (context != null) {
                 if (isNodeList(context)) {
@@ -82,39 +91,65 @@ class XalanXPathSupport implements XPathSupport {
             }
         }
         Node node = (Node) context;
+        XPathContext xpathContext = idleXPathContexts.poll();
+        if (xpathContext == null) {
+            xpathContext = new XPathContext();
+        }
+        TemplateModel result;
         try {
-            XPath xpath = new XPath(xpathQuery, null, customPrefixResolver, XPath.SELECT, null);
+            XPath xpath = getXPath(xpathQuery);
             int ctxtNode = xpathContext.getDTMHandleFromNode(node);
             XObject xresult = xpath.execute(xpathContext, ctxtNode, customPrefixResolver);
-            if (xresult instanceof XNodeSet) {
-                NodeListModel result = new NodeListModel(node);
-                result.xpathSupport = this;
-                NodeIterator nodeIterator = xresult.nodeset();
-                Node n;
-                do {
-                    n = nodeIterator.nextNode();
-                    if (n != null) {
-                        result.add(n);
-                    }
-                } while (n != null);
-                return result.size() == 1 ? result.get(0) : result;
-            }
-            if (xresult instanceof XBoolean) {
-                return ((XBoolean) xresult).bool() ? TemplateBooleanModel.TRUE : TemplateBooleanModel.FALSE;
-            }
-            if (xresult instanceof XNull) {
-                return null;
-            }
-            if (xresult instanceof XString) {
-                return new SimpleScalar(xresult.toString());
-            }
-            if (xresult instanceof XNumber) {
-                return new SimpleNumber(Double.valueOf(((XNumber) xresult).num()));
-            }
-            throw new TemplateModelException("Cannot deal with type: " + xresult.getClass().getName());
+            // The node set result is read through the XPathContext, so this must be done before releasing it:
+            result = toTemplateModel(xresult, node);
         } catch (TransformerException te) {
             throw new TemplateModelException(te);
         }
+        // Only released if the query was successful, as otherwise we can't be sure that its state was restored.
+        idleXPathContexts.offer(xpathContext);
+        return result;
+    }
+
+    private static XPath getXPath(String xpathQuery) throws TransformerException {
+        Environment env = Environment.getCurrentEnvironment();
+        // Xalan resolves the prefixes during compilation, so the cache key must contain their current meaning:
+        Object key = XPathCache.createPrefixResolvingKey(xpathQuery, env);
+        XPath xpath = (XPath) xpathCache.get(key, env);
+        if (xpath == null) {
+            xpath = new XPath(xpathQuery, null, customPrefixResolver, XPath.SELECT, null);
+            xpathCache.put(key, xpath, env);
+        }
+        return xpath;
+    }
+
+    private TemplateModel toTemplateModel(XObject xresult, Node node) throws TemplateModelException,
+            TransformerException {
+        if (xresult instanceof XNodeSet) {
+            NodeListModel result = new NodeListModel(node);
+            result.xpathSupport = this;
+            NodeIterator nodeIterator = xresult.nodeset();
+            Node n;
+            do {
+                n = nodeIterator.nextNode();
+                if (n != null) {
+                    result.add(n);
+                }
+            } while (n != null);
+            return result.size() == 1 ? result.get(0) : result;
+        }
+        if (xresult instanceof XBoolean) {
+            return ((XBoolean) xresult).bool() ? TemplateBooleanModel.TRUE : TemplateBooleanModel.FALSE;
+        }
+        if (xresult instanceof XNull) {
+            return null;
+        }
+        if (xresult instanceof XString) {
+            return new SimpleScalar(xresult.toString());
+        }
+        if (xresult instanceof XNumber) {
+            return new SimpleNumber(Double.valueOf(((XNumber) xresult).num()));
+        }
+        throw new TemplateModelException("Cannot deal with type: " + xresult.getClass().getName());
     }
     
     private static PrefixResolver customPrefixResolver = new PrefixResolver() {
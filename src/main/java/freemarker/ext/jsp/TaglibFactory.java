@@ -24,9 +24,12 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
+import java.io.FileOutputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -43,11 +46,19 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 import java.util.Stack;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.regex.Pattern;
@@ -131,6 +142,8 @@ public class TaglibFactory implements TemplateHashModel {
     private ObjectWrapper objectWrapper;
     private List/*<MetaInfTldSource>*/ metaInfTldSources = DEFAULT_META_INF_TLD_SOURCES;
     private List/*<String>*/ classpathTlds = DEFAULT_CLASSPATH_TLDS;
+    private File tldIndexFile;
+    private int jarScanParallelism = 1;
     
     boolean test_emulateNoUrlToFileConversions = false;
     boolean test_emulateNoJarURLConnections = false;
@@ -378,6 +391,55 @@ public class TaglibFactory implements TemplateHashModel {
         this.classpathTlds = classpathTlds;
     }
 
+    /**
+     * See {@link #setTldIndexFile(File)}.
+     * 
+     * @since 2.3.26
+     */
+    public File getTldIndexFile() {
+        return tldIndexFile;
+    }
+
+    /**
+     * Sets the file where the taglib URI-s found in the {@code WEB-INF/lib} jars are persisted, so that on the next
+     * start the jars that have the same size and last modification time as earlier needn't be scanned again. The
+     * file is created if it doesn't exist yet. Defaults to {@code null}, which means that no such file is used.
+     * 
+     * <p>
+     * {@link FreemarkerServlet} sets this based on its {@value FreemarkerServlet#INIT_PARAM_TLD_INDEX_FILE} init-param.
+     * 
+     * @since 2.3.26
+     */
+    public void setTldIndexFile(File tldIndexFile) {
+        checkNotStarted();
+        this.tldIndexFile = tldIndexFile;
+    }
+
+    /**
+     * See {@link #setJarScanParallelism(int)}.
+     * 
+     * @since 2.3.26
+     */
+    public int getJarScanParallelism() {
+        return jarScanParallelism;
+    }
+
+    /**
+     * Sets the maximum number of threads used for scanning the {@code WEB-INF/lib} jars for TLD-s. Defaults to 1, in
+     * which case the jars are scanned on the calling thread, without starting new threads (as some environments don't
+     * allow starting threads). Setting it to a higher value, like to the number of available processors, can speed up
+     * the start of applications with many jars.
+     * 
+     * @since 2.3.26
+     */
+    public void setJarScanParallelism(int jarScanParallelism) {
+        checkNotStarted();
+        if (jarScanParallelism < 1) {
+            throw new IllegalArgumentException("jarScanParallelism must be at least 1, but was " + jarScanParallelism);
+        }
+        this.jarScanParallelism = jarScanParallelism;
+    }
+
     private void checkNotStarted() {
         synchronized (lock) {
             if (nextTldLocationLookupPhase != 0) {
@@ -541,14 +603,100 @@ public class TaglibFactory implements TemplateHashModel {
         }
 
         Set libEntPaths = servletContext.getResourcePaths("/WEB-INF/lib");
-        if (libEntPaths != null) {
-            for (Iterator iter = libEntPaths.iterator(); iter.hasNext(); ) {
-                final String libEntryPath = (String) iter.next();
-                if (isJarPath(libEntryPath)) {
-                    addTldLocationsFromServletContextJar(libEntryPath);
+        if (libEntPaths == null) {
+            return;
+        }
+        List<String> jarResourcePaths = new ArrayList<String>();
+        for (Iterator iter = libEntPaths.iterator(); iter.hasNext(); ) {
+            final String libEntryPath = (String) iter.next();
+            if (isJarPath(libEntryPath)) {
+                jarResourcePaths.add(libEntryPath);
+            }
+        }
+        if (jarResourcePaths.isEmpty()) {
+            return;
+        }
+        
+        final TldIndex oldTldIndex = tldIndexFile != null ? TldIndex.load(tldIndexFile) : null;
+        final TldIndex newTldIndex = tldIndexFile != null ? new TldIndex() : null;
+        // The jars are scanned in parallel, but the results are processed in the original order, as the TLD that was
+        // found earlier wins if multiple TLD-s define the same taglib URI.
+        for (JarTlds jarTlds : scanServletContextJars(jarResourcePaths, oldTldIndex)) {
+            for (Iterator<Map.Entry<String, String>> it = jarTlds.taglibUrisByEntryPath.entrySet().iterator();
+                    it.hasNext(); ) {
+                Map.Entry<String, String> ent = it.next();
+                addTldLocation(
+                        new ServletContextJarEntryTldLocation(jarTlds.jarResourcePath, ent.getKey()),
+                        ent.getValue());
+            }
+            if (newTldIndex != null) {
+                newTldIndex.put(jarTlds);
+            }
+        }
+        if (newTldIndex != null && !newTldIndex.equals(oldTldIndex)) {
+            newTldIndex.save(tldIndexFile);
+        }
+    }
+
+    /**
+     * Scans the jars in parallel if {@link #setJarScanParallelism(int)} allows that.
+     * 
+     * @return The results in the same order as the jars were specified.
+     */
+    private List<JarTlds> scanServletContextJars(List<String> jarResourcePaths, final TldIndex tldIndex)
+            throws IOException, SAXException {
+        final List<JarTlds> results = new ArrayList<JarTlds>(jarResourcePaths.size());
+        final int threadCount = Math.min(jarScanParallelism, jarResourcePaths.size());
+        if (threadCount <= 1) {
+            for (String jarResourcePath : jarResourcePaths) {
+                results.add(scanServletContextJar(jarResourcePath, tldIndex));
+            }
+            return results;
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "FreeMarker TLD scanner");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Future<JarTlds>> futures = new ArrayList<Future<JarTlds>>(jarResourcePaths.size());
+            for (final String jarResourcePath : jarResourcePaths) {
+                futures.add(executor.submit(new Callable<JarTlds>() {
+                    public JarTlds call() throws IOException, SAXException {
+                        return scanServletContextJar(jarResourcePath, tldIndex);
+                    }
+                }));
+            }
+            for (Future<JarTlds> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while scanning the jars for TLD-s");
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    if (cause instanceof SAXException) {
+                        throw (SAXException) cause;
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new BugException(cause);
                 }
             }
+        } finally {
+            executor.shutdownNow();
         }
+        return results;
     }
 
     private void addTldLocationsFromClasspathTlds() throws SAXException, IOException, TaglibGettingException {
@@ -593,28 +741,61 @@ public class TaglibFactory implements TemplateHashModel {
     }
 
     /**
-     * Finds and processes *.tld inside a jar in the servet context.
+     * Finds the *.tld-s inside a jar in the servet context, and extracts their taglib URI-s. This doesn't modify the
+     * state of this object (other than {@link #failedTldLocations}), so it can be called from multiple threads
+     * concurrently.
+     * 
+     * @param tldIndex
+     *            If not {@code null}, and it contains the jar with the same size and last modification time, then the
+     *            result will come from there, and the jar won't be opened.
      */
-    private void addTldLocationsFromServletContextJar(
-            final String jarResourcePath)
+    private JarTlds scanServletContextJar(final String jarResourcePath, TldIndex tldIndex)
             throws IOException, MalformedURLException, SAXException {
         final String metaInfEntryPath = normalizeJarEntryPath(META_INF_ABS_PATH, true);
         
         // Null for non-random-access backing resource:
-        final JarFile jarFile = servletContextResourceToFileOrNull(jarResourcePath);
-        if (jarFile != null) {
+        final File jarAsFile = servletContextResourceToFileOrNull(jarResourcePath);
+        final JarTlds jarTlds;
+        if (jarAsFile != null) {
+            final long jarSize = jarAsFile.length();
+            final long jarLastModified = jarAsFile.lastModified();
+            if (tldIndex != null) {
+                JarTlds indexedJarTlds = tldIndex.get(jarResourcePath, jarSize, jarLastModified);
+                if (indexedJarTlds != null) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Using the TLD index instead of scanning unchanged jar: servletContext:"
+                                + jarResourcePath);
+                    }
+                    return indexedJarTlds;
+                }
+            }
+            jarTlds = new JarTlds(jarResourcePath, jarSize, jarLastModified);
+            
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Scanning for " + META_INF_ABS_PATH + "*.tld-s in JarFile: servletContext:"
                         + jarResourcePath);
             }
-            for (Enumeration/*<JarEntry>*/ entries = jarFile.entries(); entries.hasMoreElements(); ) {
-                final JarEntry curEntry = (JarEntry) entries.nextElement();
-                final String curEntryPath = normalizeJarEntryPath(curEntry.getName(), false);
-                if (curEntryPath.startsWith(metaInfEntryPath) && curEntryPath.endsWith(".tld")) {
-                    addTldLocationFromTld(new ServletContextJarEntryTldLocation(jarResourcePath, curEntryPath));
+            final JarFile jarFile = new JarFile(jarAsFile);
+            try {
+                for (Enumeration/*<JarEntry>*/ entries = jarFile.entries(); entries.hasMoreElements(); ) {
+                    final JarEntry curEntry = (JarEntry) entries.nextElement();
+                    final String curEntryPath = normalizeJarEntryPath(curEntry.getName(), false);
+                    if (curEntryPath.startsWith(metaInfEntryPath) && curEntryPath.endsWith(".tld")) {
+                        InputStream in = jarFile.getInputStream(curEntry);
+                        try {
+                            addTldFromJar(jarTlds, in, curEntryPath);
+                        } finally {
+                            in.close();
+                        }
+                    }
                 }
+            } finally {
+                jarFile.close();
             }
-        } else {  // jarFile == null => fall back to streamed access
+        } else {  // jarAsFile == null => fall back to streamed access
+            // As we don't know the size and the last modification time, the result won't be indexed.
+            jarTlds = new JarTlds(jarResourcePath, -1, -1);
+            
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Scanning for " + META_INF_ABS_PATH
                         + "*.tld-s in ZipInputStream (slow): servletContext:" + jarResourcePath);
@@ -633,8 +814,7 @@ public class TaglibFactory implements TemplateHashModel {
         
                         String curEntryPath = normalizeJarEntryPath(curEntry.getName(), false);
                         if (curEntryPath.startsWith(metaInfEntryPath) && curEntryPath.endsWith(".tld")) {
-                            addTldLocationFromTld(zipIn,
-                                    new ServletContextJarEntryTldLocation(jarResourcePath, curEntryPath)); 
+                            addTldFromJar(jarTlds, zipIn, curEntryPath);
                         }
                     }
                 } finally {
@@ -644,6 +824,21 @@ public class TaglibFactory implements TemplateHashModel {
                 in.close();
             }
         }
+        return jarTlds;
+    }
+
+    private void addTldFromJar(JarTlds jarTlds, InputStream in, String entryPath) throws IOException {
+        TldLocation tldLocation = new ServletContextJarEntryTldLocation(jarTlds.jarResourcePath, entryPath);
+        try {
+            String taglibUri = getTaglibUriFromTld(in, tldLocation.getXmlSystemId());
+            if (taglibUri != null) {
+                jarTlds.taglibUrisByEntryPath.put(entryPath, taglibUri);
+            }
+        } catch (SAXException e) {
+            onTldParsingFailure(tldLocation, e);
+            // So that the error will be reported again on the next start:
+            jarTlds.indexable = false;
+        }
     }
 
     /**
@@ -791,10 +986,7 @@ public class TaglibFactory implements TemplateHashModel {
         try {
             taglibUri = getTaglibUriFromTld(reusedIn, tldLocation.getXmlSystemId());
         } catch (SAXException e) {
-            LOG.error("Error while parsing TLD; skipping: " + tldLocation, e);
-            synchronized (failedTldLocations) {
-                failedTldLocations.add(tldLocation.toString());
-            }
+            onTldParsingFailure(tldLocation, e);
             taglibUri = null;
         }
         if (taglibUri != null) {
@@ -802,6 +994,13 @@ public class TaglibFactory implements TemplateHashModel {
         }
     }
 
+    private void onTldParsingFailure(TldLocation tldLocation, SAXException e) {
+        LOG.error("Error while parsing TLD; skipping: " + tldLocation, e);
+        synchronized (failedTldLocations) {
+            failedTldLocations.add(tldLocation.toString());
+        }
+    }
+
     private void addTldLocation(TldLocation tldLocation, String taglibUri) {
         if (tldLocations.containsKey(taglibUri)) {
             if (LOG.isDebugEnabled()) {
@@ -1032,11 +1231,11 @@ public class TaglibFactory implements TemplateHashModel {
     }
 
     /**
-     * Gets a servlet context resource as a {@link JarFile} if possible, return {@code null} otherwise.
-     * For BC only, we try to get over errors during URL/JarFile construction, so then the caller can fall back to the
+     * Gets a servlet context resource as a {@link File} if possible, return {@code null} otherwise.
+     * For BC only, we try to get over errors during URL/File construction, so then the caller can fall back to the
      * legacy ZipInputStream-based approach.
      */
-    private JarFile servletContextResourceToFileOrNull(final String jarResourcePath) throws MalformedURLException,
+    private File servletContextResourceToFileOrNull(final String jarResourcePath) throws MalformedURLException,
             IOException {
         URL jarResourceUrl = servletContext.getResource(jarResourcePath);
         if (jarResourceUrl == null) {
@@ -1055,7 +1254,7 @@ public class TaglibFactory implements TemplateHashModel {
             return null;
         }
 
-        return new JarFile(jarResourceAsFile);
+        return jarResourceAsFile;
     }
 
     private static URL tryCreateServletContextJarEntryUrl(
@@ -1198,6 +1397,137 @@ public class TaglibFactory implements TemplateHashModel {
         public abstract String getXmlSystemId() throws IOException;
     }
 
+    /**
+     * The TLD-s found in a jar in the servlet context.
+     */
+    private static final class JarTlds {
+        
+        private final String jarResourcePath;
+        /** -1 if not known, in which case the jar isn't indexable. */
+        private final long jarSize;
+        private final long jarLastModified;
+        /** The jar entry paths of the TLD-s, and their taglib URI-s, in the order they were found. */
+        private final Map<String, String> taglibUrisByEntryPath = new LinkedHashMap<String, String>();
+        /** False if the jar must be scanned again on the next start, like because we had errors with a TLD. */
+        private boolean indexable;
+        
+        JarTlds(String jarResourcePath, long jarSize, long jarLastModified) {
+            this.jarResourcePath = jarResourcePath;
+            this.jarSize = jarSize;
+            this.jarLastModified = jarLastModified;
+            this.indexable = jarSize != -1;
+        }
+        
+    }
+
+    /**
+     * The {@link JarTlds}-s of the jars, keyed by the servlet context path of the jar, size, and last modification
+     * time. It's stored as a properties file, where the key is the jar path, and the value is the tab separated list
+     * of the size, the last modification time, and the TLD entry path and taglib URI pairs. See
+     * {@link TaglibFactory#setTldIndexFile(File)}.
+     */
+    private static final class TldIndex {
+        
+        private static final String FORMAT_VERSION_KEY = "@formatVersion";
+        private static final String FORMAT_VERSION = "1";
+        private static final char SEPARATOR = '\t';
+        
+        private final Properties properties = new Properties();
+        
+        TldIndex() {
+            properties.setProperty(FORMAT_VERSION_KEY, FORMAT_VERSION);
+        }
+        
+        /**
+         * Loads the index from the file; if the file is missing, or can't be loaded, it returns an empty index.
+         */
+        static TldIndex load(File file) {
+            TldIndex tldIndex = new TldIndex();
+            if (!file.isFile()) {
+                return tldIndex;
+            }
+            try {
+                InputStream in = new FileInputStream(file);
+                try {
+                    tldIndex.properties.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (Exception e) {
+                LOG.warn("Failed to load TLD index file; ignoring it: " + StringUtil.jQuoteNoXSS(file), e);
+                return new TldIndex();
+            }
+            if (!FORMAT_VERSION.equals(tldIndex.properties.getProperty(FORMAT_VERSION_KEY))) {
+                return new TldIndex();
+            }
+            return tldIndex;
+        }
+        
+        void save(File file) {
+            try {
+                OutputStream out = new FileOutputStream(file);
+                try {
+                    properties.store(out, "FreeMarker JSP TLD index");
+                } finally {
+                    out.close();
+                }
+            } catch (IOException e) {
+                LOG.warn("Failed to save TLD index file: " + StringUtil.jQuoteNoXSS(file), e);
+            }
+        }
+        
+        /**
+         * @return {@code null} if the jar is not in the index with the same size and last modification time.
+         */
+        JarTlds get(String jarResourcePath, long jarSize, long jarLastModified) {
+            String value = properties.getProperty(jarResourcePath);
+            if (value == null) {
+                return null;
+            }
+            String[] fields = StringUtil.split(value, SEPARATOR);
+            if (fields.length < 2 || fields.length % 2 != 0) {
+                return null;
+            }
+            try {
+                if (Long.parseLong(fields[0]) != jarSize || Long.parseLong(fields[1]) != jarLastModified) {
+                    return null;
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            JarTlds jarTlds = new JarTlds(jarResourcePath, jarSize, jarLastModified);
+            for (int i = 2; i < fields.length; i += 2) {
+                jarTlds.taglibUrisByEntryPath.put(fields[i], fields[i + 1]);
+            }
+            return jarTlds;
+        }
+        
+        void put(JarTlds jarTlds) {
+            if (!jarTlds.indexable) {
+                return;
+            }
+            StringBuilder sb = new StringBuilder();
+            sb.append(jarTlds.jarSize).append(SEPARATOR).append(jarTlds.jarLastModified);
+            for (Iterator<Map.Entry<String, String>> it = jarTlds.taglibUrisByEntryPath.entrySet().iterator();
+                    it.hasNext(); ) {
+                Map.Entry<String, String> ent = it.next();
+                sb.append(SEPARATOR).append(ent.getKey()).append(SEPARATOR).append(ent.getValue());
+            }
+            properties.setProperty(jarTlds.jarResourcePath, sb.toString());
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof TldIndex && ((TldIndex) obj).properties.equals(properties);
+        }
+        
+        @Override
+        public int hashCode() {
+            return properties.hashCode();
+        }
+        
+    }
+
     private interface InputStreamFactory {
         InputStream getInputStream();
     
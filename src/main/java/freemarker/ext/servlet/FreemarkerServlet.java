@@ -19,6 +19,7 @@
 
 package freemarker.ext.servlet;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Writer;
 import java.nio.charset.Charset;
@@ -47,6 +48,7 @@ import freemarker.cache.MultiTemplateLoader;
 import freemarker.cache.TemplateLoader;
 import freemarker.cache.WebappTemplateLoader;
 import freemarker.core.Configurable;
+import freemarker.core.EncodingWriter;
 import freemarker.core.Environment;
 import freemarker.core.OutputFormat;
 import freemarker.core.UndefinedOutputFormat;
@@ -225,6 +227,14 @@ import freemarker.template.utility.StringUtil;
  * is not set by {@link FreemarkerServlet} in the HTTP response, which usually means that the default buffer size of the
  * servlet container will be used.</li>
  *
+ * <li><strong>{@value #INIT_PARAM_BYTE_OUTPUT}</strong> (since 2.3.26): If {@code true}, the template output is
+ * written into {@link HttpServletResponse#getOutputStream()} through an {@link EncodingWriter} (using the charset of
+ * the response), instead of into {@link HttpServletResponse#getWriter()}. This is faster, as the static text of the
+ * templates will be encoded only once, and then reused. The cost is that templates also store the encoded form of
+ * their static text. Don't use this if {@link #preTemplateProcess(HttpServletRequest, HttpServletResponse, Template,
+ * TemplateModel)} or {@link #postTemplateProcess(HttpServletRequest, HttpServletResponse, Template, TemplateModel)}
+ * is overridden to call {@link HttpServletResponse#getWriter()}. Defaults to {@code false}.</li>
+ * 
  * <li><strong>{@value #INIT_PARAM_EXCEPTION_ON_MISSING_TEMPLATE}</strong> (since 2.3.22): If {@code false} (default,
  * but not recommended), if a template is requested that's missing, this servlet responses with a HTTP 404 "Not found"
  * error, and only logs the problem with debug level. If {@code true} (recommended), the servlet will log the issue with
@@ -254,6 +264,12 @@ import freemarker.template.utility.StringUtil;
  * {@value #SYSTEM_PROPERTY_CLASSPATH_TLDS} system property. If both the init-param and the system property exists, the
  * items listed in system property will be added after those specified by the init-param.</li>
  * 
+ * <li><strong>{@value #INIT_PARAM_TLD_INDEX_FILE}</strong> (since 2.3.26): The path of the file where the taglib URI-s
+ * found in the {@code WEB-INF/lib} jars are persisted, so that on the next start the unchanged jars needn't be scanned
+ * again; see {@link TaglibFactory#setTldIndexFile(java.io.File)}. A relative path is resolved relatively to the
+ * temporary directory of the web application (the {@code javax.servlet.context.tempdir} servlet context attribute).
+ * Defaults to no such file.</li>
+ * 
  * <li><strong>"Debug"</strong>: Deprecated, has no effect since 2.3.22. (Earlier it has enabled/disabled sending
  * debug-level log messages to the servlet container log, but this servlet doesn't log debug level messages into the
  * servlet container log anymore, only into the FreeMarker log.)</li>
@@ -375,6 +391,13 @@ public class FreemarkerServlet extends HttpServlet {
      */
     public static final String INIT_PARAM_BUFFER_SIZE = "BufferSize";
     
+    /**
+     * Init-param name - see the {@link FreemarkerServlet} class documentation about the init-params.
+     * 
+     * @since 2.3.26
+     */
+    public static final String INIT_PARAM_BYTE_OUTPUT = "ByteOutput";
+    
     /**
      * Init-param name - see the {@link FreemarkerServlet} class documentation about the init-params.
      * 
@@ -396,6 +419,13 @@ public class FreemarkerServlet extends HttpServlet {
      */
     public static final String INIT_PARAM_CLASSPATH_TLDS = "ClasspathTlds";
     
+    /**
+     * Init-param name - see the {@link FreemarkerServlet} class documentation about the init-params.
+     * 
+     * @since 2.3.26
+     */
+    public static final String INIT_PARAM_TLD_INDEX_FILE = "TldIndexFile";
+    
     private static final String INIT_PARAM_DEBUG = "Debug";
 
     private static final String DEPR_INITPARAM_TEMPLATE_DELAY = "TemplateDelay";
@@ -485,6 +515,9 @@ public class FreemarkerServlet extends HttpServlet {
     private static final String ATTR_JETTY_CP_TAGLIB_JAR_PATTERNS
             = "org.eclipse.jetty.server.webapp.ContainerIncludeJarPattern";
     
+    /** The standard servlet context attribute that stores the private temporary directory of the web application. */
+    private static final String ATTR_SERVLET_CONTEXT_TEMP_DIR = "javax.servlet.context.tempdir";
+    
     private static final String EXPIRATION_DATE;
 
     static {
@@ -502,6 +535,7 @@ public class FreemarkerServlet extends HttpServlet {
     private String templatePath;
     private boolean noCache;
     private Integer bufferSize;
+    private boolean byteOutput;
     private boolean exceptionOnMissingTemplate;
     
     /**
@@ -524,6 +558,7 @@ public class FreemarkerServlet extends HttpServlet {
     private OverrideResponseLocale overrideResponseLocale = OverrideResponseLocale.ALWAYS;
     private List/*<MetaInfTldSource>*/ metaInfTldSources;
     private List/*<String>*/ classpathTlds;
+    private String tldIndexFile;
 
     private Object lazyInitFieldsLock = new Object();
     @SuppressFBWarnings(value="SE_BAD_FIELD", justification="Not investing into making this Servlet serializable")
@@ -657,6 +692,8 @@ public class FreemarkerServlet extends HttpServlet {
                     noCache = StringUtil.getYesNo(value);
                 } else if (name.equals(INIT_PARAM_BUFFER_SIZE)) {
                     bufferSize = Integer.valueOf(parseSize(value));
+                } else if (name.equals(INIT_PARAM_BYTE_OUTPUT)) {
+                    byteOutput = StringUtil.getYesNo(value);
                 } else if (name.equals(DEPR_INITPARAM_DEBUG)) { // BC
                     if (getInitParameter(INIT_PARAM_DEBUG) != null) {
                         throw new ConflictingInitParamsException(INIT_PARAM_DEBUG, DEPR_INITPARAM_DEBUG);
@@ -687,6 +724,8 @@ public class FreemarkerServlet extends HttpServlet {
                     }
                     newClasspathTlds.addAll(InitParamParser.parseCommaSeparatedList(value));
                     classpathTlds = newClasspathTlds;
+                } else if (name.equals(INIT_PARAM_TLD_INDEX_FILE)) {
+                    tldIndexFile = value.trim();
                 } else {
                     config.setSetting(name, value);
                 }
@@ -867,9 +906,17 @@ public class FreemarkerServlet extends HttpServlet {
 
             // Give subclasses a chance to hook into preprocessing
             if (preTemplateProcess(request, response, template, model)) {
+                EncodingWriter encodingWriter = null;
                 try {
                     // Process the template
-                    Environment env = template.createProcessingEnvironment(model, response.getWriter());
+                    final Writer out;
+                    if (byteOutput) {
+                        encodingWriter = createEncodingWriter(response);
+                        out = encodingWriter != null ? encodingWriter : response.getWriter();
+                    } else {
+                        out = response.getWriter();
+                    }
+                    Environment env = template.createProcessingEnvironment(model, out);
                     if (responseCharacterEncoding != ResponseCharacterEncoding.LEGACY) {
                         String actualOutputCharset = response.getCharacterEncoding();
                         if (actualOutputCharset != null) {
@@ -878,6 +925,10 @@ public class FreemarkerServlet extends HttpServlet {
                     }
                     processEnvironment(env, request, response);
                 } finally {
+                    if (encodingWriter != null) {
+                        // As with the Writer, the output written so far must reach the response even on error.
+                        encodingWriter.flushBuffer();
+                    }
                     // Give subclasses a chance to hook into postprocessing
                     postTemplateProcess(request, response, template, model);
                 }
@@ -910,6 +961,23 @@ public class FreemarkerServlet extends HttpServlet {
         env.process();
     }
 
+    /**
+     * Returns {@code null} if the charset of the response isn't supported by the JVM, in which case we fall back to
+     * {@link HttpServletResponse#getWriter()}, which will deal with the problem as usual.
+     */
+    private EncodingWriter createEncodingWriter(HttpServletResponse response) throws IOException {
+        String charsetName = response.getCharacterEncoding();
+        final Charset charset;
+        try {
+            charset = Charset.forName(charsetName != null ? charsetName : "ISO-8859-1");
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Can't use " + INIT_PARAM_BYTE_OUTPUT + " with response charset "
+                    + StringUtil.jQuoteNoXSS(charsetName) + "; falling back to HttpServletResponse.getWriter().", e);
+            return null;
+        }
+        return new EncodingWriter(response.getOutputStream(), charset);
+    }
+
     private String getTemplateSpecificOutputEncoding(Template template) {
         String outputEncoding = responseCharacterEncoding == ResponseCharacterEncoding.LEGACY ? null
                 : template.getOutputEncoding();
@@ -1141,6 +1209,20 @@ public class FreemarkerServlet extends HttpServlet {
             taglibFactory.setClasspathTlds(mergedClassPathTlds);
         }
         
+        if (tldIndexFile != null) {
+            File file = new File(tldIndexFile);
+            if (!file.isAbsolute()) {
+                final Object tempDir = servletContext.getAttribute(ATTR_SERVLET_CONTEXT_TEMP_DIR);
+                if (!(tempDir instanceof File)) {
+                    throw new TemplateModelException("The \"" + INIT_PARAM_TLD_INDEX_FILE
+                            + "\" init-param is a relative path, but the servlet container doesn't provide the \""
+                            + ATTR_SERVLET_CONTEXT_TEMP_DIR + "\" servlet context attribute to resolve it against.");
+                }
+                file = new File((File) tempDir, tldIndexFile);
+            }
+            taglibFactory.setTldIndexFile(file);
+        }
+        
         return taglibFactory;        
     }
 
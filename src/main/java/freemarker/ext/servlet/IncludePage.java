@@ -36,6 +36,7 @@ import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletResponseWrapper;
 
+import freemarker.core.EncodingWriter;
 import freemarker.core.Environment;
 import freemarker.core._DelayedFTLTypeDescription;
 import freemarker.core._MiscTemplateException;
@@ -91,7 +92,8 @@ public class IncludePage implements TemplateDirectiveModel {
         // writer. 
         final Writer envOut = env.getOut(); 
         final HttpServletResponse wrappedResponse;
-        if (envOut == response.getWriter()) {
+        // (With EncodingWriter the output goes to response.getOutputStream(), so we can't call getWriter().)
+        if (!(envOut instanceof EncodingWriter) && envOut == response.getWriter()) {
             // Don't bother wrapping if environment's writer is same as 
             // response writer
             wrappedResponse = response;
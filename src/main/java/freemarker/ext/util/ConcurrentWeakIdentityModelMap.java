@@ -0,0 +1,313 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicLong;
+
+import freemarker.template.TemplateModel;
+
+/**
+ * Concurrent identity hash map that {@link ModelCache} uses to map the wrapped objects to their
+ * {@link TemplateModel}-s. The keys are weakly referenced, the values are softly referenced, and the entries whose key
+ * or value was garbage collected are removed automatically. The map is split into segments based on the identity
+ * hash code of the key; reads don't lock, and writes only lock one segment. If the maximum size is reached, the
+ * segment evicts an arbitrary entry (chosen in a round-robin fashion), so the size limit is approximate, as it's
+ * enforced per segment.
+ */
+final class ConcurrentWeakIdentityModelMap {
+    
+    private static final int SEGMENT_COUNT = 16;
+    private static final int SEGMENT_SHIFT = 28;
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+    
+    private final Segment[] segments;
+    private final int maxSize;
+
+    /**
+     * @param maxSize
+     *            The maximum number of entries; {@link Integer#MAX_VALUE} means no limit.
+     */
+    ConcurrentWeakIdentityModelMap(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1, but was " + maxSize);
+        }
+        this.maxSize = maxSize;
+        int maxSegmentSize = maxSize == Integer.MAX_VALUE
+                ? Integer.MAX_VALUE : Math.max(1, (maxSize + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+        segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(maxSegmentSize);
+        }
+    }
+    
+    TemplateModel get(Object key) {
+        int hash = hash(key);
+        return segmentFor(hash).get(key, hash);
+    }
+    
+    void put(Object key, TemplateModel model) {
+        int hash = hash(key);
+        segmentFor(hash).put(key, hash, model);
+    }
+    
+    void clear() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i].clear();
+        }
+    }
+    
+    int getMaxSize() {
+        return maxSize;
+    }
+    
+    /**
+     * The number of entries, including those whose key or value was already garbage collected but weren't yet
+     * removed.
+     */
+    int size() {
+        int size = 0;
+        for (int i = 0; i < segments.length; i++) {
+            size += segments[i].count;
+        }
+        return size;
+    }
+    
+    long getHitCount() {
+        long sum = 0;
+        for (int i = 0; i < segments.length; i++) {
+            sum += segments[i].hitCount.get();
+        }
+        return sum;
+    }
+
+    long getMissCount() {
+        long sum = 0;
+        for (int i = 0; i < segments.length; i++) {
+            sum += segments[i].missCount.get();
+        }
+        return sum;
+    }
+    
+    long getEvictionCount() {
+        long sum = 0;
+        for (int i = 0; i < segments.length; i++) {
+            sum += segments[i].evictionCount.get();
+        }
+        return sum;
+    }
+    
+    private Segment segmentFor(int hash) {
+        return segments[(hash >>> SEGMENT_SHIFT) & (SEGMENT_COUNT - 1)];
+    }
+    
+    /**
+     * Spreads the bits of the identity hash code, as the high bits select the segment, and the low bits select the
+     * bucket inside the segment.
+     */
+    private static int hash(Object key) {
+        int h = System.identityHashCode(key);
+        h += (h << 15) ^ 0xffffcd7d;
+        h ^= (h >>> 10);
+        h += (h << 3);
+        h ^= (h >>> 6);
+        h += (h << 2) + (h << 14);
+        return h ^ (h >>> 16);
+    }
+    
+    /**
+     * A hash table that's only modified while holding its monitor. Readers don't lock; they rely on that
+     * {@link Entry#next} is final (so bucket chains are never modified, only replaced), and that writers always write
+     * {@link #count} (which is volatile) after modifying the table, while readers read it before the table.
+     */
+    private static final class Segment {
+        
+        private final int maxCount;
+        private final ReferenceQueue<Object> refQueue = new ReferenceQueue<Object>();
+        private final AtomicLong hitCount = new AtomicLong();
+        private final AtomicLong missCount = new AtomicLong();
+        private final AtomicLong evictionCount = new AtomicLong();
+        
+        private volatile int count;
+        private volatile Entry[] table = new Entry[INITIAL_SEGMENT_CAPACITY];
+        /** Where the next eviction starts looking for an entry; guarded by the monitor. */
+        private int evictionIndex;
+        
+        Segment(int maxCount) {
+            this.maxCount = maxCount;
+        }
+        
+        TemplateModel get(Object key, int hash) {
+            if (count != 0) {  // Volatile read for visibility
+                Entry[] table = this.table;
+                for (Entry e = table[hash & (table.length - 1)]; e != null; e = e.next) {
+                    if (e.hash == hash && e.get() == key) {
+                        TemplateModel model = e.valueRef.get();
+                        if (model != null) {
+                            hitCount.incrementAndGet();
+                            return model;
+                        }
+                        break;
+                    }
+                }
+            }
+            missCount.incrementAndGet();
+            return null;
+        }
+        
+        synchronized void put(Object key, int hash, TemplateModel model) {
+            removeCollectedEntries();
+            
+            Entry[] table = this.table;
+            int idx = hash & (table.length - 1);
+            for (Entry e = table[idx]; e != null; e = e.next) {
+                if (e.hash == hash && e.get() == key) {
+                    removeEntry(e);
+                    break;
+                }
+            }
+            
+            if (count >= maxCount) {
+                evictEntry();
+            }
+            if (count >= (int) (this.table.length * LOAD_FACTOR)) {
+                rehash();
+            }
+            
+            table = this.table;
+            idx = hash & (table.length - 1);
+            table[idx] = new Entry(key, hash, table[idx], new ValueReference(model, refQueue), refQueue);
+            count = count + 1;  // Volatile write for visibility
+        }
+        
+        synchronized void clear() {
+            while (refQueue.poll() != null) {
+                // Drop
+            }
+            table = new Entry[INITIAL_SEGMENT_CAPACITY];
+            count = 0;
+        }
+        
+        private void removeCollectedEntries() {
+            Reference<?> ref;
+            while ((ref = refQueue.poll()) != null) {
+                removeEntry(ref instanceof Entry ? (Entry) ref : ((ValueReference) ref).entry);
+            }
+        }
+        
+        /**
+         * Removes the entry if it's still in the table. As {@link Entry#next} is final, the entries before it in the
+         * chain are replaced with copies; the copies of the entries whose key was garbage collected are omitted.
+         */
+        private void removeEntry(Entry entry) {
+            final Entry[] table = this.table;
+            final int idx = entry.hash & (table.length - 1);
+            final Entry first = table[idx];
+            Entry e = first;
+            while (e != null && e != entry) {
+                e = e.next;
+            }
+            if (e == null) {
+                // Was already removed, or it's an old copy
+                return;
+            }
+            
+            int newCount = count - 1;
+            Entry newFirst = entry.next;
+            for (Entry p = first; p != entry; p = p.next) {
+                Object key = p.get();
+                if (key != null) {
+                    newFirst = p.copy(key, newFirst, refQueue);
+                } else {
+                    newCount--;
+                }
+            }
+            table[idx] = newFirst;
+            count = newCount;  // Volatile write for visibility
+        }
+        
+        private void evictEntry() {
+            final Entry[] table = this.table;
+            for (int i = 0; i < table.length; i++) {
+                Entry e = table[evictionIndex++ & (table.length - 1)];
+                if (e != null) {
+                    removeEntry(e);
+                    evictionCount.incrementAndGet();
+                    return;
+                }
+            }
+        }
+        
+        private void rehash() {
+            final Entry[] oldTable = table;
+            final Entry[] newTable = new Entry[oldTable.length * 2];
+            int newCount = 0;
+            for (int i = 0; i < oldTable.length; i++) {
+                for (Entry e = oldTable[i]; e != null; e = e.next) {
+                    Object key = e.get();
+                    if (key != null) {
+                        int idx = e.hash & (newTable.length - 1);
+                        newTable[idx] = e.copy(key, newTable[idx], refQueue);
+                        newCount++;
+                    }
+                }
+            }
+            table = newTable;
+            count = newCount;
+        }
+        
+    }
+    
+    private static final class Entry extends WeakReference<Object> {
+        
+        private final int hash;
+        private final Entry next;
+        private final ValueReference valueRef;
+        
+        Entry(Object key, int hash, Entry next, ValueReference valueRef, ReferenceQueue<Object> refQueue) {
+            super(key, refQueue);
+            this.hash = hash;
+            this.next = next;
+            this.valueRef = valueRef;
+            valueRef.entry = this;
+        }
+        
+        Entry copy(Object key, Entry newNext, ReferenceQueue<Object> refQueue) {
+            return new Entry(key, hash, newNext, valueRef, refQueue);
+        }
+        
+    }
+    
+    private static final class ValueReference extends SoftReference<TemplateModel> {
+        
+        /** The entry that currently holds this reference; only accessed while holding the segment monitor. */
+        private Entry entry;
+        
+        ValueReference(TemplateModel model, ReferenceQueue<Object> refQueue) {
+            super(model, refQueue);
+        }
+        
+    }
+    
+}
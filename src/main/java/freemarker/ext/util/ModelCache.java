@@ -19,12 +19,6 @@
 
 package freemarker.ext.util;
 
-import java.lang.ref.ReferenceQueue;
-import java.lang.ref.SoftReference;
-import java.util.Map;
-
-import java.util.IdentityHashMap;
-
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelAdapter;
 
@@ -33,9 +27,18 @@ import freemarker.template.TemplateModelAdapter;
  * caching.
  */
 public abstract class ModelCache {
+    
+    /**
+     * The default of {@link #setMaxCacheSize(int)}, which means that the number of cache entries isn't limited.
+     * 
+     * @since 2.3.26
+     */
+    public static final int UNLIMITED_CACHE_SIZE = Integer.MAX_VALUE;
+    
     private boolean useCache = false;
-    private Map<Object, ModelReference> modelCache = null;
-    private ReferenceQueue<TemplateModel> refQueue = null;
+    private int maxCacheSize = UNLIMITED_CACHE_SIZE;
+    /** Not {@code null} exactly if {@link #useCache} is {@code true}. */
+    private volatile ConcurrentWeakIdentityModelMap modelCache = null;
     
     protected ModelCache() {
     }
@@ -44,16 +47,14 @@ public abstract class ModelCache {
      * Sets whether this wrapper caches model instances. Default is false.
      * When set to true, calling {@link #getInstance(Object)} 
      * multiple times for the same object will return the same model.
+     * 
+     * <p>The cache doesn't prevent the garbage collection of the wrapped objects, and the models are softly
+     * referenced, so they are garbage collected when the memory is low. Looking up models in the cache doesn't
+     * involve locking.
      */
     public synchronized void setUseCache(boolean useCache) {
         this.useCache = useCache;
-        if (useCache) {
-            modelCache = new IdentityHashMap<Object, ModelReference>();
-            refQueue = new ReferenceQueue<TemplateModel>();
-        } else {
-            modelCache = null;
-            refQueue = null;
-        }
+        modelCache = useCache ? new ConcurrentWeakIdentityModelMap(maxCacheSize) : null;
     }
 
     /**
@@ -63,6 +64,49 @@ public abstract class ModelCache {
         return useCache;
     }
     
+    /**
+     * Sets the maximum number of models stored in the cache; defaults to {@link #UNLIMITED_CACHE_SIZE}. When the
+     * limit is reached, some entries will be removed from the cache; the choice of which is arbitrary. The limit is
+     * approximate, as it's enforced on subsets of the entries. Changing this setting clears the cache.
+     * 
+     * @since 2.3.26
+     */
+    public synchronized void setMaxCacheSize(int maxCacheSize) {
+        if (maxCacheSize < 1) {
+            throw new IllegalArgumentException("maxCacheSize must be at least 1, but was " + maxCacheSize);
+        }
+        if (maxCacheSize != this.maxCacheSize) {
+            this.maxCacheSize = maxCacheSize;
+            if (useCache) {
+                modelCache = new ConcurrentWeakIdentityModelMap(maxCacheSize);
+            }
+        }
+    }
+    
+    /**
+     * @since 2.3.26
+     */
+    public synchronized int getMaxCacheSize() {
+        return maxCacheSize;
+    }
+    
+    /**
+     * Returns the statistics of the cache since it was last enabled or its maximum size was changed.
+     * 
+     * @return {@code null} if caching is disabled.
+     * 
+     * @since 2.3.26
+     */
+    public ModelCacheStatistics getCacheStatistics() {
+        final ConcurrentWeakIdentityModelMap modelCache = this.modelCache;
+        if (modelCache == null) {
+            return null;
+        }
+        return new ModelCacheStatistics(
+                modelCache.size(), modelCache.getMaxSize(),
+                modelCache.getHitCount(), modelCache.getMissCount(), modelCache.getEvictionCount());
+    }
+    
     public TemplateModel getInstance(Object object) {
         if (object instanceof TemplateModel) {
             return (TemplateModel) object;
@@ -70,11 +114,14 @@ public abstract class ModelCache {
         if (object instanceof TemplateModelAdapter) {
             return ((TemplateModelAdapter) object).getTemplateModel();
         }
-        if (useCache && isCacheable(object)) {
-            TemplateModel model = lookup(object);
+        final ConcurrentWeakIdentityModelMap modelCache = this.modelCache;
+        if (modelCache != null && isCacheable(object)) {
+            // NOTE: Concurrent lookups can lead to duplicate wrapper creation. However, this has no harmful side
+            // effects, and is a lesser performance hit than locking.
+            TemplateModel model = modelCache.get(object);
             if (model == null) {
                 model = create(object);
-                register(model, object);
+                modelCache.put(object, model);
             }
             return model;
         } else {
@@ -86,59 +133,10 @@ public abstract class ModelCache {
     protected abstract boolean isCacheable(Object object);
     
     public void clearCache() {
+        final ConcurrentWeakIdentityModelMap modelCache = this.modelCache;
         if (modelCache != null) {
-            synchronized (modelCache) {
-                modelCache.clear();
-            }
-        }
-    }
-
-    private final TemplateModel lookup(Object object) {
-        ModelReference ref = null;
-        // NOTE: we're doing minimal synchronizations -- which can lead to
-        // duplicate wrapper creation. However, this has no harmful side-effects and
-        // is a lesser performance hit.
-        synchronized (modelCache) {
-            ref = modelCache.get(object);
-        }
-
-        if (ref != null)
-            return ref.getModel();
-
-        return null;
-    }
-
-    private final void register(TemplateModel model, Object object) {
-        synchronized (modelCache) {
-            // Remove cleared references
-            for (; ; ) {
-                ModelReference queuedRef = (ModelReference) refQueue.poll();
-                if (queuedRef == null) {
-                    break;
-                }
-                modelCache.remove(queuedRef.object);
-            }
-            // Register new reference
-            modelCache.put(object, new ModelReference(model, object, refQueue));
-        }
-    }
-
-    /**
-     * A special soft reference that is registered in the modelCache.
-     * When it gets cleared (that is, the model became unreachable)
-     * it will remove itself from the model cache.
-     */
-    private static final class ModelReference extends SoftReference<TemplateModel> {
-        Object object;
-
-        ModelReference(TemplateModel ref, Object object, ReferenceQueue<TemplateModel> refQueue) {
-            super(ref, refQueue);
-            this.object = object;
-        }
-
-        TemplateModel getModel() {
-            return (TemplateModel) this.get();
+            modelCache.clear();
         }
     }
 
-}
\ No newline at end of file
+}
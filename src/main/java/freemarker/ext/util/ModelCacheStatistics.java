@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.util;
+
+/**
+ * Snapshot of the statistics of a {@link ModelCache}; see {@link ModelCache#getCacheStatistics()}. As the cache is
+ * used concurrently, the values might not be exactly consistent with each other.
+ * 
+ * @since 2.3.26
+ */
+public final class ModelCacheStatistics {
+    
+    private final int size;
+    private final int maxSize;
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+
+    ModelCacheStatistics(int size, int maxSize, long hitCount, long missCount, long evictionCount) {
+        this.size = size;
+        this.maxSize = maxSize;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+    }
+
+    /**
+     * The number of entries in the cache, possibly including some whose model was already garbage collected.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * See {@link ModelCache#setMaxCacheSize(int)}.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * The number of lookups where the model was found in the cache.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * The number of lookups where the model wasn't found in the cache, and hence had to be created.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * The number of entries removed because the cache size limit was reached.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+    
+    @Override
+    public String toString() {
+        return "ModelCacheStatistics(size=" + size
+                + ", maxSize=" + (maxSize == ModelCache.UNLIMITED_CACHE_SIZE ? "unlimited" : String.valueOf(maxSize))
+                + ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + ")";
+    }
+    
+}
@@ -33,6 +33,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -40,14 +41,21 @@ import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import freemarker.cache.CacheStorage;
 import freemarker.cache.ClassTemplateLoader;
 import freemarker.cache.FileTemplateLoader;
+import freemarker.cache.ListableTemplateLoader;
 import freemarker.cache.MruCacheStorage;
 import freemarker.cache.MultiTemplateLoader;
+import freemarker.cache.PathGlobMatcher;
+import freemarker.cache.PrecompiledTemplateStore;
 import freemarker.cache.SoftCacheStorage;
 import freemarker.cache.TemplateCache;
 import freemarker.cache.TemplateCache.MaybeMissingTemplate;
@@ -56,6 +64,7 @@ import freemarker.cache.TemplateLoader;
 import freemarker.cache.TemplateLookupContext;
 import freemarker.cache.TemplateLookupStrategy;
 import freemarker.cache.TemplateNameFormat;
+import freemarker.cache.TinyLfuCacheStorage;
 import freemarker.cache.URLTemplateLoader;
 import freemarker.core.BugException;
 import freemarker.core.CSSOutputFormat;
@@ -70,6 +79,7 @@ import freemarker.core.OutputFormat;
 import freemarker.core.ParseException;
 import freemarker.core.ParserConfiguration;
 import freemarker.core.PlainTextOutputFormat;
+import freemarker.core.ProcessingInstrumentation;
 import freemarker.core.RTFOutputFormat;
 import freemarker.core.TemplateConfiguration;
 import freemarker.core.TemplateMarkupOutputModel;
@@ -186,6 +196,13 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     /** Alias to the {@code ..._SNAKE_CASE} variation due to backward compatibility constraints. */
     public static final String OUTPUT_FORMAT_KEY = OUTPUT_FORMAT_KEY_SNAKE_CASE;
 
+    /** Legacy, snake case ({@code like_this}) variation of the setting name. @since 2.3.26 */
+    public static final String PROCESSING_INSTRUMENTATION_KEY_SNAKE_CASE = "processing_instrumentation";
+    /** Modern, camel case ({@code likeThis}) variation of the setting name. @since 2.3.26 */
+    public static final String PROCESSING_INSTRUMENTATION_KEY_CAMEL_CASE = "processingInstrumentation";
+    /** Alias to the {@code ..._SNAKE_CASE} variation. @since 2.3.26 */
+    public static final String PROCESSING_INSTRUMENTATION_KEY = PROCESSING_INSTRUMENTATION_KEY_SNAKE_CASE;
+
     /** Legacy, snake case ({@code like_this}) variation of the setting name. @since 2.3.24 */
     public static final String RECOGNIZE_STANDARD_FILE_EXTENSIONS_KEY_SNAKE_CASE = "recognize_standard_file_extensions";
     /** Modern, camel case ({@code likeThis}) variation of the setting name. @since 2.3.24 */
@@ -201,6 +218,13 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     /** Alias to the {@code ..._SNAKE_CASE} variation due to backward compatibility constraints. */
     public static final String REGISTERED_CUSTOM_OUTPUT_FORMATS_KEY = REGISTERED_CUSTOM_OUTPUT_FORMATS_KEY_SNAKE_CASE;
 
+    /** Legacy, snake case ({@code like_this}) variation of the setting name. @since 2.3.26 */
+    public static final String RUNTIME_PARSE_CACHE_SIZE_KEY_SNAKE_CASE = "runtime_parse_cache_size";
+    /** Modern, camel case ({@code likeThis}) variation of the setting name. @since 2.3.26 */
+    public static final String RUNTIME_PARSE_CACHE_SIZE_KEY_CAMEL_CASE = "runtimeParseCacheSize";
+    /** Alias to the {@code ..._SNAKE_CASE} variation. @since 2.3.26 */
+    public static final String RUNTIME_PARSE_CACHE_SIZE_KEY = RUNTIME_PARSE_CACHE_SIZE_KEY_SNAKE_CASE;
+
     /** Legacy, snake case ({@code like_this}) variation of the setting name. @since 2.3.24 */
     public static final String AUTO_ESCAPING_POLICY_KEY_SNAKE_CASE = "auto_escaping_policy";
     /** Modern, camel case ({@code likeThis}) variation of the setting name. @since 2.3.24 */
@@ -221,6 +245,20 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     public static final String TEMPLATE_UPDATE_DELAY_KEY_CAMEL_CASE = "templateUpdateDelay";
     /** Alias to the {@code ..._SNAKE_CASE} variation due to backward compatibility constraints. */
     public static final String TEMPLATE_UPDATE_DELAY_KEY = TEMPLATE_UPDATE_DELAY_KEY_SNAKE_CASE;
+
+    /** Legacy, snake case ({@code like_this}) variation of the setting name. @since 2.3.26 */
+    public static final String TEMPLATE_UPDATE_IN_BACKGROUND_KEY_SNAKE_CASE = "template_update_in_background";
+    /** Modern, camel case ({@code likeThis}) variation of the setting name. @since 2.3.26 */
+    public static final String TEMPLATE_UPDATE_IN_BACKGROUND_KEY_CAMEL_CASE = "templateUpdateInBackground";
+    /** Alias to the {@code ..._SNAKE_CASE} variation due to backward compatibility constraints. */
+    public static final String TEMPLATE_UPDATE_IN_BACKGROUND_KEY = TEMPLATE_UPDATE_IN_BACKGROUND_KEY_SNAKE_CASE;
+    
+    /** Legacy, snake case ({@code like_this}) variation of the setting name. @since 2.3.26 */
+    public static final String TEMPLATE_UPDATE_SERVES_STALE_KEY_SNAKE_CASE = "template_update_serves_stale";
+    /** Modern, camel case ({@code likeThis}) variation of the setting name. @since 2.3.26 */
+    public static final String TEMPLATE_UPDATE_SERVES_STALE_KEY_CAMEL_CASE = "templateUpdateServesStale";
+    /** Alias to the {@code ..._SNAKE_CASE} variation due to backward compatibility constraints. */
+    public static final String TEMPLATE_UPDATE_SERVES_STALE_KEY = TEMPLATE_UPDATE_SERVES_STALE_KEY_SNAKE_CASE;
     
     /**
      * Legacy, snake case ({@code like_this}) variation of the setting name. @since 2.3.23
@@ -287,6 +325,13 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     /** Alias to the {@code ..._SNAKE_CASE} variation due to backward compatibility constraints. */
     public static final String TEMPLATE_NAME_FORMAT_KEY = TEMPLATE_NAME_FORMAT_KEY_SNAKE_CASE;
 
+    /** Legacy, snake case ({@code like_this}) variation of the setting name. @since 2.3.26 */
+    public static final String TEMPLATE_SOURCE_RETENTION_KEY_SNAKE_CASE = "template_source_retention";
+    /** Modern, camel case ({@code likeThis}) variation of the setting name. @since 2.3.26 */
+    public static final String TEMPLATE_SOURCE_RETENTION_KEY_CAMEL_CASE = "templateSourceRetention";
+    /** Alias to the {@code ..._SNAKE_CASE} variation. @since 2.3.26 */
+    public static final String TEMPLATE_SOURCE_RETENTION_KEY = TEMPLATE_SOURCE_RETENTION_KEY_SNAKE_CASE;
+
     /** Legacy, snake case ({@code like_this}) variation of the setting name. @since 2.3.24 */
     public static final String TEMPLATE_CONFIGURATIONS_KEY_SNAKE_CASE = "template_configurations";
     /** Modern, camel case ({@code likeThis}) variation of the setting name. @since 2.3.24 */
@@ -317,8 +362,10 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
         LOCALIZED_LOOKUP_KEY_SNAKE_CASE,
         NAMING_CONVENTION_KEY_SNAKE_CASE,
         OUTPUT_FORMAT_KEY_SNAKE_CASE,
+        PROCESSING_INSTRUMENTATION_KEY_SNAKE_CASE,
         RECOGNIZE_STANDARD_FILE_EXTENSIONS_KEY_SNAKE_CASE,
         REGISTERED_CUSTOM_OUTPUT_FORMATS_KEY_SNAKE_CASE,
+        RUNTIME_PARSE_CACHE_SIZE_KEY_SNAKE_CASE,
         STRICT_SYNTAX_KEY_SNAKE_CASE,
         TAB_SIZE_KEY_SNAKE_CASE,
         TAG_SYNTAX_KEY_SNAKE_CASE,
@@ -326,7 +373,10 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
         TEMPLATE_LOADER_KEY_SNAKE_CASE,
         TEMPLATE_LOOKUP_STRATEGY_KEY_SNAKE_CASE,
         TEMPLATE_NAME_FORMAT_KEY_SNAKE_CASE,
+        TEMPLATE_SOURCE_RETENTION_KEY_SNAKE_CASE,
         TEMPLATE_UPDATE_DELAY_KEY_SNAKE_CASE,
+        TEMPLATE_UPDATE_IN_BACKGROUND_KEY_SNAKE_CASE,
+        TEMPLATE_UPDATE_SERVES_STALE_KEY_SNAKE_CASE,
         WHITESPACE_STRIPPING_KEY_SNAKE_CASE,
     };
 
@@ -339,8 +389,10 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
         LOCALIZED_LOOKUP_KEY_CAMEL_CASE,
         NAMING_CONVENTION_KEY_CAMEL_CASE,
         OUTPUT_FORMAT_KEY_CAMEL_CASE,
+        PROCESSING_INSTRUMENTATION_KEY_CAMEL_CASE,
         RECOGNIZE_STANDARD_FILE_EXTENSIONS_KEY_CAMEL_CASE,
         REGISTERED_CUSTOM_OUTPUT_FORMATS_KEY_CAMEL_CASE,
+        RUNTIME_PARSE_CACHE_SIZE_KEY_CAMEL_CASE,
         STRICT_SYNTAX_KEY_CAMEL_CASE,
         TAB_SIZE_KEY_CAMEL_CASE,
         TAG_SYNTAX_KEY_CAMEL_CASE,
@@ -348,7 +400,10 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
         TEMPLATE_LOADER_KEY_CAMEL_CASE,
         TEMPLATE_LOOKUP_STRATEGY_KEY_CAMEL_CASE,
         TEMPLATE_NAME_FORMAT_KEY_CAMEL_CASE,
+        TEMPLATE_SOURCE_RETENTION_KEY_CAMEL_CASE,
         TEMPLATE_UPDATE_DELAY_KEY_CAMEL_CASE,
+        TEMPLATE_UPDATE_IN_BACKGROUND_KEY_CAMEL_CASE,
+        TEMPLATE_UPDATE_SERVES_STALE_KEY_CAMEL_CASE,
         WHITESPACE_STRIPPING_KEY_CAMEL_CASE
     };
     
@@ -387,6 +442,23 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     /** Enable auto-escaping if the {@link OutputFormat} supports it. */
     public static final int ENABLE_IF_SUPPORTED_AUTO_ESCAPING_POLICY = 22;
     
+    /**
+     * Retain the source code of the templates as is; see {@link #setTemplateSourceRetention(int)}.
+     * @since 2.3.26
+     */
+    public static final int FULL_TEMPLATE_SOURCE_RETENTION = 30;
+    /**
+     * Retain the source code of the templates compressed; it's only decompressed when it's needed.
+     * @since 2.3.26
+     */
+    public static final int COMPRESSED_TEMPLATE_SOURCE_RETENTION = 31;
+    /**
+     * Don't retain the source code of the templates; the canonical form is shown instead where the source code would
+     * be quoted.
+     * @since 2.3.26
+     */
+    public static final int NO_TEMPLATE_SOURCE_RETENTION = 32;
+    
     /** FreeMarker version 2.3.0 (an {@link #Configuration(Version) incompatible improvements break-point}) */
     public static final Version VERSION_2_3_0 = new Version(2, 3, 0);
     
@@ -499,6 +571,9 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     private int tagSyntax = ANGLE_BRACKET_TAG_SYNTAX;
     private int namingConvention = AUTO_DETECT_NAMING_CONVENTION;
     private int tabSize = 8;  // Default from JavaCC 3.x 
+    private volatile ProcessingInstrumentation processingInstrumentation;
+    private volatile TinyLfuCacheStorage runtimeParseCache;
+    private int templateSourceRetention = FULL_TEMPLATE_SOURCE_RETENTION;
 
     private TemplateCache cache;
     
@@ -862,12 +937,33 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
             TemplateLoader loader, CacheStorage storage,
             TemplateLookupStrategy templateLookupStrategy, TemplateNameFormat templateNameFormat,
             TemplateConfigurationFactory templateConfigurations) {
+        recreateTemplateCacheWith(
+                loader, storage, templateLookupStrategy, templateNameFormat, templateConfigurations, true);
+    }
+    
+    /**
+     * @param discardOldCache
+     *            Whether the old {@link TemplateCache} won't be used anymore, so its background activity can be
+     *            stopped; it's {@code false} when the old one still belongs to another {@link Configuration}.
+     */
+    private void recreateTemplateCacheWith(
+            TemplateLoader loader, CacheStorage storage,
+            TemplateLookupStrategy templateLookupStrategy, TemplateNameFormat templateNameFormat,
+            TemplateConfigurationFactory templateConfigurations, boolean discardOldCache) {
         TemplateCache oldCache = cache;
         cache = new TemplateCache(
                 loader, storage, templateLookupStrategy, templateNameFormat, templateConfigurations, this);
         cache.clear(); // for fully BC behavior
         cache.setDelay(oldCache.getDelay());
+        cache.setServeStaleWhileUpdating(oldCache.getServeStaleWhileUpdating());
+        cache.setPrecompiledTemplateStore(oldCache.getPrecompiledTemplateStore());
         cache.setLocalizedLookup(localizedLookup);
+        if (oldCache.getUpdateInBackground()) {
+            if (discardOldCache) {
+                oldCache.setUpdateInBackground(false);
+            }
+            cache.setUpdateInBackground(true);
+        }
     }
     
     private void recreateTemplateCache() {
@@ -976,7 +1072,7 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
             copy.recreateTemplateCacheWith(
                     cache.getTemplateLoader(), cache.getCacheStorage(),
                     cache.getTemplateLookupStrategy(), cache.getTemplateNameFormat(),
-                    cache.getTemplateConfigurations());
+                    cache.getTemplateConfigurations(), false);
             return copy;
         } catch (CloneNotSupportedException e) {
             throw new BugException("Cloning failed", e);
@@ -1343,7 +1439,9 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
      * 
      * The default is a {@link SoftCacheStorage}. If the total size of the {@link Template}
      * objects is significant but most templates are used rarely, using a
-     * {@link MruCacheStorage} instead might be advisable. If you don't want caching at
+     * {@link MruCacheStorage} instead might be advisable. If the template cache is accessed by many threads
+     * concurrently, and you need a bounded cache, {@link TinyLfuCacheStorage} is a better fit, as
+     * {@link MruCacheStorage} has to be accessed under a global lock. If you don't want caching at
      * all, use {@link freemarker.cache.NullCacheStorage} (you can't use {@code null}).
      * 
      * <p>Note that setting the cache storage will re-create the template cache, so
@@ -1541,6 +1639,228 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     public long getTemplateUpdateDelayMilliseconds() {
         return cache.getDelay();
     }
+
+    /**
+     * Sets whether, when a cached template has become stale (see {@link #setTemplateUpdateDelayMilliseconds(long)}),
+     * and thus a thread is re-checking and possibly reloading it, the other threads that need the same template should
+     * immediately get the stale cached copy, instead of waiting for the re-check to finish. Defaults to {@code false}.
+     * 
+     * <p>
+     * Regardless of this setting, a template is only loaded or re-checked by one thread at a time, so when a popular
+     * template gets stale, it won't be re-checked and parsed by all the threads that happen to need it at the same
+     * time. Setting this to {@code true} means that only that single thread will wait for the I/O, but then the other
+     * threads may use a template that was already changed in the backing storage (for at most as long as the
+     * re-checking takes). 
+     * 
+     * @since 2.3.26
+     */
+    public void setTemplateUpdateServesStale(boolean templateUpdateServesStale) {
+        cache.setServeStaleWhileUpdating(templateUpdateServesStale);
+    }
+    
+    /**
+     * Sets whether stale cached templates (see {@link #setTemplateUpdateDelayMilliseconds(long)}) are re-checked,
+     * and reloaded if they were changed, by a background thread, rather than by the thread that has requested the
+     * template. When this is {@code true}, getting a template that's already in the template cache never involves
+     * I/O, so the latency of the storage behind the {@link TemplateLoader} doesn't affect request processing (except
+     * when a template is loaded for the first time). The background thread re-checks all the templates whose update
+     * delay has elapsed in one batch, and then swaps the reloaded templates into the cache. Defaults to {@code false}.
+     * 
+     * <p>
+     * The background thread is a daemon thread, that's stopped when this setting is set to {@code false}, or when the
+     * {@link Configuration} is garbage collected. Note that changing this setting to {@code true} empties the template
+     * cache.
+     * 
+     * @since 2.3.26
+     */
+    public void setTemplateUpdateInBackground(boolean templateUpdateInBackground) {
+        cache.setUpdateInBackground(templateUpdateInBackground);
+    }
+    
+    /**
+     * The getter pair of {@link #setTemplateUpdateInBackground(boolean)}.
+     * 
+     * @since 2.3.26
+     */
+    public boolean getTemplateUpdateInBackground() {
+        return cache.getUpdateInBackground();
+    }
+    
+    /**
+     * The getter pair of {@link #setTemplateUpdateServesStale(boolean)}.
+     * 
+     * @since 2.3.26
+     */
+    public boolean getTemplateUpdateServesStale() {
+        return cache.getServeStaleWhileUpdating();
+    }
+    
+    /**
+     * Sets how the source code of the parsed templates is kept in memory. The source code is only used for quoting
+     * parts of the template (see {@link Template#getSource(int, int, int, int)} and
+     * {@link freemarker.core.TemplateObject#getSource()}), like in debuggers and in the {@code toString()} of the
+     * template elements, which are also used in some error messages. Yet by default it's retained as is, which is
+     * often comparable to the size of the parsed template. With {@link #COMPRESSED_TEMPLATE_SOURCE_RETENTION}, it's
+     * stored compressed, and is decompressed when it's needed. With {@link #NO_TEMPLATE_SOURCE_RETENTION}, it's not
+     * retained at all, and the canonical form of the template elements are used instead (which is equivalent with the
+     * original source code, but is formatted differently). To see how much memory a template uses, call
+     * {@link Template#getMemoryReport()}.
+     * 
+     * <p>
+     * Changing this setting empties the template cache, as it only affects templates parsed afterwards.
+     * 
+     * @param templateSourceRetention
+     *            One of {@link #FULL_TEMPLATE_SOURCE_RETENTION} (the default),
+     *            {@link #COMPRESSED_TEMPLATE_SOURCE_RETENTION}, and {@link #NO_TEMPLATE_SOURCE_RETENTION}.
+     * 
+     * @since 2.3.26
+     */
+    public void setTemplateSourceRetention(int templateSourceRetention) {
+        if (templateSourceRetention != FULL_TEMPLATE_SOURCE_RETENTION
+                && templateSourceRetention != COMPRESSED_TEMPLATE_SOURCE_RETENTION
+                && templateSourceRetention != NO_TEMPLATE_SOURCE_RETENTION) {
+            throw new IllegalArgumentException("\"template_source_retention\" can only be set to one of these: "
+                    + "Configuration.FULL_TEMPLATE_SOURCE_RETENTION, "
+                    + "Configuration.COMPRESSED_TEMPLATE_SOURCE_RETENTION, "
+                    + "or Configuration.NO_TEMPLATE_SOURCE_RETENTION");
+        }
+        int prevTemplateSourceRetention = this.templateSourceRetention;
+        this.templateSourceRetention = templateSourceRetention;
+        if (prevTemplateSourceRetention != templateSourceRetention) {
+            clearTemplateCache();
+        }
+    }
+    
+    /**
+     * The getter pair of {@link #setTemplateSourceRetention(int)}.
+     * 
+     * @since 2.3.26
+     */
+    public int getTemplateSourceRetention() {
+        return templateSourceRetention;
+    }
+    
+    /**
+     * Sets the {@link PrecompiledTemplateStore} that stores the parse results of the templates, so that when the
+     * application is restarted, the templates needn't be parsed again, as far as they weren't changed. Defaults to
+     * {@code null}, in which case the templates are always parsed when they are loaded.
+     * 
+     * @since 2.3.26
+     */
+    public void setPrecompiledTemplateStore(PrecompiledTemplateStore precompiledTemplateStore) {
+        cache.setPrecompiledTemplateStore(precompiledTemplateStore);
+    }
+
+    /**
+     * The getter pair of {@link #setPrecompiledTemplateStore(PrecompiledTemplateStore)}.
+     * 
+     * @since 2.3.26
+     */
+    public PrecompiledTemplateStore getPrecompiledTemplateStore() {
+        return cache.getPrecompiledTemplateStore();
+    }
+    
+    /**
+     * Sets the {@link ProcessingInstrumentation} that's notified about template processing, template element
+     * executions, macro calls, includes, and template loading, so that it can measure where the time is spent.
+     * Defaults to {@code null}, in which case the only cost of the instrumentation points is a {@code null} check. For
+     * a ready to use implementation, that can also be monitored via JMX, see
+     * {@link freemarker.core.ProcessingStatistics}.
+     * 
+     * <p>
+     * The {@link Environment}-s that were already created when this setting is changed will keep using the
+     * previous value.
+     * 
+     * @since 2.3.26
+     */
+    public void setProcessingInstrumentation(ProcessingInstrumentation processingInstrumentation) {
+        this.processingInstrumentation = processingInstrumentation;
+    }
+
+    /**
+     * The getter pair of {@link #setProcessingInstrumentation(ProcessingInstrumentation)}.
+     * 
+     * @since 2.3.26
+     */
+    public ProcessingInstrumentation getProcessingInstrumentation() {
+        return processingInstrumentation;
+    }
+    
+    /**
+     * Sets the maximum number of parse results of the {@code ?eval} and {@code ?interpret} built-ins that are cached,
+     * or 0 if they shouldn't be cached at all (that's the default). Normally, these built-ins parse the string they
+     * were called on each time they are executed, which is wasteful when the same strings are evaluated or
+     * interpreted over and over. When caching is enabled, the parsed expressions and templates are stored in a
+     * {@link TinyLfuCacheStorage} that's shared by all templates of this {@link Configuration}, and that can be used
+     * concurrently without blocking readers. The cache key contains the evaluated or interpreted string, and the call
+     * place of the built-in (as the parse result depends on that too), so the same string is cached separately for
+     * each call place. Note that the cache entries keep the strings and the templates that contain the built-in calls
+     * reachable, until they are evicted, or until {@link #clearTemplateCache()} is called.
+     * 
+     * <p>
+     * Changing this setting discards the cache, along with its statistics (see
+     * {@link #getRuntimeParseCacheHitCount()}).
+     * 
+     * @since 2.3.26
+     */
+    public void setRuntimeParseCacheSize(int runtimeParseCacheSize) {
+        if (runtimeParseCacheSize < 0) {
+            throw new IllegalArgumentException("runtimeParseCacheSize can't be negative");
+        }
+        TinyLfuCacheStorage runtimeParseCache = this.runtimeParseCache;
+        if (runtimeParseCacheSize != (runtimeParseCache != null ? runtimeParseCache.getMaxSize() : 0)) {
+            this.runtimeParseCache = runtimeParseCacheSize != 0
+                    ? new TinyLfuCacheStorage(runtimeParseCacheSize) : null;
+        }
+    }
+
+    /**
+     * The getter pair of {@link #setRuntimeParseCacheSize(int)}.
+     * 
+     * @since 2.3.26
+     */
+    public int getRuntimeParseCacheSize() {
+        TinyLfuCacheStorage runtimeParseCache = this.runtimeParseCache;
+        return runtimeParseCache != null ? runtimeParseCache.getMaxSize() : 0;
+    }
+
+    /**
+     * Returns how many times a {@code ?eval} or {@code ?interpret} call has found its parse result in the cache since
+     * the cache was enabled with {@link #setRuntimeParseCacheSize(int)}; 0 if the caching is disabled. Together with
+     * {@link #getRuntimeParseCacheMissCount()} this can be used to decide if the cache is big enough, or if it's
+     * useful at all.
+     * 
+     * @since 2.3.26
+     */
+    public long getRuntimeParseCacheHitCount() {
+        TinyLfuCacheStorage runtimeParseCache = this.runtimeParseCache;
+        return runtimeParseCache != null ? runtimeParseCache.getHitCount() : 0;
+    }
+
+    /**
+     * Returns how many times a {@code ?eval} or {@code ?interpret} call had to parse the string because its parse
+     * result wasn't in the cache; see {@link #getRuntimeParseCacheHitCount()}.
+     * 
+     * @since 2.3.26
+     */
+    public long getRuntimeParseCacheMissCount() {
+        TinyLfuCacheStorage runtimeParseCache = this.runtimeParseCache;
+        return runtimeParseCache != null ? runtimeParseCache.getMissCount() : 0;
+    }
+
+    /** Used by {@code ?eval} and {@code ?interpret}; see {@link _TemplateAPI#getRuntimeParseCache(Configuration)}. */
+    TinyLfuCacheStorage getRuntimeParseCache() {
+        return runtimeParseCache;
+    }
+
+    /**
+     * Used by {@code #include} and {@code #import} for call place caching; see
+     * {@link _TemplateAPI#getTemplateCache(Configuration)}. Note that the {@link TemplateCache} is replaced with a new
+     * instance when certain settings are changed.
+     */
+    TemplateCache getTemplateCache() {
+        return cache;
+    }
     
     /**
      * Sets whether directives such as {@code if}, {@code else}, etc must be written as {@code #if}, {@code #else}, etc.
@@ -2731,14 +3051,150 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
         loadBuiltInSharedVariables();
     }
     
+    /**
+     * Same as {@link #warmUpTemplateCache(Collection, Locale, ExecutorService)} with {@code null} {@code locale}.
+     * 
+     * @since 2.3.26
+     */
+    public TemplateCacheWarmUpResult warmUpTemplateCache(
+            Collection<String> templateNamesAndGlobs, ExecutorService executor)
+            throws IOException, InterruptedException {
+        return warmUpTemplateCache(templateNamesAndGlobs, null, executor);
+    }
+    
+    /**
+     * Loads the given templates into the template cache in advance, so that the first real requests for them needn't
+     * wait for the loading and parsing. Each template is loaded with {@link #getTemplate(String, Locale)}, and so
+     * only the requests that use the same locale and the default encoding will find the warmed up templates in the
+     * cache. The warm-up doesn't stop if some templates couldn't be loaded; the errors are reported in the result
+     * instead.
+     * 
+     * <p>This method is thread-safe and can be called while the engine processes templates.
+     * 
+     * @param templateNamesAndGlobs
+     *            Template names, and globs that match template names. Elements that contain {@code *} or {@code ?}
+     *            are treated as globs with the syntax of {@link PathGlobMatcher}, and to resolve them, the template
+     *            loader must be a {@link ListableTemplateLoader}. Other elements are used as template names as they
+     *            are, so they will be reported as failed if no such template exists. Template names that occur
+     *            repeatedly are only loaded once.
+     * @param locale
+     *            The locale passed to {@link #getTemplate(String, Locale)}; if {@code null}, {@link #getLocale()} is
+     *            used.
+     * @param executor
+     *            The templates are loaded concurrently with this; this can also be a
+     *            {@code java.util.concurrent.ForkJoinPool}. This method waits until all templates were loaded, but it
+     *            doesn't shut down the executor. If {@code null}, the templates are loaded on the current thread,
+     *            one after the other.
+     * 
+     * @throws UnsupportedOperationException
+     *             If there was a glob, but the template loader isn't a {@link ListableTemplateLoader}.
+     * @throws IOException
+     *             If listing the templates has failed. (The failure of loading a template is not thrown.)
+     * @throws InterruptedException
+     *             If the current thread was interrupted while waiting for the templates to be loaded. The loading of
+     *             the templates that haven't yet started will be cancelled.
+     * 
+     * @since 2.3.26
+     */
+    public TemplateCacheWarmUpResult warmUpTemplateCache(
+            Collection<String> templateNamesAndGlobs, final Locale locale, ExecutorService executor)
+            throws IOException, InterruptedException {
+        NullArgumentException.check("templateNamesAndGlobs", templateNamesAndGlobs);
+        final long startTime = System.nanoTime();
+        
+        Set<String> templateNames = new LinkedHashSet<String>();
+        List<String> listedTemplateNames = null;
+        for (String nameOrGlob : templateNamesAndGlobs) {
+            if (nameOrGlob.indexOf('*') != -1 || nameOrGlob.indexOf('?') != -1) {
+                if (listedTemplateNames == null) {
+                    listedTemplateNames = cache.listTemplateNames(null);
+                }
+                PathGlobMatcher globMatcher = new PathGlobMatcher(removeInitialSlash(nameOrGlob));
+                for (String listedTemplateName : listedTemplateNames) {
+                    if (globMatcher.matches(listedTemplateName, null)) {
+                        templateNames.add(listedTemplateName);
+                    }
+                }
+            } else {
+                templateNames.add(nameOrGlob);
+            }
+        }
+        
+        List<TemplateCacheWarmUpResult.Entry> entries
+                = new ArrayList<TemplateCacheWarmUpResult.Entry>(templateNames.size());
+        if (executor == null) {
+            for (String templateName : templateNames) {
+                entries.add(warmUpTemplate(templateName, locale));
+            }
+        } else {
+            List<Future<TemplateCacheWarmUpResult.Entry>> futures
+                    = new ArrayList<Future<TemplateCacheWarmUpResult.Entry>>(templateNames.size());
+            boolean done = false;
+            try {
+                for (final String templateName : templateNames) {
+                    futures.add(executor.submit(new Callable<TemplateCacheWarmUpResult.Entry>() {
+                        public TemplateCacheWarmUpResult.Entry call() {
+                            return warmUpTemplate(templateName, locale);
+                        }
+                    }));
+                }
+                for (Future<TemplateCacheWarmUpResult.Entry> future : futures) {
+                    try {
+                        entries.add(future.get());
+                    } catch (ExecutionException e) {
+                        // warmUpTemplate catches all Exception-s, so this is an Error.
+                        Throwable cause = e.getCause();
+                        if (cause instanceof Error) {
+                            throw (Error) cause;
+                        }
+                        throw new BugException(e);
+                    }
+                }
+                done = true;
+            } finally {
+                if (!done) {
+                    for (Future<TemplateCacheWarmUpResult.Entry> future : futures) {
+                        future.cancel(false);
+                    }
+                }
+            }
+        }
+        
+        return new TemplateCacheWarmUpResult(entries, System.nanoTime() - startTime);
+    }
+    
+    private TemplateCacheWarmUpResult.Entry warmUpTemplate(String templateName, Locale locale) {
+        final long startTime = System.nanoTime();
+        Exception exception;
+        try {
+            getTemplate(templateName, locale);
+            exception = null;
+        } catch (Exception e) {
+            exception = e;
+        }
+        final long loadTime = System.nanoTime() - startTime;
+        if (exception != null && CACHE_LOG.isDebugEnabled()) {
+            CACHE_LOG.debug("Failed to load template " + StringUtil.jQuote(templateName) + " during warm-up",
+                    exception);
+        }
+        return new TemplateCacheWarmUpResult.Entry(templateName, loadTime, exception);
+    }
+    
     /**
      * Removes all entries from the template cache, thus forcing reloading of templates
      * on subsequent <code>getTemplate</code> calls.
      * 
      * <p>This method is thread-safe and can be called while the engine processes templates.
+     * 
+     * <p>Since 2.3.26, this also empties the cache of the {@code ?eval} and {@code ?interpret} parse results; see
+     * {@link #setRuntimeParseCacheSize(int)}.
      */
     public void clearTemplateCache() {
         cache.clear();
+        TinyLfuCacheStorage runtimeParseCache = this.runtimeParseCache;
+        if (runtimeParseCache != null) {
+            runtimeParseCache.clear();
+        }
     }
     
     /**
@@ -2875,6 +3331,18 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
                     }
                 }
                 setRegisteredCustomOutputFormats(list);
+            } else if (RUNTIME_PARSE_CACHE_SIZE_KEY_SNAKE_CASE.equals(name)
+                    || RUNTIME_PARSE_CACHE_SIZE_KEY_CAMEL_CASE.equals(name)) {
+                setRuntimeParseCacheSize(Integer.parseInt(value));
+            } else if (PROCESSING_INSTRUMENTATION_KEY_SNAKE_CASE.equals(name)
+                    || PROCESSING_INSTRUMENTATION_KEY_CAMEL_CASE.equals(name)) {
+                if (value.equals(NULL)) {
+                    setProcessingInstrumentation(null);
+                } else {
+                    setProcessingInstrumentation((ProcessingInstrumentation) _ObjectBuilderSettingEvaluator.eval(
+                            value, ProcessingInstrumentation.class, false,
+                            _SettingEvaluationEnvironment.getCurrent()));
+                }
             } else if (RECOGNIZE_STANDARD_FILE_EXTENSIONS_KEY_SNAKE_CASE.equals(name)
                     || RECOGNIZE_STANDARD_FILE_EXTENSIONS_KEY_CAMEL_CASE.equals(name)) {
                 if (value.equalsIgnoreCase(DEFAULT)) {
@@ -2888,12 +3356,22 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
                 } if (value.indexOf('.') == -1) {
                     int strongSize = 0;
                     int softSize = 0;
+                    int concurrentSize = 0;
+                    long maxWeight = 0;
                     Map map = StringUtil.parseNameValuePairList(
                             value, String.valueOf(Integer.MAX_VALUE));
                     Iterator it = map.entrySet().iterator();
                     while (it.hasNext()) {
                         Map.Entry ent = (Map.Entry) it.next();
                         String pname = (String) ent.getKey();
+                        if ("weight".equalsIgnoreCase(pname)) {
+                            try {
+                                maxWeight = Long.parseLong((String) ent.getValue());
+                            } catch (NumberFormatException e) {
+                                throw invalidSettingValueException(name, value);
+                            }
+                            continue;
+                        }
                         int pvalue;
                         try {
                             pvalue = Integer.parseInt((String) ent.getValue());
@@ -2904,14 +3382,24 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
                             softSize = pvalue;
                         } else if ("strong".equalsIgnoreCase(pname)) {
                             strongSize = pvalue;
+                        } else if ("concurrent".equalsIgnoreCase(pname)) {
+                            concurrentSize = pvalue;
                         } else {
                             throw invalidSettingValueException(name, value);
                         }
                     }
-                    if (softSize == 0 && strongSize == 0) {
-                        throw invalidSettingValueException(name, value);
+                    if (concurrentSize != 0) {
+                        if (softSize != 0 || strongSize != 0 || maxWeight < 0) {
+                            throw invalidSettingValueException(name, value);
+                        }
+                        setCacheStorage(new TinyLfuCacheStorage(
+                                concurrentSize, maxWeight != 0 ? maxWeight : Long.MAX_VALUE));
+                    } else {
+                        if (softSize == 0 && strongSize == 0 || maxWeight != 0) {
+                            throw invalidSettingValueException(name, value);
+                        }
+                        setCacheStorage(new MruCacheStorage(strongSize, softSize));
                     }
-                    setCacheStorage(new MruCacheStorage(strongSize, softSize));
                 } else {
                     setCacheStorage((CacheStorage) _ObjectBuilderSettingEvaluator.eval(
                             value, CacheStorage.class, false, _SettingEvaluationEnvironment.getCurrent()));
@@ -2937,6 +3425,12 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
                     valueWithoutUnit = value;
                 }
                 setTemplateUpdateDelayMilliseconds(Integer.parseInt(valueWithoutUnit) * multipier);
+            } else if (TEMPLATE_UPDATE_IN_BACKGROUND_KEY_SNAKE_CASE.equals(name)
+                    || TEMPLATE_UPDATE_IN_BACKGROUND_KEY_CAMEL_CASE.equals(name)) {
+                setTemplateUpdateInBackground(StringUtil.getYesNo(value));
+            } else if (TEMPLATE_UPDATE_SERVES_STALE_KEY_SNAKE_CASE.equals(name)
+                    || TEMPLATE_UPDATE_SERVES_STALE_KEY_CAMEL_CASE.equals(name)) {
+                setTemplateUpdateServesStale(StringUtil.getYesNo(value));
             } else if (TAG_SYNTAX_KEY_SNAKE_CASE.equals(name) || TAG_SYNTAX_KEY_CAMEL_CASE.equals(name)) {
                 if ("auto_detect".equals(value) || "autoDetect".equals(value)) {
                     setTagSyntax(AUTO_DETECT_TAG_SYNTAX);
@@ -2990,6 +3484,17 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
                 } else {
                     throw invalidSettingValueException(name, value);
                 }
+            } else if (TEMPLATE_SOURCE_RETENTION_KEY_SNAKE_CASE.equals(name)
+                    || TEMPLATE_SOURCE_RETENTION_KEY_CAMEL_CASE.equals(name)) {
+                if ("full".equals(value)) {
+                    setTemplateSourceRetention(FULL_TEMPLATE_SOURCE_RETENTION);
+                } else if ("compressed".equals(value)) {
+                    setTemplateSourceRetention(COMPRESSED_TEMPLATE_SOURCE_RETENTION);
+                } else if ("none".equals(value)) {
+                    setTemplateSourceRetention(NO_TEMPLATE_SOURCE_RETENTION);
+                } else {
+                    throw invalidSettingValueException(name, value);
+                }
             } else if (TEMPLATE_CONFIGURATIONS_KEY_SNAKE_CASE.equals(name)
                     || TEMPLATE_CONFIGURATIONS_KEY_CAMEL_CASE.equals(name)) {
                 if (value.equals(NULL)) {
@@ -29,6 +29,7 @@ import java.util.Set;
 
 import org.w3c.dom.Node;
 
+import freemarker.core._JavaVersions;
 import freemarker.ext.beans.BeansWrapper;
 import freemarker.ext.beans.BeansWrapperConfiguration;
 import freemarker.ext.dom.NodeModel;
@@ -68,6 +69,7 @@ public class DefaultObjectWrapper extends freemarker.ext.beans.BeansWrapper {
     private boolean useAdaptersForContainers;
     private boolean forceLegacyNonListCollections;
     private boolean iterableSupport;
+    private boolean javaTimeSupport;
     
     /**
      * Creates a new instance with the incompatible-improvements-version specified in
@@ -119,6 +121,7 @@ public class DefaultObjectWrapper extends freemarker.ext.beans.BeansWrapper {
         useAdaptersForContainers = dowDowCfg.getUseAdaptersForContainers();
         forceLegacyNonListCollections = dowDowCfg.getForceLegacyNonListCollections();
         iterableSupport = dowDowCfg.getIterableSupport();
+        javaTimeSupport = dowDowCfg.getJavaTimeSupport();
         finalizeConstruction(writeProtected);
     }
 
@@ -229,6 +232,12 @@ public class DefaultObjectWrapper extends freemarker.ext.beans.BeansWrapper {
         if (iterableSupport && obj instanceof Iterable) {
             return DefaultIterableAdapter.adapt((Iterable<?>) obj, this);
         }
+        if (javaTimeSupport && _JavaVersions.JAVA_8 != null) {
+            TemplateModel temporalModel = _JavaVersions.JAVA_8.wrapTemporal(obj);
+            if (temporalModel != null) {
+                return temporalModel;
+            }
+        }
         return handleUnknownType(obj);
     }
     
@@ -363,6 +372,31 @@ public class DefaultObjectWrapper extends freemarker.ext.beans.BeansWrapper {
         this.iterableSupport = iterableSupport;
     }
 
+    /**
+     * Getter pair of {@link #setJavaTimeSupport(boolean)}; see there.
+     * 
+     * @since 2.3.26
+     */
+    public boolean getJavaTimeSupport() {
+        return javaTimeSupport;
+    }
+
+    /**
+     * Specifies whether the {@code java.time} objects {@link SimpleTemporal} supports ({@code Instant},
+     * {@code ZonedDateTime}, {@code OffsetDateTime}, {@code LocalDateTime}, {@code LocalDate}, {@code LocalTime})
+     * will be wrapped into {@link SimpleTemporal}, and so will be seen as date/time/date-time values by the templates,
+     * or they will be just seen as generic objects (JavaBean-s). Defaults to {@code false} for backward compatibility.
+     * The wrapped values can be formatted by any date format, but
+     * {@link freemarker.core.JavaTimeTemplateDateFormatFactory} can format them without converting them to
+     * {@link java.util.Date} first. This setting has no effect before Java 8.
+     * 
+     * @since 2.3.26
+     */
+    public void setJavaTimeSupport(boolean javaTimeSupport) {
+        checkModifiable();
+        this.javaTimeSupport = javaTimeSupport;
+    }
+
     /**
      * Returns the lowest version number that is equivalent with the parameter version.
      * 
@@ -392,7 +426,8 @@ public class DefaultObjectWrapper extends freemarker.ext.beans.BeansWrapper {
         }
         
         return "useAdaptersForContainers=" + useAdaptersForContainers + ", forceLegacyNonListCollections="
-                + forceLegacyNonListCollections + ", iterableSupport=" + iterableSupport + bwProps;
+                + forceLegacyNonListCollections + ", iterableSupport=" + iterableSupport
+                + ", javaTimeSupport=" + javaTimeSupport + bwProps;
     }
     
 }
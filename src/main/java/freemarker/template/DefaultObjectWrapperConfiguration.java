@@ -35,6 +35,7 @@ public abstract class DefaultObjectWrapperConfiguration extends BeansWrapperConf
     private boolean useAdaptersForContainers;
     private boolean forceLegacyNonListCollections;
     private boolean iterableSupport;
+    private boolean javaTimeSupport;
 
     protected DefaultObjectWrapperConfiguration(Version incompatibleImprovements) {
         super(DefaultObjectWrapper.normalizeIncompatibleImprovementsVersion(incompatibleImprovements), true);
@@ -79,6 +80,24 @@ public abstract class DefaultObjectWrapperConfiguration extends BeansWrapperConf
     public void setIterableSupport(boolean iterableSupport) {
         this.iterableSupport = iterableSupport;
     }
+
+    /**
+     * See {@link DefaultObjectWrapper#getJavaTimeSupport()}.
+     * 
+     * @since 2.3.26 
+     */
+    public boolean getJavaTimeSupport() {
+        return javaTimeSupport;
+    }
+
+    /**
+     * See {@link DefaultObjectWrapper#setJavaTimeSupport(boolean)}.
+     * 
+     * @since 2.3.26 
+     */
+    public void setJavaTimeSupport(boolean javaTimeSupport) {
+        this.javaTimeSupport = javaTimeSupport;
+    }
     
     @Override
     public int hashCode() {
@@ -87,6 +106,7 @@ public abstract class DefaultObjectWrapperConfiguration extends BeansWrapperConf
         result = result * prime + (useAdaptersForContainers ? 1231 : 1237);
         result = result * prime + (forceLegacyNonListCollections ? 1231 : 1237);
         result = result * prime + (iterableSupport ? 1231 : 1237);
+        result = result * prime + (javaTimeSupport ? 1231 : 1237);
         return result;
     }
 
@@ -96,7 +116,8 @@ public abstract class DefaultObjectWrapperConfiguration extends BeansWrapperConf
         final DefaultObjectWrapperConfiguration thatDowCfg = (DefaultObjectWrapperConfiguration) that;
         return useAdaptersForContainers == thatDowCfg.getUseAdaptersForContainers()
                 && forceLegacyNonListCollections == thatDowCfg.forceLegacyNonListCollections
-                && iterableSupport == thatDowCfg.iterableSupport;
+                && iterableSupport == thatDowCfg.iterableSupport
+                && javaTimeSupport == thatDowCfg.javaTimeSupport;
     }
 
 }
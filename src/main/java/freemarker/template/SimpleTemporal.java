@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.template;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.Temporal;
+import java.util.Date;
+import java.util.TimeZone;
+
+import freemarker.core.Environment;
+import freemarker.ext.util.WrapperTemplateModel;
+
+/**
+ * A {@link TemplateDateModel} that wraps a {@code java.time} object, so that
+ * {@link freemarker.core.JavaTimeTemplateDateFormatFactory} can format it without converting it to {@link Date}
+ * first. Other {@link freemarker.core.TemplateDateFormat}-s will use {@link #getAsDate()}. The supported classes are
+ * {@link Instant}, {@link ZonedDateTime}, {@link OffsetDateTime}, {@link LocalDateTime} (these are date-times),
+ * {@link LocalDate} (a date) and {@link LocalTime} (a time). This is what
+ * {@link DefaultObjectWrapper#setJavaTimeSupport(boolean) DefaultObjectWrapper.javaTimeSupport} wraps these into.
+ * 
+ * <p>
+ * The values that have no time zone or offset ({@link LocalDateTime}, {@link LocalDate}, {@link LocalTime}) are
+ * converted to {@link Date} with the {@link Environment#getTimeZone() time zone} of the current {@link Environment}
+ * (or of the JVM default time zone, if there's no current {@link Environment}), so they will be shown unchanged by
+ * any date format that uses the same time zone. A {@link LocalTime} is converted to that time on 1970-01-01.
+ * 
+ * <p>This class is immutable and thread-safe.
+ * 
+ * @since 2.3.26
+ */
+public class SimpleTemporal implements TemplateDateModel, AdapterTemplateModel, WrapperTemplateModel {
+
+    private static final LocalDate EPOCH_DATE = LocalDate.of(1970, 1, 1);
+    
+    private final Temporal temporal;
+    private final int dateType;
+
+    /**
+     * @param temporal
+     *            Not {@code null}; must be of a supported class, see {@link #isSupportedTemporal(Temporal)}.
+     */
+    public SimpleTemporal(Temporal temporal) {
+        if (temporal == null) {
+            throw new IllegalArgumentException("temporal == null");
+        }
+        dateType = getDateType(temporal);
+        if (dateType == -1) {
+            throw new IllegalArgumentException("Unsupported java.time class: " + temporal.getClass().getName());
+        }
+        this.temporal = temporal;
+    }
+
+    /**
+     * Tells if the {@link Temporal} is of a class that can be wrapped into this class. 
+     */
+    public static boolean isSupportedTemporal(Temporal temporal) {
+        return getDateType(temporal) != -1;
+    }
+    
+    private static int getDateType(Temporal temporal) {
+        if (temporal instanceof Instant || temporal instanceof ZonedDateTime || temporal instanceof OffsetDateTime
+                || temporal instanceof LocalDateTime) {
+            return DATETIME;
+        }
+        if (temporal instanceof LocalDate) {
+            return DATE;
+        }
+        if (temporal instanceof LocalTime) {
+            return TIME;
+        }
+        return -1;
+    }
+    
+    /**
+     * Returns the wrapped {@code java.time} object.
+     */
+    public Temporal getTemporal() {
+        return temporal;
+    }
+
+    public int getDateType() {
+        return dateType;
+    }
+
+    /**
+     * Converts the value to {@link Date}, using the time zone of the current {@link Environment} (or the JVM default
+     * time zone) for values that have no time zone or offset; see {@link #getAsDate(TimeZone)}.
+     */
+    public Date getAsDate() {
+        Environment env = Environment.getCurrentEnvironment();
+        return getAsDate(env != null ? env.getTimeZone() : TimeZone.getDefault());
+    }
+
+    /**
+     * Converts the value to {@link Date}, using the given time zone for values that have no time zone or offset.
+     * 
+     * @param timeZone
+     *            Not {@code null}; ignored for {@link Instant}, {@link ZonedDateTime}, and {@link OffsetDateTime}.
+     */
+    public Date getAsDate(TimeZone timeZone) {
+        final Instant instant;
+        if (temporal instanceof Instant) {
+            instant = (Instant) temporal;
+        } else if (temporal instanceof ZonedDateTime) {
+            instant = ((ZonedDateTime) temporal).toInstant();
+        } else if (temporal instanceof OffsetDateTime) {
+            instant = ((OffsetDateTime) temporal).toInstant();
+        } else {
+            ZoneId zoneId = timeZone.toZoneId();
+            if (temporal instanceof LocalDateTime) {
+                instant = ((LocalDateTime) temporal).atZone(zoneId).toInstant();
+            } else if (temporal instanceof LocalDate) {
+                instant = ((LocalDate) temporal).atStartOfDay(zoneId).toInstant();
+            } else {
+                instant = EPOCH_DATE.atTime((LocalTime) temporal).atZone(zoneId).toInstant();
+            }
+        }
+        return Date.from(instant);
+    }
+
+    public Object getAdaptedObject(Class<?> hint) {
+        return temporal;
+    }
+
+    public Object getWrappedObject() {
+        return temporal;
+    }
+
+    @Override
+    public String toString() {
+        return temporal.toString();
+    }
+    
+}
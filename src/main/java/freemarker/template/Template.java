@@ -20,27 +20,49 @@
 package freemarker.template;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FilterReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.Serializable;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.io.UnsupportedEncodingException;
 import java.lang.reflect.UndeclaredThrowableException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import freemarker.cache.TemplateCache;
 import freemarker.cache.TemplateLoader;
 import freemarker.cache.TemplateLookupStrategy;
 import freemarker.core.BugException;
 import freemarker.core.Configurable;
+import freemarker.core.EncodingWriter;
 import freemarker.core.Environment;
 import freemarker.core.FMParser;
 import freemarker.core.LibraryLoad;
@@ -50,8 +72,10 @@ import freemarker.core.ParseException;
 import freemarker.core.ParserConfiguration;
 import freemarker.core.TemplateConfiguration;
 import freemarker.core.TemplateElement;
+import freemarker.core.TemplateObject;
 import freemarker.core.TextBlock;
 import freemarker.core.TokenMgrError;
+import freemarker.core.UnregisteredOutputFormatException;
 import freemarker.core._CoreAPI;
 import freemarker.debug.impl.DebuggerService;
 
@@ -79,6 +103,28 @@ public class Template extends Configurable {
     public static final String DEFAULT_NAMESPACE_PREFIX = "D";
     public static final String NO_NS_PREFIX = "N";
     
+    /**
+     * The name of the custom attribute (see {@link #getCustomAttribute(String)}) with which a template can be marked
+     * as a "pure library". When a template that has this attribute set to {@code true} (either as {@link Boolean} or
+     * as {@link String}) is {@code #import}-ed, the namespace it produces is snapshotted, and later imports of the same
+     * {@link Template} object, in any {@link freemarker.core.Environment}, get a copy of that snapshot instead of
+     * executing the template again. The copy is only made when the namespace is modified, like with
+     * {@code <#assign x = 1 in lib>}, otherwise the snapshot is shared. Thus, a pure library must only define macros,
+     * functions, and variables that don't depend on anything that can differ between two imports, like the data-model,
+     * the settings (such as the locale), or the time; it shouldn't have side effects either (like setting global
+     * variables, or changing settings). Libraries that import other libraries can be pure too (the imported libraries
+     * are imported again, and are only shared if they are pure themselves).
+     * 
+     * <p>
+     * The attribute is usually set in the header of the library, like
+     * {@code <#ftl attributes={"pure_library": true}>}, or with
+     * {@link Configuration#setTemplateConfigurations(freemarker.cache.TemplateConfigurationFactory)} for the library
+     * directory. It's only checked when the {@link Template} object is first imported.
+     * 
+     * @since 2.3.26
+     */
+    public static final String PURE_LIBRARY_CUSTOM_ATTRIBUTE = "pure_library";
+    
     /** This is only non-null during parsing. It's used internally to make some information available through the
      *  Template API-s earlier than the parsing was finished. */
     private transient FMParser parser;
@@ -94,11 +140,21 @@ public class Template extends Configurable {
     private OutputFormat outputFormat;
     private final String name;
     private final String sourceName;
-    private final ArrayList lines = new ArrayList();
+    /**
+     * The lines of the source code; {@code null} if the source code isn't retained in this form. See
+     * {@link Configuration#setTemplateSourceRetention(int)}.
+     */
+    private ArrayList lines = new ArrayList();
+    /** The source code compressed, if it's retained in this form; otherwise {@code null}. */
+    private byte[] compressedSource;
+    private int sourceRetention = Configuration.FULL_TEMPLATE_SOURCE_RETENTION;
+    private int sourceLength;
     private final ParserConfiguration parserConfiguration;
     private Map prefixToNamespaceURILookup = new HashMap();
     private Map namespaceURIToPrefixLookup = new HashMap();
     private Version templateLanguageVersion;
+    /** Used by {@code Environment.importLib}; see {@link #PURE_LIBRARY_CUSTOM_ATTRIBUTE}. */
+    private transient volatile Object libraryNamespaceSnapshot;
 
     /**
      * A prime constructor to which all other constructors should
@@ -278,6 +334,7 @@ public class Template extends Configurable {
         // Throws any exception that JavaCC has silently treated as EOF:
         ltbReader.throwFailure();
         
+        applySourceRetention();
         DebuggerService.registerTemplate(this);
         namespaceURIToPrefixLookup = Collections.unmodifiableMap(namespaceURIToPrefixLookup);
         prefixToNamespaceURILookup = Collections.unmodifiableMap(prefixToNamespaceURILookup);
@@ -308,6 +365,55 @@ public class Template extends Configurable {
         this.rootElement = root;
         DebuggerService.registerTemplate(this);
     }
+
+    /**
+     * Creates a template from a parse result that was saved earlier with {@link #writeParseResult(OutputStream)},
+     * instead of parsing the template source again. The parameters must be the same as when the saved template was
+     * created, except that the {@code encoding} must be the {@link #getEncoding()} of the saved template.
+     * 
+     * @throws IOException
+     *             If the parse result can't be read, like because it was saved by a different FreeMarker version.
+     *             Then the template source should be parsed normally.
+     */
+    Template(String name, String sourceName, Configuration cfg, ParserConfiguration customParserConfiguration,
+            String encoding, InputStream parseResult) throws IOException {
+        this(name, sourceName, cfg, customParserConfiguration);
+        this.setEncoding(encoding);
+        
+        final ObjectInputStream in = new ParseResultInputStream(parseResult, this);
+        try {
+            rootElement = (TemplateElement) in.readObject();
+            macros = (Map) in.readObject();
+            imports = new Vector((List) in.readObject());
+            lines.addAll((List) in.readObject());
+            sourceLength = in.readInt();
+            actualTagSyntax = in.readInt();
+            actualNamingConvention = in.readInt();
+            outputFormat = (OutputFormat) in.readObject();
+            autoEscaping = in.readBoolean();
+            defaultNS = (String) in.readObject();
+            prefixToNamespaceURILookup = Collections.unmodifiableMap((Map) in.readObject());
+            namespaceURIToPrefixLookup = Collections.unmodifiableMap((Map) in.readObject());
+            final Map customAttributes = (Map) in.readObject();
+            for (Iterator it = customAttributes.entrySet().iterator(); it.hasNext(); ) {
+                final Map.Entry ent = (Map.Entry) it.next();
+                setCustomAttribute((String) ent.getKey(), ent.getValue());
+            }
+        } catch (ClassNotFoundException e) {
+            throw newParseResultReadingException(e);
+        } catch (ClassCastException e) {
+            throw newParseResultReadingException(e);
+        }
+        
+        applySourceRetention();
+        DebuggerService.registerTemplate(this);
+    }
+    
+    private static IOException newParseResultReadingException(Exception cause) {
+        IOException e = new InvalidObjectException("Malformed template parse result");
+        e.initCause(cause);
+        return e;
+    }
     
     /**
      * Same as {@link #getPlainTextTemplate(String, String, String, Configuration)} with {@code null} {@code sourceName}
@@ -384,6 +490,36 @@ public class Template extends Configurable {
         createProcessingEnvironment(dataModel, out, null).process();
     }
 
+    /**
+     * Like {@link #process(Object, Writer)}, but writes the output as bytes, encoded with the given charset, into an
+     * {@link OutputStream}. This is faster than wrapping the {@link OutputStream} into a
+     * {@link java.io.OutputStreamWriter}, as the static text parts of the template are only encoded once, and then
+     * the encoded bytes are cached in the {@link Template} (for one charset at a time); see {@link EncodingWriter}.
+     * The {@link Environment#getOutputEncoding() output_encoding} setting will be set to the name of the charset.
+     * 
+     * <p>When the template processing ends (even with exception), all the output is written into the
+     * {@link OutputStream}, but the {@link OutputStream} is only flushed if {@link Configurable#getAutoFlush()} is
+     * {@code true}. The {@link OutputStream} is not closed.
+     * 
+     * @param out
+     *            The {@link OutputStream} where the output of the template will go. Can't be {@code null}.
+     * @param charset
+     *            The charset used for encoding the output. Can't be {@code null}.
+     * 
+     * @since 2.3.26
+     */
+    public void process(Object dataModel, OutputStream out, Charset charset)
+    throws TemplateException, IOException {
+        EncodingWriter encOut = new EncodingWriter(out, charset);
+        Environment env = createProcessingEnvironment(dataModel, encOut, null);
+        env.setOutputEncoding(charset.name());
+        try {
+            env.process();
+        } finally {
+            encOut.flushBuffer();
+        }
+    }
+
     /**
      * Like {@link #process(Object, Writer)}, but also sets a (XML-)node to be recursively processed by the template.
      * That node is accessed in the template with <tt>.node</tt>, <tt>#recurse</tt>, etc. See the
@@ -592,6 +728,126 @@ public class Template extends Configurable {
         return templateLanguageVersion;
     }
 
+    /**
+     * Returns the number of characters in the source code of the template, as it was retained for error messages.
+     * As the size of the parsed template is roughly proportional to this, it's used for estimating the memory
+     * footprint of the template.
+     */
+    int getSourceLength() {
+        return sourceLength;
+    }
+    
+    private static int getLinesLength(List lines) {
+        int length = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            length += ((String) lines.get(i)).length();
+        }
+        return length;
+    }
+    
+    /**
+     * Drops or compresses the source code lines according {@link Configuration#getTemplateSourceRetention()}; called
+     * after the {@link #lines} were filled.
+     */
+    private void applySourceRetention() {
+        if (!lines.isEmpty()) {
+            sourceLength = getLinesLength(lines);
+        }  // else it was possibly read from the parse result
+        
+        sourceRetention = getConfiguration().getTemplateSourceRetention();
+        if (sourceRetention == Configuration.FULL_TEMPLATE_SOURCE_RETENTION) {
+            lines.trimToSize();
+            return;
+        }
+        
+        if (sourceRetention == Configuration.COMPRESSED_TEMPLATE_SOURCE_RETENTION) {
+            StringBuilder source = new StringBuilder(sourceLength);
+            for (int i = 0; i < lines.size(); i++) {
+                source.append((String) lines.get(i));
+            }
+            try {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(sourceLength / 4 + 16);
+                DeflaterOutputStream out = new DeflaterOutputStream(compressed);
+                out.write(source.toString().getBytes("UTF-8"));
+                out.close();
+                compressedSource = compressed.toByteArray();
+            } catch (IOException e) {
+                throw new BugException("Failed to compress template source", e);
+            }
+        }
+        lines = null;
+    }
+    
+    /**
+     * Returns the lines of the source code, or {@code null} if the source code isn't retained.
+     */
+    private List getSourceLines() {
+        ArrayList lines = this.lines;
+        if (lines != null) {
+            return lines;
+        }
+        if (compressedSource == null) {
+            return null;
+        }
+        
+        String source;
+        try {
+            InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(compressedSource));
+            ByteArrayOutputStream decompressed = new ByteArrayOutputStream(sourceLength + 16);
+            byte[] buf = new byte[4096];
+            int len;
+            while ((len = in.read(buf)) != -1) {
+                decompressed.write(buf, 0, len);
+            }
+            source = decompressed.toString("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new BugException(e);
+        } catch (IOException e) {
+            throw new BugException("Failed to decompress template source", e);
+        }
+        
+        // Split to lines the same way as LineTableBuilder did
+        lines = new ArrayList();
+        int lineStart = 0;
+        int ln = source.length();
+        for (int i = 0; i < ln; i++) {
+            char c = source.charAt(i);
+            if (c == '\n' || c == '\r') {
+                if (c == '\r' && i + 1 < ln && source.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                lines.add(source.substring(lineStart, i + 1));
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < ln) {
+            lines.add(source.substring(lineStart));
+        }
+        return lines;
+    }
+    
+    /**
+     * Returns a rough estimate of how much memory this template uses; see {@link TemplateMemoryReport}. This walks
+     * the whole parsed template, so it's not meant to be called often.
+     * 
+     * @since 2.3.26
+     */
+    public TemplateMemoryReport getMemoryReport() {
+        final long retainedSourceSize;
+        ArrayList lines = this.lines;
+        if (lines != null) {
+            // ArrayList with its array, and the String-s with their char arrays.
+            retainedSourceSize = 40 + lines.size() * (4L + 24 + 16) + 2L * getLinesLength(lines);
+        } else if (compressedSource != null) {
+            retainedSourceSize = 16 + compressedSource.length;
+        } else {
+            retainedSourceSize = 0;
+        }
+        return new TemplateMemoryReport(
+                getName(), sourceRetention, getSourceLength(), retainedSourceSize,
+                _CoreAPI.estimateTemplateTreeSize(rootElement));
+    }
+
     /**
      * @param encoding
      *            The encoding that was used to read this template. When this template {@code #include}-s or
@@ -701,6 +957,41 @@ public class Template extends Configurable {
         this.autoEscaping = autoEscaping;
     }
     
+    /**
+     * Saves the result of the parsing (the AST and the other information collected by the parser), so that later it
+     * can be loaded with {@link #Template(String, String, Configuration, ParserConfiguration, String, InputStream)}
+     * instead of parsing the template source again. This must be called before any settings were changed on the
+     * template object. The saved format is only readable with the same FreeMarker version.
+     * 
+     * @throws IOException
+     *             Also if the template contains something that can't be saved (like a non-serializable custom
+     *             attribute value); then the template can't be saved.
+     */
+    void writeParseResult(OutputStream parseResult) throws IOException {
+        final ObjectOutputStream out = new ParseResultOutputStream(parseResult, this);
+        out.writeObject(rootElement);
+        out.writeObject(macros);
+        out.writeObject(new ArrayList(imports));
+        List sourceLines = getSourceLines();
+        out.writeObject(sourceLines != null ? new ArrayList(sourceLines) : new ArrayList());
+        out.writeInt(getSourceLength());
+        out.writeInt(actualTagSyntax);
+        out.writeInt(actualNamingConvention);
+        out.writeObject(outputFormat);
+        out.writeBoolean(autoEscaping);
+        out.writeObject(defaultNS);
+        out.writeObject(new HashMap(prefixToNamespaceURILookup));
+        out.writeObject(new HashMap(namespaceURIToPrefixLookup));
+        final Map customAttributes = new HashMap();
+        final String[] customAttributeNames = getCustomAttributeNames();
+        for (int i = 0; i < customAttributeNames.length; i++) {
+            final String attName = customAttributeNames[i];
+            customAttributes.put(attName, getCustomAttribute(attName));
+        }
+        out.writeObject(customAttributes);
+        out.flush();
+    }
+    
     /**
      * Dump the raw template in canonical form.
      */
@@ -755,6 +1046,9 @@ public class Template extends Configurable {
                             int endLine) {
         if (beginLine < 1 || endLine < 1) return null;  // dynamically ?eval-ed expressions has no source available
         
+        List lines = getSourceLines();
+        if (lines == null || endLine > lines.size()) return null;  // The source code wasn't retained
+        
         // Our container is zero-based.
         --beginLine;
         --beginColumn;
@@ -1064,5 +1358,145 @@ public class Template extends Configurable {
 
     }
 
-}
+    Object getLibraryNamespaceSnapshot() {
+        return libraryNamespaceSnapshot;
+    }
+
+    void setLibraryNamespaceSnapshot(Object libraryNamespaceSnapshot) {
+        this.libraryNamespaceSnapshot = libraryNamespaceSnapshot;
+    }
+    
+    /**
+     * Used by {@link Template#writeParseResult(OutputStream)} to replace objects that aren't part of the parse result
+     * with placeholders.
+     */
+    private static final class ParseResultOutputStream extends ObjectOutputStream {
+        
+        private final Template template;
+
+        ParseResultOutputStream(OutputStream out, Template template) throws IOException {
+            super(out);
+            this.template = template;
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            if (obj == template) {
+                return TemplatePlaceholder.INSTANCE;
+            }
+            if (obj instanceof OutputFormat) {
+                return new OutputFormatPlaceholder(((OutputFormat) obj).getName());
+            }
+            return obj;
+        }
+        
+    }
 
+    /**
+     * The pair of {@link ParseResultOutputStream}. It only allows loading the classes that can occur in a parse
+     * result, so that a tampered file can't be used to instantiate arbitrary serializable classes.
+     */
+    private static final class ParseResultInputStream extends ObjectInputStream {
+        
+        private static final String AST_PACKAGE_PREFIX = TemplateObject.class.getPackage().getName() + ".";
+        
+        /**
+         * The classes that the AST node fields, and the other parts of the parse result can refer to. The
+         * {@code java.lang.Number} superclass is here as its class descriptor is also read for its subclasses.
+         */
+        private static final Set ALLOWED_NON_AST_CLASS_NAMES = new HashSet(Arrays.asList(new String[] {
+                TemplatePlaceholder.class.getName(),
+                OutputFormatPlaceholder.class.getName(),
+                SimpleScalar.class.getName(),
+                TemplateBooleanModel.TRUE.getClass().getName(),
+                TemplateBooleanModel.FALSE.getClass().getName(),
+                String.class.getName(),
+                Boolean.class.getName(),
+                Number.class.getName(),
+                Byte.class.getName(),
+                Short.class.getName(),
+                Integer.class.getName(),
+                Long.class.getName(),
+                Float.class.getName(),
+                Double.class.getName(),
+                BigDecimal.class.getName(),
+                BigInteger.class.getName(),
+                ArrayList.class.getName(),
+                HashMap.class.getName(),
+                LinkedHashMap.class.getName() }));
+        
+        private final Template template;
+
+        ParseResultInputStream(InputStream in, Template template) throws IOException {
+            super(in);
+            this.template = template;
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Class resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            final String className = desc.getName();
+            int elementTypeStart = 0;
+            while (className.charAt(elementTypeStart) == '[') {
+                elementTypeStart++;
+            }
+            // Arrays of primitives are always allowed
+            if (elementTypeStart == 0 || className.charAt(elementTypeStart) == 'L') {
+                final String elementClassName = elementTypeStart == 0
+                        ? className : className.substring(elementTypeStart + 1, className.length() - 1);
+                if (!ALLOWED_NON_AST_CLASS_NAMES.contains(elementClassName) && !isAstNodeClass(elementClassName)) {
+                    throw new InvalidClassException(className, "Class not allowed in template parse results");
+                }
+            }
+            return super.resolveClass(desc);
+        }
+
+        /**
+         * Checks if the class is a {@link TemplateObject} subclass from FreeMarker itself. The class is loaded without
+         * initializing it, so this has no side effect even if the name came from a tampered file.
+         */
+        private static boolean isAstNodeClass(String className) {
+            if (!className.startsWith(AST_PACKAGE_PREFIX)
+                    || className.indexOf('.', AST_PACKAGE_PREFIX.length()) != -1) {
+                return false;
+            }
+            final Class cl;
+            try {
+                cl = Class.forName(className, false, TemplateObject.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                return false;
+            }
+            return TemplateObject.class.isAssignableFrom(cl);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) throws IOException {
+            if (obj instanceof TemplatePlaceholder) {
+                return template;
+            }
+            if (obj instanceof OutputFormatPlaceholder) {
+                try {
+                    return template.getConfiguration().getOutputFormat(((OutputFormatPlaceholder) obj).name);
+                } catch (UnregisteredOutputFormatException e) {
+                    throw newParseResultReadingException(e);
+                }
+            }
+            return obj;
+        }
+        
+    }
+    
+    private static final class TemplatePlaceholder implements Serializable {
+        private static final TemplatePlaceholder INSTANCE = new TemplatePlaceholder();
+    }
+
+    private static final class OutputFormatPlaceholder implements Serializable {
+        private final String name;
+
+        OutputFormatPlaceholder(String name) {
+            this.name = name;
+        }
+    }
+    
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+
+import freemarker.template.utility.StringUtil;
+
+/**
+ * The result of {@link Configuration#warmUpTemplateCache(java.util.Collection, Locale, ExecutorService)}; tells
+ * which templates were loaded, how long that took, and which ones have failed.
+ * 
+ * @since 2.3.26
+ */
+public final class TemplateCacheWarmUpResult {
+    
+    private final List<Entry> entries;
+    private final long totalTimeNanos;
+    
+    TemplateCacheWarmUpResult(List<Entry> entries, long totalTimeNanos) {
+        this.entries = Collections.unmodifiableList(entries);
+        this.totalTimeNanos = totalTimeNanos;
+    }
+
+    /**
+     * The result of loading each template, in the order in which the template names were resolved (and not in the
+     * order they were loaded).
+     * 
+     * @return Not {@code null}; unmodifiable.
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+    
+    /**
+     * The entries where the loading of the template has failed; see {@link Entry#getException()}.
+     * 
+     * @return Not {@code null}; unmodifiable.
+     */
+    public List<Entry> getFailedEntries() {
+        List<Entry> failedEntries = new ArrayList<Entry>();
+        for (Entry entry : entries) {
+            if (!entry.isSuccessful()) {
+                failedEntries.add(entry);
+            }
+        }
+        return Collections.unmodifiableList(failedEntries);
+    }
+    
+    /**
+     * Tells if all templates were loaded successfully.
+     */
+    public boolean isSuccessful() {
+        for (Entry entry : entries) {
+            if (!entry.isSuccessful()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * The wall clock time the whole warm-up took, including the listing of the templates, in nanoseconds.
+     */
+    public long getTotalTimeNanos() {
+        return totalTimeNanos;
+    }
+    
+    @Override
+    public String toString() {
+        int failedCount = getFailedEntries().size();
+        return "TemplateCacheWarmUpResult(templates=" + entries.size() + ", failed=" + failedCount
+                + ", totalTimeMillis=" + totalTimeNanos / 1000000L + ")";
+    }
+
+    /**
+     * The result of loading a single template.
+     */
+    public static final class Entry {
+        
+        private final String templateName;
+        private final long loadTimeNanos;
+        private final Exception exception;
+        
+        Entry(String templateName, long loadTimeNanos, Exception exception) {
+            this.templateName = templateName;
+            this.loadTimeNanos = loadTimeNanos;
+            this.exception = exception;
+        }
+
+        /**
+         * The template name as it was passed to {@link Configuration#getTemplate(String, Locale)}.
+         */
+        public String getTemplateName() {
+            return templateName;
+        }
+        
+        /**
+         * The time it took to get the template from the {@link Configuration}, in nanoseconds. If the template was
+         * already in the cache (and was up to date), this will be very short.
+         */
+        public long getLoadTimeNanos() {
+            return loadTimeNanos;
+        }
+        
+        /**
+         * The exception that {@link Configuration#getTemplate(String, Locale)} has thrown, or {@code null} if it was
+         * successful. This is typically a {@link TemplateNotFoundException}, a {@link freemarker.core.ParseException},
+         * or some other {@link java.io.IOException}.
+         */
+        public Exception getException() {
+            return exception;
+        }
+        
+        public boolean isSuccessful() {
+            return exception == null;
+        }
+        
+        @Override
+        public String toString() {
+            return StringUtil.jQuote(templateName) + ": "
+                    + (exception == null ? "loaded" : "failed with " + exception.getClass().getName())
+                    + " in " + loadTimeNanos / 1000000L + " ms";
+        }
+        
+    }
+    
+}
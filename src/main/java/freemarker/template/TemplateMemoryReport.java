@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+/**
+ * Rough estimate of the heap used by a {@link Template}; see {@link Template#getMemoryReport()}. The estimates assume
+ * a 64 bit JVM with compressed references, and they don't consider that some objects might be shared with other
+ * templates.
+ * 
+ * @since 2.3.26
+ */
+public final class TemplateMemoryReport {
+    
+    private final String templateName;
+    private final int sourceRetention;
+    private final int sourceLength;
+    private final long retainedSourceSize;
+    private final long parsedTreeSize;
+
+    TemplateMemoryReport(
+            String templateName, int sourceRetention, int sourceLength, long retainedSourceSize,
+            long parsedTreeSize) {
+        this.templateName = templateName;
+        this.sourceRetention = sourceRetention;
+        this.sourceLength = sourceLength;
+        this.retainedSourceSize = retainedSourceSize;
+        this.parsedTreeSize = parsedTreeSize;
+    }
+
+    /**
+     * The {@link Template#getName()} of the template.
+     */
+    public String getTemplateName() {
+        return templateName;
+    }
+
+    /**
+     * How the source code was retained; one of the {@code ..._TEMPLATE_SOURCE_RETENTION} constants of
+     * {@link Configuration}.
+     */
+    public int getSourceRetention() {
+        return sourceRetention;
+    }
+
+    /**
+     * The number of characters in the source code of the template (after tab expansion), regardless if it's retained.
+     */
+    public int getSourceLength() {
+        return sourceLength;
+    }
+
+    /**
+     * The estimated number of bytes used for retaining the source code, which is used for error messages.
+     */
+    public long getRetainedSourceSize() {
+        return retainedSourceSize;
+    }
+
+    /**
+     * The estimated number of bytes used by the parsed template (the tree of template elements and expressions).
+     */
+    public long getParsedTreeSize() {
+        return parsedTreeSize;
+    }
+
+    /**
+     * The sum of {@link #getRetainedSourceSize()} and {@link #getParsedTreeSize()}.
+     */
+    public long getTotalSize() {
+        return retainedSourceSize + parsedTreeSize;
+    }
+    
+    @Override
+    public String toString() {
+        String sourceRetentionName;
+        switch (sourceRetention) {
+        case Configuration.FULL_TEMPLATE_SOURCE_RETENTION:
+            sourceRetentionName = "full";
+            break;
+        case Configuration.COMPRESSED_TEMPLATE_SOURCE_RETENTION:
+            sourceRetentionName = "compressed";
+            break;
+        case Configuration.NO_TEMPLATE_SOURCE_RETENTION:
+            sourceRetentionName = "none";
+            break;
+        default:
+            sourceRetentionName = String.valueOf(sourceRetention);
+        }
+        return "TemplateMemoryReport(template=" + templateName + ", sourceRetention=" + sourceRetentionName
+                + ", sourceLength=" + sourceLength + ", retainedSourceSize=" + retainedSourceSize
+                + ", parsedTreeSize=" + parsedTreeSize + ")";
+    }
+    
+}
@@ -19,14 +19,20 @@
 
 package freemarker.template;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Set;
 
 import freemarker.cache.CacheStorage;
+import freemarker.cache.TemplateCache;
 import freemarker.cache.TemplateLoader;
 import freemarker.cache.TemplateLookupStrategy;
 import freemarker.cache.TemplateNameFormat;
+import freemarker.cache.TinyLfuCacheStorage;
 import freemarker.core.Expression;
 import freemarker.core.OutputFormat;
+import freemarker.core.ParserConfiguration;
 import freemarker.core.TemplateObject;
 import freemarker.template.utility.NullArgumentException;
 
@@ -150,4 +156,34 @@ public class _TemplateAPI {
         return e.getBlamedExpression();
     }
     
+    public static int getSourceLength(Template t) {
+        return t.getSourceLength();
+    }
+    
+    public static void writeParseResult(Template t, OutputStream out) throws IOException {
+        t.writeParseResult(out);
+    }
+    
+    public static Object getLibraryNamespaceSnapshot(Template t) {
+        return t.getLibraryNamespaceSnapshot();
+    }
+    
+    public static void setLibraryNamespaceSnapshot(Template t, Object libraryNamespaceSnapshot) {
+        t.setLibraryNamespaceSnapshot(libraryNamespaceSnapshot);
+    }
+    
+    public static TinyLfuCacheStorage getRuntimeParseCache(Configuration cfg) {
+        return cfg.getRuntimeParseCache();
+    }
+    
+    public static TemplateCache getTemplateCache(Configuration cfg) {
+        return cfg.getTemplateCache();
+    }
+    
+    public static Template newTemplateFromParseResult(
+            String name, String sourceName, Configuration cfg, ParserConfiguration customParserConfiguration,
+            String encoding, InputStream parseResult) throws IOException {
+        return new Template(name, sourceName, cfg, customParserConfiguration, encoding, parseResult);
+    }
+    
 }
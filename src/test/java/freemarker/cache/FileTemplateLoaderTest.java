@@ -23,10 +23,13 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.SystemUtils;
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -113,6 +116,71 @@ public class FileTemplateLoaderTest {
         assertFalse(new FileTemplateLoader(templateRootDir).getEmulateCaseSensitiveFileSystem());
     }
     
+    @Test
+    public void testListTemplateNames() throws Exception {
+        FileUtils.write(new File(templateRootDir, "root.ftl"), "root");
+        FileTemplateLoader tl = (FileTemplateLoader) cfg.getTemplateLoader();
+        List<String> names = new ArrayList<String>(tl.listTemplateNames());
+        assertThat(names, containsInAnyOrder("root.ftl", "sub1/sub2/t.ftl"));
+    }
+    
+    @Test
+    public void testWatchForChanges() throws Exception {
+        FileTemplateLoader tl = (FileTemplateLoader) cfg.getTemplateLoader();
+        final List<String> changes = new ArrayList<String>();
+        TemplateSourceChangeListener listener = new TemplateSourceChangeListener() {
+            public void templateSourceChanged(String sourceName) {
+                synchronized (changes) {
+                    changes.add(sourceName);
+                }
+            }
+        };
+        tl.addTemplateSourceChangeListener(listener);
+        
+        assertFalse(tl.isNotifyingAboutAllChanges());
+        tl.setWatchForChanges(true);
+        try {
+            Assume.assumeTrue(tl.isNotifyingAboutAllChanges()); // Requires Java 7
+            
+            cfg.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+            assertEquals("foo", cfg.getTemplate("sub1/sub2/t.ftl").toString());
+            
+            File tFile = new File(templateRootDir, "sub1/sub2/t.ftl");
+            FileUtils.write(tFile, "bar");
+            tFile.setLastModified(tFile.lastModified() + 2000);
+            waitForChange(changes, "sub1/sub2/t.ftl");
+            assertEquals("bar", cfg.getTemplate("sub1/sub2/t.ftl").toString());
+            
+            // Changes in newly created directories are watched too:
+            File sub3Dir = new File(templateRootDir, "sub3");
+            assertTrue(sub3Dir.mkdir());
+            FileUtils.write(new File(sub3Dir, "t.ftl"), "baz");
+            waitForChange(changes, "sub3/t.ftl");
+            assertEquals("baz", cfg.getTemplate("sub3/t.ftl").toString());
+            
+            tl.setWatchForChanges(false);
+            assertFalse(tl.isNotifyingAboutAllChanges());
+        } finally {
+            tl.setWatchForChanges(false);
+        }
+    }
+
+    private void waitForChange(List<String> changes, String sourceName) throws InterruptedException {
+        // Some platforms (like OS X) only emulate watching by polling, so this can take a while
+        long deadline = System.currentTimeMillis() + 30000;
+        while (true) {
+            synchronized (changes) {
+                if (changes.contains(sourceName)) {
+                    return;
+                }
+            }
+            if (System.currentTimeMillis() > deadline) {
+                fail("Change wasn't reported for " + sourceName + "; reported changes: " + changes);
+            }
+            Thread.sleep(50);
+        }
+    }
+    
     @After
     public void tearDown() throws IOException {
         FileUtils.deleteDirectory(templateRootDir);
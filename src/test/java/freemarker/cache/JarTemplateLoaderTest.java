@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateNotFoundException;
+
+public class JarTemplateLoaderTest {
+    
+    private File tempDir;
+    private File jarFile;
+    
+    @Before
+    public void setup() throws IOException {
+        tempDir = Files.createTempDir();
+        jarFile = new File(tempDir, "templates.jar");
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jarFile));
+        try {
+            addJarEntry(out, "com/example/templates/t1.ftl", "<#include 'sub/t2.ftl'>");
+            addJarEntry(out, "com/example/templates/t1_de.ftl", "de");
+            addJarEntry(out, "com/example/templates/sub/t2.ftl", "t2");
+            addJarEntry(out, "com/example/other.ftl", "other");
+        } finally {
+            out.close();
+        }
+        
+        File dir = new File(tempDir, "dir/com/example/templates");
+        dir.mkdirs();
+        FileUtils.write(new File(dir, "t1.ftl"), "shadowed");
+        FileUtils.write(new File(dir, "t3.ftl"), "t3");
+    }
+
+    private void addJarEntry(JarOutputStream out, String name, String content) throws IOException {
+        JarEntry entry = new JarEntry(name);
+        entry.setTime(1000000000000L);
+        out.putNextEntry(entry);
+        out.write(content.getBytes("UTF-8"));
+        out.closeEntry();
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    @Test
+    public void testJarFile() throws Exception {
+        JarTemplateLoader tl = new JarTemplateLoader(jarFile, "/com/example/templates");
+        try {
+            assertEquals(ImmutableSet.of("t1.ftl", "t1_de.ftl", "sub/t2.ftl"),
+                    new HashSet<String>(tl.listTemplateNames()));
+            assertNull(tl.findTemplateSource("other.ftl"));
+            assertNull(tl.findTemplateSource("t1_en.ftl"));
+            Object source = tl.findTemplateSource("sub/t2.ftl");
+            assertSame(source, tl.findTemplateSource("sub/t2.ftl"));
+            assertEquals(1000000000000L, tl.getLastModified(source));
+            
+            Configuration cfg = new Configuration(Configuration.VERSION_2_3_25);
+            cfg.setTemplateLoader(tl);
+            assertEquals("t2", process(cfg.getTemplate("t1.ftl", Locale.US)));
+            assertEquals("de", process(cfg.getTemplate("t1.ftl", Locale.GERMANY)));
+            try {
+                cfg.getTemplate("missing.ftl");
+                fail();
+            } catch (TemplateNotFoundException e) {
+                assertTrue(e.getMessage().contains("JarTemplateLoader"));
+            }
+        } finally {
+            tl.close();
+        }
+    }
+    
+    @Test
+    public void testClassLoader() throws Exception {
+        URLClassLoader classLoader = new URLClassLoader(
+                new URL[] { jarFile.toURI().toURL(), new File(tempDir, "dir").toURI().toURL() }, null);
+        JarTemplateLoader tl = new JarTemplateLoader(classLoader, "com/example/templates");
+        try {
+            assertEquals(ImmutableSet.of("t1.ftl", "t1_de.ftl", "sub/t2.ftl", "t3.ftl"),
+                    new HashSet<String>(tl.listTemplateNames()));
+            
+            Configuration cfg = new Configuration(Configuration.VERSION_2_3_25);
+            cfg.setTemplateLoader(tl);
+            // The JAR comes first in the class path:
+            assertEquals("t2", process(cfg.getTemplate("t1.ftl")));
+            assertEquals("t3", process(cfg.getTemplate("t3.ftl")));
+        } finally {
+            tl.close();
+        }
+    }
+    
+    private String process(Template t) throws Exception {
+        StringWriter out = new StringWriter();
+        t.process(null, out);
+        return out.toString();
+    }
+    
+}
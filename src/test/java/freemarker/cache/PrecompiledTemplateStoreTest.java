@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import freemarker.core.HTMLOutputFormat;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+
+public class PrecompiledTemplateStoreTest {
+    
+    private static final String T1_SOURCE = ""
+            + "<#ftl attributes={'a': 1} ns_prefixes={'x': 'http://example.com/x'}>"
+            + "<#macro m p>[${p}]</#macro>"
+            + "<@m p=1+2 /> ${'s${1}'} ${{'k': 'v'}.k} <#list [1, 2] as i>${i}<#sep>, </#list> ${.output_format}";
+    private static final String T1_OUTPUT = "[3] s1 v 1, 2 undefined";
+
+    private static final String T2_SOURCE = "${'<'} ${'<'?no_esc} ${.output_format}";
+    private static final String T2_OUTPUT = "&lt; < HTML";
+
+    private File templateDir;
+    private File storeDir;
+    
+    @Before
+    public void setup() throws IOException {
+        templateDir = Files.createTempDir();
+        storeDir = new File(Files.createTempDir(), "store");
+        FileUtils.write(new File(templateDir, "t1.ftl"), T1_SOURCE);
+        new File(templateDir, "sub").mkdir();
+        FileUtils.write(new File(templateDir, "sub/t2.ftlh"), T2_SOURCE);
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(templateDir);
+        FileUtils.deleteDirectory(storeDir.getParentFile());
+    }
+
+    @Test
+    public void testStoredParseResultIsUsed() throws Exception {
+        assertTemplatesWork(newConfiguration());
+        assertEquals(2, getStoredFiles().length);
+        
+        // Loaded from the store now:
+        Configuration cfg = newConfiguration();
+        assertTemplatesWork(cfg);
+        assertEquals(2, getStoredFiles().length);
+        
+        Template t1 = cfg.getTemplate("t1.ftl");
+        assertEquals(1, ((Number) t1.getCustomAttribute("a")).intValue());
+        assertEquals("http://example.com/x", t1.getNamespaceForPrefix("x"));
+        assertNotNull(t1.getMacros().get("m"));
+        
+        Template t2 = cfg.getTemplate("sub/t2.ftlh");
+        assertSame(HTMLOutputFormat.INSTANCE, t2.getOutputFormat());
+        assertTrue(t2.getAutoEscaping());
+    }
+
+    @Test
+    public void testIncludeAndImport() throws Exception {
+        FileUtils.write(new File(templateDir, "main.ftl"),
+                "<#import 'lib.ftl' as lib><#list 1..2 as i><#include 'inc.ftl'>${lib.x}</#list>");
+        FileUtils.write(new File(templateDir, "lib.ftl"), "<#assign x = 'L'>");
+        FileUtils.write(new File(templateDir, "inc.ftl"), "I");
+        
+        assertEquals("ILIL", process(newConfiguration().getTemplate("main.ftl")));
+        assertEquals(3, getStoredFiles().length);
+        
+        // Loaded from the store now:
+        assertEquals("ILIL", process(newConfiguration().getTemplate("main.ftl")));
+        assertEquals(3, getStoredFiles().length);
+    }
+
+    @Test
+    public void testChangedTemplateIsReparsed() throws Exception {
+        assertTemplatesWork(newConfiguration());
+        
+        File t1File = new File(templateDir, "t1.ftl");
+        long lastModified = t1File.lastModified();
+        FileUtils.write(t1File, "changed");
+        t1File.setLastModified(lastModified);
+        assertEquals("changed", process(newConfiguration().getTemplate("t1.ftl")));
+        
+        // The stored parse result was replaced:
+        assertEquals(2, getStoredFiles().length);
+        assertEquals("changed", process(newConfiguration().getTemplate("t1.ftl")));
+    }
+
+    @Test
+    public void testChangedTemplateWithUnknownLengthIsReparsed() throws Exception {
+        // The length of the sources of StringTemplateLoader is unknown, so the content hash has to be compared:
+        StringTemplateLoader loader = new StringTemplateLoader();
+        loader.putTemplate("t.ftl", "v1", 1);
+        Configuration cfg = newConfiguration();
+        cfg.setTemplateLoader(loader);
+        assertEquals("v1", process(cfg.getTemplate("t.ftl")));
+        assertEquals(1, getStoredFiles().length);
+        
+        loader.putTemplate("t.ftl", "v2", 1);
+        cfg = newConfiguration();
+        cfg.setTemplateLoader(loader);
+        assertEquals("v2", process(cfg.getTemplate("t.ftl")));
+        assertEquals(1, getStoredFiles().length);
+    }
+
+    @Test
+    public void testChangedParserSettings() throws Exception {
+        assertTemplatesWork(newConfiguration());
+        
+        Configuration cfg = newConfiguration();
+        cfg.setTagSyntax(Configuration.SQUARE_BRACKET_TAG_SYNTAX);
+        FileUtils.write(new File(templateDir, "t3.ftl"), "[#if true]y[/#if]");
+        assertEquals("y", process(cfg.getTemplate("t3.ftl")));
+        assertEquals(3, getStoredFiles().length);
+        
+        cfg = newConfiguration();
+        cfg.setTagSyntax(Configuration.ANGLE_BRACKET_TAG_SYNTAX);
+        assertEquals("[#if true]y[/#if]", process(cfg.getTemplate("t3.ftl")));
+        assertEquals(4, getStoredFiles().length);
+    }
+    
+    @Test
+    public void testCorruptStoreIsIgnored() throws Exception {
+        assertTemplatesWork(newConfiguration());
+        File[] storedFiles = getStoredFiles();
+        for (int i = 0; i < storedFiles.length; i++) {
+            FileUtils.write(storedFiles[i], "garbage");
+        }
+        assertTemplatesWork(newConfiguration());
+        assertTemplatesWork(newConfiguration());
+    }
+
+    @Test
+    public void testNotAllowedClassIsNotDeserialized() throws Exception {
+        assertTemplatesWork(newConfiguration());
+        File[] storedFiles = getStoredFiles();
+        for (int i = 0; i < storedFiles.length; i++) {
+            replaceParseResult(storedFiles[i], new Tripwire());
+        }
+        assertTemplatesWork(newConfiguration());
+        assertFalse(Tripwire.deserialized);
+    }
+
+    @Test
+    public void testSettingIsKeptWhenTemplateCacheIsRecreated() throws Exception {
+        Configuration cfg = newConfiguration();
+        PrecompiledTemplateStore store = cfg.getPrecompiledTemplateStore();
+        cfg.setTemplateLoader(new FileTemplateLoader(templateDir));
+        assertSame(store, cfg.getPrecompiledTemplateStore());
+        Configuration clone = (Configuration) cfg.clone();
+        assertSame(store, clone.getPrecompiledTemplateStore());
+    }
+    
+    private Configuration newConfiguration() throws IOException {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_25);
+        cfg.setDirectoryForTemplateLoading(templateDir);
+        cfg.setRecognizeStandardFileExtensions(true);
+        cfg.setPrecompiledTemplateStore(new PrecompiledTemplateStore(storeDir));
+        return cfg;
+    }
+    
+    private void assertTemplatesWork(Configuration cfg) throws IOException, TemplateException {
+        assertEquals(T1_OUTPUT, process(cfg.getTemplate("t1.ftl")));
+        assertEquals(T2_OUTPUT, process(cfg.getTemplate("sub/t2.ftlh")));
+    }
+
+    private String process(Template t) throws TemplateException, IOException {
+        StringWriter sw = new StringWriter();
+        t.process(Collections.emptyMap(), sw);
+        return sw.toString();
+    }
+    
+    /**
+     * Keeps the header of the stored file, so that it's still considered to be up-to-date, but replaces the
+     * serialized parse result after it.
+     */
+    private void replaceParseResult(File storedFile, Object parseResult) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(FileUtils.readFileToByteArray(storedFile)));
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeInt(in.readInt()); // magic
+        out.writeInt(in.readInt()); // format version
+        for (int i = 0; i < 4; i++) { // FreeMarker version, source name, encoding, parser settings
+            out.writeUTF(in.readUTF());
+        }
+        out.writeLong(in.readLong()); // last modified
+        out.writeLong(in.readLong()); // source length
+        out.writeUTF(in.readUTF()); // content hash
+        boolean hasEncoding = in.readBoolean();
+        out.writeBoolean(hasEncoding);
+        if (hasEncoding) {
+            out.writeUTF(in.readUTF());
+        }
+        ObjectOutputStream objOut = new ObjectOutputStream(out);
+        objOut.writeObject(parseResult);
+        objOut.close();
+        FileUtils.writeByteArrayToFile(storedFile, header.toByteArray());
+    }
+    
+    private File[] getStoredFiles() {
+        File[] files = storeDir.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".ftlc");
+            }
+        });
+        return files != null ? files : new File[0];
+    }
+
+    private static class Tripwire implements Serializable {
+        static boolean deserialized;
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            deserialized = true;
+        }
+    }
+
+}
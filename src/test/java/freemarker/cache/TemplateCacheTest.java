@@ -25,6 +25,8 @@ import java.io.IOException;
 import java.io.Reader;
 import java.net.URL;
 import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.hamcrest.Matchers;
 import org.junit.Test;
@@ -35,6 +37,7 @@ import freemarker.template.MalformedTemplateNameException;
 import freemarker.template.Template;
 import freemarker.template.TemplateNotFoundException;
 import freemarker.template.Version;
+import freemarker.template._TemplateAPI;
 
 public class TemplateCacheTest {
 
@@ -391,6 +394,177 @@ public class TemplateCacheTest {
         }
     }
     
+    @Test
+    public void testConcurrentLoadingIsCoalesced() throws Exception {
+        final Configuration cfg = new Configuration(Configuration.VERSION_2_3_25);
+        BlockingTemplateLoader loader = new BlockingTemplateLoader();
+        loader.putTemplate("t.ftl", "v1", 1);
+        cfg.setTemplateLoader(loader);
+        
+        final Template[] results = new Template[8];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int threadIdx = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        results[threadIdx] = cfg.getTemplate("t.ftl");
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        assertTrue(loader.readerRequested.await(10, TimeUnit.SECONDS));
+        Thread.sleep(100L);  // Give the other threads a chance to arrive
+        loader.release.countDown();
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+        
+        assertEquals(1, loader.getReaderCount());
+        for (int i = 0; i < results.length; i++) {
+            assertNotNull(results[i]);
+            assertSame(results[0], results[i]);
+        }
+    }
+    
+    @Test
+    public void testServeStaleWhileUpdating() throws Exception {
+        final Configuration cfg = new Configuration(Configuration.VERSION_2_3_25);
+        assertFalse(cfg.getTemplateUpdateServesStale());
+        cfg.setSetting(Configuration.TEMPLATE_UPDATE_SERVES_STALE_KEY, "true");
+        assertTrue(cfg.getTemplateUpdateServesStale());
+        cfg.setTemplateUpdateDelayMilliseconds(0);
+        BlockingTemplateLoader loader = new BlockingTemplateLoader();
+        loader.putTemplate("t.ftl", "v1", 1);
+        cfg.setTemplateLoader(loader);
+        
+        loader.release.countDown();
+        assertEquals("v1", cfg.getTemplate("t.ftl").toString());
+        
+        loader.reset();
+        loader.putTemplate("t.ftl", "v2", 2);
+        Thread updater = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    cfg.getTemplate("t.ftl");
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        updater.start();
+        assertTrue(loader.readerRequested.await(10, TimeUnit.SECONDS));
+        // The updater thread is blocked while reloading, so we get the stale template without waiting:
+        assertEquals("v1", cfg.getTemplate("t.ftl").toString());
+        loader.release.countDown();
+        updater.join();
+        assertEquals("v2", cfg.getTemplate("t.ftl").toString());
+        assertEquals(1, loader.getReaderCount());
+    }
+    
+    @Test
+    public void testGenerationOnNegativeLookups() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_25);
+        cfg.setTemplateUpdateDelayMilliseconds(0);
+        StringTemplateLoader loader = new StringTemplateLoader();
+        cfg.setTemplateLoader(loader);
+        TemplateCache cache = _TemplateAPI.getTemplateCache(cfg);
+        
+        long generation = cache.getGeneration();
+        for (int i = 0; i < 3; i++) {
+            assertNull(cfg.getTemplate("missing.ftl", null, null, true, true));
+        }
+        assertEquals(generation, cache.getGeneration());
+        
+        loader.putTemplate("t.ftl", "v1", 1);
+        assertEquals("v1", cfg.getTemplate("t.ftl").toString());
+        generation = cache.getGeneration();
+        
+        loader.removeTemplate("t.ftl");
+        assertNull(cfg.getTemplate("t.ftl", null, null, true, true));
+        assertTrue(cache.getGeneration() > generation);
+        
+        generation = cache.getGeneration();
+        assertNull(cfg.getTemplate("t.ftl", null, null, true, true));
+        assertEquals(generation, cache.getGeneration());
+    }
+    
+    @Test
+    public void testUpdateInBackground() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_25);
+        cfg.setTemplateUpdateDelayMilliseconds(100);
+        cfg.setTemplateUpdateInBackground(true);
+        assertTrue(cfg.getTemplateUpdateInBackground());
+        StringTemplateLoader loader = new StringTemplateLoader();
+        cfg.setTemplateLoader(loader);
+        assertTrue(cfg.getTemplateUpdateInBackground());
+        
+        loader.putTemplate("t.ftl", "v1", 1);
+        assertEquals("v1", cfg.getTemplate("t.ftl").toString());
+        
+        loader.putTemplate("t.ftl", "v2", 2);
+        Thread.sleep(10L);
+        // Can't be updated on the request thread:
+        assertEquals("v1", cfg.getTemplate("t.ftl").toString());
+        
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (!cfg.getTemplate("t.ftl").toString().equals("v2")) {
+            assertTrue("Template wasn't updated in the background", System.currentTimeMillis() < deadline);
+            Thread.sleep(20L);
+        }
+        
+        loader.removeTemplate("t.ftl");
+        deadline = System.currentTimeMillis() + 10000L;
+        while (cfg.getTemplate("t.ftl", null, null, true, true) != null) {
+            assertTrue("Template removal wasn't detected in the background", System.currentTimeMillis() < deadline);
+            Thread.sleep(20L);
+        }
+        
+        cfg.setSetting(Configuration.TEMPLATE_UPDATE_IN_BACKGROUND_KEY, "false");
+        assertFalse(cfg.getTemplateUpdateInBackground());
+    }
+    
+    private static class BlockingTemplateLoader extends StringTemplateLoader {
+        
+        private volatile CountDownLatch readerRequested;
+        private volatile CountDownLatch release;
+        private int readerCount;
+        
+        BlockingTemplateLoader() {
+            reset();
+        }
+        
+        synchronized void reset() {
+            readerRequested = new CountDownLatch(1);
+            release = new CountDownLatch(1);
+            readerCount = 0;
+        }
+        
+        synchronized int getReaderCount() {
+            return readerCount;
+        }
+
+        @Override
+        public Reader getReader(Object templateSource, String encoding) {
+            synchronized (this) {
+                readerCount++;
+            }
+            readerRequested.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return super.getReader(templateSource, encoding);
+        }
+        
+    }
+    
     private static class MonitoredClassTemplateLoader extends ClassTemplateLoader {
         
         private Boolean lastTemplateSourceModification;
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+
+public class TinyLfuCacheStorageTest {
+
+    @Test
+    public void testBasics() {
+        TinyLfuCacheStorage cache = new TinyLfuCacheStorage(10);
+        assertTrue(cache.isConcurrent());
+        assertNull(cache.get("a"));
+        cache.put("a", "1");
+        cache.put("b", "2");
+        assertEquals("1", cache.get("a"));
+        assertEquals("2", cache.get("b"));
+        assertEquals(2, cache.getSize());
+
+        cache.put("a", "11");
+        assertEquals("11", cache.get("a"));
+        assertEquals(2, cache.getSize());
+
+        cache.remove("a");
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getSize());
+
+        cache.clear();
+        assertNull(cache.get("b"));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getWeight());
+
+        assertEquals(3, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void testSizeLimit() {
+        TinyLfuCacheStorage cache = new TinyLfuCacheStorage(100);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(Integer.valueOf(i), "v");
+            assertTrue(cache.getSize() <= 100);
+        }
+        assertEquals(100, cache.getSize());
+        assertEquals(900, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testFrequentlyUsedEntriesSurviveScan() {
+        TinyLfuCacheStorage cache = new TinyLfuCacheStorage(100);
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 50; i++) {
+                getOrPut(cache, "hot" + i);
+            }
+        }
+        for (int i = 0; i < 10000; i++) {
+            getOrPut(cache, "scan" + i);
+        }
+
+        int hotKept = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get("hot" + i) != null) {
+                hotKept++;
+            }
+        }
+        assertTrue(hotKept >= 45);
+    }
+
+    @Test
+    public void testWeightLimit() {
+        TinyLfuCacheStorage cache = new TinyLfuCacheStorage(1000, 100) {
+            @Override
+            protected int weigh(Object key, Object value) {
+                return ((Integer) value).intValue();
+            }
+        };
+        for (int i = 0; i < 50; i++) {
+            cache.put("k" + i, Integer.valueOf(10));
+            assertTrue(cache.getWeight() <= 100);
+        }
+        assertEquals(10, cache.getSize());
+        assertEquals(100, cache.getWeight());
+
+        // Too heavy to be ever cached; mustn't flush out the other entries either:
+        cache.put("big", Integer.valueOf(101));
+        assertNull(cache.get("big"));
+        assertEquals(10, cache.getSize());
+    }
+
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        final TinyLfuCacheStorage cache = new TinyLfuCacheStorage(200);
+        Thread[] threads = new Thread[8];
+        final Throwable[] failure = new Throwable[1];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Random random = new Random();
+                        for (int i = 0; i < 50000; i++) {
+                            Integer key = Integer.valueOf(Math.abs((int) (random.nextGaussian() * 300)));
+                            Object value = cache.get(key);
+                            if (value == null) {
+                                cache.put(key, key);
+                            } else if (!value.equals(key)) {
+                                throw new AssertionError("Wrong value for " + key + ": " + value);
+                            }
+                            if (i % 1000 == 0) {
+                                cache.remove(key);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+        }
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw new AssertionError(failure[0]);
+            }
+        }
+        assertTrue(cache.getSize() <= 200);
+    }
+
+    @Test
+    public void testSetting() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_25);
+
+        cfg.setSetting(Configuration.CACHE_STORAGE_KEY, "concurrent:500");
+        TinyLfuCacheStorage cache = (TinyLfuCacheStorage) cfg.getCacheStorage();
+        assertEquals(500, cache.getMaxSize());
+        assertEquals(Long.MAX_VALUE, cache.getMaxWeight());
+
+        cfg.setSetting(Configuration.CACHE_STORAGE_KEY, "concurrent: 200, weight: 1000000");
+        cache = (TinyLfuCacheStorage) cfg.getCacheStorage();
+        assertEquals(200, cache.getMaxSize());
+        assertEquals(1000000, cache.getMaxWeight());
+
+        try {
+            cfg.setSetting(Configuration.CACHE_STORAGE_KEY, "concurrent: 200, soft: 100");
+            fail();
+        } catch (Exception e) {
+            // Expected
+        }
+        try {
+            cfg.setSetting(Configuration.CACHE_STORAGE_KEY, "strong: 200, weight: 100");
+            fail();
+        } catch (Exception e) {
+            // Expected
+        }
+    }
+
+    private void getOrPut(TinyLfuCacheStorage cache, String key) {
+        if (cache.get(key) == null) {
+            cache.put(key, "v");
+        }
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import freemarker.cache.StringTemplateLoader;
+import freemarker.cache.StrongCacheStorage;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+public class CallSiteTemplateCacheTest {
+    
+    private Configuration cfg;
+    private StringTemplateLoader tl;
+    private CountingCacheStorage cacheStorage;
+    
+    @Before
+    public void setup() {
+        cfg = new Configuration(Configuration.VERSION_2_3_25);
+        cfg.setLocale(Locale.US);
+        tl = new StringTemplateLoader();
+        tl.putTemplate("inc.ftl", "[inc]", 1);
+        tl.putTemplate("inc_de.ftl", "[inc_de]", 1);
+        tl.putTemplate("lib.ftl", "<#assign x = 'X'>", 1);
+        cfg.setTemplateLoader(tl);
+        cacheStorage = new CountingCacheStorage();
+        cfg.setCacheStorage(cacheStorage);
+        cfg.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testIncludeInLoopLooksUpOnce() throws Exception {
+        Template t1 = new Template("t1.ftl", "<#list 1..1 as i><#include 'inc.ftl'></#list>", cfg);
+        assertEquals("[inc]", process(t1));
+        int lookupsForOne = cacheStorage.getCount.getAndSet(0);
+        assertTrue(lookupsForOne > 0);
+        
+        Template t2 = new Template("t2.ftl", "<#list 1..50 as i><#include 'inc.ftl'></#list>", cfg);
+        assertTrue(process(t2).startsWith("[inc][inc]"));
+        assertTrue(cacheStorage.getCount.get() <= lookupsForOne);
+        
+        cacheStorage.getCount.set(0);
+        assertTrue(process(t2).startsWith("[inc][inc]"));
+        assertEquals(0, cacheStorage.getCount.get());
+    }
+
+    @Test
+    public void testNonLiteralNameIsNotCached() throws Exception {
+        Template t = new Template("t.ftl",
+                "<#assign name = 'inc.ftl'><#list 1..3 as i><#include name></#list>", cfg);
+        assertEquals("[inc][inc][inc]", process(t));
+        cacheStorage.getCount.set(0);
+        assertEquals("[inc][inc][inc]", process(t));
+        assertEquals(3, cacheStorage.getCount.get());
+    }
+    
+    @Test
+    public void testLocales() throws Exception {
+        Template t = new Template("t.ftl",
+                "<#list 1..2 as i><#include 'inc.ftl'><#setting locale='de_DE'><#include 'inc.ftl'>"
+                + "<#setting locale='en_US'></#list>", cfg);
+        assertEquals("[inc][inc_de][inc][inc_de]", process(t));
+        cacheStorage.getCount.set(0);
+        assertEquals("[inc][inc_de][inc][inc_de]", process(t));
+        assertEquals(0, cacheStorage.getCount.get());
+    }
+
+    @Test
+    public void testCacheChangesAreSeen() throws Exception {
+        Template t = new Template("t.ftl", "<#include 'inc.ftl'>", cfg);
+        assertEquals("[inc]", process(t));
+        
+        tl.putTemplate("inc.ftl", "[inc2]", 2);
+        assertEquals("[inc]", process(t));
+        cfg.removeTemplateFromCache("inc.ftl");
+        assertEquals("[inc2]", process(t));
+        
+        tl.putTemplate("inc.ftl", "[inc3]", 3);
+        cfg.clearTemplateCache();
+        assertEquals("[inc3]", process(t));
+        
+        // Creates a new TemplateCache:
+        StringTemplateLoader tl2 = new StringTemplateLoader();
+        tl2.putTemplate("inc.ftl", "[other]");
+        cfg.setTemplateLoader(tl2);
+        assertEquals("[other]", process(t));
+    }
+
+    @Test
+    public void testUpdateDelayIsRespected() throws Exception {
+        cfg.setTemplateUpdateDelayMilliseconds(0);
+        Template t = new Template("t.ftl", "<#include 'inc.ftl'>", cfg);
+        assertEquals("[inc]", process(t));
+        tl.putTemplate("inc.ftl", "[inc2]", 2);
+        assertEquals("[inc2]", process(t));
+    }
+
+    @Test
+    public void testExpirationIsCountedFromLastCheck() throws Exception {
+        cfg.setTemplateUpdateDelayMilliseconds(500);
+        Template t = new Template("t.ftl", "<#include 'inc.ftl'>", cfg);
+        cfg.getTemplate("inc.ftl"); // The template cache checks the source now
+        Thread.sleep(300);
+        assertEquals("[inc]", process(t));
+        tl.putTemplate("inc.ftl", "[inc2]", 2);
+        // The template cache would re-check the source by now, so the call place mustn't use the old template, even
+        // though it has looked it up less than 500 ms ago:
+        Thread.sleep(300);
+        assertEquals("[inc2]", process(t));
+    }
+
+    @Test
+    public void testMissingTemplate() throws Exception {
+        Template t = new Template("t.ftl", "<#include 'missing.ftl' ignore_missing=true>", cfg);
+        assertEquals("", process(t));
+        tl.putTemplate("missing.ftl", "[found]", 1);
+        cfg.clearTemplateCache();
+        assertEquals("[found]", process(t));
+    }
+
+    @Test
+    public void testImport() throws Exception {
+        Template t = new Template("t.ftl", "<#list 1..3 as i><#import 'lib.ftl' as l>${l.x}</#list>", cfg);
+        assertEquals("XXX", process(t));
+        cacheStorage.getCount.set(0);
+        assertEquals("XXX", process(t));
+        assertEquals(0, cacheStorage.getCount.get());
+        
+        cfg.setLazyImports(true);
+        assertEquals("XXX", process(t));
+    }
+    
+    private String process(Template t) throws Exception {
+        StringWriter out = new StringWriter();
+        t.process(null, out);
+        return out.toString();
+    }
+
+    private static class CountingCacheStorage extends StrongCacheStorage {
+        private final AtomicInteger getCount = new AtomicInteger();
+        
+        @Override
+        public Object get(Object key) {
+            getCount.incrementAndGet();
+            return super.get(key);
+        }
+    }
+    
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+
+public class EncodingWriterTest {
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final Charset UTF_16 = Charset.forName("UTF-16");
+
+    @Test
+    public void testWriteMixed() throws IOException {
+        for (int bufferSize : new int[] { 16, 17, 100 }) {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            EncodingWriter w = new EncodingWriter(bout, UTF_8, bufferSize);
+            assertTrue(w.isPreEncodingAllowed());
+            
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < 20; i++) {
+                String s = "árvíztűrő 😀 " + i;
+                w.write(s);
+                expected.append(s);
+                
+                w.writeEncoded(("[" + i + "é]").getBytes("UTF-8"));
+                expected.append("[" + i + "é]");
+                
+                char[] chars = s.toCharArray();
+                for (char c : chars) {
+                    w.write(c);
+                }
+                expected.append(s);
+            }
+            w.flushBuffer();
+            
+            assertEquals(expected.toString(), new String(bout.toByteArray(), "UTF-8"));
+        }
+    }
+
+    @Test
+    public void testSurrogatePairSplitByFlush() throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        EncodingWriter w = new EncodingWriter(bout, UTF_8);
+        w.write('\uD83D');
+        w.flush();
+        w.write('\uDE00');
+        w.flush();
+        assertEquals("😀", new String(bout.toByteArray(), "UTF-8"));
+    }
+    
+    @Test
+    public void testUnmappable() throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        EncodingWriter w = new EncodingWriter(bout, ISO_8859_1);
+        w.write("aőb");
+        w.flush();
+        assertEquals("a?b", new String(bout.toByteArray(), "ISO-8859-1"));
+    }
+    
+    @Test
+    public void testStatefulCharsetIsNotPreEncoded() {
+        assertFalse(new EncodingWriter(new ByteArrayOutputStream(), UTF_16).isPreEncodingAllowed());
+    }
+    
+    @Test
+    public void testTemplateProcess() throws IOException, TemplateException {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_25);
+        Template t = new Template(null, "Árvíz ${x}<#list 1..3 as i> tűrő ${i}</#list>!", cfg);
+        String expected = "Árvíz ő<> tűrő 1 tűrő 2 tűrő 3!";
+        
+        for (Charset charset : new Charset[] { UTF_8, UTF_16, UTF_8 }) {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            t.process(Collections.singletonMap("x", "ő<>"), bout, charset);
+            assertEquals(expected, new String(bout.toByteArray(), charset.name()));
+        }
+        
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        t.process(Collections.singletonMap("x", "ő<>"), bout, ISO_8859_1);
+        assertEquals(expected.replace('ő', '?').replace('ű', '?'), new String(bout.toByteArray(), "ISO-8859-1"));
+    }
+    
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+
+import freemarker.template.Configuration;
+import freemarker.template.DefaultObjectWrapperBuilder;
+import freemarker.template.Template;
+import freemarker.template.utility.NullWriter;
+
+/**
+ * Compares the throughput of the default ({@link java.text.SimpleDateFormat}-based) date format with
+ * {@link JavaTimeTemplateDateFormatFactory}, on multiple threads. Not a JUnit test; run it with its {@code main}
+ * method (the first, optional argument is the number of threads).
+ */
+public class JavaTimeTemplateDateFormatBenchmark {
+
+    private static final int DATES_PER_TEMPLATE_CALL = 1000;
+    private static final int WARMUP_MILLIS = 3000;
+    private static final int MEASUREMENT_MILLIS = 5000;
+    
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_25);
+        cfg.setLocale(Locale.US);
+        cfg.setTimeZone(TimeZone.getTimeZone("Europe/Berlin"));
+        cfg.setCustomDateFormats(Collections.singletonMap("jt", JavaTimeTemplateDateFormatFactory.INSTANCE));
+        DefaultObjectWrapperBuilder owb = new DefaultObjectWrapperBuilder(Configuration.VERSION_2_3_25);
+        owb.setJavaTimeSupport(true);
+        cfg.setObjectWrapper(owb.build());
+        
+        List<Date> dates = new ArrayList<Date>();
+        List<Instant> instants = new ArrayList<Instant>();
+        long t = System.currentTimeMillis();
+        for (int i = 0; i < DATES_PER_TEMPLATE_CALL; i++) {
+            t += 3600000L + i;
+            dates.add(new Date(t));
+            instants.add(Instant.ofEpochMilli(t));
+        }
+        
+        String pattern = "yyyy-MM-dd HH:mm:ss";
+        run("SimpleDateFormat, Date", threads, new Template(null,
+                "<#list values as v>${v?string['" + pattern + "']}</#list>", cfg),
+                Collections.singletonMap("values", dates));
+        run("DateTimeFormatter, Date", threads, new Template(null,
+                "<#list values as v>${v?string['@jt " + pattern + "']}</#list>", cfg),
+                Collections.singletonMap("values", dates));
+        run("DateTimeFormatter, Instant", threads, new Template(null,
+                "<#list values as v>${v?string['@jt " + pattern + "']}</#list>", cfg),
+                Collections.singletonMap("values", instants));
+    }
+
+    private static void run(String name, int threadCount, final Template template, final Map<String, ?> dataModel)
+            throws InterruptedException {
+        final AtomicLong formattedCount = new AtomicLong();
+        final long warmupEnd = System.currentTimeMillis() + WARMUP_MILLIS;
+        final long end = warmupEnd + MEASUREMENT_MILLIS;
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        long now;
+                        while ((now = System.currentTimeMillis()) < end) {
+                            template.process(dataModel, NullWriter.INSTANCE);
+                            if (now >= warmupEnd) {
+                                formattedCount.addAndGet(DATES_PER_TEMPLATE_CALL);
+                            }
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.out.println(name + " (" + threadCount + " threads): "
+                + formattedCount.get() * 1000 / MEASUREMENT_MILLIS + " formattings/s");
+    }
+    
+}
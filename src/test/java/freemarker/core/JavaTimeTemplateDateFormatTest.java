@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.DefaultObjectWrapper;
+import freemarker.template.DefaultObjectWrapperBuilder;
+import freemarker.template.SimpleTemporal;
+import freemarker.test.TemplateTest;
+
+public class JavaTimeTemplateDateFormatTest extends TemplateTest {
+
+    /** 2015-09-06T12:00:00Z */
+    private static final Instant I = Instant.ofEpochMilli(1441540800000L);
+    
+    @Before
+    public void setup() {
+        Configuration cfg = getConfiguration();
+        cfg.setIncompatibleImprovements(Configuration.VERSION_2_3_25);
+        cfg.setLocale(Locale.US);
+        cfg.setTimeZone(TimeZone.getTimeZone("GMT+01:00"));
+        cfg.setCustomDateFormats(Collections.singletonMap("jt", JavaTimeTemplateDateFormatFactory.INSTANCE));
+        
+        DefaultObjectWrapperBuilder owb = new DefaultObjectWrapperBuilder(Configuration.VERSION_2_3_25);
+        owb.setJavaTimeSupport(true);
+        cfg.setObjectWrapper(owb.build());
+    }
+
+    @Test
+    public void testFormatDate() throws Exception {
+        addToDataModel("d", new Date(I.toEpochMilli()));
+        assertOutput("${d?string['@jt yyyy-MM-dd HH:mm']}", "2015-09-06 13:00");
+        assertOutput("<#setting time_zone='UTC'>${d?string['@jt yyyy-MM-dd HH:mm']}", "2015-09-06 12:00");
+        assertOutput("<#setting datetime_format='@jt yyyy-MM-dd HH:mm z'>${d?datetime}", "2015-09-06 13:00 GMT+01:00");
+        assertOutput("${d?datetime?string.@jt_medium_short}",
+                DateTimeFormatter.ofLocalizedDateTime(FormatStyle.MEDIUM, FormatStyle.SHORT)
+                        .withLocale(Locale.US).withZone(ZoneId.of("GMT+01:00")).format(I));
+    }
+
+    @Test
+    public void testFormatTemporals() throws Exception {
+        addToDataModel("i", I);
+        addToDataModel("zdt", I.atZone(ZoneId.of("UTC")));
+        addToDataModel("ldt", LocalDateTime.of(2015, 9, 6, 12, 30));
+        addToDataModel("ld", LocalDate.of(2015, 9, 6));
+        addToDataModel("lt", LocalTime.of(12, 30));
+        
+        assertOutput("${i?string['@jt yyyy-MM-dd HH:mm']}", "2015-09-06 13:00");
+        assertOutput("${zdt?string['@jt yyyy-MM-dd HH:mm']}", "2015-09-06 13:00");
+        assertOutput("${ldt?string['@jt yyyy-MM-dd HH:mm']}", "2015-09-06 12:30");
+        assertOutput("<#setting date_format='@jt yyyy-MM-dd'>${ld}", "2015-09-06");
+        assertOutput("<#setting time_format='@jt HH:mm'>${lt}", "12:30");
+        // The LocalDate has no hours and minutes:
+        assertOutput("${ld?string['@jt yyyy-MM-dd HH:mm']}", "2015-09-06 00:00");
+        
+        // Non-java.time formats see the values as java.util.Date-s:
+        assertOutput("${i?string('yyyy-MM-dd HH:mm')}", "2015-09-06 13:00");
+        assertOutput("${ldt?string('yyyy-MM-dd HH:mm')}", "2015-09-06 12:30");
+        assertOutput("${ld?string('yyyy-MM-dd HH:mm')}", "2015-09-06 00:00");
+        assertOutput("${lt?string('HH:mm')}", "12:30");
+        assertOutput("${ld?is_date_only?c} ${lt?is_time?c} ${ldt?is_datetime?c}", "true true true");
+    }
+    
+    @Test
+    public void testParse() throws Exception {
+        assertOutput("${'2015-09-06 13:00'?datetime('@jt yyyy-MM-dd HH:mm')?long?c}", "1441540800000");
+        assertOutput("${'2015-09-06 12:00 UTC'?datetime('@jt yyyy-MM-dd HH:mm z')?long?c}", "1441540800000");
+        assertOutput("${'2015-09-06'?date('@jt yyyy-MM-dd')?string('yyyy-MM-dd HH:mm')}", "2015-09-06 00:00");
+        assertOutput("${'12:30'?time('@jt HH:mm')?string('yyyy-MM-dd HH:mm')}", "1970-01-01 12:30");
+        assertErrorContains("${'2015/09/06'?date('@jt yyyy-MM-dd')}", "2015/09/06");
+    }
+    
+    @Test
+    public void testInvalidPattern() throws Exception {
+        assertErrorContains("${.now?string['@jt yyyy-MM-dd {']}", "@jt", "yyyy-MM-dd {");
+    }
+    
+    @Test
+    public void testJavaTimeSupportDisabled() throws Exception {
+        getConfiguration().setObjectWrapper(new DefaultObjectWrapper(Configuration.VERSION_2_3_25));
+        addToDataModel("i", I);
+        assertOutput("${i}", "2015-09-06T12:00:00Z");
+        assertOutput("${i?is_date?c}", "false");
+    }
+    
+    @Test
+    public void testUnwrapping() throws Exception {
+        DefaultObjectWrapper ow = (DefaultObjectWrapper) getConfiguration().getObjectWrapper();
+        ZonedDateTime zdt = I.atZone(ZoneId.of("UTC"));
+        SimpleTemporal wrapped = (SimpleTemporal) ow.wrap(zdt);
+        assertSame(zdt, ow.unwrap(wrapped));
+        assertSame(zdt, ow.unwrap(wrapped, ZonedDateTime.class));
+        assertEquals(new Date(I.toEpochMilli()), ow.unwrap(wrapped, Date.class));
+    }
+
+}
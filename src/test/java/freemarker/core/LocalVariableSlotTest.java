@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.test.TemplateTest;
+
+public class LocalVariableSlotTest extends TemplateTest {
+
+    @Test
+    public void testParametersAndLocals() throws Exception {
+        assertOutput("<#macro m a b=a + 1><#local c = a + b>${a} ${b} ${c}<#local c = c * 2> ${c}</#macro>"
+                + "<@m a=1 /> <@m a=2 b=3 />",
+                "1 2 3 6 2 3 5 10");
+        assertOutput("<#function f x><#local x = x * 2><#return x></#function>${f(3)}", "6");
+        assertOutput("<#macro m a b...><#list b?keys as k>${k}=${b[k]};</#list>${a}</#macro><@m a=1 x=2 />",
+                "x=2;1");
+    }
+    
+    @Test
+    public void testLoopVariablesShadowLocals() throws Exception {
+        assertOutput("<#macro m x x_index=''>${x}<#list ['a', 'b'] as x>${x}${x_index}</#list>${x}${x_index}</#macro>"
+                + "<@m x='p' x_index='q' />",
+                "pa0b1pq");
+        assertOutput("<#macro m x>${x}<#list ['a', 'b']><#items as x>${x}</#items></#list>${x}</#macro><@m x='p' />",
+                "pabp");
+        assertOutput("<#macro m x>${x}<@n ; x>${x}</@n>${x}</#macro><#macro n><#nested 'n'></#macro><@m x='p' />",
+                "pnp");
+    }
+    
+    @Test
+    public void testNestedContentAndRecursion() throws Exception {
+        assertOutput("<#macro m n><#if n != 0><@m n=n - 1>${n}</@m></#if><#nested></#macro><@m n=3 />", "123");
+        assertOutput("<#macro m x><#nested x * 10></#macro>"
+                + "<#macro o x><@m x=x + 1 ; y>${x} ${y}</@m></#macro><@o x=1 />",
+                "1 20");
+    }
+    
+    @Test
+    public void testInterpretedTemplatesAccessLocalsByName() throws Exception {
+        assertOutput("<#macro m a><#local b = 2>"
+                + "<@r'${a}${b}<#local b = 5><#local c = 3>'?interpret />${b}${c}</#macro><@m a=1 />",
+                "1253");
+    }
+    
+    @Test
+    public void testLocalsSpecialVariable() throws Exception {
+        assertOutput("<#macro m a><#local b = 2>"
+                + "<#list .locals?keys?sort as k>${k}=${.locals[k]};</#list>"
+                + "<#local b = 3><#local c = 4>${a}${b}${c}</#macro><@m a=1 />",
+                "a=1;b=2;123");
+    }
+    
+    @Test
+    public void testMissingLocalFallsBackToGlobal() throws Exception {
+        addToDataModel("b", "global");
+        assertOutput("<#macro m a><#if false><#local b = 1></#if>${b}</#macro><@m a=1 />", "global");
+        getConfiguration().setClassicCompatible(true);
+        addToDataModel("a", "global");
+        assertOutput("<#macro m a>${a}</#macro><@m />", "global");
+    }
+    
+    @Test
+    public void testRequiredParameterErrorMessages() throws Exception {
+        assertErrorContains("<#macro m a>${a}</#macro><@m />", "\"a\"", "not specified");
+        assertErrorContains("<#macro m a>${a}</#macro><@m a=noSuchVar />", "\"a\"", "specified, but had null");
+    }
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        return new Configuration(Configuration.VERSION_2_3_25);
+    }
+    
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.text.NumberFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import freemarker.template.SimpleDate;
+import freemarker.template.TemplateDateModel;
+import freemarker.test.TemplateTest;
+
+public class PerThreadFormatPoolTest extends TemplateTest {
+
+    @Test
+    public void testCopyIsReusedOnTheSameThread() throws Exception {
+        JavaTemplateNumberFormat f1 = getNumberFormat("0.0#");
+        long hitCount = PerThreadFormatPool.getHitCount();
+        JavaTemplateNumberFormat f2 = getNumberFormat("0.0#");
+        assertSame(f1.getJavaNumberFormat(), f2.getJavaNumberFormat());
+        assertTrue(PerThreadFormatPool.getHitCount() > hitCount);
+        assertEquals("1.25", f2.format(1.25));
+        
+        assertOutput("<#setting number_format='0.0#'>${1.255}", "1.26");
+    }
+
+    @Test
+    public void testOtherThreadUsesItsOwnCopy() throws Exception {
+        final JavaTemplateNumberFormat f = getNumberFormat("0.000");
+        final NumberFormat[] otherThreadJavaFormat = new NumberFormat[1];
+        final String[] otherThreadOutput = new String[1];
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                otherThreadJavaFormat[0] = f.getJavaNumberFormat();
+                try {
+                    otherThreadOutput[0] = f.format(0.5);
+                } catch (TemplateValueFormatException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        t.start();
+        t.join();
+        
+        assertNotNull(otherThreadJavaFormat[0]);
+        assertNotSame(f.getJavaNumberFormat(), otherThreadJavaFormat[0]);
+        assertEquals("0.500", otherThreadOutput[0]);
+        assertEquals("0.500", f.format(0.5));
+    }
+
+    @Test
+    public void testCopiesPerThreadAreLimited() throws Exception {
+        NumberFormat javaFormat = getNumberFormat("0.0").getJavaNumberFormat();
+        for (int i = 0; i < PerThreadFormatPool.MAX_COPIES_PER_THREAD; i++) {
+            getNumberFormat("0." + i);
+        }
+        assertNotSame(javaFormat, getNumberFormat("0.0").getJavaNumberFormat());
+    }
+
+    @Test
+    public void testDateFormat() throws Exception {
+        TemplateDateFormat f = JavaTemplateDateFormatFactory.INSTANCE.get(
+                "yyyy-MM-dd", TemplateDateModel.DATE, Locale.US, TimeZone.getTimeZone("GMT"), false, null);
+        TemplateDateModel date = new SimpleDate(new Date(0), TemplateDateModel.DATE);
+        assertEquals("1970-01-01", f.formatToPlainText(date));
+        assertEquals(new Date(0), f.parse("1970-01-01", TemplateDateModel.DATE));
+        
+        assertOutput("<#setting date_format='yyyy/MM/dd'>${'2016/02/03'?date?string('dd.MM.yyyy')}", "03.02.2016");
+    }
+
+    private static JavaTemplateNumberFormat getNumberFormat(String pattern)
+            throws InvalidFormatParametersException {
+        return (JavaTemplateNumberFormat) JavaTemplateNumberFormatFactory.INSTANCE.get(pattern, Locale.US, null);
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.test.TemplateTest;
+
+public class PrimitiveFastPathEngineTest extends TemplateTest {
+    
+    private static final ArithmeticEngine FAST = ArithmeticEngine.PRIMITIVE_FAST_PATH_ENGINE;
+    private static final ArithmeticEngine BIGDECIMAL = ArithmeticEngine.BIGDECIMAL_ENGINE;
+    
+    private static final Number[] NUMBERS = new Number[] {
+            Integer.valueOf(0), Integer.valueOf(1), Integer.valueOf(-1), Integer.valueOf(7), Integer.valueOf(3),
+            Integer.valueOf(Integer.MAX_VALUE), Integer.valueOf(Integer.MIN_VALUE),
+            Long.valueOf(Long.MAX_VALUE), Long.valueOf(Long.MIN_VALUE), Long.valueOf(5), Long.valueOf(-3),
+            Short.valueOf((short) 4), Byte.valueOf((byte) -2),
+            new BigInteger("123"), new BigDecimal("2.5") };
+
+    @Test
+    public void testIntegerResultsSameAsWithBigDecimalEngine() throws Exception {
+        for (Number n1 : NUMBERS) {
+            for (Number n2 : NUMBERS) {
+                assertNumericallyEquals(BIGDECIMAL.add(n1, n2), FAST.add(n1, n2));
+                assertNumericallyEquals(BIGDECIMAL.subtract(n1, n2), FAST.subtract(n1, n2));
+                assertNumericallyEquals(BIGDECIMAL.multiply(n1, n2), FAST.multiply(n1, n2));
+                if (n2.doubleValue() != 0) {
+                    assertNumericallyEquals(BIGDECIMAL.divide(n1, n2), FAST.divide(n1, n2));
+                    assertNumericallyEquals(BIGDECIMAL.modulus(n1, n2), FAST.modulus(n1, n2));
+                }
+                assertEquals(
+                        Integer.signum(BIGDECIMAL.compareNumbers(n1, n2)),
+                        Integer.signum(FAST.compareNumbers(n1, n2)));
+            }
+        }
+    }
+    
+    @Test
+    public void testResultTypes() throws Exception {
+        assertEquals(Integer.valueOf(5), FAST.add(Integer.valueOf(2), Integer.valueOf(3)));
+        assertEquals(
+                Long.valueOf(Integer.MAX_VALUE + 1L),
+                FAST.add(Integer.valueOf(Integer.MAX_VALUE), Integer.valueOf(1)));
+        assertEquals(
+                BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE),
+                FAST.add(Long.valueOf(Long.MAX_VALUE), Integer.valueOf(1)));
+        assertEquals(
+                Long.valueOf(Integer.MAX_VALUE * 2L),
+                FAST.multiply(Integer.valueOf(Integer.MAX_VALUE), Integer.valueOf(2)));
+        assertEquals(
+                BigInteger.valueOf(Long.MIN_VALUE).negate(),
+                FAST.multiply(Long.valueOf(Long.MIN_VALUE), Long.valueOf(-1)));
+        assertEquals(Integer.valueOf(4), FAST.divide(Integer.valueOf(8), Integer.valueOf(2)));
+        assertEquals(new BigDecimal("3.500000000000"), FAST.divide(Integer.valueOf(7), Integer.valueOf(2)));
+        assertEquals(Integer.valueOf(1), FAST.modulus(Integer.valueOf(7), Integer.valueOf(2)));
+        assertEquals(Double.valueOf(3.5), FAST.add(Double.valueOf(1.5), Integer.valueOf(2)));
+        // Overflows to infinity, so it's left to BigDecimalEngine:
+        assertTrue(FAST.multiply(Double.valueOf(1e308), Double.valueOf(10)) instanceof BigDecimal);
+    }
+    
+    @Test
+    public void testDivisionByZero() throws Exception {
+        try {
+            FAST.divide(Integer.valueOf(1), Integer.valueOf(0));
+            fail();
+        } catch (ArithmeticException e) {
+            // Expected
+        }
+        try {
+            FAST.modulus(Integer.valueOf(1), Integer.valueOf(0));
+            fail();
+        } catch (ArithmeticException e) {
+            // Expected
+        }
+    }
+    
+    @Test
+    public void testToNumber() throws Exception {
+        assertEquals(Integer.valueOf(12), FAST.toNumber("12"));
+        assertEquals(Long.valueOf(12345678901L), FAST.toNumber("12345678901"));
+        assertEquals(Integer.valueOf(1000), FAST.toNumber("1e3"));
+        assertEquals(new BigDecimal("0.1"), FAST.toNumber("0.1"));
+        assertEquals(new BigInteger("123456789012345678901"), FAST.toNumber("123456789012345678901"));
+        assertEquals(Double.valueOf(Double.POSITIVE_INFINITY), FAST.toNumber("INF"));
+    }
+    
+    @Test
+    public void testInTemplates() throws Exception {
+        getConfiguration().setSetting(Configurable.ARITHMETIC_ENGINE_KEY, "primitive_fast_path");
+        assertSame(FAST, getConfiguration().getArithmeticEngine());
+        assertOutput("<#assign s = 0><#list 1..100 as i><#assign s = s + i * 2></#list>${s?c}", "10100");
+        assertOutput("${(0.1 + 0.2 == 0.3)?c}", "true");
+        assertOutput("${(2147483647 + 1)?c}", "2147483648");
+        assertOutput("${7 / 2}", "3.5");
+        assertOutput("${(3 > 2)?c} ${(2.5 < 2)?c}", "true false");
+    }
+    
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        return new Configuration(Configuration.VERSION_2_3_25);
+    }
+
+    private static void assertNumericallyEquals(Number expected, Number actual) {
+        assertEquals(
+                expected + " vs " + actual,
+                0, new BigDecimal(expected.toString()).compareTo(new BigDecimal(actual.toString())));
+    }
+    
+}
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.junit.Test;
+
+import freemarker.core.ProcessingStatistics.Timing;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.test.TemplateTest;
+
+public class ProcessingStatisticsTest extends TemplateTest {
+
+    @Test
+    public void testStatistics() throws Exception {
+        ProcessingStatistics stats = new ProcessingStatistics();
+        getConfiguration().setProcessingInstrumentation(stats);
+        addTemplate("lib.ftl", "<#macro m>[<#nested>]</#macro>");
+        addTemplate("inc.ftl", "i");
+        addTemplate("main.ftl",
+                "<#import 'lib.ftl' as l><#list 1..3 as i><@l.m>${i}</@l.m></#list><#include 'inc.ftl'>");
+        assertOutputForNamed("main.ftl", "[1][2][3]i");
+
+        SortedMap<String, Timing> templateTimings = stats.getTemplateTimings();
+        assertEquals(3, templateTimings.size());
+        assertEquals(1, templateTimings.get("main.ftl").getCount());
+        assertEquals(1, templateTimings.get("lib.ftl").getCount());
+        assertEquals(1, templateTimings.get("inc.ftl").getCount());
+
+        SortedMap<String, Timing> macroTimings = stats.getMacroTimings();
+        assertEquals(1, macroTimings.size());
+        assertEquals(3, macroTimings.get("lib.ftl:m").getCount());
+
+        SortedMap<String, Timing> directiveTimings = stats.getDirectiveTimings();
+        assertEquals(1, getTimingWithPrefix(directiveTimings, "main.ftl:1:1 #import").getCount());
+        assertEquals(1, getTimingWithPrefix(directiveTimings, "main.ftl:1:25 #list").getCount());
+        assertEquals(3, getTimingWithPrefix(directiveTimings, "main.ftl:1:42 @l.m").getCount());
+        assertEquals(1, getTimingWithPrefix(directiveTimings, "main.ftl:1:67 #include").getCount());
+        assertEquals(3, getTimingWithPrefix(directiveTimings, "lib.ftl:1:12 #nested").getCount());
+        for (String name : directiveTimings.keySet()) {
+            char c = name.charAt(name.indexOf(' ') + 1);
+            assertTrue(name, c == '#' || c == '@');
+        }
+
+        SortedMap<String, Timing> loadingTimings = stats.getTemplateLoadingTimings();
+        assertEquals(3, loadingTimings.size());
+        assertEquals(1, loadingTimings.get("main.ftl").getCount());
+
+        assertEquals(3, stats.getTemplates().size());
+        assertEquals(1, stats.getMacros().size());
+
+        assertOutputForNamed("main.ftl", "[1][2][3]i");
+        assertEquals(2, stats.getTemplateTimings().get("main.ftl").getCount());
+        assertEquals(6, stats.getMacroTimings().get("lib.ftl:m").getCount());
+        assertEquals(1, stats.getTemplateLoadingTimings().get("main.ftl").getCount());
+
+        stats.reset();
+        assertTrue(stats.getTemplateTimings().isEmpty());
+        assertTrue(stats.getMacroTimings().isEmpty());
+        assertTrue(stats.getDirectiveTimings().isEmpty());
+        assertTrue(stats.getTemplateLoadingTimings().isEmpty());
+    }
+
+    @Test
+    public void testCallbackOrder() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        getConfiguration().setProcessingInstrumentation(new ProcessingInstrumentation() {
+
+            @Override
+            public void processingStarted(Environment env) {
+                sb.append("ps;");
+            }
+
+            @Override
+            public void processingEnded(Environment env, long durationNanos) {
+                sb.append("pe;");
+            }
+
+            @Override
+            public void macroStarted(Environment env, Macro macro) {
+                sb.append("ms:" + macro.getName() + ";");
+            }
+
+            @Override
+            public void macroEnded(Environment env, Macro macro, long durationNanos) {
+                sb.append("me:" + macro.getName() + ";");
+            }
+
+            @Override
+            public void includeStarted(Environment env, Template includedTemplate) {
+                sb.append("is:" + includedTemplate.getName() + ";");
+            }
+
+            @Override
+            public void includeEnded(Environment env, Template includedTemplate, long durationNanos) {
+                sb.append("ie:" + includedTemplate.getName() + ";");
+            }
+
+            @Override
+            public void templateLoaded(String templateName, Locale locale, long durationNanos) {
+                sb.append("l:" + templateName + ";");
+            }
+
+        });
+        addTemplate("inc.ftl", "<@m />");
+        assertOutput("<#macro m>m</#macro><@m /><#include 'inc.ftl'>", "mm");
+        assertEquals("ps;ms:m;me:m;l:inc.ftl;is:inc.ftl;ms:m;me:m;ie:inc.ftl;pe;", sb.toString());
+
+        sb.setLength(0);
+        assertErrorContains("<#macro m>${noSuchVar}</#macro><@m />", "noSuchVar");
+        assertEquals("ps;ms:m;me:m;pe;", sb.toString());
+    }
+
+    @Test
+    public void testElementCallbacksAreBalanced() throws Exception {
+        final int[] depth = new int[1];
+        final int[] count = new int[1];
+        getConfiguration().setProcessingInstrumentation(new ProcessingInstrumentation() {
+
+            @Override
+            public void elementStarted(Environment env, TemplateElement element) {
+                depth[0]++;
+                count[0]++;
+            }
+
+            @Override
+            public void elementEnded(Environment env, TemplateElement element, long durationNanos) {
+                depth[0]--;
+                assertTrue(durationNanos >= 0);
+            }
+
+        });
+        assertOutput("<#list 1..3 as i>${i}<#if i == 2><#break></#if></#list>", "12");
+        assertEquals(0, depth[0]);
+        assertTrue(count[0] > 0);
+        assertErrorContains("<#list 1..3 as i>${noSuchVar}</#list>", "noSuchVar");
+        assertEquals(0, depth[0]);
+    }
+
+    @Test
+    public void testSetting() throws Exception {
+        Configuration cfg = getConfiguration();
+        assertNull(cfg.getProcessingInstrumentation());
+        cfg.setSetting(Configuration.PROCESSING_INSTRUMENTATION_KEY, "ProcessingStatistics()");
+        assertTrue(cfg.getProcessingInstrumentation() instanceof ProcessingStatistics);
+        cfg.setSetting(Configuration.PROCESSING_INSTRUMENTATION_KEY_CAMEL_CASE, "null");
+        assertNull(cfg.getProcessingInstrumentation());
+    }
+
+    @Test
+    public void testPercentiles() {
+        Timing timing = new Timing();
+        assertEquals(0, timing.getPercentileNanos(50));
+        for (int i = 1; i <= 1000; i++) {
+            timing.record(i * 1000L);
+        }
+        assertEquals(1000, timing.getCount());
+        assertEquals(500500, timing.getMeanNanos());
+        assertEquals(1000000, timing.getMaxNanos());
+        assertEquals(1000000, timing.getPercentileNanos(100));
+        long p50 = timing.getPercentileNanos(50);
+        assertTrue(p50 >= 500000 && p50 <= 500000 * 1.25);
+        long p90 = timing.getPercentileNanos(90);
+        assertTrue(p90 >= 900000 && p90 <= 1000000);
+    }
+
+    private Timing getTimingWithPrefix(Map<String, Timing> timings, String namePrefix) {
+        for (Map.Entry<String, Timing> ent : timings.entrySet()) {
+            if (ent.getKey().startsWith(namePrefix)) {
+                return ent.getValue();
+            }
+        }
+        fail("No timing whose name starts with " + namePrefix + " in " + timings.keySet());
+        return null;
+    }
+
+}
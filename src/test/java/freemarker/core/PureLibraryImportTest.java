@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import freemarker.template.SimpleNumber;
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModelException;
+import freemarker.test.TemplateTest;
+
+public class PureLibraryImportTest extends TemplateTest {
+
+    private static final String PURE_HEADER = "<#ftl attributes={'pure_library': true}>";
+
+    private final CounterMethod counter = new CounterMethod();
+
+    @Before
+    public void setup() {
+        addToDataModel("counter", counter);
+        addTemplate("lib.ftl", PURE_HEADER
+                + "<#assign x = counter()><#assign n = 0>"
+                + "<#macro m>m${x}</#macro>"
+                + "<#macro inc><#assign n = n + 1>${n}</#macro>");
+        addTemplate("impure.ftl", "<#assign x = counter()><#macro m>m${x}</#macro>");
+        addTemplate("lib2.ftl", PURE_HEADER
+                + "<#import 'lib.ftl' as inner>"
+                + "<#macro m2>[<@inner.m />]</#macro>");
+    }
+
+    @Test
+    public void testExecutedOnlyOnce() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertOutput("<#import 'lib.ftl' as l><@l.m /> ${l.x}", "m1 1");
+        }
+        assertEquals(1, counter.count);
+    }
+
+    @Test
+    public void testNotPure() throws Exception {
+        assertOutput("<#import 'impure.ftl' as l><@l.m />", "m1");
+        assertOutput("<#import 'impure.ftl' as l><@l.m />", "m2");
+        assertEquals(2, counter.count);
+    }
+
+    @Test
+    public void testCopyOnWrite() throws Exception {
+        assertOutput("<#import 'lib.ftl' as l><@l.inc /><@l.inc />", "12");
+        assertOutput("<#import 'lib.ftl' as l><@l.inc /><@l.inc /><@l.inc />", "123");
+        assertOutput("<#import 'lib.ftl' as l><#assign x = 9 in l><@l.m /> ${l.x}", "m9 9");
+        assertOutput("<#import 'lib.ftl' as l><@l.m /> ${l.x} ${l.n}", "m1 1 0");
+        assertEquals(1, counter.count);
+    }
+
+    @Test
+    public void testNestedImport() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertOutput("<#import 'lib2.ftl' as l2><@l2.m2 /><#import 'lib.ftl' as l><@l.m />", "[m1]m1");
+        }
+        for (int i = 0; i < 2; i++) {
+            assertOutput("<#import 'lib.ftl' as l><#assign x = 5 in l><#import 'lib2.ftl' as l2><@l2.m2 />", "[m5]");
+        }
+        assertEquals(1, counter.count);
+    }
+
+    @Test
+    public void testLazyImport() throws Exception {
+        getConfiguration().setLazyImports(true);
+        for (int i = 0; i < 3; i++) {
+            assertOutput("<#import 'lib2.ftl' as l2><@l2.m2 /><@l2.inner.inc />", "[m1]1");
+        }
+        assertEquals(1, counter.count);
+    }
+
+    @Test
+    public void testNewTemplateVersion() throws Exception {
+        assertOutput("<#import 'lib.ftl' as l><@l.m />", "m1");
+        assertOutput("<#import 'lib.ftl' as l><@l.m />", "m1");
+        getConfiguration().clearTemplateCache();
+        assertOutput("<#import 'lib.ftl' as l><@l.m />", "m2");
+        assertOutput("<#import 'lib.ftl' as l><@l.m />", "m2");
+    }
+
+    public static class CounterMethod implements TemplateMethodModelEx {
+
+        private int count;
+
+        public Object exec(List args) throws TemplateModelException {
+            return new SimpleNumber(++count);
+        }
+
+    }
+
+}
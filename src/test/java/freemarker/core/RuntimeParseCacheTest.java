@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.test.TemplateTest;
+
+public class RuntimeParseCacheTest extends TemplateTest {
+
+    @Test
+    public void testEval() throws Exception {
+        Configuration cfg = getConfiguration();
+        cfg.setRuntimeParseCacheSize(100);
+        assertOutput("<#list 1..3 as i>${'1 + 2'?eval}</#list>", "333");
+        assertEquals(1, cfg.getRuntimeParseCacheMissCount());
+        assertEquals(2, cfg.getRuntimeParseCacheHitCount());
+
+        // Different call places aren't shared, as the parse result depends on them:
+        assertOutput("<#list 1..2 as i>${'1 + 2'?eval}${'1 + 2'?eval}</#list>", "3333");
+        assertEquals(3, cfg.getRuntimeParseCacheMissCount());
+        assertEquals(4, cfg.getRuntimeParseCacheHitCount());
+
+        // The evaluated expression sees the current variables:
+        assertOutput("<#list 1..3 as i>${'i * 10'?eval}</#list>", "102030");
+    }
+
+    @Test
+    public void testInterpret() throws Exception {
+        Configuration cfg = getConfiguration();
+        cfg.setRuntimeParseCacheSize(100);
+        addToDataModel("src", "[${i}]");
+        assertOutput("<#list 1..3 as i><@src?interpret /></#list>", "[1][2][3]");
+        assertEquals(1, cfg.getRuntimeParseCacheMissCount());
+        assertEquals(2, cfg.getRuntimeParseCacheHitCount());
+
+        assertOutput("<#list 1..2 as i><@[src, 'a']?interpret /><@[src, 'b']?interpret /></#list>", "[1][1][2][2]");
+        assertEquals(3, cfg.getRuntimeParseCacheMissCount());
+
+        // The locale is part of the key:
+        assertOutput("<#list ['en', 'de', 'en'] as i><#setting locale=i><@src?interpret /></#list>", "[en][de][en]");
+        assertEquals(5, cfg.getRuntimeParseCacheMissCount());
+    }
+
+    @Test
+    public void testParseErrorsAreNotCached() throws Exception {
+        Configuration cfg = getConfiguration();
+        cfg.setRuntimeParseCacheSize(100);
+        for (int i = 0; i < 2; i++) {
+            assertErrorContains("${'1 +'?eval}", "Failed to \"?eval\"");
+        }
+        assertEquals(2, cfg.getRuntimeParseCacheMissCount());
+        assertEquals(0, cfg.getRuntimeParseCacheHitCount());
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        Configuration cfg = getConfiguration();
+        assertEquals(0, cfg.getRuntimeParseCacheSize());
+        assertOutput("<#list 1..3 as i>${'1 + 2'?eval}</#list>", "333");
+        assertEquals(0, cfg.getRuntimeParseCacheMissCount());
+        assertEquals(0, cfg.getRuntimeParseCacheHitCount());
+    }
+
+    @Test
+    public void testClearAndResize() throws Exception {
+        Configuration cfg = getConfiguration();
+        cfg.setSetting(Configuration.RUNTIME_PARSE_CACHE_SIZE_KEY, "10");
+        assertEquals(10, cfg.getRuntimeParseCacheSize());
+
+        Template t = new Template(null, "<#list 1..2 as i>${'1 + 2'?eval}</#list>", cfg);
+        assertOutput(t, "33");
+        assertEquals(1, cfg.getRuntimeParseCacheMissCount());
+        assertOutput(t, "33");
+        assertEquals(1, cfg.getRuntimeParseCacheMissCount());
+        cfg.clearTemplateCache();
+        assertOutput(t, "33");
+        assertEquals(2, cfg.getRuntimeParseCacheMissCount());
+
+        cfg.setSetting(Configuration.RUNTIME_PARSE_CACHE_SIZE_KEY_CAMEL_CASE, "10");
+        assertEquals(2, cfg.getRuntimeParseCacheMissCount());
+        cfg.setRuntimeParseCacheSize(20);
+        assertEquals(0, cfg.getRuntimeParseCacheMissCount());
+        cfg.setRuntimeParseCacheSize(0);
+        assertEquals(0, cfg.getRuntimeParseCacheSize());
+    }
+
+}
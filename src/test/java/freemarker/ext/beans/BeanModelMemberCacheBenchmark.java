@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.ext.beans;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import freemarker.template.Configuration;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateModelException;
+
+/**
+ * Measures the throughput of looking up already cached method models with {@link BeanModel#get(String)}, on
+ * multiple threads, both when all threads share the same {@link BeanModel}, and when each thread has its own. Run it
+ * before and after a change of the member cache to compare them. Not a JUnit test; run it with its {@code main}
+ * method (the first, optional argument is the number of threads).
+ */
+public class BeanModelMemberCacheBenchmark {
+
+    private static final String[] KEYS = { "a", "b", "c", "d", "e" };
+    private static final int LOOKUPS_PER_ROUND = 1000;
+    private static final int WARMUP_MILLIS = 3000;
+    private static final int MEASUREMENT_MILLIS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+        BeansWrapper bw = new BeansWrapper(Configuration.VERSION_2_3_25);
+
+        TemplateHashModel sharedBean = (TemplateHashModel) bw.wrap(new TestBean());
+        TemplateHashModel[] sharedBeans = new TemplateHashModel[threads];
+        for (int i = 0; i < threads; i++) {
+            sharedBeans[i] = sharedBean;
+        }
+        run("Shared bean", sharedBeans);
+
+        TemplateHashModel[] ownBeans = new TemplateHashModel[threads];
+        for (int i = 0; i < threads; i++) {
+            ownBeans[i] = (TemplateHashModel) bw.wrap(new TestBean());
+        }
+        run("Bean per thread", ownBeans);
+    }
+
+    private static void run(String name, TemplateHashModel[] beans) throws InterruptedException {
+        final AtomicLong lookupCount = new AtomicLong();
+        final long warmupEnd = System.currentTimeMillis() + WARMUP_MILLIS;
+        final long end = warmupEnd + MEASUREMENT_MILLIS;
+        int threadCount = beans.length;
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final TemplateHashModel bean = beans[i];
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        long now;
+                        while ((now = System.currentTimeMillis()) < end) {
+                            lookup(bean);
+                            if (now >= warmupEnd) {
+                                lookupCount.addAndGet(LOOKUPS_PER_ROUND);
+                            }
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.out.println(name + " (" + threadCount + " threads): "
+                + lookupCount.get() * 1000 / MEASUREMENT_MILLIS + " lookups/s");
+    }
+
+    private static void lookup(TemplateHashModel bean) throws TemplateModelException {
+        for (int i = 0; i < LOOKUPS_PER_ROUND; i++) {
+            if (bean.get(KEYS[i % KEYS.length]) == null) {
+                throw new IllegalStateException("Member not found");
+            }
+        }
+    }
+
+    public static class TestBean {
+
+        public String a() {
+            return "a";
+        }
+
+        public String b() {
+            return "b";
+        }
+
+        public String c() {
+            return "c";
+        }
+
+        public String d() {
+            return "d";
+        }
+
+        public String e() {
+            return "e";
+        }
+
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.beans;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.SimpleNumber;
+import freemarker.template.SimpleScalar;
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateNumberModel;
+import freemarker.template.TemplateScalarModel;
+
+public class BeanModelMemberCacheTest {
+    
+    @Test
+    public void testMethodModelsAreCached() throws Exception {
+        BeansWrapper bw = new BeansWrapper(Configuration.VERSION_2_3_25);
+        BeanModel bean = (BeanModel) bw.wrap(new TestBean());
+        
+        TemplateModel m1 = bean.get("m1");
+        assertTrue(m1 instanceof SimpleMethodModel);
+        assertSame(m1, bean.get("m1"));
+        TemplateModel overloaded = bean.get("overloaded");
+        assertTrue(overloaded instanceof OverloadedMethodsModel);
+        assertSame(overloaded, bean.get("overloaded"));
+        assertNotSame(m1, overloaded);
+        assertSame(m1, bean.get("m1"));
+        
+        // Properties aren't cached:
+        assertEquals("p", ((TemplateScalarModel) bean.get("p")).getAsString());
+        
+        bw.clearClassIntrospecitonCache();
+        TemplateModel m1AfterClear = bean.get("m1");
+        assertNotSame(m1, m1AfterClear);
+        assertSame(m1AfterClear, bean.get("m1"));
+        assertEquals(1, ((TemplateNumberModel) ((TemplateMethodModelEx) m1AfterClear).exec(
+                Collections.singletonList(new SimpleNumber(1)))).getAsNumber().intValue());
+    }
+
+    @Test
+    public void testEachMemberHasItsOwnSlotWithGenericGet() throws Exception {
+        BeansWrapper bw = new BeansWrapper(Configuration.VERSION_2_3_25);
+        BeanModel bean = (BeanModel) bw.wrap(new GenericGetBean());
+        
+        // The generic get method is also a member called "get", and it mustn't share a slot with other members:
+        final String[] keys = new String[] { "a", "b", "c", "d", "e", "get" };
+        for (int round = 0; round < 2; round++) {
+            TemplateModel[] models = new TemplateModel[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                String key = keys[i];
+                models[i] = bean.get(key);
+                assertTrue(key, models[i] instanceof SimpleMethodModel);
+                String result = ((TemplateScalarModel) ((TemplateMethodModelEx) models[i]).exec(
+                        key.equals("get") ? Collections.singletonList(new SimpleScalar("x"))
+                                : Collections.emptyList())).getAsString();
+                assertEquals(key.equals("get") ? "get(x)" : key, result);
+                for (int j = 0; j < i; j++) {
+                    assertNotSame(models[j], models[i]);
+                }
+            }
+        }
+        assertEquals("get(z)", ((TemplateScalarModel) bean.get("z")).getAsString());
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        BeansWrapper bw = new BeansWrapper(Configuration.VERSION_2_3_25);
+        final BeanModel bean = (BeanModel) bw.wrap(new TestBean());
+        final String[] keys = new String[] { "m1", "m2", "m3", "overloaded", "p" };
+        final TemplateModel[][] results = new TemplateModel[16][];
+        final Throwable[] failure = new Throwable[1];
+        
+        Thread[] threads = new Thread[results.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int threadIdx = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        TemplateModel[] threadResults = new TemplateModel[keys.length];
+                        for (int i = 0; i < 10000; i++) {
+                            int keyIdx = i % keys.length;
+                            TemplateModel model = bean.get(keys[keyIdx]);
+                            if (keyIdx != keys.length - 1) {
+                                if (threadResults[keyIdx] == null) {
+                                    threadResults[keyIdx] = model;
+                                } else if (threadResults[keyIdx] != model) {
+                                    throw new AssertionError("Model identity has changed for " + keys[keyIdx]);
+                                }
+                            }
+                        }
+                        results[threadIdx] = threadResults;
+                    } catch (Throwable e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    }
+                }
+            };
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw new AssertionError(failure[0]);
+            }
+        }
+        
+        for (int t = 1; t < results.length; t++) {
+            for (int k = 0; k < keys.length - 1; k++) {
+                assertSame(results[0][k], results[t][k]);
+            }
+        }
+    }
+    
+    public static class TestBean {
+        
+        public String getP() {
+            return "p";
+        }
+        
+        public int m1(int n) {
+            return n;
+        }
+
+        public int m2() {
+            return 2;
+        }
+        
+        public int m3() {
+            return 3;
+        }
+        
+        public String overloaded(int n) {
+            return "int";
+        }
+
+        public String overloaded(String s) {
+            return "String";
+        }
+        
+    }
+    
+    public static class GenericGetBean {
+        
+        public String get(String key) {
+            return "get(" + key + ")";
+        }
+        
+        public String a() {
+            return "a";
+        }
+
+        public String b() {
+            return "b";
+        }
+
+        public String c() {
+            return "c";
+        }
+
+        public String d() {
+            return "d";
+        }
+
+        public String e() {
+            return "e";
+        }
+        
+    }
+    
+}
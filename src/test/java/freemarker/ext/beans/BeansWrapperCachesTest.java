@@ -22,6 +22,15 @@ package freemarker.ext.beans;
 import static org.junit.Assert.*;
 
 import java.lang.ref.Reference;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -29,6 +38,7 @@ import org.junit.runners.JUnit4;
 
 import freemarker.ext.beans.BeansWrapper.MethodAppearanceDecision;
 import freemarker.ext.beans.BeansWrapper.MethodAppearanceDecisionInput;
+import freemarker.template.Configuration;
 
 @RunWith(JUnit4.class)
 public class BeansWrapperCachesTest {
@@ -71,6 +81,58 @@ public class BeansWrapperCachesTest {
         checkRegisteredModelFactories(ci4, bw.getStaticModels(), bw.getEnumModels(), bw.getModelCache());
     }
     
+    @Test
+    public void introspectClasses() throws Exception {
+        BeansWrapper bw = new BeansWrapper(Configuration.VERSION_2_3_25);
+        ClassIntrospector ci = bw.getClassIntrospector();
+        List<Class<?>> classes = new ArrayList<Class<?>>();
+        classes.add(StringBuilder.class);
+        classes.add(HashMap.class);
+        classes.add(Locale.class);
+        
+        assertFalse(ci.isCached(StringBuilder.class));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            bw.introspectClasses(classes, executor);
+        } finally {
+            executor.shutdown();
+        }
+        for (Class<?> clazz : classes) {
+            assertTrue(ci.isCached(clazz));
+        }
+        
+        bw.clearClassIntrospecitonCache();
+        bw.introspectClasses(Collections.<Class<?>>singleton(Date.class), null);
+        assertTrue(ci.isCached(Date.class));
+        assertFalse(ci.isCached(StringBuilder.class));
+    }
+    
+    @Test
+    public void concurrentIntrospectionOfTheSameClass() throws Exception {
+        final ClassIntrospector ci = new BeansWrapper(Configuration.VERSION_2_3_25).getClassIntrospector();
+        final Object[] results = new Object[8];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int threadIdx = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    results[threadIdx] = ci.get(BigDecimal.class);
+                }
+            };
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (Object result : results) {
+            assertNotNull(result);
+            assertSame(results[0], result);
+        }
+    }
+    
     private void checkRegisteredModelFactories(ClassIntrospector ci, Object... expected) {
         Object[] actualRefs = ci.getRegisteredModelFactoriesSnapshot();
 
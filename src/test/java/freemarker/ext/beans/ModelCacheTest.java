@@ -21,10 +21,16 @@ package freemarker.ext.beans;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import freemarker.ext.util.ModelCache;
+import freemarker.ext.util.ModelCacheStatistics;
 import freemarker.template.Configuration;
 import freemarker.template.TemplateModel;
 
@@ -61,6 +67,109 @@ public class ModelCacheTest {
         assertSame(bw.wrap(c), bw.wrap(c));
     }
 
+    @Test
+    public void modelCacheStatistics() throws Exception {
+        BeansWrapper bw = new BeansWrapper(Configuration.VERSION_2_3_21);
+        assertNull(bw.getModelCacheStatistics());
+        bw.setUseCache(true);
+        
+        C c1 = new C();
+        C c2 = new C();
+        bw.wrap(c1);
+        bw.wrap(c1);
+        bw.wrap(c2);
+        
+        ModelCacheStatistics stats = bw.getModelCacheStatistics();
+        assertEquals(2, stats.getSize());
+        assertEquals(1, stats.getHitCount());
+        assertEquals(2, stats.getMissCount());
+        assertEquals(0, stats.getEvictionCount());
+        assertEquals(ModelCache.UNLIMITED_CACHE_SIZE, stats.getMaxSize());
+        
+        bw.clearClassIntrospecitonCache();
+        assertEquals(0, bw.getModelCacheStatistics().getSize());
+    }
+    
+    @Test
+    public void modelCacheMaxSize() throws Exception {
+        BeansWrapper bw = new BeansWrapper(Configuration.VERSION_2_3_21);
+        bw.setUseCache(true);
+        bw.setModelCacheMaxSize(100);
+        assertEquals(100, bw.getModelCacheMaxSize());
+        
+        List<C> objects = new ArrayList<C>();
+        for (int i = 0; i < 1000; i++) {
+            C c = new C();
+            objects.add(c);
+            bw.wrap(c);
+        }
+        
+        ModelCacheStatistics stats = bw.getModelCacheStatistics();
+        // The limit is enforced per segment, so it can be slightly exceeded:
+        assertTrue(stats.getSize() <= 100 + 16);
+        assertTrue(stats.getEvictionCount() >= 1000 - (100 + 16));
+        
+        try {
+            bw.setModelCacheMaxSize(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+    
+    @Test
+    public void modelCacheMaxSizeWithBuilder() throws Exception {
+        BeansWrapperBuilder builder = new BeansWrapperBuilder(Configuration.VERSION_2_3_21);
+        builder.setUseModelCache(true);
+        builder.setModelCacheMaxSize(10);
+        BeansWrapper bw = builder.build();
+        assertEquals(10, bw.getModelCacheMaxSize());
+        assertEquals(10, bw.getModelCacheStatistics().getMaxSize());
+    }
+    
+    @Test
+    public void modelCacheConcurrentAccess() throws Exception {
+        final BeansWrapper bw = new BeansWrapper(Configuration.VERSION_2_3_21);
+        bw.setUseCache(true);
+        
+        final C[] objects = new C[200];
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = new C();
+        }
+        
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int rep = 0; rep < 50; rep++) {
+                            for (C c : objects) {
+                                TemplateModel tm = bw.wrap(c);
+                                if (((BeanModel) tm).getWrappedObject() != c) {
+                                    throw new AssertionError("Wrong model for object");
+                                }
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+        
+        for (C c : objects) {
+            assertSame(bw.wrap(c), bw.wrap(c));
+        }
+        assertEquals(objects.length, bw.getModelCacheStatistics().getSize());
+    }
+
     static public class C { }
     
 }
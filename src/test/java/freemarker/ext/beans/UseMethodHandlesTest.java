@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.beans;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.SimpleNumber;
+import freemarker.template.SimpleScalar;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateNumberModel;
+import freemarker.template.TemplateScalarModel;
+
+public class UseMethodHandlesTest {
+
+    @Test
+    public void testSetting() throws Exception {
+        BeansWrapperBuilder builder = new BeansWrapperBuilder(Configuration.VERSION_2_3_25);
+        assertFalse(builder.getUseMethodHandles());
+        assertFalse(builder.build().getUseMethodHandles());
+        builder.setUseMethodHandles(true);
+        BeansWrapper bw = builder.build();
+        assertTrue(bw.getUseMethodHandles());
+        assertNotSame(new BeansWrapperBuilder(Configuration.VERSION_2_3_25).build().getClassIntrospector(),
+                bw.getClassIntrospector());
+        
+        BeansWrapper bw2 = new BeansWrapper(Configuration.VERSION_2_3_25);
+        bw2.setUseMethodHandles(true);
+        assertTrue(bw2.getUseMethodHandles());
+    }
+    
+    @Test
+    public void testInvocations() throws Exception {
+        for (boolean useMethodHandles : new boolean[] { false, true }) {
+            BeansWrapperBuilder builder = new BeansWrapperBuilder(Configuration.VERSION_2_3_25);
+            builder.setUseMethodHandles(useMethodHandles);
+            BeansWrapper bw = builder.build();
+            
+            TemplateHashModel bean = (TemplateHashModel) bw.wrap(new TestBean());
+            for (int i = 0; i < 2; i++) {
+                assertEquals("x", ((TemplateScalarModel) bean.get("name")).getAsString());
+                
+                TemplateMethodModelEx add = (TemplateMethodModelEx) bean.get("add");
+                assertEquals(5L, ((TemplateNumberModel) add.exec(Arrays.asList(
+                        new SimpleNumber(2), new SimpleNumber(3)))).getAsNumber());
+                
+                TemplateMethodModelEx overloaded = (TemplateMethodModelEx) bean.get("overloaded");
+                assertEquals("int 1", ((TemplateScalarModel) overloaded.exec(Collections.singletonList(
+                        new SimpleNumber(1)))).getAsString());
+                assertEquals("String s", ((TemplateScalarModel) overloaded.exec(Collections.singletonList(
+                        new SimpleScalar("s")))).getAsString());
+                
+                TemplateMethodModelEx varargs = (TemplateMethodModelEx) bean.get("varargs");
+                assertEquals("a, b", ((TemplateScalarModel) varargs.exec(Arrays.asList(
+                        new SimpleScalar("a"), new SimpleScalar("b")))).getAsString());
+                
+                TemplateMethodModelEx fail = (TemplateMethodModelEx) bean.get("fail");
+                try {
+                    fail.exec(Collections.emptyList());
+                    fail();
+                } catch (TemplateModelException e) {
+                    assertTrue(e.getCause() instanceof IllegalStateException);
+                    assertEquals("failed", e.getCause().getMessage());
+                }
+            }
+        }
+    }
+    
+    public static class TestBean {
+        
+        public String getName() {
+            return "x";
+        }
+        
+        public long add(long a, int b) {
+            return a + b;
+        }
+        
+        public String overloaded(int n) {
+            return "int " + n;
+        }
+
+        public String overloaded(String s) {
+            return "String " + s;
+        }
+        
+        public String varargs(String... args) {
+            StringBuilder sb = new StringBuilder();
+            for (String arg : args) {
+                if (sb.length() != 0) {
+                    sb.append(", ");
+                }
+                sb.append(arg);
+            }
+            return sb.toString();
+        }
+        
+        public void fail() {
+            throw new IllegalStateException("failed");
+        }
+        
+    }
+    
+}
@@ -82,6 +82,18 @@ public class DOMTest extends TemplateTest {
         assertThat(getOutput(ftlHeader + "${doc?children[0]?children[1].@@start_tag}"), startsWith("<n2:b"));
     }
     
+    @Test
+    public void cachedXPathWithPrefixes() throws Exception {
+        addDocToDataModel("<root xmlns:ns1='http://example.com/ns1' xmlns:ns2='http://example.com/ns2'>"
+                + "<ns1:a>A1</ns1:a><ns2:a>A2</ns2:a></root>");
+        // The same expression must be compiled again when the prefix means something else:
+        for (int i = 0; i < 2; i++) {
+            assertOutput("<#ftl ns_prefixes={'p':'http://example.com/ns1'}>${doc['/root/p:a']}", "A1");
+            assertOutput("<#ftl ns_prefixes={'p':'http://example.com/ns2'}>${doc['/root/p:a']}", "A2");
+            assertOutput("${doc['count(/root/*)']}", "2");
+        }
+    }
+
     @Test
     public void namespaceUnaware() throws Exception {
         addNSUnawareDocToDataModel("<root><x:a>A</x:a><:>B</:><xyz::c>C</xyz::c></root>");
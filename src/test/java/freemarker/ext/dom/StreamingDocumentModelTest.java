@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.dom;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import freemarker.test.TemplateTest;
+
+public class StreamingDocumentModelTest extends TemplateTest {
+
+    private static final String FEED = "<feed xmlns:x='http://example.com/x'>"
+            + "<title>The <!-- c -->Feed</title><x:meta a='1'/>"
+            + "<item id='1'><t>A</t><d>a</d></item>"
+            + "<other><item id='no'/></other>"
+            + "<item id='2'><t>B</t><d>b</d></item>"
+            + "<item id='3'><t>C</t><sub><s>1</s><s>2</s></sub></item>"
+            + "<footer>F</footer>"
+            + "</feed>";
+
+    @Test
+    public void listing() throws Exception {
+        addStreamingDocToDataModel(FEED);
+        assertOutput(
+                "${doc.feed.title}:<#list doc.feed.item as item> ${item.@id}=${item.t}</#list>",
+                "The Feed: 1=A 2=B 3=C");
+        
+        addStreamingDocToDataModel(FEED);
+        assertOutput(
+                "<#list doc.feed.item as item>"
+                + "${item.@id}<#list item.sub.s as s>[${s}]</#list><#sep>, "
+                + "</#list>",
+                "1, 2, 3[1][2]");
+        
+        addStreamingDocToDataModel(FEED);
+        assertOutput(
+                "<#list doc.feed.* as e>${e?node_name}<#if e?has_next>,</#if></#list>",
+                "title,meta,item,other,item,item,footer");
+    }
+
+    @Test
+    public void childrenOfItemInAnyOrder() throws Exception {
+        addStreamingDocToDataModel(FEED);
+        assertOutput(
+                "<#list doc.feed.item as item>"
+                + "${item.d[0]!'-'}${item.t}${item.@@text}<#list item.* as e>${e?node_name}</#list>;"
+                + "</#list>",
+                "aAAatd;bBBbtd;-CC12tsub;");
+        
+        addStreamingDocToDataModel(FEED);
+        assertOutput("${doc.feed.footer} ${doc.feed.title} ${doc.feed.item?size}", "F The Feed 3");
+    }
+
+    @Test
+    public void recurse() throws Exception {
+        addStreamingDocToDataModel(FEED);
+        assertOutput(
+                "<#ftl ns_prefixes={'x': 'http://example.com/x'}>"
+                + "<#recurse doc>"
+                + "<#macro feed><#recurse></#macro>"
+                + "<#macro title>[${.node}]</#macro>"
+                + "<#macro \"x:meta\">(meta ${.node.@a})</#macro>"
+                + "<#macro item>{${.node.@id}:<#recurse>}</#macro>"
+                + "<#macro t>${.node?parent.@id}</#macro>"
+                + "<#macro d><#recurse></#macro>"
+                + "<#macro sub><#recurse></#macro>"
+                + "<#macro s>s<#recurse></#macro>"
+                + "<#macro other></#macro>"
+                + "<#macro footer>(${.node})</#macro>",
+                "[The Feed](meta 1){1:1a}{2:2b}{3:3s1s2}(F)");
+    }
+
+    @Test
+    public void outOfOrderAccessErrors() throws Exception {
+        addStreamingDocToDataModel(FEED);
+        assertErrorContains(
+                "<#list doc.feed.item as item></#list>${doc.feed}",
+                "contains no nodes", "streamed past");
+        
+        addStreamingDocToDataModel(FEED);
+        assertErrorContains(
+                "<#list doc.feed.title as title></#list>${doc.feed.@@text}",
+                "partially read by listing");
+        
+        addStreamingDocToDataModel(FEED);
+        assertErrorContains(
+                "<#assign items = doc.feed.item><#list items as item></#list><#list items as item></#list>",
+                "can only be listed once");
+    }
+
+    private void addStreamingDocToDataModel(String xml) throws Exception {
+        addToDataModel("doc", StreamingDocumentModel.parse(new StringReader(xml)));
+    }
+
+}
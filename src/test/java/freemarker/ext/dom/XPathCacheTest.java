@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.dom;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class XPathCacheTest {
+
+    @Test
+    public void testGetNamespacePrefixes() {
+        assertNull(XPathCache.getNamespacePrefixes("/root/a[@b = 1]"));
+        assertNull(XPathCache.getNamespacePrefixes("following-sibling::c"));
+        assertNull(XPathCache.getNamespacePrefixes("a[. = 'x:y']"));
+        assertNull(XPathCache.getNamespacePrefixes("a[. = \"x:y\"]"));
+        assertEquals(Arrays.asList("D", "ns-2"),
+                XPathCache.getNamespacePrefixes("D:root/child::ns-2:a[. = 'x:y']"));
+        assertEquals(Arrays.asList("p", "p"), XPathCache.getNamespacePrefixes("p:a | p:*"));
+    }
+
+    @Test
+    public void testCreatePrefixResolvingKeyWithoutEnvironment() {
+        String query = "p:a";
+        assertSame(query, XPathCache.createPrefixResolvingKey(query, null));
+    }
+
+}
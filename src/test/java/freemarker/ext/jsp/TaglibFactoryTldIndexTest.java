@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.jsp;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.FileSystemResourceLoader;
+import org.springframework.mock.web.MockServletContext;
+
+import com.google.common.io.Files;
+
+import freemarker.template.Configuration;
+import freemarker.template.DefaultObjectWrapperBuilder;
+import freemarker.template.TemplateModelException;
+
+public class TaglibFactoryTldIndexTest {
+    
+    private static final String URI_A = "http://example.com/a";
+    private static final String URI_B = "http://example.com/b";
+    private static final String URI_FROM_INDEX = "http://example.com/fromIndex";
+    
+    private File tempDir;
+    private File jarA;
+    private File tldIndexFile;
+    private MockServletContext servletContext;
+    
+    @Before
+    public void setup() throws IOException {
+        tempDir = Files.createTempDir();
+        File libDir = new File(tempDir, "WEB-INF/lib");
+        libDir.mkdirs();
+        jarA = new File(libDir, "a.jar");
+        createJarWithTld(jarA, URI_A);
+        createJarWithTld(new File(libDir, "b.jar"), URI_B);
+        tldIndexFile = new File(tempDir, "tld-index.properties");
+        servletContext = new MockServletContext("file:" + tempDir.getAbsolutePath(), new FileSystemResourceLoader());
+    }
+
+    private void createJarWithTld(File jarFile, String taglibUri) throws IOException {
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jarFile));
+        try {
+            out.putNextEntry(new JarEntry("META-INF/taglib.tld"));
+            out.write(("<taglib><tlib-version>1.0</tlib-version><short-name>t</short-name>"
+                    + "<uri>" + taglibUri + "</uri></taglib>").getBytes("UTF-8"));
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(tempDir);
+    }
+    
+    @Test
+    public void testDefaults() throws Exception {
+        TaglibFactory taglibFactory = new TaglibFactory(servletContext);
+        assertEquals(1, taglibFactory.getJarScanParallelism());
+        assertNull(taglibFactory.getTldIndexFile());
+    }
+    
+    @Test
+    public void testParallelScanWritesIndex() throws Exception {
+        TaglibFactory taglibFactory = newTaglibFactory(4);
+        assertNotNull(taglibFactory.get(URI_A));
+        assertNotNull(taglibFactory.get(URI_B));
+        
+        Properties index = loadIndex();
+        assertTrue(index.getProperty("/WEB-INF/lib/a.jar").endsWith("\t/META-INF/taglib.tld\t" + URI_A));
+        assertTrue(index.getProperty("/WEB-INF/lib/b.jar").endsWith("\t/META-INF/taglib.tld\t" + URI_B));
+    }
+
+    @Test
+    public void testIndexUsedForUnchangedJars() throws Exception {
+        assertNotNull(newTaglibFactory(1).get(URI_A));
+        
+        // Tamper with the index, so that we can see if the jar was scanned again:
+        Properties index = loadIndex();
+        String key = "/WEB-INF/lib/a.jar";
+        index.setProperty(key, index.getProperty(key).replace(URI_A, URI_FROM_INDEX));
+        saveIndex(index);
+        
+        TaglibFactory taglibFactory = newTaglibFactory(1);
+        assertNotNull(taglibFactory.get(URI_FROM_INDEX));
+        try {
+            taglibFactory.get(URI_A);
+            fail();
+        } catch (TemplateModelException e) {
+            // Expected
+        }
+        
+        // Now the jar has changed, so the index entry isn't used:
+        assertTrue(jarA.setLastModified(jarA.lastModified() + 2000));
+        taglibFactory = newTaglibFactory(2);
+        assertNotNull(taglibFactory.get(URI_A));
+        try {
+            taglibFactory.get(URI_FROM_INDEX);
+            fail();
+        } catch (TemplateModelException e) {
+            // Expected
+        }
+        assertTrue(loadIndex().getProperty(key).endsWith(URI_A));
+    }
+
+    private TaglibFactory newTaglibFactory(int jarScanParallelism) {
+        TaglibFactory taglibFactory = new TaglibFactory(servletContext);
+        taglibFactory.setObjectWrapper(
+                new DefaultObjectWrapperBuilder(Configuration.DEFAULT_INCOMPATIBLE_IMPROVEMENTS).build());
+        taglibFactory.setTldIndexFile(tldIndexFile);
+        taglibFactory.setJarScanParallelism(jarScanParallelism);
+        return taglibFactory;
+    }
+
+    private Properties loadIndex() throws IOException {
+        Properties index = new Properties();
+        InputStream in = new FileInputStream(tldIndexFile);
+        try {
+            index.load(in);
+        } finally {
+            in.close();
+        }
+        return index;
+    }
+    
+    private void saveIndex(Properties index) throws IOException {
+        OutputStream out = new FileOutputStream(tldIndexFile);
+        try {
+            index.store(out, null);
+        } finally {
+            out.close();
+        }
+    }
+    
+}
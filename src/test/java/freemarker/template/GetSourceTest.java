@@ -18,7 +18,10 @@
  */
 package freemarker.template;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.Collections;
 
 import org.junit.Test;
 
@@ -50,4 +53,81 @@ public class GetSourceTest {
         }
     }
     
+    @Test
+    public void testCompressedSourceRetention() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_23);
+        String src = "a\r\n\tb\rc\n\n\u0151\u2022d";
+        Template fullT = new Template(null, src, cfg);
+        cfg.setTemplateSourceRetention(Configuration.COMPRESSED_TEMPLATE_SOURCE_RETENTION);
+        Template compressedT = new Template(null, src, cfg);
+        for (int beginLine = 1; beginLine <= 5; beginLine++) {
+            for (int endLine = beginLine; endLine <= 5; endLine++) {
+                assertEquals(fullT.getSource(1, beginLine, 1, endLine), compressedT.getSource(1, beginLine, 1, endLine));
+            }
+        }
+        assertEquals("a\r\n        b\rc", compressedT.getSource(1, 1, 1, 3));
+        assertEquals("\u0151\u2022d", compressedT.getSource(1, 5, 3, 5));
+    }
+    
+    @Test
+    public void testNoSourceRetention() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_23);
+        cfg.setTemplateSourceRetention(Configuration.NO_TEMPLATE_SOURCE_RETENTION);
+        Template t = new Template(null, "a\n${  x  +  y }", cfg);
+        assertNull(t.getSource(1, 1, 1, 2));
+        // Falls back to the canonical form:
+        assertEquals("a\n${x + y}", t.getRootTreeNode().getSource());
+        
+        StringWriter out = new StringWriter();
+        t.process(Collections.singletonMap("x", 1), out);
+        assertEquals("a\n1", out.toString());
+    }
+    
+    @Test
+    public void testMemoryReport() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_23);
+        StringBuilder src = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            src.append("<#if x == ").append(i).append(">Some static text here ${x}</#if>\n");
+        }
+        
+        TemplateMemoryReport fullReport = new Template("t", src.toString(), cfg).getMemoryReport();
+        assertEquals("t", fullReport.getTemplateName());
+        assertEquals(Configuration.FULL_TEMPLATE_SOURCE_RETENTION, fullReport.getSourceRetention());
+        assertEquals(src.length(), fullReport.getSourceLength());
+        assertTrue(fullReport.getRetainedSourceSize() > 2 * src.length());
+        assertTrue(fullReport.getParsedTreeSize() > 0);
+        assertEquals(fullReport.getRetainedSourceSize() + fullReport.getParsedTreeSize(), fullReport.getTotalSize());
+        
+        cfg.setTemplateSourceRetention(Configuration.COMPRESSED_TEMPLATE_SOURCE_RETENTION);
+        TemplateMemoryReport compressedReport = new Template("t", src.toString(), cfg).getMemoryReport();
+        assertEquals(src.length(), compressedReport.getSourceLength());
+        assertTrue(compressedReport.getRetainedSourceSize() > 0);
+        assertTrue(compressedReport.getRetainedSourceSize() < src.length() / 4);
+        assertEquals(fullReport.getParsedTreeSize(), compressedReport.getParsedTreeSize());
+        
+        cfg.setTemplateSourceRetention(Configuration.NO_TEMPLATE_SOURCE_RETENTION);
+        TemplateMemoryReport noSourceReport = new Template("t", src.toString(), cfg).getMemoryReport();
+        assertEquals(src.length(), noSourceReport.getSourceLength());
+        assertEquals(0, noSourceReport.getRetainedSourceSize());
+    }
+    
+    @Test
+    public void testSourceRetentionSetting() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_23);
+        assertEquals(Configuration.FULL_TEMPLATE_SOURCE_RETENTION, cfg.getTemplateSourceRetention());
+        cfg.setSetting(Configuration.TEMPLATE_SOURCE_RETENTION_KEY, "compressed");
+        assertEquals(Configuration.COMPRESSED_TEMPLATE_SOURCE_RETENTION, cfg.getTemplateSourceRetention());
+        cfg.setSetting(Configuration.TEMPLATE_SOURCE_RETENTION_KEY_CAMEL_CASE, "none");
+        assertEquals(Configuration.NO_TEMPLATE_SOURCE_RETENTION, cfg.getTemplateSourceRetention());
+        cfg.setSetting(Configuration.TEMPLATE_SOURCE_RETENTION_KEY, "full");
+        assertEquals(Configuration.FULL_TEMPLATE_SOURCE_RETENTION, cfg.getTemplateSourceRetention());
+        try {
+            cfg.setTemplateSourceRetention(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+    
 }
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import freemarker.cache.ClassTemplateLoader;
+import freemarker.cache.StringTemplateLoader;
+import freemarker.core.ParseException;
+
+public class TemplateCacheWarmUpTest {
+
+    @Test
+    public void testWarmUp() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_25);
+        cfg.setLocalizedLookup(false);
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("a.ftl", "a");
+        tl.putTemplate("b.ftl", "b");
+        tl.putTemplate("sub/c.ftl", "c");
+        tl.putTemplate("sub/deep/d.ftl", "d");
+        tl.putTemplate("sub/bad.ftl", "<#if>");
+        tl.putTemplate("x.txt", "x");
+        cfg.setTemplateLoader(tl);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            TemplateCacheWarmUpResult result = cfg.warmUpTemplateCache(
+                    Arrays.asList("*.ftl", "/sub/**/*.ftl", "a.ftl", "missing.ftl"), executor);
+            
+            List<TemplateCacheWarmUpResult.Entry> entries = result.getEntries();
+            assertEquals(6, entries.size());
+            assertEquals("a.ftl", entries.get(0).getTemplateName());
+            assertEquals("b.ftl", entries.get(1).getTemplateName());
+            assertEquals("sub/bad.ftl", entries.get(2).getTemplateName());
+            assertEquals("sub/c.ftl", entries.get(3).getTemplateName());
+            assertEquals("sub/deep/d.ftl", entries.get(4).getTemplateName());
+            assertEquals("missing.ftl", entries.get(5).getTemplateName());
+            
+            assertFalse(result.isSuccessful());
+            List<TemplateCacheWarmUpResult.Entry> failedEntries = result.getFailedEntries();
+            assertEquals(2, failedEntries.size());
+            assertEquals("sub/bad.ftl", failedEntries.get(0).getTemplateName());
+            assertTrue(failedEntries.get(0).getException() instanceof ParseException);
+            assertEquals("missing.ftl", failedEntries.get(1).getTemplateName());
+            assertTrue(failedEntries.get(1).getException() instanceof TemplateNotFoundException);
+            
+            for (TemplateCacheWarmUpResult.Entry entry : entries) {
+                assertTrue(entry.getLoadTimeNanos() >= 0);
+                assertTrue(entry.getLoadTimeNanos() <= result.getTotalTimeNanos());
+            }
+            
+            // The templates are now in the cache:
+            tl.putTemplate("a.ftl", "a2", 0);
+            assertEquals("a", cfg.getTemplate("a.ftl").toString());
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void testWarmUpOnCurrentThread() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_25);
+        StringTemplateLoader tl = new StringTemplateLoader();
+        tl.putTemplate("a.ftl", "a");
+        tl.putTemplate("a_de.ftl", "a de");
+        cfg.setTemplateLoader(tl);
+        
+        TemplateCacheWarmUpResult result = cfg.warmUpTemplateCache(
+                Collections.singleton("a.ftl"), Locale.GERMAN, null);
+        assertTrue(result.isSuccessful());
+        assertEquals(1, result.getEntries().size());
+        
+        tl.putTemplate("a_de.ftl", "a de 2", 0);
+        assertEquals("a de", cfg.getTemplate("a.ftl", Locale.GERMAN).toString());
+    }
+
+    @Test
+    public void testGlobNeedsListableTemplateLoader() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_25);
+        cfg.setTemplateLoader(new ClassTemplateLoader(TemplateCacheWarmUpTest.class, ""));
+        
+        // Non-globs work without listing:
+        assertEquals(1, cfg.warmUpTemplateCache(Collections.singleton("foo.ftl"), null).getEntries().size());
+        
+        try {
+            cfg.warmUpTemplateCache(Collections.singleton("*.ftl"), null);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            assertTrue(e.getMessage().contains("ListableTemplateLoader"));
+        }
+    }
+    
+}